@@ -0,0 +1,41 @@
+/*
+ *      Copyright (C) 2012, 2016  higherfrequencytrading.com
+ *      Copyright (C) 2016 Roman Leventov
+ *
+ *      This program is free software: you can redistribute it and/or modify
+ *      it under the terms of the GNU Lesser General Public License as published by
+ *      the Free Software Foundation, either version 3 of the License.
+ *
+ *      This program is distributed in the hope that it will be useful,
+ *      but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *      MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *      GNU Lesser General Public License for more details.
+ *
+ *      You should have received a copy of the GNU Lesser General Public License
+ *      along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.openhft.chronicle.hash;
+
+/**
+ * Algorithms, which could be used to compute entry checksums of a {@link ChronicleHash}, created
+ * with {@link ChronicleHashBuilder#checksumEntries(boolean) checksumEntries(true)}. The algorithm
+ * is stored in the header of a persisted Chronicle Hash, so all processes, accessing the same
+ * store, compute checksums in the same way.
+ *
+ * @see net.openhft.chronicle.map.ChronicleMapBuilder#checksumAlgorithm(ChecksumAlgorithm)
+ */
+public enum ChecksumAlgorithm {
+    /**
+     * xxHash64 of the entry payload. Fast on any JVM, the payload is hashed 8 bytes at a time.
+     */
+    XXHASH,
+
+    /**
+     * CRC-32C (Castagnoli) of the entry payload. Since Java 9 it's computed by {@code
+     * java.util.zip.CRC32C}, which is intrinsified using the CRC32 instructions of SSE 4.2 on
+     * x86 and of ARMv8, that is faster than xxHash for payloads of a few kilobytes and larger.
+     * On Java 8 a table-driven implementation is used, which is several times slower than
+     * xxHash.
+     */
+    CRC32C
+}
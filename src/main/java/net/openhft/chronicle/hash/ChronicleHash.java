@@ -23,12 +23,14 @@ import net.openhft.chronicle.map.MapMethods;
 import net.openhft.chronicle.map.MapQueryContext;
 import net.openhft.chronicle.set.ChronicleSet;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.Closeable;
 import java.io.File;
 import java.util.Map;
 import java.util.Set;
 import java.util.function.Consumer;
+import java.util.function.DoubleConsumer;
 import java.util.function.Predicate;
 
 /**
@@ -92,6 +94,64 @@ public interface ChronicleHash<K, E extends HashEntry<K>, SC extends HashSegment
      */
     long offHeapMemoryUsed();
 
+    /**
+     * Returns the memory, backing free space of this {@code ChronicleHash}, back to the operating
+     * system: page-aligned runs of free chunks in the segment tiers and the unused extra tiers.
+     * For in-memory {@code ChronicleHash} the memory is released via {@code madvise()}, for
+     * persisted one holes are punched in the {@link #file()}, so it becomes sparse. This method
+     * doesn't change the {@link #offHeapMemoryUsed()} value, which reflects the amount of
+     * reserved memory, rather than memory actually backed by RAM or disk.
+     * <p>
+     * <p>Currently releasing memory is supported only on Linux, on other platforms this method
+     * does nothing and returns 0.
+     *
+     * @return the number of bytes released
+     * @see net.openhft.chronicle.map.ChronicleMapBuilder#releaseFreeMemoryPeriodically(long,
+     * java.util.concurrent.TimeUnit)
+     */
+    long releaseFreeMemory();
+
+    /**
+     * Returns the fraction of segments of this {@code ChronicleHash}, which are already recovered,
+     * from 0.0 to 1.0. Less than 1.0 could be returned only if this {@code ChronicleHash} is
+     * recovered lazily, see {@link
+     * net.openhft.chronicle.map.ChronicleMapBuilder#recoverSegmentsLazily(boolean)}, otherwise
+     * all segments are recovered before the {@code ChronicleHash} is returned from the builder.
+     *
+     * @return the fraction of recovered segments
+     */
+    double recoveryProgress();
+
+    /**
+     * Faults in all memory of this {@code ChronicleHash}, using all available processors. Same as
+     * {@code warmUp(Runtime.getRuntime().availableProcessors(), true, null)}.
+     *
+     * @see #warmUp(int, boolean, DoubleConsumer)
+     */
+    void warmUp();
+
+    /**
+     * Faults in the memory of this {@code ChronicleHash}: the segment headers, the first tiers of
+     * all segments and, if {@code extraTiers} is {@code true}, the extra tier bulks allocated so
+     * far, in the given number of threads, so that the following accesses to this {@code
+     * ChronicleHash} don't stall on page faults. Memory of an in-memory {@code ChronicleHash} is
+     * written (without changing its contents), pages of a persisted one are only read, so that
+     * they are brought to the page cache, but not made dirty. This method blocks until all memory
+     * is touched, and could be called concurrently with any other operations with this {@code
+     * ChronicleHash}.
+     *
+     * @param parallelism      the number of threads to touch the memory, 1 to touch it in the
+     *                         calling thread
+     * @param extraTiers       if the allocated extra tier bulks should be touched, in addition to
+     *                         the segments
+     * @param progressListener called with the fraction of memory, touched so far, from 0.0 to
+     *                         1.0, from the touching threads, but never concurrently, {@code null}
+     *                         if the progress is not reported
+     * @throws IllegalArgumentException if {@code parallelism} is not positive
+     * @see net.openhft.chronicle.map.ChronicleMapBuilder#preTouch(int, boolean, DoubleConsumer)
+     */
+    void warmUp(int parallelism, boolean extraTiers, @Nullable DoubleConsumer progressListener);
+
     /**
      * @return the class of {@code <K>}
      */
@@ -50,6 +50,18 @@ public interface ChronicleHashBuilderPrivateAPI<K, RO> {
 
     boolean checksumEntries();
 
+    ChecksumAlgorithm checksumAlgorithm();
+
+    boolean deferredChecksums();
+
+    boolean seededKeyHashing();
+
+    /**
+     * The minimum size of an extra tier bulk in bytes: the page size, or the huge page size, if
+     * huge pages are configured.
+     */
+    long minTierBulkSize();
+
     void replication(byte identifier);
 
     /**
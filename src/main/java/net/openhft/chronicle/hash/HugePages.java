@@ -0,0 +1,44 @@
+/*
+ *      Copyright (C) 2012, 2016  higherfrequencytrading.com
+ *      Copyright (C) 2016 Roman Leventov
+ *
+ *      This program is free software: you can redistribute it and/or modify
+ *      it under the terms of the GNU Lesser General Public License as published by
+ *      the Free Software Foundation, either version 3 of the License.
+ *
+ *      This program is distributed in the hope that it will be useful,
+ *      but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *      MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *      GNU Lesser General Public License for more details.
+ *
+ *      You should have received a copy of the GNU Lesser General Public License
+ *      along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.openhft.chronicle.hash;
+
+/**
+ * Kinds of huge pages, which could back the memory of a {@link ChronicleHash}, to reduce
+ * the TLB misses on random accesses to a large store.
+ *
+ * @see net.openhft.chronicle.map.ChronicleMapBuilder#hugePages(HugePages)
+ */
+public enum HugePages {
+    /**
+     * The memory is backed by pages of the default size.
+     */
+    NONE,
+
+    /**
+     * The memory is advised to be backed by transparent huge pages with {@code
+     * madvise(MADV_HUGEPAGE)}. The kernel falls back to pages of the default size, if huge pages
+     * are not available.
+     */
+    TRANSPARENT,
+
+    /**
+     * The memory is allocated from the huge page pool of the OS with {@code MAP_HUGETLB}. The pool
+     * should be configured in advance (see {@code /proc/sys/vm/nr_hugepages}), the allocation
+     * fails, if there are not enough free huge pages.
+     */
+    HUGETLB
+}
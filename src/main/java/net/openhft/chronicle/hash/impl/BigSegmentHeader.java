@@ -37,6 +37,7 @@ public final class BigSegmentHeader implements SegmentHeader {
     static final long LOWEST_POSSIBLY_FREE_CHUNK_OFFSET = ENTRIES_OFFSET + 4L;
     static final long NEXT_TIER_INDEX_OFFSET = LOWEST_POSSIBLY_FREE_CHUNK_OFFSET + 4L;
     static final long DELETED_OFFSET = NEXT_TIER_INDEX_OFFSET + 8L;
+    static final long RESERVED_TIER_INDEX_OFFSET = DELETED_OFFSET + 4L; // 32-bit
     private static final long UNSIGNED_INT_MASK = 0xFFFFFFFFL;
     /**
      * Make the LOCK constant and {@link #A} of final class types (instead of interfaces) as this
@@ -398,6 +399,31 @@ public final class BigSegmentHeader implements SegmentHeader {
         OS.memory().writeLong(address + NEXT_TIER_INDEX_OFFSET, nextTierIndex);
     }
 
+    @Override
+    public long reservedTierIndex(long address) {
+        return OS.memory().readVolatileInt(address + RESERVED_TIER_INDEX_OFFSET) &
+                UNSIGNED_INT_MASK;
+    }
+
+    @Override
+    public void reservedTierIndex(long address, long reservedTierIndex) {
+        if (reservedTierIndex > UNSIGNED_INT_MASK) {
+            throw new IllegalStateException("reserved tier index overflow: up to " +
+                    UNSIGNED_INT_MASK + " supported, " + reservedTierIndex + " given");
+        }
+        OS.memory().writeOrderedInt(address + RESERVED_TIER_INDEX_OFFSET, (int) reservedTierIndex);
+    }
+
+    @Override
+    public long takeReservedTierIndex(long address) {
+        long reservedTierIndex = reservedTierIndex(address);
+        if (reservedTierIndex != 0 && OS.memory().compareAndSwapInt(
+                address + RESERVED_TIER_INDEX_OFFSET, (int) reservedTierIndex, 0)) {
+            return reservedTierIndex;
+        }
+        return 0;
+    }
+
     @Override
     public void readLock(long address) {
         try {
@@ -91,9 +91,13 @@ public abstract class ChronicleHashResources implements Runnable {
         this.chronicleHashIdentityString = chronicleHashIdentityString;
     }
 
-    final synchronized void addMemoryResource(long address, long size) {
+    final void addMemoryResource(long address, long size) {
+        addMemoryResource(address, size, false);
+    }
+
+    final synchronized void addMemoryResource(long address, long size, boolean mapped) {
         checkOpen();
-        memoryResources.add(new MemoryResource(address, size));
+        memoryResources.add(new MemoryResource(address, size, mapped));
     }
 
     final synchronized void addCloseable(Closeable closeable) {
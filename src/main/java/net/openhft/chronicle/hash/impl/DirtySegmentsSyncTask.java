@@ -0,0 +1,174 @@
+/*
+ *      Copyright (C) 2012, 2016  higherfrequencytrading.com
+ *      Copyright (C) 2016 Roman Leventov
+ *
+ *      This program is free software: you can redistribute it and/or modify
+ *      it under the terms of the GNU Lesser General Public License as published by
+ *      the Free Software Foundation, either version 3 of the License.
+ *
+ *      This program is distributed in the hope that it will be useful,
+ *      but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *      MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *      GNU Lesser General Public License for more details.
+ *
+ *      You should have received a copy of the GNU Lesser General Public License
+ *      along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.openhft.chronicle.hash.impl;
+
+import net.openhft.chronicle.hash.ChronicleHashClosedException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Periodically syncs segments of a persisted hash, marked dirty in {@link
+ * VanillaChronicleHash#markSegmentDirty}, to disk. Syncs earlier, if the estimated size of the
+ * dirty segments exceeds the configured threshold.
+ *
+ * @see VanillaChronicleHash#establishDirtySegmentsSync
+ */
+final class DirtySegmentsSyncTask extends MaintenanceTask {
+    private static final Logger LOG = LoggerFactory.getLogger(DirtySegmentsSyncTask.class);
+
+    /**
+     * Msync blocks the thread of the shared scheduler for the I/O, so a sync is split into runs,
+     * each syncing not more than this number of segments, not to starve the other tasks.
+     */
+    static final int SEGMENTS_PER_RUN = 16;
+
+    /**
+     * Don't store a strong ref to a hash in order to avoid it's leaking, if the user forgets to
+     * close() it.
+     */
+    private final WeakReference<VanillaChronicleHash<?, ?, ?, ?>> hashRef;
+    private final long periodNanos;
+    private final long dirtySegmentsThreshold;
+
+    private final AtomicLong dirtySegments = new AtomicLong();
+    /**
+     * {@link System#nanoTime()} when the first segment was marked dirty since the previous sync,
+     * 0 if there are no dirty segments
+     */
+    private final AtomicLong firstDirtyNanos = new AtomicLong();
+
+    /**
+     * {@link #firstDirtyNanos} of the sync in progress, 0 if no sync is in progress
+     */
+    private long syncDirtySince;
+    /**
+     * The segment, the sync in progress continues from
+     */
+    private int nextSegment;
+    private long syncBytes;
+
+    private volatile long lastSyncLagNanos;
+    private volatile long syncedBytes;
+    private volatile long syncNanos;
+
+    /**
+     * Dirty segments are at risk until synced, the task has high priority. Msync mostly waits
+     * for the I/O, rather than burns CPU, but a slow disk shouldn't make the task hold a thread,
+     * shared with the other tasks, all the time, so the share is limited to a half.
+     */
+    DirtySegmentsSyncTask(VanillaChronicleHash<?, ?, ?, ?> hash, long period, TimeUnit unit,
+                          long dirtyBytesThreshold) {
+        super("Dirty segments sync of " + hash.toIdentityString(), Priority.HIGH, 0.5);
+        hashRef = new WeakReference<>(hash);
+        periodNanos = unit.toNanos(period);
+        // the first tier size is the estimate of the dirty bytes per segment
+        dirtySegmentsThreshold = Math.max(1, dirtyBytesThreshold / hash.tierSize);
+    }
+
+    void onSegmentDirtied() {
+        firstDirtyNanos.compareAndSet(0, System.nanoTime());
+        if (dirtySegments.incrementAndGet() == dirtySegmentsThreshold)
+            wakeUp();
+    }
+
+    /**
+     * @return the time between the moment when the first segment was marked dirty and the end of
+     * the sync, for the latest sync
+     */
+    long lastSyncLagNanos() {
+        return lastSyncLagNanos;
+    }
+
+    /**
+     * @return the average number of bytes synced per second, over all syncs
+     */
+    double syncThroughput() {
+        long syncNanos = this.syncNanos;
+        return syncNanos > 0 ? syncedBytes * 1e9 / syncNanos : 0.0;
+    }
+
+    @Override
+    protected long run(long sliceNanos) {
+        // runs earlier than in the period, if woken up by onSegmentDirtied()
+        VanillaChronicleHash<?, ?, ?, ?> hash = hashRef.get();
+        if (hash == null || !hash.isOpen())
+            return -1;
+        if (syncDirtySince == 0) {
+            syncDirtySince = firstDirtyNanos.getAndSet(0);
+            if (syncDirtySince == 0)
+                return periodNanos;
+            dirtySegments.set(0);
+        }
+        long start = System.nanoTime();
+        try {
+            return syncNextSegments(hash) ? periodNanos : 0;
+        } catch (ChronicleHashClosedException e) {
+            return -1;
+        } catch (IOException | RuntimeException e) {
+            // failed segments remain dirty, will retry on the next period
+            firstDirtyNanos.compareAndSet(0, syncDirtySince);
+            endSync();
+            LOG.error(hash.toIdentityString() + ": failed to sync dirty segments", e);
+            return periodNanos;
+        } finally {
+            syncNanos += System.nanoTime() - start;
+        }
+    }
+
+    /**
+     * Syncs not more than {@link #SEGMENTS_PER_RUN} dirty segments, starting from {@link
+     * #nextSegment}. Segments, dirtied behind {@code nextSegment} during the sync, are synced by
+     * the next sync.
+     *
+     * @return {@code true} if the sync is completed
+     */
+    private boolean syncNextSegments(VanillaChronicleHash<?, ?, ?, ?> hash) throws IOException {
+        for (int synced = 0; nextSegment < hash.actualSegments && synced < SEGMENTS_PER_RUN; ) {
+            long bytes = hash.msyncSegmentIfDirty(nextSegment);
+            nextSegment++;
+            if (bytes >= 0) {
+                syncBytes += bytes;
+                synced++;
+            }
+        }
+        if (nextSegment < hash.actualSegments)
+            return false;
+        if (syncBytes > 0)
+            syncBytes += hash.msyncGlobalMutableState();
+        long end = System.nanoTime();
+        lastSyncLagNanos = end - syncDirtySince;
+        syncedBytes += syncBytes;
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("{}: synced {} bytes, lag {} us", hash.toIdentityString(), syncBytes,
+                    lastSyncLagNanos / 1000);
+        }
+        endSync();
+        return true;
+    }
+
+    private void endSync() {
+        syncDirtySince = 0;
+        nextSegment = 0;
+        syncBytes = 0;
+    }
+}
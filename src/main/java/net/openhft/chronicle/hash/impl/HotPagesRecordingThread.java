@@ -0,0 +1,92 @@
+/*
+ *      Copyright (C) 2012, 2016  higherfrequencytrading.com
+ *      Copyright (C) 2016 Roman Leventov
+ *
+ *      This program is free software: you can redistribute it and/or modify
+ *      it under the terms of the GNU Lesser General Public License as published by
+ *      the Free Software Foundation, either version 3 of the License.
+ *
+ *      This program is distributed in the hope that it will be useful,
+ *      but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *      MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *      GNU Lesser General Public License for more details.
+ *
+ *      You should have received a copy of the GNU Lesser General Public License
+ *      along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.openhft.chronicle.hash.impl;
+
+import net.openhft.chronicle.core.io.Closeable;
+import net.openhft.chronicle.hash.ChronicleHashClosedException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Periodically samples the pages of a persisted hash, resident in memory, and records them to
+ * the hot pages trace file.
+ *
+ * @see VanillaChronicleHash#establishHotPagesTrace
+ */
+final class HotPagesRecordingThread extends Thread implements Closeable {
+    private static final Logger LOG = LoggerFactory.getLogger(HotPagesRecordingThread.class);
+
+    /**
+     * Don't store a strong ref to a hash in order to avoid it's leaking, if the user forgets to
+     * close() it.
+     */
+    private final WeakReference<VanillaChronicleHash<?, ?, ?, ?>> hashRef;
+    private final long periodNanos;
+    private volatile boolean shutdown;
+
+    HotPagesRecordingThread(VanillaChronicleHash<?, ?, ?, ?> hash, long period, TimeUnit unit) {
+        super("Hot Pages Recording Thread for " + hash.toIdentityString());
+        setDaemon(true);
+        hashRef = new WeakReference<>(hash);
+        periodNanos = unit.toNanos(period);
+    }
+
+    @Override
+    public void run() {
+        while (!shutdown) {
+            LockSupport.parkNanos(this, periodNanos);
+            if (shutdown || !record())
+                return;
+        }
+    }
+
+    /**
+     * @return {@code false} if the hash is already collected or closed and this thread should be
+     * shut down
+     */
+    private boolean record() {
+        VanillaChronicleHash<?, ?, ?, ?> hash = hashRef.get();
+        if (hash == null || !hash.isOpen())
+            return false;
+        try {
+            long start = System.nanoTime();
+            hash.recordHotPages();
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("{}: recorded hot pages in {} us", hash.toIdentityString(),
+                        (System.nanoTime() - start) / 1000);
+            }
+            return true;
+        } catch (ChronicleHashClosedException e) {
+            return false;
+        } catch (IOException | RuntimeException e) {
+            // the previous trace remains intact, will retry on the next period
+            LOG.error(hash.toIdentityString() + ": failed to record hot pages", e);
+            return true;
+        }
+    }
+
+    @Override
+    public void close() {
+        shutdown = true;
+        LockSupport.unpark(this);
+    }
+}
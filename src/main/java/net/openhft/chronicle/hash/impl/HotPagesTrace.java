@@ -0,0 +1,202 @@
+/*
+ *      Copyright (C) 2012, 2016  higherfrequencytrading.com
+ *      Copyright (C) 2016 Roman Leventov
+ *
+ *      This program is free software: you can redistribute it and/or modify
+ *      it under the terms of the GNU Lesser General Public License as published by
+ *      the Free Software Foundation, either version 3 of the License.
+ *
+ *      This program is distributed in the hope that it will be useful,
+ *      but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *      MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *      GNU Lesser General Public License for more details.
+ *
+ *      You should have received a copy of the GNU Lesser General Public License
+ *      along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.openhft.chronicle.hash.impl;
+
+import net.openhft.chronicle.core.OS;
+import net.openhft.chronicle.hash.impl.util.jna.PosixMadvise;
+import net.openhft.chronicle.hash.impl.util.jna.PosixMincore;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static java.lang.Math.min;
+
+/**
+ * The set of pages of a persisted hash, which were resident in memory, when the hash was sampled
+ * the last time, indexed by the page number in the persistence file. Stored in a sidecar file
+ * as a compressed bitmap, so that the pages could be prefetched, when the hash is opened after
+ * restart, before the rest of the file.
+ * <p>
+ * <p>The regions of the hash, passed to the methods of this class, are arrays of {@code
+ * {fileOffset, address, length}}.
+ *
+ * @see VanillaChronicleHash#establishHotPagesTrace
+ */
+final class HotPagesTrace {
+    private static final Logger LOG = LoggerFactory.getLogger(HotPagesTrace.class);
+
+    private static final int MAGIC = 0x484f5450;
+    private static final int MINCORE_CHUNK_PAGES = 1 << 14;
+
+    private final long pageSize;
+    private final long[] pages;
+
+    private HotPagesTrace(long pageSize, long[] pages) {
+        this.pageSize = pageSize;
+        this.pages = pages;
+    }
+
+    static File traceFile(File hashFile) {
+        return new File(hashFile.getPath() + ".hotpages");
+    }
+
+    static HotPagesTrace sample(List<long[]> regions) throws IOException {
+        long pageSize = OS.pageSize();
+        long fileSize = 0;
+        for (long[] region : regions) {
+            fileSize = Math.max(fileSize, region[0] + region[2]);
+        }
+        long filePages = (fileSize + pageSize - 1) / pageSize;
+        long[] pages = new long[(int) ((filePages + 63) / 64)];
+        byte[] vec = new byte[MINCORE_CHUNK_PAGES];
+        for (long[] region : regions) {
+            long address = region[1];
+            long alignedAddress = address & ~(pageSize - 1);
+            // mappings preserve the offset within the page, so the aligned address corresponds
+            // to the page of the file, which contains the start of the region
+            long firstPage = region[0] / pageSize;
+            long regionPages = (address + region[2] - alignedAddress + pageSize - 1) / pageSize;
+            for (long page = 0; page < regionPages; page += MINCORE_CHUNK_PAGES) {
+                int chunkPages = (int) min(MINCORE_CHUNK_PAGES, regionPages - page);
+                PosixMincore.mincore(alignedAddress + page * pageSize, chunkPages * pageSize, vec);
+                for (int i = 0; i < chunkPages; i++) {
+                    long filePage = firstPage + page + i;
+                    if ((vec[i] & 1) != 0 && filePage < filePages)
+                        pages[(int) (filePage >>> 6)] |= 1L << filePage;
+                }
+            }
+        }
+        return new HotPagesTrace(pageSize, pages);
+    }
+
+    /**
+     * @param hashFileSize the size of the persistence file of the hash, the trace couldn't cover
+     *                     more pages, because the file never shrinks
+     * @return the trace, read from the given file, or {@code null} if the file doesn't exist,
+     * couldn't be read, or is inconsistent with the hash file
+     */
+    @Nullable
+    static HotPagesTrace read(File traceFile, long hashFileSize) {
+        if (!traceFile.exists())
+            return null;
+        try (DataInputStream in = new DataInputStream(new GZIPInputStream(
+                new BufferedInputStream(new FileInputStream(traceFile))))) {
+            if (in.readInt() != MAGIC) {
+                LOG.warn("{} is not a hot pages trace, ignored", traceFile);
+                return null;
+            }
+            long pageSize = in.readLong();
+            if (pageSize != OS.pageSize()) {
+                LOG.info("{} is recorded with page size {}, ignored", traceFile, pageSize);
+                return null;
+            }
+            int words = in.readInt();
+            long maxWords = ((hashFileSize + pageSize - 1) / pageSize + 63) / 64;
+            if (words < 0 || words > maxWords) {
+                LOG.warn("{} has {} words of pages bitmap, a file of {} bytes could have at " +
+                        "most {}, ignored", traceFile, words, hashFileSize, maxWords);
+                return null;
+            }
+            long[] pages = new long[words];
+            for (int i = 0; i < pages.length; i++) {
+                pages[i] = in.readLong();
+            }
+            return new HotPagesTrace(pageSize, pages);
+        } catch (IOException e) {
+            LOG.warn("Failed to read the hot pages trace " + traceFile + ", ignored", e);
+            return null;
+        }
+    }
+
+    /**
+     * Writes this trace to a unique temporary file in the same directory and then atomically
+     * replaces the given file with it, so that a crash during writing doesn't corrupt the previous
+     * trace, and concurrent writers (e. g. several processes, accessing the same hash) don't
+     * interfere.
+     */
+    void write(File traceFile) throws IOException {
+        Path target = traceFile.getAbsoluteFile().toPath();
+        Path tmpFile = Files.createTempFile(
+                target.getParent(), target.getFileName().toString(), ".tmp");
+        boolean moved = false;
+        try {
+            try (DataOutputStream out = new DataOutputStream(new GZIPOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(tmpFile))))) {
+                out.writeInt(MAGIC);
+                out.writeLong(pageSize);
+                out.writeInt(pages.length);
+                for (long word : pages) {
+                    out.writeLong(word);
+                }
+            }
+            Files.move(tmpFile, target,
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            moved = true;
+        } finally {
+            if (!moved)
+                Files.deleteIfExists(tmpFile);
+        }
+    }
+
+    /**
+     * Advises the kernel to read the hot pages of the given regions ahead, and adds the runs of
+     * hot pages to the given {@code PreTouch}, to wait until they are read.
+     *
+     * @return the number of bytes prefetched
+     */
+    long prefetch(List<long[]> regions, PreTouch preTouch) throws IOException {
+        if (pageSize != OS.pageSize())
+            return 0;
+        long prefetched = 0;
+        for (long[] region : regions) {
+            long fileOffset = region[0], address = region[1], length = region[2];
+            long page = fileOffset / pageSize;
+            long endPage = min((fileOffset + length + pageSize - 1) / pageSize, pages.length * 64L);
+            while (page < endPage) {
+                if (!isHot(page)) {
+                    page++;
+                    continue;
+                }
+                long runStart = page;
+                while (page < endPage && isHot(page)) {
+                    page++;
+                }
+                long from = Math.max(fileOffset, runStart * pageSize);
+                long to = min(fileOffset + length, page * pageSize);
+                long fromAddress = address + (from - fileOffset);
+                long alignedFromAddress = fromAddress & ~(pageSize - 1);
+                long alignedLength = to - from + (fromAddress - alignedFromAddress);
+                PosixMadvise.madvise(alignedFromAddress, alignedLength, PosixMadvise.MADV_WILLNEED);
+                preTouch.addRange(fromAddress, to - from);
+                prefetched += to - from;
+            }
+        }
+        return prefetched;
+    }
+
+    private boolean isHot(long page) {
+        return (pages[(int) (page >>> 6)] & (1L << page)) != 0;
+    }
+}
@@ -19,9 +19,15 @@ package net.openhft.chronicle.hash.impl;
 
 import net.openhft.chronicle.core.OS;
 
+import java.io.IOException;
+
 public final class InMemoryChronicleHashResources extends ChronicleHashResources {
     @Override
-    void releaseMemoryResource(MemoryResource allocation) {
-        OS.memory().freeMemory(allocation.address, allocation.size);
+    void releaseMemoryResource(MemoryResource allocation) throws IOException {
+        if (allocation.mapped) {
+            OS.unmap(allocation.address, allocation.size);
+        } else {
+            OS.memory().freeMemory(allocation.address, allocation.size);
+        }
     }
 }
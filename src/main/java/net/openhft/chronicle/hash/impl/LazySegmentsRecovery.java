@@ -0,0 +1,104 @@
+/*
+ *      Copyright (C) 2012, 2016  higherfrequencytrading.com
+ *      Copyright (C) 2016 Roman Leventov
+ *
+ *      This program is free software: you can redistribute it and/or modify
+ *      it under the terms of the GNU Lesser General Public License as published by
+ *      the Free Software Foundation, either version 3 of the License.
+ *
+ *      This program is distributed in the hope that it will be useful,
+ *      but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *      MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *      GNU Lesser General Public License for more details.
+ *
+ *      You should have received a copy of the GNU Lesser General Public License
+ *      along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.openhft.chronicle.hash.impl;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.IntConsumer;
+
+/**
+ * Tracks which segments are still to be recovered, when a {@link VanillaChronicleHash} is
+ * recovered lazily.
+ *
+ * @see VanillaChronicleHash#startLazySegmentsRecovery(IntConsumer)
+ */
+final class LazySegmentsRecovery {
+    private static final int RECOVERED = 0;
+    private static final int NEEDS_RECOVERY = 1;
+    private static final int RECOVERING = 2;
+
+    private final VanillaChronicleHash<?, ?, ?, ?> h;
+    private final IntConsumer segmentRecovery;
+    private final AtomicIntegerArray segmentStates;
+    /**
+     * Java monitors are reentrant, so contexts, opened by the recovery procedure of a segment
+     * in the recovering thread, pass through {@link #ensureRecovered(int)} without deadlock.
+     */
+    private final Object[] segmentMonitors;
+    private final AtomicInteger segmentsToRecover;
+    private Runnable completionAction;
+    private boolean completed;
+
+    LazySegmentsRecovery(VanillaChronicleHash<?, ?, ?, ?> h, IntConsumer segmentRecovery) {
+        this.h = h;
+        this.segmentRecovery = segmentRecovery;
+        int segments = h.actualSegments;
+        segmentStates = new AtomicIntegerArray(segments);
+        segmentMonitors = new Object[segments];
+        for (int i = 0; i < segments; i++) {
+            segmentStates.set(i, NEEDS_RECOVERY);
+            segmentMonitors[i] = new Object();
+        }
+        segmentsToRecover = new AtomicInteger(segments);
+    }
+
+    void ensureRecovered(int segmentIndex) {
+        if (segmentStates.get(segmentIndex) == RECOVERED)
+            return;
+        synchronized (segmentMonitors[segmentIndex]) {
+            // RECOVERING state means the segment is being recovered by this thread, and this is
+            // a call from a nested context
+            if (segmentStates.get(segmentIndex) != NEEDS_RECOVERY)
+                return;
+            segmentStates.set(segmentIndex, RECOVERING);
+            boolean recovered = false;
+            try {
+                segmentRecovery.accept(segmentIndex);
+                recovered = true;
+            } finally {
+                segmentStates.set(segmentIndex, recovered ? RECOVERED : NEEDS_RECOVERY);
+            }
+        }
+        if (segmentsToRecover.decrementAndGet() == 0)
+            complete();
+    }
+
+    int segmentsToRecover() {
+        return segmentsToRecover.get();
+    }
+
+    /**
+     * @return {@code false} if all segments are already recovered, and the action is not run
+     */
+    synchronized boolean runOnCompletion(Runnable action) {
+        if (completed)
+            return false;
+        completionAction = action;
+        return true;
+    }
+
+    private void complete() {
+        Runnable action;
+        synchronized (this) {
+            completed = true;
+            action = completionAction;
+        }
+        h.onLazySegmentsRecoveryCompleted();
+        if (action != null)
+            action.run();
+    }
+}
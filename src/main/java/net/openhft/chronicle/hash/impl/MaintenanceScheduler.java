@@ -0,0 +1,258 @@
+/*
+ *      Copyright (C) 2012, 2016  higherfrequencytrading.com
+ *      Copyright (C) 2016 Roman Leventov
+ *
+ *      This program is free software: you can redistribute it and/or modify
+ *      it under the terms of the GNU Lesser General Public License as published by
+ *      the Free Software Foundation, either version 3 of the License.
+ *
+ *      This program is distributed in the hope that it will be useful,
+ *      but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *      MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *      GNU Lesser General Public License for more details.
+ *
+ *      You should have received a copy of the GNU Lesser General Public License
+ *      along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.openhft.chronicle.hash.impl;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static java.util.Comparator.comparingLong;
+
+/**
+ * Runs {@link MaintenanceTask}s of all Chronicle Maps and Sets on a bounded number of daemon
+ * threads, rather than a thread per each background activity of each map, most of which are
+ * sleeping most of the time.
+ * <p>
+ * <p>The number of threads of the {@linkplain #shared() shared} scheduler is configured with
+ * {@code net.openhft.chronicle.map.maintenanceThreads} system property, by default it is a
+ * quarter of the available processors, but at least one.
+ */
+public final class MaintenanceScheduler {
+    private static final Logger LOG = LoggerFactory.getLogger(MaintenanceScheduler.class);
+
+    private static class SharedHolder {
+        static final MaintenanceScheduler SHARED =
+                new MaintenanceScheduler("Chronicle Map Maintenance Thread", sharedThreads());
+
+        private static int sharedThreads() {
+            int threads = Math.max(1, Runtime.getRuntime().availableProcessors() / 4);
+            threads = Integer.parseInt(System.getProperty(
+                    "net.openhft.chronicle.map.maintenanceThreads", String.valueOf(threads)));
+            return Math.max(1, threads);
+        }
+    }
+
+    /**
+     * @return the scheduler, shared by all Chronicle Maps and Sets in this JVM
+     */
+    public static MaintenanceScheduler shared() {
+        return SharedHolder.SHARED;
+    }
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition tasksChanged = lock.newCondition();
+    /**
+     * Tasks, waiting for their next run time, ordered by this time
+     */
+    private final PriorityQueue<MaintenanceTask> scheduled =
+            new PriorityQueue<>(comparingLong(t -> t.nextRunNanos));
+    /**
+     * Tasks, which run time has come, waiting for a free thread
+     */
+    private final PriorityQueue<MaintenanceTask> ready =
+            new PriorityQueue<>(MaintenanceTask.READY_ORDER);
+    private final Thread[] threads;
+    private int runningTasks;
+    private volatile boolean shutdown;
+
+    /**
+     * @param threadNamePrefix the prefix of the names of the scheduler threads
+     * @param threads          the number of threads of the scheduler
+     */
+    MaintenanceScheduler(String threadNamePrefix, int threads) {
+        if (threads < 1)
+            throw new IllegalArgumentException("threads should be positive, " + threads + " given");
+        this.threads = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            Thread thread = new Thread(this::work, threadNamePrefix + " #" + i);
+            thread.setDaemon(true);
+            this.threads[i] = thread;
+            thread.start();
+        }
+    }
+
+    /**
+     * @return the number of threads of this scheduler
+     */
+    public int threads() {
+        return threads.length;
+    }
+
+    /**
+     * @return the number of tasks, scheduled in this scheduler, including the running ones
+     */
+    public int tasks() {
+        lock.lock();
+        try {
+            return scheduled.size() + ready.size() + runningTasks;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Schedules the task to run first time after the given delay.
+     *
+     * @throws IllegalStateException if the task is already scheduled, or this scheduler is shut
+     *                               down
+     */
+    public void schedule(MaintenanceTask task, long initialDelay, TimeUnit unit) {
+        lock.lock();
+        try {
+            if (shutdown)
+                throw new IllegalStateException("The maintenance scheduler is shut down");
+            if (task.scheduler != null)
+                throw new IllegalStateException(task + " is already scheduled");
+            task.scheduler = this;
+            long now = System.nanoTime();
+            task.earliestRunNanos = now;
+            task.nextRunNanos = now + unit.toNanos(initialDelay);
+            scheduled.add(task);
+            tasksChanged.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void wakeUp(MaintenanceTask task) {
+        lock.lock();
+        try {
+            if (task.running) {
+                task.wakeUpRequested = true;
+            } else if (scheduled.remove(task)) {
+                long now = System.nanoTime();
+                long wakeUpNanos = task.earliestRunNanos - now > 0 ? task.earliestRunNanos : now;
+                if (wakeUpNanos - task.nextRunNanos < 0)
+                    task.nextRunNanos = wakeUpNanos;
+                scheduled.add(task);
+                tasksChanged.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void cancel(MaintenanceTask task) {
+        lock.lock();
+        try {
+            if (!scheduled.remove(task))
+                ready.remove(task);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stops the threads of this scheduler, after they complete the running tasks. Scheduled tasks
+     * are not run anymore. The {@linkplain #shared() shared} scheduler is never shut down.
+     */
+    void shutdown() {
+        lock.lock();
+        try {
+            shutdown = true;
+            scheduled.clear();
+            ready.clear();
+            tasksChanged.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void work() {
+        MaintenanceTask task;
+        while ((task = take()) != null) {
+            long start = System.nanoTime();
+            long delayNanos = -1;
+            try {
+                delayNanos = task.run(task.sliceNanos());
+            } catch (Throwable e) {
+                // Tasks handle expected failures themselves, a task failing with an unexpected
+                // error likely fails on each run, don't spam the log with the same error. Errors
+                // are caught too, a thread of the scheduler is shared with the other tasks and
+                // shouldn't die with a single task
+                LOG.error("Maintenance task " + task + " failed and won't run anymore", e);
+            } finally {
+                long end = System.nanoTime();
+                task.recordRun(end - start);
+                reschedule(task, delayNanos, end - start, end);
+            }
+        }
+    }
+
+    /**
+     * @return the next due task, or {@code null} if this scheduler is shut down
+     */
+    private MaintenanceTask take() {
+        lock.lock();
+        try {
+            while (!shutdown) {
+                long now = System.nanoTime();
+                MaintenanceTask next;
+                while ((next = scheduled.peek()) != null && next.nextRunNanos - now <= 0)
+                    ready.add(scheduled.poll());
+                MaintenanceTask task = ready.poll();
+                if (task != null) {
+                    task.running = true;
+                    runningTasks++;
+                    return task;
+                }
+                try {
+                    if (next == null) {
+                        tasksChanged.await();
+                    } else {
+                        tasksChanged.awaitNanos(next.nextRunNanos - now);
+                    }
+                } catch (InterruptedException e) {
+                    // only the code of a task could interrupt a thread of this scheduler,
+                    // continue to serve the tasks
+                }
+            }
+            return null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void reschedule(MaintenanceTask task, long delayNanos, long runNanos, long now) {
+        lock.lock();
+        try {
+            task.running = false;
+            runningTasks--;
+            if (delayNanos < 0 || task.isClosed() || shutdown)
+                return;
+            // Idle for the time, proportional to the run time, to keep the task within its share
+            long earliestRunNanos =
+                    now + (long) (runNanos * (1.0 / task.cpuShare() - 1.0));
+            task.earliestRunNanos = earliestRunNanos;
+            if (task.wakeUpRequested) {
+                task.wakeUpRequested = false;
+                delayNanos = 0;
+            }
+            long nextRunNanos = now + delayNanos;
+            task.nextRunNanos =
+                    earliestRunNanos - nextRunNanos > 0 ? earliestRunNanos : nextRunNanos;
+            scheduled.add(task);
+            tasksChanged.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ *      Copyright (C) 2012, 2016  higherfrequencytrading.com
+ *      Copyright (C) 2016 Roman Leventov
+ *
+ *      This program is free software: you can redistribute it and/or modify
+ *      it under the terms of the GNU Lesser General Public License as published by
+ *      the Free Software Foundation, either version 3 of the License.
+ *
+ *      This program is distributed in the hope that it will be useful,
+ *      but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *      MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *      GNU Lesser General Public License for more details.
+ *
+ *      You should have received a copy of the GNU Lesser General Public License
+ *      along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.openhft.chronicle.hash.impl;
+
+import net.openhft.chronicle.core.io.Closeable;
+
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A periodic background maintenance activity of a Chronicle Map or Set, e. g. cleanup of old
+ * deleted entries, sync of dirty segments or checksum scrubbing, run by a {@link
+ * MaintenanceScheduler} on a thread, shared with the tasks of other maps.
+ * <p>
+ * <p>A task does its work in slices: each {@link #run(long)} should return soon after the given
+ * number of nanoseconds, so that a single task couldn't hold a scheduler thread for long and
+ * delay the other tasks. Apart from that, the scheduler doesn't let a task to take more than its
+ * {@linkplain #cpuShare() share} of a thread time, and runs the tasks of higher {@linkplain
+ * Priority priority} first, when several of them are due.
+ * <p>
+ * <p>Implementations shouldn't store strong references to the maintained hashes, not to leak
+ * them, if the user forgets to close() them. A task is closed along with its hash.
+ */
+public abstract class MaintenanceTask implements Closeable {
+
+    public enum Priority {
+        /**
+         * For tasks, delays of which weaken durability or integrity guarantees, e. g. sync of
+         * dirty segments to disk
+         */
+        HIGH,
+        NORMAL,
+        /**
+         * For tasks, which only save resources or find problems earlier, e. g. release of free
+         * memory or checksum scrubbing
+         */
+        LOW
+    }
+
+    /**
+     * The order of the due tasks in {@link MaintenanceScheduler}: by priority, then the tasks,
+     * which waited longer
+     */
+    static final Comparator<MaintenanceTask> READY_ORDER =
+            Comparator.<MaintenanceTask, Priority>comparing(t -> t.priority)
+                    .thenComparingLong(t -> t.nextRunNanos);
+
+    private final String name;
+    private final Priority priority;
+    private final long sliceNanos;
+    private final double cpuShare;
+
+    // Guarded by the lock of the scheduler
+    volatile MaintenanceScheduler scheduler;
+    long nextRunNanos;
+    /**
+     * The time before which the task couldn't run without exceeding its cpu share, even if
+     * {@linkplain #wakeUp() woken up}
+     */
+    long earliestRunNanos;
+    boolean running;
+    boolean wakeUpRequested;
+
+    private volatile boolean closed;
+
+    // Statistics, written only by the scheduler threads, one at a time
+    private volatile long runs;
+    private volatile long runNanos;
+
+    /**
+     * @param name      the name of the task, for logging
+     * @param priority  the priority of the task over other due tasks
+     * @param slice     the time, which a single {@link #run(long)} of the task shouldn't exceed
+     * @param sliceUnit the unit of {@code slice}
+     * @param cpuShare  the maximum share of a thread time, which the task could take, in (0, 1]
+     *                  bounds
+     * @throws IllegalArgumentException if the slice is not positive or the cpu share is out of
+     *                                  bounds
+     */
+    protected MaintenanceTask(String name, Priority priority, long slice, TimeUnit sliceUnit,
+                              double cpuShare) {
+        if (slice <= 0)
+            throw new IllegalArgumentException("slice should be positive, " + slice + " given");
+        if (!(cpuShare > 0.0 && cpuShare <= 1.0)) {
+            throw new IllegalArgumentException("cpuShare should be in (0.0, 1.0] bounds, " +
+                    cpuShare + " given");
+        }
+        this.name = name;
+        this.priority = priority;
+        this.sliceNanos = sliceUnit.toNanos(slice);
+        this.cpuShare = cpuShare;
+    }
+
+    /**
+     * Constructs a task, which does all its work in one {@link #run(long)}, not split in slices.
+     *
+     * @see #MaintenanceTask(String, Priority, long, TimeUnit, double)
+     */
+    protected MaintenanceTask(String name, Priority priority, double cpuShare) {
+        this(name, priority, Long.MAX_VALUE, TimeUnit.NANOSECONDS, cpuShare);
+    }
+
+    /**
+     * Does a slice of the maintenance work.
+     *
+     * @param sliceNanos the time in nanoseconds, after which this method should return as soon as
+     *                   possible
+     * @return the delay in nanoseconds before the next run of this task, 0 to run again as soon as
+     * the {@linkplain #cpuShare() cpu share} of the task permits, or a negative number, if the
+     * task is done, e. g. the maintained hash is closed
+     */
+    protected abstract long run(long sliceNanos);
+
+    public final String name() {
+        return name;
+    }
+
+    public final Priority priority() {
+        return priority;
+    }
+
+    final long sliceNanos() {
+        return sliceNanos;
+    }
+
+    /**
+     * @return the maximum share of a thread time, which this task could take
+     */
+    public final double cpuShare() {
+        return cpuShare;
+    }
+
+    /**
+     * Requests to run this task as soon as the {@linkplain #cpuShare() cpu share} permits,
+     * without waiting until the delay, returned from the previous run, elapses. Could be called
+     * from any thread.
+     */
+    public final void wakeUp() {
+        MaintenanceScheduler scheduler = this.scheduler;
+        if (scheduler != null)
+            scheduler.wakeUp(this);
+    }
+
+    /**
+     * @return {@code true} if this task is closed, long-running slices should check this
+     */
+    protected final boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * @return the number of completed runs of this task
+     */
+    public final long runs() {
+        return runs;
+    }
+
+    /**
+     * @return the total time in nanoseconds, this task ran for
+     */
+    public final long runNanos() {
+        return runNanos;
+    }
+
+    final void recordRun(long nanos) {
+        runs++;
+        runNanos += nanos;
+    }
+
+    /**
+     * Removes this task from the scheduler. If the task is running at the moment, the current run
+     * is not interrupted, but the task is not run again.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        MaintenanceScheduler scheduler = this.scheduler;
+        if (scheduler != null)
+            scheduler.cancel(this);
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
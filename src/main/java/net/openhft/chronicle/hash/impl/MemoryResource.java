@@ -20,9 +20,15 @@ package net.openhft.chronicle.hash.impl;
 final class MemoryResource {
     final long address;
     final long size;
+    /**
+     * {@code true} if the memory of an in-memory hash is mapped, rather than allocated with
+     * {@code malloc()}. Memory of persisted hashes is always mapped, regardless of this flag.
+     */
+    final boolean mapped;
 
-    MemoryResource(long address, long size) {
+    MemoryResource(long address, long size, boolean mapped) {
         this.address = address;
         this.size = size;
+        this.mapped = mapped;
     }
 }
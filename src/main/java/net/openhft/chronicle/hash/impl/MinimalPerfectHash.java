@@ -0,0 +1,194 @@
+/*
+ *      Copyright (C) 2012, 2016  higherfrequencytrading.com
+ *      Copyright (C) 2016 Roman Leventov
+ *
+ *      This program is free software: you can redistribute it and/or modify
+ *      it under the terms of the GNU Lesser General Public License as published by
+ *      the Free Software Foundation, either version 3 of the License.
+ *
+ *      This program is distributed in the hope that it will be useful,
+ *      but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *      MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *      GNU Lesser General Public License for more details.
+ *
+ *      You should have received a copy of the GNU Lesser General Public License
+ *      along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.openhft.chronicle.hash.impl;
+
+import net.openhft.chronicle.core.Memory;
+import net.openhft.chronicle.core.OS;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Minimal perfect hash function over a static set of 64-bit key hashes, in the style of BBHash:
+ * a cascade of bit arrays, each key hash is mapped to a bit position on each level, keys which
+ * don't collide with any other key on a level are placed there, the rest go down to the next,
+ * smaller level. The index of a key is the rank of it's bit in the concatenation of all levels,
+ * which is computed in constant time with the help of precomputed counts of set bits before each
+ * block of {@value #WORDS_PER_RANK} words. With {@code GAMMA = 2} about 3.7 bits are spent per
+ * key.
+ * <p>
+ * <p>Serialized form, which is queried directly in (mapped) memory, is an array of longs: the
+ * number of levels, the number of bits in each level, the words of all levels, then the ranks.
+ * <p>
+ * <p>For a key hash, which was not in the set, {@link #index(long)} returns either -1, or an
+ * arbitrary index of some other key.
+ */
+public final class MinimalPerfectHash {
+
+    /**
+     * The ratio of the number of bits in a level to the number of keys, remaining to be placed
+     */
+    private static final double GAMMA = 2.0;
+    private static final int MAX_LEVELS = 64;
+    private static final int WORDS_PER_RANK = 8;
+
+    /**
+     * Builds minimal perfect hash function over the first {@code count} key hashes.
+     *
+     * @return serialized form of the function
+     * @throws IllegalArgumentException if the given key hashes are not distinct
+     */
+    public static long[] build(long[] keyHashes, int count) {
+        long[] keys = Arrays.copyOf(keyHashes, count);
+        List<long[]> levels = new ArrayList<>();
+        int remaining = count;
+        while (remaining > 0) {
+            int level = levels.size();
+            if (level == MAX_LEVELS) {
+                throw new IllegalArgumentException(remaining + " key hashes collide on all " +
+                        MAX_LEVELS + " levels, they are likely not distinct");
+            }
+            long bits = levelBits(remaining);
+            long[] words = new long[(int) (bits >>> 6)];
+            long[] collisions = new long[words.length];
+            for (int i = 0; i < remaining; i++) {
+                long pos = position(keys[i], level, bits);
+                int word = (int) (pos >>> 6);
+                long mask = 1L << pos;
+                if ((words[word] & mask) != 0) {
+                    collisions[word] |= mask;
+                } else {
+                    words[word] |= mask;
+                }
+            }
+            for (int w = 0; w < words.length; w++) {
+                words[w] &= ~collisions[w];
+            }
+            int notPlaced = 0;
+            for (int i = 0; i < remaining; i++) {
+                long pos = position(keys[i], level, bits);
+                if ((words[(int) (pos >>> 6)] & (1L << pos)) == 0)
+                    keys[notPlaced++] = keys[i];
+            }
+            remaining = notPlaced;
+            levels.add(words);
+        }
+
+        long totalWords = 0;
+        for (long[] words : levels) {
+            totalWords += words.length;
+        }
+        long ranks = ranks(totalWords);
+        long[] serialized = new long[Math.toIntExact(1 + levels.size() + totalWords + ranks)];
+        serialized[0] = levels.size();
+        int wordsStart = 1 + levels.size();
+        int pos = wordsStart;
+        for (int level = 0; level < levels.size(); level++) {
+            long[] words = levels.get(level);
+            serialized[1 + level] = ((long) words.length) << 6;
+            System.arraycopy(words, 0, serialized, pos, words.length);
+            pos += words.length;
+        }
+        long rank = 0;
+        for (int w = 0; w < totalWords; w++) {
+            if (w % WORDS_PER_RANK == 0)
+                serialized[pos++] = rank;
+            rank += Long.bitCount(serialized[wordsStart + w]);
+        }
+        assert rank == count;
+        return serialized;
+    }
+
+    private static long levelBits(int keys) {
+        long bits = (long) Math.ceil(keys * GAMMA);
+        return Math.max(64, (bits + 63) & ~63L);
+    }
+
+    private static long ranks(long totalWords) {
+        return (totalWords + WORDS_PER_RANK - 1) / WORDS_PER_RANK;
+    }
+
+    private static long position(long keyHash, int level, long bits) {
+        // fmix64 from MurmurHash3, seeded by the level
+        long h = keyHash + (level + 1) * 0x9E3779B97F4A7C15L;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return Long.remainderUnsigned(h, bits);
+    }
+
+    private final Memory memory = OS.memory();
+    private final long[] levelBits;
+    private final long[] levelFirstWord;
+    private final long wordsAddr;
+    private final long ranksAddr;
+    private final long sizeInBytes;
+
+    /**
+     * @param address the address of the serialized form of the function, produced by {@link
+     *                #build}
+     */
+    public MinimalPerfectHash(long address) {
+        int levels = (int) memory.readLong(address);
+        levelBits = new long[levels];
+        levelFirstWord = new long[levels];
+        long totalWords = 0;
+        for (int level = 0; level < levels; level++) {
+            levelBits[level] = memory.readLong(address + 8L * (1 + level));
+            levelFirstWord[level] = totalWords;
+            totalWords += levelBits[level] >>> 6;
+        }
+        wordsAddr = address + 8L * (1 + levels);
+        ranksAddr = wordsAddr + 8L * totalWords;
+        sizeInBytes = 8L * (1 + levels + totalWords + ranks(totalWords));
+    }
+
+    /**
+     * Returns the index of the given key hash in {@code [0, count)} range, or -1, if the key hash
+     * is definitely not in the set, over which this function was built.
+     */
+    public long index(long keyHash) {
+        for (int level = 0; level < levelBits.length; level++) {
+            long pos = position(keyHash, level, levelBits[level]);
+            long word = levelFirstWord[level] + (pos >>> 6);
+            long bits = memory.readLong(wordsAddr + (word << 3));
+            long mask = 1L << pos;
+            if ((bits & mask) != 0)
+                return rank(word) + Long.bitCount(bits & (mask - 1));
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the number of set bits before the given word.
+     */
+    private long rank(long word) {
+        long block = word / WORDS_PER_RANK;
+        long rank = memory.readLong(ranksAddr + (block << 3));
+        for (long w = block * WORDS_PER_RANK; w < word; w++) {
+            rank += Long.bitCount(memory.readLong(wordsAddr + (w << 3)));
+        }
+        return rank;
+    }
+
+    public long sizeInBytes() {
+        return sizeInBytes;
+    }
+}
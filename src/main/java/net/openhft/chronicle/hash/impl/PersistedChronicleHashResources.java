@@ -22,16 +22,28 @@ import net.openhft.chronicle.hash.impl.util.CanonicalRandomAccessFiles;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.RandomAccessFile;
 
 public final class PersistedChronicleHashResources extends ChronicleHashResources {
 
     private File file;
+    /**
+     * The file, opened by the hash exclusively, rather than acquired from {@link
+     * CanonicalRandomAccessFiles}, e. g. opened read-only, null if the file is acquired
+     */
+    private RandomAccessFile ownRaf;
 
     public PersistedChronicleHashResources(File file) {
         this.file = file;
         OS.memory().storeFence(); // Emulate final semantics of the file field
     }
 
+    public PersistedChronicleHashResources(File file, RandomAccessFile ownRaf) {
+        this.file = file;
+        this.ownRaf = ownRaf;
+        OS.memory().storeFence(); // Emulate final semantics of the fields
+    }
+
     @Override
     void releaseMemoryResource(MemoryResource mapping) throws IOException {
         OS.unmap(mapping.address, mapping.size);
@@ -43,7 +55,11 @@ public final class PersistedChronicleHashResources extends ChronicleHashResource
             return null;
         Throwable thrown = null;
         try {
-            CanonicalRandomAccessFiles.release(file);
+            if (ownRaf != null) {
+                ownRaf.close();
+            } else {
+                CanonicalRandomAccessFiles.release(file);
+            }
             file = null;
         } catch (Throwable t) {
             thrown = t;
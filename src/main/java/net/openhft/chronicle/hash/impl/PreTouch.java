@@ -0,0 +1,125 @@
+/*
+ *      Copyright (C) 2012, 2016  higherfrequencytrading.com
+ *      Copyright (C) 2016 Roman Leventov
+ *
+ *      This program is free software: you can redistribute it and/or modify
+ *      it under the terms of the GNU Lesser General Public License as published by
+ *      the Free Software Foundation, either version 3 of the License.
+ *
+ *      This program is distributed in the hope that it will be useful,
+ *      but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *      MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *      GNU Lesser General Public License for more details.
+ *
+ *      You should have received a copy of the GNU Lesser General Public License
+ *      along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.openhft.chronicle.hash.impl;
+
+import net.openhft.chronicle.core.Jvm;
+import net.openhft.chronicle.core.Memory;
+import net.openhft.chronicle.core.OS;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.DoubleConsumer;
+
+/**
+ * Faults in the memory of a {@link VanillaChronicleHash} or another mapped store, so that the
+ * first accesses to the segments don't stall on page faults.
+ *
+ * @see VanillaChronicleHash#warmUp(int, boolean, DoubleConsumer)
+ */
+public final class PreTouch {
+
+    /**
+     * Prevents elimination of the reads of the touched pages
+     */
+    static volatile int sink;
+
+    private final long pageSize = OS.pageSize();
+    /**
+     * Pages of a persisted hash are only read, writing them would make all pages of the file
+     * dirty. Pages of an in-memory hash should be written, because reading a page of anonymous
+     * memory maps the shared zero page, that doesn't prevent a page fault on the first write.
+     */
+    private final boolean write;
+    private final List<long[]> ranges = new ArrayList<>();
+    private long totalBytes;
+    @Nullable
+    private final DoubleConsumer progressListener;
+    private long touchedBytes;
+
+    public PreTouch(boolean persisted, @Nullable DoubleConsumer progressListener) {
+        this.write = !persisted;
+        this.progressListener = progressListener;
+    }
+
+    public void addRange(long address, long length) {
+        ranges.add(new long[] {address, length});
+        totalBytes += length;
+    }
+
+    public void run(int parallelism) {
+        if (parallelism == 1 || ranges.size() == 1) {
+            for (long[] range : ranges) {
+                touch(range[0], range[1]);
+            }
+            return;
+        }
+        ForkJoinPool pool = new ForkJoinPool(Math.min(parallelism, ranges.size()));
+        try {
+            List<ForkJoinTask<?>> tasks = new ArrayList<>(ranges.size());
+            for (long[] range : ranges) {
+                tasks.add(pool.submit(() -> touch(range[0], range[1])));
+            }
+            Throwable failure = null;
+            for (ForkJoinTask<?> task : tasks) {
+                try {
+                    task.join();
+                } catch (Throwable t) {
+                    if (failure == null) {
+                        failure = t;
+                    } else {
+                        failure.addSuppressed(t);
+                    }
+                }
+            }
+            if (failure != null)
+                throw Jvm.rethrow(failure);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private void touch(long address, long length) {
+        Memory memory = OS.memory();
+        long end = address + length;
+        int sum = 0;
+        // ranges are cache line-aligned, the first page might be only partially within the range
+        for (long addr = address & ~(pageSize - 1); addr < end; addr += pageSize) {
+            long touched = Math.max(addr, address);
+            if (write) {
+                // the hash might be already accessed concurrently, so don't write a stale value
+                int value = memory.readVolatileInt(touched);
+                memory.compareAndSwapInt(touched, value, value);
+            } else {
+                sum += memory.readByte(touched);
+            }
+        }
+        sink = sum;
+        onTouched(length);
+    }
+
+    private void onTouched(long bytes) {
+        if (progressListener == null)
+            return;
+        synchronized (this) {
+            touchedBytes += bytes;
+            progressListener.accept(((double) touchedBytes) / totalBytes);
+        }
+    }
+}
@@ -0,0 +1,228 @@
+/*
+ *      Copyright (C) 2012, 2016  higherfrequencytrading.com
+ *      Copyright (C) 2016 Roman Leventov
+ *
+ *      This program is free software: you can redistribute it and/or modify
+ *      it under the terms of the GNU Lesser General Public License as published by
+ *      the Free Software Foundation, either version 3 of the License.
+ *
+ *      This program is distributed in the hope that it will be useful,
+ *      but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *      MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *      GNU Lesser General Public License for more details.
+ *
+ *      You should have received a copy of the GNU Lesser General Public License
+ *      along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.openhft.chronicle.hash.impl;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Segment header of a hash, opened read-only. The memory of such hash is mapped with {@code
+ * PROT_READ}, and the file is not modified by any process, so the read and update locks are
+ * no-ops, that don't touch the lock words, and any attempt to acquire the write lock, that
+ * precedes every modification of a segment, fails with {@link UnsupportedOperationException}.
+ */
+public final class ReadOnlySegmentHeader implements SegmentHeader {
+    public static final ReadOnlySegmentHeader INSTANCE = new ReadOnlySegmentHeader();
+
+    private static final BigSegmentHeader H = BigSegmentHeader.INSTANCE;
+
+    private ReadOnlySegmentHeader() {
+    }
+
+    private static UnsupportedOperationException readOnly() {
+        return new UnsupportedOperationException("the hash is opened read-only");
+    }
+
+    @Override
+    public long entries(long address) {
+        return H.entries(address);
+    }
+
+    @Override
+    public void entries(long address, long size) {
+        throw readOnly();
+    }
+
+    @Override
+    public long deleted(long address) {
+        return H.deleted(address);
+    }
+
+    @Override
+    public void deleted(long address, long deleted) {
+        throw readOnly();
+    }
+
+    @Override
+    public long lowestPossiblyFreeChunk(long address) {
+        return H.lowestPossiblyFreeChunk(address);
+    }
+
+    @Override
+    public void lowestPossiblyFreeChunk(long address, long lowestPossiblyFreeChunk) {
+        throw readOnly();
+    }
+
+    @Override
+    public long nextTierIndex(long address) {
+        return H.nextTierIndex(address);
+    }
+
+    @Override
+    public void nextTierIndex(long address, long nextTierIndex) {
+        throw readOnly();
+    }
+
+    @Override
+    public long reservedTierIndex(long address) {
+        return H.reservedTierIndex(address);
+    }
+
+    @Override
+    public void reservedTierIndex(long address, long reservedTierIndex) {
+        throw readOnly();
+    }
+
+    @Override
+    public long takeReservedTierIndex(long address) {
+        throw readOnly();
+    }
+
+    @Override
+    public void readLock(long address) {
+    }
+
+    @Override
+    public void readLockInterruptibly(long address) throws InterruptedException {
+        if (Thread.interrupted())
+            throw new InterruptedException();
+    }
+
+    @Override
+    public boolean tryReadLock(long address) {
+        return true;
+    }
+
+    @Override
+    public boolean tryReadLock(long address, long time, TimeUnit unit) {
+        return true;
+    }
+
+    @Override
+    public void updateLock(long address) {
+    }
+
+    @Override
+    public void updateLockInterruptibly(long address) throws InterruptedException {
+        if (Thread.interrupted())
+            throw new InterruptedException();
+    }
+
+    @Override
+    public boolean tryUpdateLock(long address) {
+        return true;
+    }
+
+    @Override
+    public boolean tryUpdateLock(long address, long time, TimeUnit unit) {
+        return true;
+    }
+
+    @Override
+    public void writeLock(long address) {
+        throw readOnly();
+    }
+
+    @Override
+    public void writeLockInterruptibly(long address) {
+        throw readOnly();
+    }
+
+    @Override
+    public boolean tryWriteLock(long address) {
+        throw readOnly();
+    }
+
+    @Override
+    public boolean tryWriteLock(long address, long time, TimeUnit unit) {
+        throw readOnly();
+    }
+
+    @Override
+    public boolean tryUpgradeReadToUpdateLock(long address) {
+        return true;
+    }
+
+    @Override
+    public boolean tryUpgradeReadToWriteLock(long address) {
+        throw readOnly();
+    }
+
+    @Override
+    public void upgradeUpdateToWriteLock(long address) {
+        throw readOnly();
+    }
+
+    @Override
+    public void upgradeUpdateToWriteLockInterruptibly(long address) {
+        throw readOnly();
+    }
+
+    @Override
+    public boolean tryUpgradeUpdateToWriteLock(long address) {
+        throw readOnly();
+    }
+
+    @Override
+    public boolean tryUpgradeUpdateToWriteLock(long address, long time, TimeUnit unit) {
+        throw readOnly();
+    }
+
+    @Override
+    public void readUnlock(long address) {
+    }
+
+    @Override
+    public void updateUnlock(long address) {
+    }
+
+    @Override
+    public void downgradeUpdateToReadLock(long address) {
+    }
+
+    @Override
+    public void writeUnlock(long address) {
+        // the write lock is never acquired
+    }
+
+    @Override
+    public void downgradeWriteToUpdateLock(long address) {
+    }
+
+    @Override
+    public void downgradeWriteToReadLock(long address) {
+    }
+
+    @Override
+    public void resetLock(long address) {
+        throw readOnly();
+    }
+
+    @Override
+    public long resetLockState() {
+        return H.resetLockState();
+    }
+
+    @Override
+    public long getLockState(long address) {
+        return H.getLockState(address);
+    }
+
+    @Override
+    public String lockStateToString(long lockState) {
+        return H.lockStateToString(lockState);
+    }
+}
@@ -36,6 +36,21 @@ public interface SegmentHeader {
 
     void nextTierIndex(long address, long nextTierIndex);
 
+    /**
+     * Returns the index of the free tier, reserved for chaining to this segment, or 0 if there is
+     * no reserved tier.
+     */
+    long reservedTierIndex(long address);
+
+    void reservedTierIndex(long address, long reservedTierIndex);
+
+    /**
+     * Atomically takes the reserved tier index from the segment header, leaving 0 in place.
+     *
+     * @return the reserved tier index, or 0 if there is no reserved tier
+     */
+    long takeReservedTierIndex(long address);
+
     void readLock(long address);
 
     void readLockInterruptibly(long address) throws InterruptedException;
@@ -0,0 +1,62 @@
+/*
+ *      Copyright (C) 2012, 2016  higherfrequencytrading.com
+ *      Copyright (C) 2016 Roman Leventov
+ *
+ *      This program is free software: you can redistribute it and/or modify
+ *      it under the terms of the GNU Lesser General Public License as published by
+ *      the Free Software Foundation, either version 3 of the License.
+ *
+ *      This program is distributed in the hope that it will be useful,
+ *      but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *      MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *      GNU Lesser General Public License for more details.
+ *
+ *      You should have received a copy of the GNU Lesser General Public License
+ *      along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.openhft.chronicle.hash.impl;
+
+import net.openhft.chronicle.hash.ChronicleHashClosedException;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks segments, which chained new tiers, for anomalously many entries, off the segment locks.
+ * Scheduled when the first tier is chained, and woken up by {@link
+ * VanillaChronicleHash#requestSegmentSkewCheck(int)}.
+ */
+final class SegmentSkewCheckTask extends MaintenanceTask {
+    /**
+     * The task is run when woken up, the period only bounds the time, a closed hash is noticed
+     * within
+     */
+    private static final long PERIOD_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    /**
+     * Weak reference for the same reason as in {@link DirtySegmentsSyncTask}
+     */
+    private final WeakReference<VanillaChronicleHash<?, ?, ?, ?>> hashRef;
+
+    /**
+     * The check is advisory and reads all segment counters, the task has low priority
+     */
+    SegmentSkewCheckTask(VanillaChronicleHash<?, ?, ?, ?> hash) {
+        super("Segment skew check of " + hash.toIdentityString(), Priority.LOW, 0.1);
+        hashRef = new WeakReference<>(hash);
+    }
+
+    @Override
+    protected long run(long sliceNanos) {
+        VanillaChronicleHash<?, ?, ?, ?> hash = hashRef.get();
+        if (hash == null || !hash.isOpen())
+            return -1;
+        try {
+            hash.checkSegmentSkew();
+            return PERIOD_NANOS;
+        } catch (ChronicleHashClosedException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ *      Copyright (C) 2012, 2016  higherfrequencytrading.com
+ *      Copyright (C) 2016 Roman Leventov
+ *
+ *      This program is free software: you can redistribute it and/or modify
+ *      it under the terms of the GNU Lesser General Public License as published by
+ *      the Free Software Foundation, either version 3 of the License.
+ *
+ *      This program is distributed in the hope that it will be useful,
+ *      but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *      MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *      GNU Lesser General Public License for more details.
+ *
+ *      You should have received a copy of the GNU Lesser General Public License
+ *      along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.openhft.chronicle.hash.impl;
+
+import net.openhft.chronicle.core.io.Closeable;
+import net.openhft.chronicle.hash.ChronicleHashClosedException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.ref.WeakReference;
+
+/**
+ * Recovers in background the segments, which are not yet recovered on the first access.
+ *
+ * @see VanillaChronicleHash#startLazySegmentsRecovery
+ */
+final class SegmentsRecoverySweeperThread extends Thread implements Closeable {
+    private static final Logger LOG = LoggerFactory.getLogger(SegmentsRecoverySweeperThread.class);
+
+    /**
+     * Don't store a strong ref to a hash in order to avoid it's leaking, if the user forgets to
+     * close() it.
+     */
+    private final WeakReference<VanillaChronicleHash<?, ?, ?, ?>> hashRef;
+
+    private volatile boolean shutdown;
+
+    SegmentsRecoverySweeperThread(VanillaChronicleHash<?, ?, ?, ?> hash) {
+        super("Segments Recovery Sweeper Thread for " + hash.toIdentityString());
+        setDaemon(true);
+        hashRef = new WeakReference<>(hash);
+    }
+
+    @Override
+    public void run() {
+        long startTime = System.currentTimeMillis();
+        for (int segmentIndex = 0; !shutdown; segmentIndex++) {
+            VanillaChronicleHash<?, ?, ?, ?> hash = hashRef.get();
+            if (hash == null || !hash.isOpen())
+                return;
+            if (segmentIndex == hash.actualSegments) {
+                if (hash.recoveryProgress() == 1.0) {
+                    LOG.info("{}: all segments are recovered in {} ms", hash.toIdentityString(),
+                            System.currentTimeMillis() - startTime);
+                }
+                return;
+            }
+            try {
+                hash.ensureSegmentRecovered(segmentIndex);
+            } catch (ChronicleHashClosedException e) {
+                return;
+            } catch (RuntimeException e) {
+                LOG.error(hash.toIdentityString() + ": failed to recover segment " +
+                        segmentIndex + ", recovery will be retried on the first access", e);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        shutdown = true;
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ *      Copyright (C) 2012, 2016  higherfrequencytrading.com
+ *      Copyright (C) 2016 Roman Leventov
+ *
+ *      This program is free software: you can redistribute it and/or modify
+ *      it under the terms of the GNU Lesser General Public License as published by
+ *      the Free Software Foundation, either version 3 of the License.
+ *
+ *      This program is distributed in the hope that it will be useful,
+ *      but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *      MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *      GNU Lesser General Public License for more details.
+ *
+ *      You should have received a copy of the GNU Lesser General Public License
+ *      along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.openhft.chronicle.hash.impl;
+
+import net.openhft.chronicle.core.OS;
+import sun.nio.ch.DirectBuffer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.function.LongConsumer;
+
+/**
+ * Copy of the memory of a persisted hash to a file, in progress. Each segment is copied either
+ * by the thread making the snapshot, or by the first thread, going to modify the segment after
+ * the snapshot has started (copy-on-write), so that the copy is a point-in-time image.
+ *
+ * @see VanillaChronicleHash#startSnapshot
+ */
+public final class SegmentsSnapshot {
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private final VanillaChronicleHash<?, ?, ?, ?> h;
+    private final FileChannel out;
+    /**
+     * Each element is accessed under the lock of the corresponding segment
+     */
+    private final boolean[] copiedSegments;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final long bufferAddress = ((DirectBuffer) buffer).address();
+    private long copiedBytes;
+    /**
+     * The size of the data store, when the snapshot is finished
+     */
+    long dataStoreSize;
+    private Throwable copyOnWriteFailure;
+
+    SegmentsSnapshot(VanillaChronicleHash<?, ?, ?, ?> h, FileChannel out) {
+        this.h = h;
+        this.out = out;
+        copiedSegments = new boolean[h.actualSegments];
+    }
+
+    /**
+     * Copies the segment before it is modified, holding the write lock of the segment. Failures
+     * are not propagated to the writer, but fail the snapshot in {@link #finish()}.
+     */
+    void copySegmentBeforeWrite(int segmentIndex) {
+        try {
+            copySegment(segmentIndex);
+        } catch (IOException | RuntimeException e) {
+            synchronized (this) {
+                if (copyOnWriteFailure == null)
+                    copyOnWriteFailure = e;
+            }
+        }
+    }
+
+    /**
+     * Copies the header, the segment header and all tiers of the segment, if it is not copied
+     * yet. Should be called holding at least the update lock of the segment.
+     */
+    public void copySegment(int segmentIndex) throws IOException {
+        if (copiedSegments[segmentIndex])
+            return;
+        // Serializes the use of the buffer by the snapshot thread and copy-on-write in writers,
+        // holding the locks of different segments
+        synchronized (this) {
+            long segmentHeaderAddress = h.segmentHeaderAddress(segmentIndex);
+            copy(segmentHeaderAddress, segmentHeaderAddress - h.bsAddress(), h.segmentHeaderSize);
+            // The segment is locked by the copying thread
+            copyResetLock(segmentHeaderAddress, h.segmentHeader::resetLock);
+            long tierIndex = segmentIndex + 1;
+            while (tierIndex != 0) {
+                long tierBaseAddr = h.tierIndexToBaseAddr(tierIndex);
+                copy(tierBaseAddr, h.tierFileOffset(tierIndex), h.tierSize);
+                tierIndex = TierCountersArea.nextTierIndex(tierBaseAddr + h.tierHashLookupOuterSize);
+            }
+        }
+        copiedSegments[segmentIndex] = true;
+    }
+
+    synchronized void copy(long address, long fileOffset, long length) throws IOException {
+        while (length > 0) {
+            int chunk = (int) Math.min(length, BUFFER_SIZE);
+            OS.memory().copyMemory(address, bufferAddress, chunk);
+            buffer.clear().limit(chunk);
+            long position = fileOffset;
+            while (buffer.hasRemaining())
+                position += out.write(buffer, position);
+            address += chunk;
+            fileOffset += chunk;
+            length -= chunk;
+            copiedBytes += chunk;
+        }
+    }
+
+    /**
+     * Overwrites the copy of the 8-byte lock word at the given address with the unlocked state,
+     * set by the given action at the address of a temporary copy of the lock word, so that locks,
+     * held when the memory is copied, are not "corruptions" in the snapshot.
+     */
+    synchronized void copyResetLock(long lockAddress, LongConsumer resetLock) throws IOException {
+        OS.memory().copyMemory(lockAddress, bufferAddress, 8);
+        resetLock.accept(bufferAddress);
+        buffer.clear().limit(8);
+        long position = lockAddress - h.bsAddress();
+        while (buffer.hasRemaining())
+            position += out.write(buffer, position);
+    }
+
+    public synchronized long copiedBytes() {
+        return copiedBytes;
+    }
+
+    /**
+     * Extends the file to the size of the data store at the moment of the snapshot finish (areas
+     * of extra tiers, not used by any copied segment, are not copied) and syncs it. Should be called
+     * after all segments are copied, and the snapshot is {@linkplain
+     * VanillaChronicleHash#finishSnapshot() finished} in the hash.
+     */
+    public synchronized void finish() throws IOException {
+        if (copyOnWriteFailure != null)
+            throw new IOException("Failed to copy a segment before write", copyOnWriteFailure);
+        if (out.size() < dataStoreSize)
+            out.write(ByteBuffer.allocate(1), dataStoreSize - 1);
+        out.force(true);
+    }
+}
@@ -36,6 +36,7 @@ public enum TierCountersArea {
     public static final long TIER_OFFSET = SEGMENT_INDEX_OFFSET + 4L;
     public static final long ENTRIES_OFFSET = TIER_OFFSET + 4L;
     public static final long DELETED_OFFSET = ENTRIES_OFFSET + 4L;
+    public static final long OLDEST_DELETED_TIMESTAMP_OFFSET = DELETED_OFFSET + 4L;
     private static final long UNSIGNED_INT_MASK = 0xFFFFFFFFL;
     private static Memory memory = OS.memory();
 
@@ -103,4 +104,16 @@ public enum TierCountersArea {
         }
         memory.writeInt(address + DELETED_OFFSET, (int) deleted);
     }
+
+    /**
+     * Unlike the other counters, stored in the tier counters area of each tier, including the
+     * first tiers in the chains, not to grow segment headers.
+     */
+    public static long oldestDeletedTimestamp(long address) {
+        return memory.readLong(address + OLDEST_DELETED_TIMESTAMP_OFFSET);
+    }
+
+    public static void oldestDeletedTimestamp(long address, long timestamp) {
+        memory.writeLong(address + OLDEST_DELETED_TIMESTAMP_OFFSET, timestamp);
+    }
 }
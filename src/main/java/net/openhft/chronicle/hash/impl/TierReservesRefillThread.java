@@ -0,0 +1,101 @@
+/*
+ *      Copyright (C) 2012, 2016  higherfrequencytrading.com
+ *      Copyright (C) 2016 Roman Leventov
+ *
+ *      This program is free software: you can redistribute it and/or modify
+ *      it under the terms of the GNU Lesser General Public License as published by
+ *      the Free Software Foundation, either version 3 of the License.
+ *
+ *      This program is distributed in the hope that it will be useful,
+ *      but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *      MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *      GNU Lesser General Public License for more details.
+ *
+ *      You should have received a copy of the GNU Lesser General Public License
+ *      along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.openhft.chronicle.hash.impl;
+
+import net.openhft.chronicle.core.io.Closeable;
+import net.openhft.chronicle.hash.ChronicleHashClosedException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.ref.WeakReference;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Refills the per-segment reserved tiers, taken in {@link VanillaChronicleHash#takeReservedTier}.
+ *
+ * @see VanillaChronicleHash#establishTierReservesRefill()
+ */
+final class TierReservesRefillThread extends Thread implements Closeable {
+    private static final Logger LOG = LoggerFactory.getLogger(TierReservesRefillThread.class);
+    private static final long MAX_PARK_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * Don't store a strong ref to a hash in order to avoid it's leaking, if the user forgets to
+     * close() it.
+     */
+    private final WeakReference<VanillaChronicleHash<?, ?, ?, ?>> hashRef;
+    /**
+     * Indexes of segments which have taken their reserved tiers, duplicates are allowed
+     */
+    private final Queue<Integer> segmentsToRefill = new ConcurrentLinkedQueue<>();
+
+    private volatile boolean shutdown;
+
+    TierReservesRefillThread(VanillaChronicleHash<?, ?, ?, ?> hash) {
+        super("Tier Reserves Refill Thread for " + hash.toIdentityString());
+        setDaemon(true);
+        hashRef = new WeakReference<>(hash);
+    }
+
+    void requestRefill(int segmentIndex) {
+        segmentsToRefill.add(segmentIndex);
+        LockSupport.unpark(this);
+    }
+
+    @Override
+    public void run() {
+        while (!shutdown) {
+            if (!segmentsToRefill.isEmpty() && !refill())
+                return;
+            // a permit from requestRefill(), called between isEmpty() and park(), is not lost
+            LockSupport.parkNanos(this, MAX_PARK_NANOS);
+            if (hashRef.get() == null)
+                return;
+        }
+    }
+
+    /**
+     * @return {@code false} if the hash is already collected or closed and this thread should be
+     * shut down
+     */
+    private boolean refill() {
+        VanillaChronicleHash<?, ?, ?, ?> hash = hashRef.get();
+        if (hash == null || !hash.isOpen())
+            return false;
+        try {
+            hash.refillTierReserves(segmentsToRefill);
+            return true;
+        } catch (ChronicleHashClosedException e) {
+            return false;
+        } catch (RuntimeException e) {
+            // allocations in the segments fall back to the global free tier list
+            LOG.error(hash.toIdentityString() + ": failed to refill tier reserves", e);
+            segmentsToRefill.clear();
+            return true;
+        }
+    }
+
+    @Override
+    public void close() {
+        shutdown = true;
+        LockSupport.unpark(this);
+    }
+}
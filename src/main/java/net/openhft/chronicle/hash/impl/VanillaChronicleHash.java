@@ -17,6 +17,7 @@
 
 package net.openhft.chronicle.hash.impl;
 
+import net.openhft.chronicle.algo.hashing.LongHashFunction;
 import net.openhft.chronicle.algo.locks.*;
 import net.openhft.chronicle.bytes.BytesStore;
 import net.openhft.chronicle.bytes.MappedBytesStoreFactory;
@@ -25,10 +26,16 @@ import net.openhft.chronicle.core.Maths;
 import net.openhft.chronicle.core.OS;
 import net.openhft.chronicle.hash.*;
 import net.openhft.chronicle.hash.impl.util.BuildVersion;
+import net.openhft.chronicle.hash.impl.util.CanonicalRandomAccessFiles;
 import net.openhft.chronicle.hash.impl.util.Cleaner;
 import net.openhft.chronicle.hash.impl.util.CleanerUtils;
+import net.openhft.chronicle.hash.impl.util.jna.LinuxFallocate;
+import net.openhft.chronicle.hash.impl.util.jna.PosixMadvise;
+import net.openhft.chronicle.hash.impl.util.jna.PosixMlock;
+import net.openhft.chronicle.hash.impl.util.jna.PosixMmap;
 import net.openhft.chronicle.hash.impl.util.jna.PosixMsync;
 import net.openhft.chronicle.hash.impl.util.jna.WindowsMsync;
+import net.openhft.chronicle.hash.impl.util.math.PoissonDistribution;
 import net.openhft.chronicle.hash.serialization.DataAccess;
 import net.openhft.chronicle.hash.serialization.SizeMarshaller;
 import net.openhft.chronicle.hash.serialization.SizedReader;
@@ -40,6 +47,9 @@ import net.openhft.chronicle.wire.Marshallable;
 import net.openhft.chronicle.wire.WireIn;
 import net.openhft.chronicle.wire.WireOut;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.Closeable;
 import java.io.File;
@@ -48,13 +58,23 @@ import java.io.RandomAccessFile;
 import java.lang.ref.WeakReference;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
+import java.security.SecureRandom;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Queue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.DoubleConsumer;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
 
 import static java.lang.Long.numberOfTrailingZeros;
 import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.nio.channels.FileChannel.MapMode.READ_ONLY;
 import static java.nio.channels.FileChannel.MapMode.READ_WRITE;
 import static net.openhft.chronicle.algo.MemoryUnit.*;
 import static net.openhft.chronicle.algo.bytes.Access.nativeAccess;
@@ -68,8 +88,19 @@ public abstract class VanillaChronicleHash<K,
         ECQ extends ExternalHashQueryContext<K>>
         implements ChronicleHash<K, C, SC, ECQ>, Marshallable {
 
+    private static final Logger LOG = LoggerFactory.getLogger(VanillaChronicleHash.class);
+
     public static final long TIER_COUNTERS_AREA_SIZE = 64;
     public static final long RESERVED_GLOBAL_MUTABLE_STATE_BYTES = 1024;
+    /**
+     * The size of huge pages on x86-64 and the default one on Linux
+     */
+    public static final long HUGE_PAGE_SIZE = 2L << 20;
+    /**
+     * The probability of a segment to hold as many entries, below which the segment is considered
+     * skewed, see {@link #skewedSegments()}
+     */
+    static final double SEGMENT_SKEW_PROBABILITY = 1e-9;
 
     // --- Start of instance fields ---
     /**
@@ -88,6 +119,7 @@ public abstract class VanillaChronicleHash<K,
             AcquisitionStrategies.spinLoopOrFail(2, TimeUnit.SECONDS);
     private static final long GLOBAL_MUTABLE_STATE_LOCK_OFFSET = 0L;
     private static final long GLOBAL_MUTABLE_STATE_VALUE_OFFSET = 8L;
+    private static final long MAX_RESERVED_TIER_INDEX = 0xFFFFFFFFL;
     /////////////////////////////////////////////////
     // If the hash was created in the first place, or read from disk
     public transient boolean createdOrInMemory;
@@ -97,8 +129,14 @@ public abstract class VanillaChronicleHash<K,
     public SizeMarshaller keySizeMarshaller;
     public SizedReader<K> keyReader;
     public DataAccess<K> keyDataAccess;
+    /**
+     * 0 means keys are hashed with unseeded xxHash, as before the seed became configurable
+     */
+    public long keyHashSeed;
     /////////////////////////////////////////////////
     public boolean checksumEntries;
+    public ChecksumAlgorithm checksumAlgorithm;
+    public boolean deferredChecksums;
     /////////////////////////////////////////////////
     // Concurrency (number of segments), memory management and dependent fields
     public int actualSegments;
@@ -123,6 +161,11 @@ public abstract class VanillaChronicleHash<K,
     /////////////////////////////////////////////////
     // Miscellaneous fields
     public transient CompactOffHeapLinearHashTable hashLookup;
+    /**
+     * {@link BigSegmentHeader#INSTANCE}, or {@link ReadOnlySegmentHeader#INSTANCE} if this hash is
+     * {@linkplain #setReadOnly() opened read-only}
+     */
+    public transient SegmentHeader segmentHeader;
     public transient Identity identity;
     protected int log2TiersInBulk;
     /////////////////////////////////////////////////
@@ -147,6 +190,82 @@ public abstract class VanillaChronicleHash<K,
 
     // --- End of instance fields ---
     private transient ChronicleHashResources resources;
+    private transient volatile TierReservesRefillThread tierReservesRefillThread;
+    private transient AtomicLong reservedTiersTaken;
+    private transient AtomicLong reservedTiersRefilled;
+    private transient long hotPagesPrefetched;
+    /**
+     * Bitmap of segments, modified since the previous {@link #msyncSegmentIfDirty}, null if
+     * dirty segments are not tracked. Set before the hash is published.
+     */
+    private transient AtomicLongArray dirtySegments;
+    /**
+     * Segments with entries, which checksums are deferred by this process and not computed yet
+     */
+    private transient AtomicLongArray deferredChecksumSegments;
+    private transient DirtySegmentsSyncTask dirtySegmentsSyncTask;
+    /**
+     * Snapshot in progress, null if there is no snapshot in progress
+     */
+    private transient volatile SegmentsSnapshot snapshot;
+    /**
+     * Segments, which are not yet recovered, null if the hash is not recovered lazily, or all
+     * segments are already recovered
+     */
+    private transient volatile LazySegmentsRecovery lazySegmentsRecovery;
+    /**
+     * If {@code true}, address space is reserved for the maximum data store size in a single
+     * mapping, see {@link #mapDataStore(long, long)}
+     */
+    protected transient boolean reserveAddressSpace;
+    /**
+     * Huge pages to back the memory of this hash, null is the same as {@link HugePages#NONE}
+     */
+    protected transient HugePages hugePages;
+    /**
+     * If the segment headers and the hash lookups and the counters areas of all tiers should be
+     * locked in memory, see {@link #applyResidencyControls(long)}
+     */
+    protected transient boolean lockHashLookups;
+    /**
+     * If the entry spaces of all tiers should be advised with {@code MADV_RANDOM}
+     */
+    protected transient boolean randomEntrySpaceAccess;
+    /**
+     * If the persistence file is mapped with {@code PROT_READ}, nothing should be ever written to
+     * the memory of this hash, see {@link #setReadOnly()}
+     */
+    protected transient boolean readOnly;
+    private transient AtomicLong lockedMemory;
+    private transient AtomicLong memoryLockFailures;
+    /**
+     * xxHash with {@link #keyHashSeed}, hashes of the keys determine their segments and slots in
+     * the hash lookups
+     */
+    public transient LongHashFunction keyHashFunction;
+    private transient AtomicLong segmentSkewDetections;
+    /**
+     * Segments, which chained a tier since the previous {@link #checkSegmentSkew()}
+     */
+    private transient AtomicLongArray skewCheckSegments;
+    private transient AtomicReference<SegmentSkewCheckTask> segmentSkewCheckTask;
+    /**
+     * The number of extra tiers, addresses of which are computed arithmetically from {@link
+     * #reservedTierBulksAddr}, 0 if address space is not reserved
+     */
+    private transient long reservedExtraTiers;
+    private transient long reservedTierBulksAddr;
+    /**
+     * The number of extra tier bulks, disk space for which is preallocated in the persistence
+     * file on creation in addition to the main segments area, or -1 if the file is not
+     * preallocated
+     */
+    protected transient int preallocatedTierBulks = -1;
+    /**
+     * File descriptor of the persistence file for native calls, opened lazily in {@link
+     * #fileDescriptor()}
+     */
+    private transient int fileDescriptor = -1;
     private transient Cleaner cleaner;
     private transient VanillaGlobalMutableState globalMutableState;
 
@@ -166,6 +285,7 @@ public abstract class VanillaChronicleHash<K,
         keySizeMarshaller = keyBuilder.sizeMarshaller();
         keyReader = keyBuilder.reader();
         keyDataAccess = keyBuilder.dataAccess();
+        keyHashSeed = privateAPI.seededKeyHashing() ? randomKeyHashSeed() : 0;
 
         actualSegments = privateAPI.actualSegments();
         hashSplitting = HashSplitting.forSegments(actualSegments);
@@ -202,12 +322,14 @@ public abstract class VanillaChronicleHash<K,
         tierSize = tierSize();
 
         maxExtraTiers = privateAPI.maxExtraTiers();
-        tiersInBulk = computeNumberOfTiersInBulk();
+        tiersInBulk = computeNumberOfTiersInBulk(privateAPI.minTierBulkSize());
         log2TiersInBulk = Maths.intLog2(tiersInBulk);
         tierBulkInnerOffsetToTiers = computeTierBulkInnerOffsetToTiers(tiersInBulk);
         tierBulkSizeInBytes = computeTierBulkBytesSize(tiersInBulk);
 
         checksumEntries = privateAPI.checksumEntries();
+        checksumAlgorithm = privateAPI.checksumAlgorithm();
+        deferredChecksums = checksumEntries && privateAPI.deferredChecksums();
     }
 
     public static IOException throwRecoveryOrReturnIOException(
@@ -276,6 +398,13 @@ public abstract class VanillaChronicleHash<K,
         tierBulkInnerOffsetToTiers = wireIn.read(() -> "tierBulkInnerOffsetToTiers").int64();
         tiersInBulk = wireIn.read(() -> "tiersInBulk").int64();
         log2TiersInBulk = wireIn.read(() -> "log2TiersInBulk").int32();
+
+        // Absent in the headers of stores, created before the algorithm became configurable
+        String checksumAlgorithmName = wireIn.read(() -> "checksumAlgorithm").text();
+        checksumAlgorithm = checksumAlgorithmName != null ?
+                ChecksumAlgorithm.valueOf(checksumAlgorithmName) : ChecksumAlgorithm.XXHASH;
+        deferredChecksums = wireIn.read(() -> "deferredChecksums").bool();
+        keyHashSeed = wireIn.read(() -> "keyHashSeed").int64();
     }
 
     @Override
@@ -320,6 +449,10 @@ public abstract class VanillaChronicleHash<K,
         wireOut.write(() -> "tierBulkInnerOffsetToTiers").int64(tierBulkInnerOffsetToTiers);
         wireOut.write(() -> "tiersInBulk").int64(tiersInBulk);
         wireOut.write(() -> "log2TiersInBulk").int32(log2TiersInBulk);
+
+        wireOut.write(() -> "checksumAlgorithm").text(checksumAlgorithm.name());
+        wireOut.write(() -> "deferredChecksums").bool(deferredChecksums);
+        wireOut.write(() -> "keyHashSeed").int64(keyHashSeed);
     }
 
     protected VanillaGlobalMutableState createGlobalMutableState() {
@@ -349,11 +482,11 @@ public abstract class VanillaChronicleHash<K,
         return sizeInBytes;
     }
 
-    private long computeNumberOfTiersInBulk() {
+    private long computeNumberOfTiersInBulk(long minTierBulkSize) {
         // TODO review heuristics
         int tiersInBulk = actualSegments / 8;
         tiersInBulk = Maths.nextPower2(tiersInBulk, 1);
-        while (computeTierBulkBytesSize(tiersInBulk) < OS.pageSize()) {
+        while (computeTierBulkBytesSize(tiersInBulk) < minTierBulkSize) {
             tiersInBulk *= 2;
         }
         return tiersInBulk;
@@ -374,6 +507,18 @@ public abstract class VanillaChronicleHash<K,
     private void initOwnTransients() {
         globalMutableState = createGlobalMutableState();
         tierBulkOffsets = new ArrayList<>();
+        segmentHeader = BigSegmentHeader.INSTANCE;
+        lockedMemory = new AtomicLong();
+        memoryLockFailures = new AtomicLong();
+        keyHashFunction = keyHashSeed != 0 ?
+                LongHashFunction.xx_r39(keyHashSeed) : LongHashFunction.xx_r39();
+        segmentSkewDetections = new AtomicLong();
+        skewCheckSegments = new AtomicLongArray((actualSegments + 63) / 64);
+        segmentSkewCheckTask = new AtomicReference<>();
+        reservedTiersTaken = new AtomicLong();
+        reservedTiersRefilled = new AtomicLong();
+        if (deferredChecksums)
+            deferredChecksumSegments = new AtomicLongArray((actualSegments + 63) / 64);
         switch (tierHashLookupSlotSize) {
             case 4:
                 hashLookup = new IntCompactOffHeapLinearHashTable(this);
@@ -388,6 +533,23 @@ public abstract class VanillaChronicleHash<K,
         identity = new Identity();
     }
 
+    /**
+     * Configures this hash to map the persistence file read-only, should be called before
+     * mapping. Segment locks become no-ops, and all modifications fail with {@link
+     * UnsupportedOperationException} when they try to acquire the segment write lock, before
+     * anything is written.
+     */
+    public final void setReadOnly() {
+        readOnly = true;
+        segmentHeader = ReadOnlySegmentHeader.INSTANCE;
+        reserveAddressSpace = false;
+        preallocatedTierBulks = -1;
+    }
+
+    public final boolean isReadOnly() {
+        return readOnly;
+    }
+
     public final void initBeforeMapping(
             File file, RandomAccessFile raf, long headerEnd, boolean recover) throws IOException {
         this.file = file;
@@ -476,7 +638,31 @@ public abstract class VanillaChronicleHash<K,
     public final void createMappedStoreAndSegments(ChronicleHashResources resources)
             throws IOException {
         this.resources = resources;
-        createStoreAndSegments(map(dataStoreSize(), 0));
+        long dataStoreSize = dataStoreSize();
+        long sizeInBytesWithoutTiers = sizeInBytesWithoutTiers();
+        preallocateDataStore(dataStoreSize, sizeInBytesWithoutTiers);
+        createStoreAndSegments(mapDataStore(dataStoreSize, sizeInBytesWithoutTiers));
+    }
+
+    /**
+     * Maps the data store of the given size. If {@link #reserveAddressSpace} is configured, the
+     * mapping covers the maximum size of the data store, all extra tier bulks, that could be
+     * allocated, are then accessed through this single mapping, while the file is grown
+     * underneath. Windows doesn't allow to map a file beyond it's end, so there the data store
+     * is always mapped as usual.
+     */
+    private BytesStore mapDataStore(long dataStoreSize, long sizeInBytesWithoutTiers)
+            throws IOException {
+        if (!reserveAddressSpace || OS.isWindows())
+            return map(dataStoreSize, 0);
+        long allocatedTierBulks = (dataStoreSize - sizeInBytesWithoutTiers) / tierBulkSizeInBytes;
+        long maxTierBulks = (maxExtraTiers + tiersInBulk - 1) / tiersInBulk;
+        long tierBulksToReserve = max(allocatedTierBulks, maxTierBulks);
+        long reservedSize = sizeInBytesWithoutTiers + tierBulksToReserve * tierBulkSizeInBytes;
+        NativeBytesStore store = map(reservedSize, 0, dataStoreSize);
+        reservedExtraTiers = tierBulksToReserve * tiersInBulk;
+        reservedTierBulksAddr = store.addressForRead(0) + sizeInBytesWithoutTiers;
+        return store;
     }
 
     public final void basicRecover(
@@ -499,7 +685,8 @@ public abstract class VanillaChronicleHash<K,
             allocatedExtraTierBulks =
                     (int) ((dataStoreSize - sizeInBytesWithoutTiers) / tierBulkSizeInBytes);
         }
-        initBytesStoreAndHeadersViews(map(dataStoreSize, 0));
+        preallocateDataStore(dataStoreSize, sizeInBytesWithoutTiers);
+        initBytesStoreAndHeadersViews(mapDataStore(dataStoreSize, sizeInBytesWithoutTiers));
 
         resetGlobalMutableStateLock(corruptionListener, corruption);
         recoverAllocatedExtraTierBulks(allocatedExtraTierBulks, corruptionListener, corruption);
@@ -649,11 +836,20 @@ public abstract class VanillaChronicleHash<K,
 
     @Override
     public final void close() {
+        if (isOpen())
+            beforeClose();
         if (resources.releaseManually()) {
             cleanupOnClose();
         }
     }
 
+    /**
+     * Called in {@link #close()} before the contexts are closed, when the hash could still be
+     * accessed. Not called, if the hash is closed by the cleaner or is already closed.
+     */
+    protected void beforeClose() {
+    }
+
     protected void cleanupOnClose() {
         // Releases nothing after resources.releaseManually(), only removes the cleaner
         // from the internal linked list of all cleaners.
@@ -719,6 +915,9 @@ public abstract class VanillaChronicleHash<K,
     }
 
     public void globalMutableStateLock() {
+        // Nobody modifies the global mutable state of a read-only hash
+        if (readOnly)
+            return;
         globalMutableStateLockAcquisitionStrategy.acquire(
                 globalMutableStateLockTryAcquireOperation, globalMutableStateLockingStrategy,
                 nativeAccess(), null,
@@ -726,6 +925,8 @@ public abstract class VanillaChronicleHash<K,
     }
 
     public void globalMutableStateUnlock() {
+        if (readOnly)
+            return;
         globalMutableStateLockingStrategy.unlock(nativeAccess(), null,
                 globalMutableStateAddress() + GLOBAL_MUTABLE_STATE_LOCK_OFFSET);
     }
@@ -743,54 +944,730 @@ public abstract class VanillaChronicleHash<K,
     }
 
     public long allocateTier() {
+        if (readOnly)
+            throw new UnsupportedOperationException(toIdentityString() + " is read-only");
         globalMutableStateLock();
         try {
-            long tiersInUse = globalMutableState.getExtraTiersInUse();
-            if (tiersInUse >= maxExtraTiers) {
-                throw new IllegalStateException(toIdentityString() + ": " +
-                        "Attempt to allocate #" + (tiersInUse + 1) +
-                        " extra segment tier, " + maxExtraTiers + " is maximum.\n" +
-                        "Possible reasons include:\n" +
-                        " - you have forgotten to configure (or configured wrong) " +
-                        "builder.entries() number\n" +
-                        " - same regarding other sizing Chronicle Hash configurations, most " +
-                        "likely maxBloatFactor(), averageKeySize(), or averageValueSize()\n" +
-                        " - keys, inserted into the ChronicleHash, are distributed suspiciously " +
-                        "bad. This might be a DOS attack");
+            return innerAllocateTier();
+        } finally {
+            globalMutableStateUnlock();
+        }
+    }
+
+    /**
+     * Should be called under the {@link #globalMutableStateLock()}
+     */
+    private long innerAllocateTier() {
+        long tiersInUse = globalMutableState.getExtraTiersInUse();
+        if (tiersInUse >= maxExtraTiers) {
+            // Reserved tiers are counted as in use, so reserves, kept by the segments, which
+            // don't overflow anymore, shouldn't make the allocation fail
+            long reservedTierIndex = takeAnyReservedTier();
+            if (reservedTierIndex != 0)
+                return reservedTierIndex;
+            throw new IllegalStateException(toIdentityString() + ": " +
+                    "Attempt to allocate #" + (tiersInUse + 1) +
+                    " extra segment tier, " + maxExtraTiers + " is maximum.\n" +
+                    "Possible reasons include:\n" +
+                    " - you have forgotten to configure (or configured wrong) " +
+                    "builder.entries() number\n" +
+                    " - same regarding other sizing Chronicle Hash configurations, most " +
+                    "likely maxBloatFactor(), averageKeySize(), or averageValueSize()\n" +
+                    " - keys, inserted into the ChronicleHash, are distributed suspiciously " +
+                    "bad. This might be a DOS attack");
+        }
+        long firstFreeTierIndex = globalMutableState.getFirstFreeTierIndex();
+        if (firstFreeTierIndex < 0) {
+            throw new RuntimeException(toIdentityString() +
+                    ": unexpected firstFreeTierIndex value " + firstFreeTierIndex);
+        }
+        if (firstFreeTierIndex == 0) {
+            try {
+                allocateTierBulk();
+            } catch (IOException e) {
+                throw new RuntimeException(toIdentityString(), e);
             }
-            long firstFreeTierIndex = globalMutableState.getFirstFreeTierIndex();
-            if (firstFreeTierIndex < 0) {
+            firstFreeTierIndex = globalMutableState.getFirstFreeTierIndex();
+            if (firstFreeTierIndex <= 0) {
                 throw new RuntimeException(toIdentityString() +
                         ": unexpected firstFreeTierIndex value " + firstFreeTierIndex);
             }
-            if (firstFreeTierIndex == 0) {
+        }
+        globalMutableState.setExtraTiersInUse(tiersInUse + 1);
+        BytesStore allocatedTierBytes = tierBytesStore(firstFreeTierIndex);
+        long allocatedTierOffset = tierBytesOffset(firstFreeTierIndex);
+        long tierBaseAddr = allocatedTierBytes.addressForRead(0) + allocatedTierOffset;
+        long tierCountersAreaAddr = tierBaseAddr + tierHashLookupOuterSize;
+        long nextFreeTierIndex = TierCountersArea.nextTierIndex(tierCountersAreaAddr);
+        globalMutableState.setFirstFreeTierIndex(nextFreeTierIndex);
+        return firstFreeTierIndex;
+    }
+
+    /**
+     * Takes the reserved tier of some segment, without requesting to refill the reserve.
+     *
+     * @return the reserved tier index, or 0 if no segment has a reserved tier
+     */
+    private long takeAnyReservedTier() {
+        for (int segmentIndex = 0; segmentIndex < actualSegments; segmentIndex++) {
+            long reservedTierIndex =
+                    segmentHeader.takeReservedTierIndex(segmentHeaderAddress(segmentIndex));
+            if (reservedTierIndex != 0)
+                return reservedTierIndex;
+        }
+        return 0;
+    }
+
+    /**
+     * Takes the tier, reserved for the segment with the given index by {@link
+     * #refillTierReserves}, if there is one, and requests to refill the reserve of the segment in
+     * background, if tier reserves are {@linkplain #establishTierReservesRefill() enabled} for this
+     * hash. Doesn't touch the global mutable state lock.
+     *
+     * @return the reserved tier index, or 0 if there is no reserved tier
+     */
+    public final long takeReservedTier(int segmentIndex) {
+        long reservedTierIndex =
+                segmentHeader.takeReservedTierIndex(segmentHeaderAddress(segmentIndex));
+        if (reservedTierIndex != 0)
+            reservedTiersTaken.incrementAndGet();
+        TierReservesRefillThread refillThread = tierReservesRefillThread;
+        if (refillThread != null)
+            refillThread.requestRefill(segmentIndex);
+        return reservedTierIndex;
+    }
+
+    /**
+     * @return the number of extra tiers, chained by segments from their reserves, see {@link
+     * #takeReservedTier(int)}
+     */
+    public final long reservedTiersTaken() {
+        return reservedTiersTaken.get();
+    }
+
+    /**
+     * @return the number of extra tiers, reserved for segments by this process, see {@link
+     * #refillTierReserves(Queue)}
+     */
+    public final long reservedTiersRefilled() {
+        return reservedTiersRefilled.get();
+    }
+
+    /**
+     * Reserves a free tier for each of the given segments, which doesn't have a reserved tier yet,
+     * in a single global mutable state lock session. Reserved tiers are counted as extra tiers in
+     * use, stops if {@link #maxExtraTiers} is reached. Then allocations of tiers take the reserved
+     * tiers of other segments, see {@link #innerAllocateTier()}.
+     */
+    final void refillTierReserves(Queue<Integer> segmentIndexes) {
+        globalMutableStateLock();
+        try {
+            Integer segmentIndex;
+            while ((segmentIndex = segmentIndexes.poll()) != null) {
+                long segmentHeaderAddress = segmentHeaderAddress(segmentIndex);
+                if (BigSegmentHeader.INSTANCE.reservedTierIndex(segmentHeaderAddress) != 0)
+                    continue;
+                if (globalMutableState.getExtraTiersInUse() >= maxExtraTiers) {
+                    segmentIndexes.clear();
+                    return;
+                }
+                BigSegmentHeader.INSTANCE.reservedTierIndex(
+                        segmentHeaderAddress, innerAllocateTier());
+                reservedTiersRefilled.incrementAndGet();
+            }
+            // map the next tier bulk ahead, while the tiers are in demand
+            if (globalMutableState.getFirstFreeTierIndex() == 0 &&
+                    (globalMutableState.getAllocatedExtraTierBulks() + 1) * tiersInBulk <=
+                            maxExtraTiers) {
                 try {
                     allocateTierBulk();
                 } catch (IOException e) {
                     throw new RuntimeException(toIdentityString(), e);
                 }
-                firstFreeTierIndex = globalMutableState.getFirstFreeTierIndex();
-                if (firstFreeTierIndex <= 0) {
-                    throw new RuntimeException(toIdentityString() +
-                            ": unexpected firstFreeTierIndex value " + firstFreeTierIndex);
+            }
+        } finally {
+            globalMutableStateUnlock();
+        }
+    }
+
+    /**
+     * Starts the background thread, which keeps a reserved free tier for each segment, that has
+     * chained an extra tier, so that consequent tier allocations in overflowing segments don't
+     * contend on the global mutable state lock, and extra tier bulks are mapped off the hot path.
+     * Does nothing if tier indexes don't fit the 32-bit reserved tier index field of the segment
+     * header.
+     *
+     * @see SegmentHeader#reservedTierIndex(long)
+     */
+    public void establishTierReservesRefill() {
+        if (actualSegments + maxExtraTiers > MAX_RESERVED_TIER_INDEX)
+            return;
+        TierReservesRefillThread refillThread = new TierReservesRefillThread(this);
+        addCloseable(refillThread);
+        tierReservesRefillThread = refillThread;
+        refillThread.start();
+    }
+
+    /**
+     * Marks all segments as not recovered. Each segment is recovered by the given procedure on
+     * the first access to it, that is when a context is initialized with the segment, or by
+     * the background sweeper thread, whatever happens first. Global structures should be already
+     * recovered, when this method is called.
+     */
+    public void startLazySegmentsRecovery(IntConsumer segmentRecovery) {
+        lazySegmentsRecovery = new LazySegmentsRecovery(this, segmentRecovery);
+        SegmentsRecoverySweeperThread sweeperThread = new SegmentsRecoverySweeperThread(this);
+        addCloseable(sweeperThread);
+        sweeperThread.start();
+    }
+
+    /**
+     * Recovers the segment, if it is not yet recovered lazily, or waits until the segment is
+     * recovered by another thread.
+     */
+    public final void ensureSegmentRecovered(int segmentIndex) {
+        LazySegmentsRecovery lazySegmentsRecovery = this.lazySegmentsRecovery;
+        if (lazySegmentsRecovery != null)
+            lazySegmentsRecovery.ensureRecovered(segmentIndex);
+    }
+
+    /**
+     * Defers the given action until all segments are recovered, the action is run in the thread,
+     * which recovers the last segment.
+     *
+     * @return {@code false} if the segments are not recovered lazily, or all of them are
+     * already recovered, the action is not deferred
+     */
+    public boolean runWhenSegmentsRecovered(Runnable action) {
+        LazySegmentsRecovery lazySegmentsRecovery = this.lazySegmentsRecovery;
+        return lazySegmentsRecovery != null && lazySegmentsRecovery.runOnCompletion(action);
+    }
+
+    void onLazySegmentsRecoveryCompleted() {
+        lazySegmentsRecovery = null;
+    }
+
+    @Override
+    public double recoveryProgress() {
+        LazySegmentsRecovery lazySegmentsRecovery = this.lazySegmentsRecovery;
+        if (lazySegmentsRecovery == null)
+            return 1.0;
+        return 1.0 - ((double) lazySegmentsRecovery.segmentsToRecover()) / actualSegments;
+    }
+
+    @Override
+    public void warmUp() {
+        warmUp(Runtime.getRuntime().availableProcessors(), true, null);
+    }
+
+    @Override
+    public final void warmUp(
+            int parallelism, boolean extraTiers, @Nullable DoubleConsumer progressListener) {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("warm up parallelism should be positive, " +
+                    parallelism + " is given");
+        }
+        PreTouch preTouch = new PreTouch(persisted(), progressListener);
+        preTouch.addRange(bsAddress() + segmentHeadersOffset,
+                ((long) actualSegments) * segmentHeaderSize);
+        for (int segmentIndex = 0; segmentIndex < actualSegments; segmentIndex++) {
+            preTouch.addRange(segmentBaseAddr(segmentIndex), tierSize);
+        }
+        if (extraTiers) {
+            // Reserved address space beyond the allocated bulks is not backed by the file
+            globalMutableStateLock();
+            try {
+                int allocatedExtraTierBulks = globalMutableState.getAllocatedExtraTierBulks();
+                for (int bulkIndex = 0; bulkIndex < allocatedExtraTierBulks; bulkIndex++) {
+                    preTouch.addRange(tierBulkAddr(bulkIndex), tierBulkSizeInBytes);
                 }
+            } finally {
+                globalMutableStateUnlock();
+            }
+        }
+        preTouch.run(parallelism);
+    }
+
+    private long tierBulkAddr(int bulkIndex) {
+        long firstTierIndex = extraTierIndexToTierIndex(bulkIndex * tiersInBulk);
+        return tierIndexToBaseAddr(firstTierIndex) - tierBulkInnerOffsetToTiers;
+    }
+
+    /**
+     * If this hash is opened from an existing file, prefetches the pages, recorded as hot in the
+     * hot pages trace of the file, and waits until they are read. Then starts the background
+     * thread, which samples the pages of this hash, resident in memory, with the given period
+     * and records them to the trace, replacing the previous one. Does nothing for in-memory
+     * hashes, or on platforms other than Linux.
+     */
+    public void establishHotPagesTrace(long period, TimeUnit unit) throws IOException {
+        if (!persisted() || !OS.isLinux())
+            return;
+        if (!createdOrInMemory)
+            hotPagesPrefetched = prefetchHotPages();
+        HotPagesRecordingThread recordingThread = new HotPagesRecordingThread(this, period, unit);
+        addCloseable(recordingThread);
+        recordingThread.start();
+    }
+
+    /**
+     * @return the number of bytes of the hot pages, prefetched when this hash is opened, see
+     * {@link #establishHotPagesTrace}
+     */
+    public final long hotPagesPrefetched() {
+        return hotPagesPrefetched;
+    }
+
+    /**
+     * @return the number of bytes prefetched
+     */
+    final long prefetchHotPages() throws IOException {
+        HotPagesTrace trace =
+                HotPagesTrace.read(HotPagesTrace.traceFile(file), raf.getChannel().size());
+        if (trace == null)
+            return 0;
+        PreTouch preTouch = new PreTouch(true, null);
+        long prefetched = trace.prefetch(fileRegions(), preTouch);
+        // The pages are already being read ahead by the kernel, touching them just waits
+        // until they are resident
+        preTouch.run(1);
+        return prefetched;
+    }
+
+    final void recordHotPages() throws IOException {
+        HotPagesTrace.sample(fileRegions()).write(HotPagesTrace.traceFile(file));
+    }
+
+    /**
+     * @return {@code {fileOffset, address, length}} of the part of the file without tiers and of
+     * each allocated extra tier bulk, in the order of file offsets
+     */
+    private List<long[]> fileRegions() {
+        List<long[]> regions = new ArrayList<>();
+        regions.add(new long[] {0, bsAddress(), sizeInBytesWithoutTiers()});
+        globalMutableStateLock();
+        try {
+            int allocatedExtraTierBulks = globalMutableState.getAllocatedExtraTierBulks();
+            for (int bulkIndex = 0; bulkIndex < allocatedExtraTierBulks; bulkIndex++) {
+                regions.add(new long[] {
+                        bulkOffset(bulkIndex), tierBulkAddr(bulkIndex), tierBulkSizeInBytes});
             }
-            globalMutableState.setExtraTiersInUse(tiersInUse + 1);
-            BytesStore allocatedTierBytes = tierBytesStore(firstFreeTierIndex);
-            long allocatedTierOffset = tierBytesOffset(firstFreeTierIndex);
-            long tierBaseAddr = allocatedTierBytes.addressForRead(0) + allocatedTierOffset;
-            long tierCountersAreaAddr = tierBaseAddr + tierHashLookupOuterSize;
-            long nextFreeTierIndex = TierCountersArea.nextTierIndex(tierCountersAreaAddr);
-            globalMutableState.setFirstFreeTierIndex(nextFreeTierIndex);
-            return firstFreeTierIndex;
         } finally {
             globalMutableStateUnlock();
         }
+        return regions;
+    }
+
+    /**
+     * Starts tracking of segments, modified in this process, and the background task, which
+     * syncs only the dirty segments to disk with the given period, or earlier, if about {@code
+     * dirtyBytesThreshold} bytes are dirty. Does nothing for in-memory hashes.
+     */
+    public void establishDirtySegmentsSync(
+            long period, TimeUnit unit, long dirtyBytesThreshold) {
+        if (!persisted())
+            return;
+        DirtySegmentsSyncTask syncTask =
+                new DirtySegmentsSyncTask(this, period, unit, dirtyBytesThreshold);
+        dirtySegmentsSyncTask = syncTask;
+        dirtySegments = new AtomicLongArray((actualSegments + 63) / 64);
+        scheduleMaintenance(syncTask, period, unit);
+    }
+
+    /**
+     * Runs the task on the {@linkplain MaintenanceScheduler#shared() shared maintenance
+     * scheduler}, first time after the given delay. The task is closed along with this hash.
+     */
+    public void scheduleMaintenance(MaintenanceTask task, long initialDelay, TimeUnit unit) {
+        addCloseable(task);
+        MaintenanceScheduler.shared().schedule(task, initialDelay, unit);
+    }
+
+    /**
+     * Marks the segment as modified since the previous {@link #msyncSegmentIfDirty}, if dirty
+     * segments are tracked. Should be called after the modifications of the segment and before
+     * the segment write (or update, if the segment is modified under it) lock is released.
+     */
+    public final void markSegmentDirty(int segmentIndex) {
+        AtomicLongArray dirtySegments = this.dirtySegments;
+        if (dirtySegments == null)
+            return;
+        int wordIndex = segmentIndex >>> 6;
+        long bit = 1L << segmentIndex;
+        long word;
+        do {
+            word = dirtySegments.get(wordIndex);
+            if ((word & bit) != 0)
+                return;
+        } while (!dirtySegments.compareAndSet(wordIndex, word, word | bit));
+        dirtySegmentsSyncTask.onSegmentDirtied();
+    }
+
+    private static long randomKeyHashSeed() {
+        SecureRandom random = new SecureRandom();
+        long seed;
+        do {
+            seed = random.nextLong();
+        } while (seed == 0);
+        return seed;
+    }
+
+    /**
+     * @return the number of entries in the segment, the counters of the segment tiers are read
+     * without the segment lock, so the number is approximate, if the segment is being modified
+     */
+    private long approximateSegmentEntries(int segmentIndex) {
+        long headerAddress = segmentHeaderAddress(segmentIndex);
+        long entries = segmentHeader.entries(headerAddress) - segmentHeader.deleted(headerAddress);
+        long tierIndex = segmentHeader.nextTierIndex(headerAddress);
+        // Bound the walk for the same reason as in msyncSegment()
+        for (long tiers = 0; tierIndex != 0 && tiers < maxExtraTiers; tiers++) {
+            long countersAddress = tierIndexToBaseAddr(tierIndex) + tierHashLookupOuterSize;
+            entries += TierCountersArea.entries(countersAddress) -
+                    TierCountersArea.deleted(countersAddress);
+            tierIndex = TierCountersArea.nextTierIndex(countersAddress);
+        }
+        return entries;
+    }
+
+    /**
+     * @return the number of deleted entries in the segment, read without the segment lock, like
+     * in {@link #approximateSegmentEntries(int)}
+     */
+    public final long approximateSegmentDeleted(int segmentIndex) {
+        long headerAddress = segmentHeaderAddress(segmentIndex);
+        long deleted = segmentHeader.deleted(headerAddress);
+        long tierIndex = segmentHeader.nextTierIndex(headerAddress);
+        for (long tiers = 0; tierIndex != 0 && tiers < maxExtraTiers; tiers++) {
+            long countersAddress = tierIndexToBaseAddr(tierIndex) + tierHashLookupOuterSize;
+            deleted += TierCountersArea.deleted(countersAddress);
+            tierIndex = TierCountersArea.nextTierIndex(countersAddress);
+        }
+        return deleted;
+    }
+
+    /**
+     * Reads the oldest deleted entry timestamps of the segment tiers without the segment lock.
+     *
+     * @return the timestamp, not later than the timestamps of all deleted entries in the segment,
+     * 0 if it is unknown for some tier, or {@code Long.MAX_VALUE} if there are no deleted entries
+     */
+    public final long approximateSegmentOldestDeletedTimestamp(int segmentIndex) {
+        long headerAddress = segmentHeaderAddress(segmentIndex);
+        long deleted = segmentHeader.deleted(headerAddress);
+        long nextTierIndex = segmentHeader.nextTierIndex(headerAddress);
+        long tierIndex = segmentIndex + 1;
+        long oldest = Long.MAX_VALUE;
+        for (long tiers = 0; ; tiers++) {
+            // the first tier counters area holds only the oldest deleted entry timestamp
+            long countersAddress = tierIndexToBaseAddr(tierIndex) + tierHashLookupOuterSize;
+            if (tiers > 0) {
+                deleted = TierCountersArea.deleted(countersAddress);
+                nextTierIndex = TierCountersArea.nextTierIndex(countersAddress);
+            }
+            if (deleted > 0) {
+                long tierOldest = TierCountersArea.oldestDeletedTimestamp(countersAddress);
+                if (tierOldest == 0)
+                    return 0;
+                oldest = Math.min(oldest, tierOldest);
+            }
+            if (nextTierIndex == 0 || tiers >= maxExtraTiers)
+                return oldest;
+            tierIndex = nextTierIndex;
+        }
+    }
+
+    /**
+     * Returns the segments, which hold anomalously many entries. Hashes of keys are expected to
+     * be distributed uniformly, so the number of entries in a segment follows the Poisson
+     * distribution with the mean of entries per segment. A segment is anomalous, if the
+     * probability to have as many entries in it is less than {@link #SEGMENT_SKEW_PROBABILITY},
+     * that suggests that the keys are chosen to collide, see {@code
+     * ChronicleMapBuilder.seededKeyHashing()}.
+     *
+     * @return indexes of the anomalous segments, empty array if entries are distributed normally
+     */
+    public final int[] skewedSegments() {
+        long[] segmentEntries = new long[actualSegments];
+        long totalEntries = 0;
+        for (int segmentIndex = 0; segmentIndex < actualSegments; segmentIndex++) {
+            segmentEntries[segmentIndex] = approximateSegmentEntries(segmentIndex);
+            totalEntries += segmentEntries[segmentIndex];
+        }
+        long threshold = segmentSkewThreshold(totalEntries);
+        return IntStream.range(0, actualSegments)
+                .filter(segmentIndex -> segmentEntries[segmentIndex] > threshold)
+                .toArray();
+    }
+
+    private long segmentSkewThreshold(long totalEntries) {
+        double meanSegmentEntries = totalEntries / (double) actualSegments;
+        return PoissonDistribution.inverseCumulativeProbability(
+                meanSegmentEntries, 1.0 - SEGMENT_SKEW_PROBABILITY);
+    }
+
+    /**
+     * Requests to check if the segment holds anomalously many entries, when it chains a new tier.
+     * Chaining of many tiers to a few segments is the way adversarial keys degrade the map,
+     * checking only on chaining keeps the cost of the check off the usual path of queries. The
+     * check reads the counters of all segments, so it is done by a {@link SegmentSkewCheckTask}
+     * in background, rather than under the segment lock, held by the caller.
+     */
+    public final void requestSegmentSkewCheck(int segmentIndex) {
+        int wordIndex = segmentIndex >>> 6;
+        long bit = 1L << segmentIndex;
+        if ((skewCheckSegments.get(wordIndex) & bit) != 0 ||
+                (skewCheckSegments.getAndAccumulate(wordIndex, bit, (a, b) -> a | b) & bit) != 0) {
+            return;
+        }
+        SegmentSkewCheckTask task = segmentSkewCheckTask.get();
+        if (task != null) {
+            task.wakeUp();
+            return;
+        }
+        task = new SegmentSkewCheckTask(this);
+        if (segmentSkewCheckTask.compareAndSet(null, task))
+            scheduleMaintenance(task, 0, TimeUnit.NANOSECONDS);
+        else
+            segmentSkewCheckTask.get().wakeUp();
+    }
+
+    /**
+     * Checks the segments, requested by {@link #requestSegmentSkewCheck(int)}, and logs a
+     * warning for each segment, which holds anomalously many entries.
+     */
+    final void checkSegmentSkew() {
+        long[] segmentEntries = null;
+        long totalEntries = 0;
+        long threshold = 0;
+        for (int wordIndex = 0; wordIndex < skewCheckSegments.length(); wordIndex++) {
+            long word = skewCheckSegments.getAndSet(wordIndex, 0L);
+            for (; word != 0; word &= word - 1) {
+                if (segmentEntries == null) {
+                    segmentEntries = new long[actualSegments];
+                    for (int i = 0; i < actualSegments; i++) {
+                        segmentEntries[i] = approximateSegmentEntries(i);
+                        totalEntries += segmentEntries[i];
+                    }
+                    threshold = segmentSkewThreshold(totalEntries);
+                }
+                int segmentIndex = (wordIndex << 6) + numberOfTrailingZeros(word);
+                long entries = segmentEntries[segmentIndex];
+                if (entries > threshold) {
+                    segmentSkewDetections.incrementAndGet();
+                    LOG.warn("{}: segment {} chained a tier and holds {} entries, while {} " +
+                                    "entries in total, or {} per segment on average, and not " +
+                                    "more than {} expected in any segment. Keys are distributed " +
+                                    "suspiciously bad, this might be a DOS attack, consider " +
+                                    "seeded key hashing",
+                            toIdentityString(), segmentIndex, entries, totalEntries,
+                            totalEntries / actualSegments, threshold);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the number of times a segment with anomalously many entries chained a tier, the
+     * segments are checked in background, so the count lags behind the chaining
+     * @see #requestSegmentSkewCheck(int)
+     */
+    public final long segmentSkewDetections() {
+        return segmentSkewDetections.get();
+    }
+
+    /**
+     * Marks the segment as having entries with deferred checksums, should be called before the
+     * segment update lock is released.
+     */
+    public final void markChecksumsDeferred(int segmentIndex) {
+        int wordIndex = segmentIndex >>> 6;
+        long bit = 1L << segmentIndex;
+        if ((deferredChecksumSegments.get(wordIndex) & bit) == 0)
+            deferredChecksumSegments.getAndAccumulate(wordIndex, bit, (a, b) -> a | b);
+    }
+
+    /**
+     * Unmarks the segment, marked by {@link #markChecksumsDeferred(int)}. Should be called before
+     * the segment is locked to compute the deferred checksums, so that checksums, deferred
+     * concurrently, mark the segment again.
+     *
+     * @return {@code true} if the segment was marked
+     */
+    public final boolean unmarkChecksumsDeferred(int segmentIndex) {
+        int wordIndex = segmentIndex >>> 6;
+        long bit = 1L << segmentIndex;
+        if (deferredChecksumSegments == null ||
+                (deferredChecksumSegments.get(wordIndex) & bit) == 0) {
+            return false;
+        }
+        return (deferredChecksumSegments.getAndAccumulate(wordIndex, ~bit, (a, b) -> a & b) &
+                bit) != 0;
+    }
+
+    /**
+     * Syncs the header and all tiers of the segment to disk, if it is marked dirty by {@link
+     * #markSegmentDirty(int)}, and unmarks it. If the sync fails, the segment remains dirty.
+     *
+     * @return the number of bytes synced, or -1 if the segment is not dirty
+     */
+    final long msyncSegmentIfDirty(int segmentIndex) throws IOException {
+        int wordIndex = segmentIndex >>> 6;
+        long bit = 1L << segmentIndex;
+        if ((dirtySegments.get(wordIndex) & bit) == 0 ||
+                (dirtySegments.getAndAccumulate(wordIndex, ~bit, (a, b) -> a & b) & bit) == 0) {
+            return -1;
+        }
+        try {
+            return msyncSegment(segmentIndex);
+        } catch (IOException | RuntimeException e) {
+            dirtySegments.getAndAccumulate(wordIndex, bit, (a, b) -> a | b);
+            throw e;
+        }
+    }
+
+    /**
+     * Syncs the global mutable state to disk, should be called after the dirty segments are
+     * synced by {@link #msyncSegmentIfDirty(int)}.
+     *
+     * @return the number of bytes synced
+     */
+    final long msyncGlobalMutableState() throws IOException {
+        long globalMutableStateSize = headerSize + globalMutableStateTotalUsedSize();
+        msync(bsAddress(), globalMutableStateSize);
+        return globalMutableStateSize;
+    }
+
+    private long msyncSegment(int segmentIndex) throws IOException {
+        msync(segmentHeaderAddress(segmentIndex), segmentHeaderSize);
+        long synced = segmentHeaderSize;
+        long tierIndex = segmentIndex + 1;
+        // Tier chain is read without the segment lock, so bound the walk, if it is being
+        // relinked concurrently. Syncing an unrelated tier is harmless.
+        for (long tiers = 0; tierIndex != 0 && tiers <= maxExtraTiers; tiers++) {
+            long tierBaseAddr = tierIndexToBaseAddr(tierIndex);
+            msync(tierBaseAddr, tierSize);
+            synced += tierSize;
+            tierIndex = TierCountersArea.nextTierIndex(tierBaseAddr + tierHashLookupOuterSize);
+        }
+        return synced;
+    }
+
+    /**
+     * Starts a point-in-time snapshot of this hash into the given file channel: ensures that the
+     * file of this hash is not accessed by other processes (copy-on-write works only within the
+     * current process) and locks it exclusively until {@link #finishSnapshot()}, copies the
+     * header, and enables copy-on-write of segments in {@link
+     * #beforeSegmentWrite(int)}. Then the caller should {@linkplain SegmentsSnapshot#copySegment
+     * copy} all segments, holding their update locks, call {@link #finishSnapshot()} and {@link
+     * SegmentsSnapshot#finish()}.
+     *
+     * @throws IllegalStateException if the file is accessed by another process, or this hash is
+     * opened read-only
+     */
+    public final synchronized SegmentsSnapshot startSnapshot(FileChannel out) throws IOException {
+        if (!persisted()) {
+            throw new UnsupportedOperationException(
+                    toIdentityString() + ": snapshot of an in-memory hash is not supported");
+        }
+        if (readOnly) {
+            throw new IllegalStateException(toIdentityString() + ": snapshot of a read-only " +
+                    "hash is not supported, the store is modified by other processes");
+        }
+        if (snapshot != null) {
+            throw new IllegalStateException(
+                    toIdentityString() + ": another snapshot is in progress");
+        }
+        CanonicalRandomAccessFiles.lockExclusively(file);
+        try {
+            SegmentsSnapshot snapshot = new SegmentsSnapshot(this, out);
+            globalMutableStateLock();
+            try {
+                snapshot.copy(bsAddress(), 0, segmentHeadersOffset);
+                this.snapshot = snapshot;
+            } finally {
+                globalMutableStateUnlock();
+            }
+            return snapshot;
+        } catch (Throwable t) {
+            try {
+                CanonicalRandomAccessFiles.unlockExclusively(file);
+            } catch (Throwable e) {
+                t.addSuppressed(e);
+            }
+            throw t;
+        }
+    }
+
+    /**
+     * Disables copy-on-write of segments and copies the global mutable state again, because
+     * segments have possibly allocated extra tiers since the start of the snapshot. Tiers,
+     * allocated by segments which were copied earlier, are not copied, so they appear empty in
+     * the copy, and are returned to the free list of tiers during recovery of the copy.
+     */
+    public final synchronized void finishSnapshot() throws IOException {
+        SegmentsSnapshot snapshot = this.snapshot;
+        if (snapshot == null)
+            return;
+        this.snapshot = null;
+        try {
+            globalMutableStateLock();
+            try {
+                long globalMutableStateAddress = globalMutableStateAddress();
+                snapshot.copy(globalMutableStateAddress, headerSize,
+                        globalMutableStateTotalUsedSize());
+                // The global mutable state is locked by this thread
+                snapshot.copyResetLock(
+                        globalMutableStateAddress + GLOBAL_MUTABLE_STATE_LOCK_OFFSET,
+                        lockAddr -> globalMutableStateLockingStrategy.reset(
+                                nativeAccess(), null, lockAddr));
+                snapshot.dataStoreSize = globalMutableState.getDataStoreSize();
+            } finally {
+                globalMutableStateUnlock();
+            }
+        } finally {
+            CanonicalRandomAccessFiles.unlockExclusively(file);
+        }
+    }
+
+    /**
+     * Copies the segment into the snapshot in progress, if there is one and the segment is not
+     * copied yet. Should be called after the update or the write lock of the segment is acquired,
+     * before any modifications of the segment.
+     */
+    public final void beforeSegmentWrite(int segmentIndex) {
+        SegmentsSnapshot snapshot = this.snapshot;
+        if (snapshot != null)
+            snapshot.copySegmentBeforeWrite(segmentIndex);
+    }
+
+    /**
+     * @return the time between the moment when a segment was first marked dirty and the end of
+     * the sync, for the latest sync of dirty segments, or 0 if dirty segments are not tracked
+     * @see #establishDirtySegmentsSync
+     */
+    public final long lastDirtySegmentsSyncLagNanos() {
+        DirtySegmentsSyncTask syncTask = dirtySegmentsSyncTask;
+        return syncTask != null ? syncTask.lastSyncLagNanos() : 0;
+    }
+
+    /**
+     * @return the average number of bytes per second synced by the background sync of dirty
+     * segments, or 0 if dirty segments are not tracked
+     * @see #establishDirtySegmentsSync
+     */
+    public final double dirtySegmentsSyncThroughput() {
+        DirtySegmentsSyncTask syncTask = dirtySegmentsSyncTask;
+        return syncTask != null ? syncTask.syncThroughput() : 0.0;
     }
 
     private void allocateTierBulk() throws IOException {
         int allocatedExtraTierBulks = globalMutableState.getAllocatedExtraTierBulks();
 
+        if (persisted()) {
+            // fail with IOException rather than crash on page fault, if the disk is full
+            preallocate(bulkOffset(allocatedExtraTierBulks), tierBulkSizeInBytes);
+        }
         mapTierBulks(allocatedExtraTierBulks);
 
         long firstTierIndex = extraTierIndexToTierIndex(allocatedExtraTierBulks * tiersInBulk);
@@ -820,7 +1697,12 @@ public abstract class VanillaChronicleHash<K,
 
     public void msync() throws IOException {
         if (persisted()) {
-            msync(bsAddress(), bs.capacity());
+            if (reservedExtraTiers > 0) {
+                // don't msync reserved, but not yet allocated tier bulks
+                msync(bsAddress(), min(bs.capacity(), globalMutableState.getDataStoreSize()));
+            } else {
+                msync(bsAddress(), bs.capacity());
+            }
         }
     }
 
@@ -838,6 +1720,112 @@ public abstract class VanillaChronicleHash<K,
         }
     }
 
+    /**
+     * Returns the pages, lying entirely within the given range of the tier with the given index,
+     * back to the OS: via {@code madvise(MADV_DONTNEED)} if this hash is in-memory, or by punching
+     * a hole in the persistence file, otherwise. The released memory reads as zeros afterwards.
+     * Currently this is supported only on Linux, on other platforms this method is a no-op.
+     *
+     * @return the number of bytes released
+     */
+    public final long releaseTierMemory(long tierIndex, long fromOffset, long toOffset) {
+        // Pages of the huge page pool could be released only as a whole
+        if (!OS.isLinux() || hugePages == HugePages.HUGETLB)
+            return 0;
+        long tierBaseAddr = tierIndexToBaseAddr(tierIndex);
+        long fromAddr = pageAlign(tierBaseAddr + fromOffset);
+        long toAddr = (tierBaseAddr + toOffset) & ~(OS.pageSize() - 1);
+        if (fromAddr >= toAddr)
+            return 0;
+        long length = toAddr - fromAddr;
+        try {
+            if (persisted()) {
+                punchHole(tierFileOffset(tierIndex) + (fromAddr - tierBaseAddr), length);
+            } else {
+                PosixMadvise.madvise(fromAddr, length, PosixMadvise.MADV_DONTNEED);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(toIdentityString(), e);
+        }
+        return length;
+    }
+
+    /**
+     * Releases the memory of all extra tiers in the free list, except the tier counters areas,
+     * which hold the links of the list. If hash lookups are {@linkplain #lockHashLookups locked}
+     * in memory, they are not released either: {@code madvise(MADV_DONTNEED)} fails on locked
+     * pages, and the hash lookup would be locked again, when the tier is reused.
+     *
+     * @return the number of bytes released
+     */
+    public final long releaseFreeTiersMemory() {
+        if (!OS.isLinux() || readOnly)
+            return 0;
+        globalMutableStateLock();
+        try {
+            long released = 0;
+            long tierIndex = globalMutableState.getFirstFreeTierIndex();
+            while (tierIndex > 0) {
+                // the hash lookup and the free list of a free tier are expected to be zeroed
+                // out, that is exactly what the released memory reads as
+                if (!lockHashLookups)
+                    released += releaseTierMemory(tierIndex, 0, tierHashLookupOuterSize);
+                long countersAreaEnd = tierHashLookupOuterSize + TIER_COUNTERS_AREA_SIZE;
+                released += releaseTierMemory(tierIndex, countersAreaEnd, tierSize);
+                long tierCountersAreaAddr =
+                        tierIndexToBaseAddr(tierIndex) + tierHashLookupOuterSize;
+                tierIndex = TierCountersArea.nextTierIndex(tierCountersAreaAddr);
+            }
+            return released;
+        } finally {
+            globalMutableStateUnlock();
+        }
+    }
+
+    private void punchHole(long offset, long length) throws IOException {
+        LinuxFallocate.punchHole(fileDescriptor(), offset, length);
+    }
+
+    private synchronized int fileDescriptor() throws IOException {
+        if (fileDescriptor < 0) {
+            int fd = LinuxFallocate.openFile(file);
+            addCloseable(() -> LinuxFallocate.closeFile(fd));
+            fileDescriptor = fd;
+        }
+        return fileDescriptor;
+    }
+
+    /**
+     * Allocates disk space for the data store of the given size, and {@link
+     * #preallocatedTierBulks} beyond the main segments area, when the map is created, opened or
+     * recovered.
+     */
+    private void preallocateDataStore(long dataStoreSize, long sizeInBytesWithoutTiers)
+            throws IOException {
+        preallocate(0, max(dataStoreSize,
+                sizeInBytesWithoutTiers + preallocatedTierBulks * tierBulkSizeInBytes));
+    }
+
+    /**
+     * Allocates disk space for the given range of the persistence file, if {@link
+     * #preallocatedTierBulks} is configured. Supported only on Linux, elsewhere the file is grown
+     * lazily. Read-only files are never preallocated.
+     */
+    private void preallocate(long offset, long length) throws IOException {
+        if (preallocatedTierBulks >= 0 && !readOnly && OS.isLinux())
+            LinuxFallocate.preallocate(fileDescriptor(), offset, length);
+    }
+
+    long tierFileOffset(long tierIndex) {
+        long tierIndexMinusOne = tierIndex - 1;
+        if (tierIndexMinusOne < actualSegments)
+            return segmentOffset(tierIndexMinusOne);
+        long extraTierIndex = tierIndexMinusOne - actualSegments;
+        int bulkIndex = (int) (extraTierIndex >> log2TiersInBulk);
+        return bulkOffset(bulkIndex) + tierBulkInnerOffsetToTiers +
+                (extraTierIndex & (tiersInBulk - 1)) * tierSize;
+    }
+
     public void linkAndZeroOutFreeTiers(long firstTierIndex, long lastTierIndex) {
         for (long tierIndex = firstTierIndex; tierIndex <= lastTierIndex; tierIndex++) {
             long tierOffset = tierBytesOffset(tierIndex);
@@ -851,6 +1839,38 @@ public abstract class VanillaChronicleHash<K,
         }
     }
 
+    /**
+     * Returns the chain of extra tiers, starting from the tier with the given index, to the
+     * global free list. The chain should be already unlinked from the segment by the caller,
+     * holding the segment's write lock.
+     */
+    public final void freeTierChain(long firstTierIndex) {
+        long tiers = 0;
+        long lastTierCountersAreaAddr = 0;
+        for (long tierIndex = firstTierIndex; tierIndex != 0; tiers++) {
+            long tierOffset = tierBytesOffset(tierIndex);
+            BytesStore tierBytesStore = tierBytesStore(tierIndex);
+            long tierCountersAreaAddr =
+                    tierBytesStore.addressForRead(0) + tierOffset + tierHashLookupOuterSize;
+            long nextTierIndex = TierCountersArea.nextTierIndex(tierCountersAreaAddr);
+            zeroOutNewlyMappedTier(tierBytesStore, tierOffset);
+            // segment chain links are reused as free list links
+            TierCountersArea.nextTierIndex(tierCountersAreaAddr, nextTierIndex);
+            lastTierCountersAreaAddr = tierCountersAreaAddr;
+            tierIndex = nextTierIndex;
+        }
+        globalMutableStateLock();
+        try {
+            TierCountersArea.nextTierIndex(lastTierCountersAreaAddr,
+                    globalMutableState.getFirstFreeTierIndex());
+            globalMutableState.setFirstFreeTierIndex(firstTierIndex);
+            globalMutableState.setExtraTiersInUse(
+                    globalMutableState.getExtraTiersInUse() - tiers);
+        } finally {
+            globalMutableStateUnlock();
+        }
+    }
+
     public long extraTierIndexToTierIndex(long extraTierIndex) {
         return actualSegments + extraTierIndex + 1;
     }
@@ -861,13 +1881,29 @@ public abstract class VanillaChronicleHash<K,
         long tierIndexMinusOne = tierIndex - 1;
         if (tierIndexMinusOne < actualSegments)
             return segmentBaseAddr((int) tierIndexMinusOne);
+        long extraTierIndex = tierIndexMinusOne - actualSegments;
+        if (extraTierIndex < reservedExtraTiers)
+            return reservedTierBulksAddr + reservedTierOffset(extraTierIndex);
         return extraTierIndexToBaseAddr(tierIndexMinusOne);
     }
 
+    /**
+     * @return offset of the tier from {@link #reservedTierBulksAddr}. {@link #tierBulkOffsets} of
+     * the reserved bulks are appended in {@link #allocateTierBulk()}, or lazily in {@link
+     * #extraTierBulkData(int)}, if the bulk is allocated by another process
+     */
+    private long reservedTierOffset(long extraTierIndex) {
+        long bulkIndex = extraTierIndex >> log2TiersInBulk;
+        return bulkIndex * tierBulkSizeInBytes + tierBulkInnerOffsetToTiers +
+                (extraTierIndex & (tiersInBulk - 1)) * tierSize;
+    }
+
     public BytesStore tierBytesStore(long tierIndex) {
         long tierIndexMinusOne = tierIndex - 1;
-        if (tierIndexMinusOne < actualSegments)
+        if (tierIndexMinusOne < actualSegments ||
+                tierIndexMinusOne - actualSegments < reservedExtraTiers) {
             return bs;
+        }
         return tierBulkData(tierIndexMinusOne).bytesStore;
     }
 
@@ -876,6 +1912,8 @@ public abstract class VanillaChronicleHash<K,
         if (tierIndexMinusOne < actualSegments)
             return segmentOffset(tierIndexMinusOne);
         long extraTierIndex = tierIndexMinusOne - actualSegments;
+        if (extraTierIndex < reservedExtraTiers)
+            return reservedTierBulksAddr - bsAddress() + reservedTierOffset(extraTierIndex);
         int bulkIndex = (int) (extraTierIndex >> log2TiersInBulk);
         if (bulkIndex >= tierBulkOffsets.size())
             mapTierBulks(bulkIndex);
@@ -885,7 +1923,14 @@ public abstract class VanillaChronicleHash<K,
 
     private TierBulkData tierBulkData(long tierIndexMinusOne) {
         long extraTierIndex = tierIndexMinusOne - actualSegments;
-        int bulkIndex = (int) (extraTierIndex >> log2TiersInBulk);
+        return extraTierBulkData((int) (extraTierIndex >> log2TiersInBulk));
+    }
+
+    /**
+     * @return the data of the allocated extra tier bulk with the given index, mapping the bulk
+     * first, if it is allocated by another process
+     */
+    public final TierBulkData extraTierBulkData(int bulkIndex) {
         if (bulkIndex >= tierBulkOffsets.size())
             mapTierBulks(bulkIndex);
         return tierBulkOffsets.get(bulkIndex);
@@ -920,6 +1965,17 @@ public abstract class VanillaChronicleHash<K,
     }
 
     private void mapTierBulksMapped(int upToBulkIndex) throws IOException {
+        int firstReservedBulkIndex = tierBulkOffsets.size();
+        long reservedTierBulks = reservedExtraTiers >> log2TiersInBulk;
+        if (firstReservedBulkIndex < reservedTierBulks) {
+            int upToReservedBulkIndex = (int) min(upToBulkIndex, reservedTierBulks - 1);
+            // the bulks are already mapped, only need to grow the file
+            growFile(bulkOffset(upToReservedBulkIndex + 1));
+            appendBulkData(firstReservedBulkIndex, upToReservedBulkIndex, bs,
+                    bulkOffset(firstReservedBulkIndex));
+            if (upToReservedBulkIndex == upToBulkIndex)
+                return;
+        }
         int firstBulkToMapIndex = tierBulkOffsets.size();
         int bulksToMap = upToBulkIndex + 1 - firstBulkToMapIndex;
         long mapSize = bulksToMap * tierBulkSizeInBytes;
@@ -949,19 +2005,53 @@ public abstract class VanillaChronicleHash<K,
      */
     private NativeBytesStore map(long mapSize, long mappingOffsetInFile) throws IOException {
         mapSize = pageAlign(mapSize);
-        long minFileSize = mappingOffsetInFile + mapSize;
-        FileChannel fileChannel = raf.getChannel();
-        if (fileChannel.size() < minFileSize) {
+        return map(mapSize, mappingOffsetInFile, mappingOffsetInFile + mapSize);
+    }
+
+    /**
+     * Maps the given region of the file, growing the file up to {@code minFileSize}, which could
+     * be less than the end of the mapped region. The part of the mapping beyond the end of the
+     * file must not be accessed until the file is grown further.
+     */
+    private NativeBytesStore map(long mapSize, long mappingOffsetInFile, long minFileSize)
+            throws IOException {
+        mapSize = pageAlign(mapSize);
+        growFile(minFileSize);
+        long address = OS.map(raf.getChannel(), readOnly ? READ_ONLY : READ_WRITE,
+                mappingOffsetInFile, mapSize);
+        resources.addMemoryResource(address, mapSize);
+        if (hugePages != null && hugePages != HugePages.NONE && OS.isLinux())
+            adviseHugePages(address, mapSize);
+        return new NativeBytesStore(address, mapSize, null, false);
+    }
+
+    /**
+     * The advice is rejected by the kernel, if it is built without transparent huge pages
+     * support, that is not an error. Transparent huge pages back mappings of files only on tmpfs
+     * (e. g. {@code /dev/shm}), if enabled in {@code
+     * /sys/kernel/mm/transparent_hugepage/shmem_enabled}.
+     */
+    private static void adviseHugePages(long address, long mapSize) {
+        try {
+            PosixMadvise.madvise(address, mapSize, PosixMadvise.MADV_HUGEPAGE);
+        } catch (IOException ignore) {
+            // pages of the default size are used
+        }
+    }
+
+    private void growFile(long minFileSize) throws IOException {
+        // The data store size is checked against the file length on opening, the mapping of
+        // a read-only file could extend beyond the end of the file only within the last page
+        if (readOnly)
+            return;
+        if (raf.getChannel().size() < minFileSize) {
             // In MappedFile#acquireByteStore(), this is wrapped with fileLock(), to avoid race
-            // condition between processes. This map() method is called either when a new tier is
+            // condition between processes. This method is called either when a new tier is
             // allocated (in this case concurrent access is mutually excluded by
             // globalMutableStateLock), or on map creation, when race condition should be excluded
             // by self-bootstrapping header spec
             raf.setLength(minFileSize);
         }
-        long address = OS.map(fileChannel, READ_WRITE, mappingOffsetInFile, mapSize);
-        resources.addMemoryResource(address, mapSize);
-        return new NativeBytesStore(address, mapSize, null, false);
     }
 
     private long bulkOffset(int bulkIndex) {
@@ -977,11 +2067,34 @@ public abstract class VanillaChronicleHash<K,
     }
 
     private BytesStore nativeBytesStoreWithFixedCapacity(long capacity) {
+        if ((hugePages == HugePages.TRANSPARENT || hugePages == HugePages.HUGETLB) &&
+                OS.isLinux()) {
+            return hugePagesBytesStoreWithFixedCapacity(capacity);
+        }
         long address = OS.memory().allocate(capacity);
         resources.addMemoryResource(address, capacity);
         return new NativeBytesStore<>(address, capacity, null, false);
     }
 
+    /**
+     * Maps anonymous memory, aligned to {@link #HUGE_PAGE_SIZE}, instead of {@code malloc()}, so
+     * that huge pages could back the whole allocation.
+     */
+    private BytesStore hugePagesBytesStoreWithFixedCapacity(long capacity) {
+        long size = (capacity + HUGE_PAGE_SIZE - 1) & ~(HUGE_PAGE_SIZE - 1);
+        boolean hugeTlb = hugePages == HugePages.HUGETLB;
+        try {
+            long address = PosixMmap.mmapAnonymous(size, HUGE_PAGE_SIZE, hugeTlb);
+            resources.addMemoryResource(address, size, true);
+            if (!hugeTlb)
+                adviseHugePages(address, size);
+            return new NativeBytesStore<>(address, capacity, null, false);
+        } catch (IOException e) {
+            throw new RuntimeException(toIdentityString() + ": failed to allocate " + size +
+                    " bytes backed by " + hugePages + " huge pages", e);
+        }
+    }
+
     private void appendBulkData(int firstBulkToMapIndex, int upToBulkIndex, BytesStore extraStore,
                                 long offsetWithinMapping) {
         TierBulkData firstMappedBulkData = new TierBulkData(extraStore, offsetWithinMapping);
@@ -990,6 +2103,87 @@ public abstract class VanillaChronicleHash<K,
             tierBulkOffsets.add(new TierBulkData(firstMappedBulkData,
                     offsetWithinMapping += tierBulkSizeInBytes));
         }
+        if (lockHashLookups || randomEntrySpaceAccess) {
+            for (int bulkIndex = firstBulkToMapIndex; bulkIndex <= upToBulkIndex; bulkIndex++) {
+                TierBulkData bulkData = tierBulkOffsets.get(bulkIndex);
+                for (long tier = 0; tier < tiersInBulk; tier++) {
+                    applyResidencyControls(tierAddr(bulkData, tier));
+                }
+            }
+        }
+    }
+
+    /**
+     * Applies the configured residency controls to the segment headers and the first tiers of
+     * all segments. Extra tiers are covered when their bulks are mapped or allocated.
+     */
+    public void establishResidencyControls() {
+        if (!lockHashLookups && !randomEntrySpaceAccess)
+            return;
+        if (lockHashLookups)
+            lockMemory(bsAddress() + segmentHeadersOffset,
+                    ((long) actualSegments) * segmentHeaderSize);
+        for (int segmentIndex = 0; segmentIndex < actualSegments; segmentIndex++) {
+            applyResidencyControls(segmentBaseAddr(segmentIndex));
+        }
+    }
+
+    /**
+     * Locks the hash lookup and the counters area of the tier in memory, so that the lookups
+     * in the tier don't page fault under memory pressure, while the entries might be paged out.
+     * The entry space, accessed randomly, is excluded from read ahead.
+     */
+    private void applyResidencyControls(long tierBaseAddr) {
+        long entrySpaceOffset =
+                tierHashLookupOuterSize + TIER_COUNTERS_AREA_SIZE + tierFreeListOuterSize;
+        if (lockHashLookups)
+            lockMemory(tierBaseAddr, tierHashLookupOuterSize + TIER_COUNTERS_AREA_SIZE);
+        if (randomEntrySpaceAccess && OS.isLinux()) {
+            // only the pages, lying entirely within the entry space
+            long fromAddr = pageAlign(tierBaseAddr + entrySpaceOffset);
+            long toAddr = (tierBaseAddr + entrySpaceOffset + tierEntrySpaceOuterSize) &
+                    ~(OS.pageSize() - 1);
+            if (fromAddr < toAddr) {
+                try {
+                    PosixMadvise.madvise(fromAddr, toAddr - fromAddr, PosixMadvise.MADV_RANDOM);
+                } catch (IOException e) {
+                    throw new RuntimeException(toIdentityString(), e);
+                }
+            }
+        }
+    }
+
+    private void lockMemory(long address, long length) {
+        if (OS.isWindows())
+            return;
+        try {
+            // mlock() requires page-aligned address on some platforms
+            long alignedAddress = address & ~(OS.pageSize() - 1);
+            PosixMlock.mlock(alignedAddress, length + (address - alignedAddress));
+            lockedMemory.addAndGet(length);
+        } catch (IOException e) {
+            if (memoryLockFailures.getAndIncrement() == 0) {
+                LOG.warn("{}: failed to lock hash lookups in memory, likely RLIMIT_MEMLOCK " +
+                        "is exceeded, see ulimit -l. Further failures are only counted",
+                        toIdentityString(), e);
+            }
+        }
+    }
+
+    /**
+     * @return the total size of the segment headers, hash lookups and tier counters areas,
+     * locked in memory by this hash, see {@link
+     * ChronicleMapBuilder#lockHashLookups(boolean)}
+     */
+    public final long lockedMemory() {
+        return lockedMemory.get();
+    }
+
+    /**
+     * @return the number of regions of this hash, which failed to be locked in memory
+     */
+    public final long memoryLockFailures() {
+        return memoryLockFailures.get();
     }
 
     protected void addContext(ContextHolder contextHolder) {
@@ -21,8 +21,26 @@ public interface ChecksumStrategy {
 
     int CHECKSUM_STORED_BYTES = 4;
 
+    /**
+     * In Chronicle Hashes with deferred checksums, the highest bit of the stored checksum means
+     * that the checksum is not computed yet, computed checksums have this bit cleared.
+     */
+    int STALE_CHECKSUM_BIT = 0x80000000;
+
     void computeAndStoreChecksum();
 
+    /**
+     * Stores a checksum with {@link #STALE_CHECKSUM_BIT}, that should be replaced by {@link
+     * #computeAndStoreChecksum()} later.
+     */
+    void markChecksumStale();
+
+    /**
+     * @return {@code true} if the stored checksum is marked by {@link #markChecksumStale()} and
+     * not computed yet
+     */
+    boolean checksumStale();
+
     boolean innerCheckSum();
 
     int computeChecksum();
@@ -18,6 +18,9 @@
 package net.openhft.chronicle.hash.impl.stage.entry;
 
 import net.openhft.chronicle.algo.hashing.LongHashFunction;
+import net.openhft.chronicle.hash.ChecksumAlgorithm;
+import net.openhft.chronicle.hash.impl.VanillaChronicleHashHolder;
+import net.openhft.chronicle.hash.impl.util.Crc32C;
 import net.openhft.sg.StageRef;
 import net.openhft.sg.Staged;
 
@@ -26,6 +29,8 @@ import static net.openhft.chronicle.hash.impl.stage.entry.ChecksumHashing.hash8T
 @Staged
 public class HashEntryChecksumStrategy implements ChecksumStrategy {
 
+    @StageRef
+    VanillaChronicleHashHolder<?> hh;
     @StageRef
     SegmentStages s;
     @StageRef
@@ -39,6 +44,18 @@ public class HashEntryChecksumStrategy implements ChecksumStrategy {
         s.segmentBS.writeInt(e.entryEnd(), checksum);
     }
 
+    @Override
+    public void markChecksumStale() {
+        s.segmentBS.writeInt(e.entryEnd(), STALE_CHECKSUM_BIT);
+    }
+
+    @Override
+    public boolean checksumStale() {
+        // Any other value with the highest bit set is a corrupted checksum, not a stale one,
+        // so that it fails verification
+        return hh.h().deferredChecksums && storedChecksum() == STALE_CHECKSUM_BIT;
+    }
+
     @Override
     public int computeChecksum() {
         long keyHashCode = h.keyHashCode();
@@ -49,17 +66,23 @@ public class HashEntryChecksumStrategy implements ChecksumStrategy {
         long checksum;
         if (len > 0) {
             long addr = s.tierBaseAddr + keyEnd;
-            long payloadChecksum = LongHashFunction.xx_r39().hashMemory(addr, len);
+            long payloadChecksum = hh.h().checksumAlgorithm == ChecksumAlgorithm.CRC32C ?
+                    Crc32C.hashMemory(addr, len) :
+                    LongHashFunction.xx_r39().hashMemory(addr, len);
             checksum = hash8To16Bytes(e.keySize, keyHashCode, payloadChecksum);
         } else {
             // non replicated ChronicleSet has no payload
             checksum = keyHashCode;
         }
-        return (int) ((checksum >>> 32) ^ checksum);
+        int entryChecksum = (int) ((checksum >>> 32) ^ checksum);
+        return hh.h().deferredChecksums ? entryChecksum & ~STALE_CHECKSUM_BIT : entryChecksum;
     }
 
     @Override
     public boolean innerCheckSum() {
+        // The entry bytes couldn't be verified until the deferred checksum is computed
+        if (checksumStale())
+            return true;
         int oldChecksum = storedChecksum();
         int checksum = computeChecksum();
         return oldChecksum == checksum;
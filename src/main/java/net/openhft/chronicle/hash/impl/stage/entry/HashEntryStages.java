@@ -157,11 +157,30 @@ public abstract class HashEntryStages<K> implements HashEntry<K>, ChecksumEntry
     abstract boolean delayedUpdateChecksumInit();
 
     public void closeDelayedUpdateChecksum() {
-        if (hh.h().checksumEntries)
-            hashEntryChecksumStrategy.computeAndStoreChecksum();
+        if (hh.h().checksumEntries) {
+            if (hh.h().deferredChecksums) {
+                hashEntryChecksumStrategy.markChecksumStale();
+                hh.h().markChecksumsDeferred(s.segmentIndex);
+            } else {
+                hashEntryChecksumStrategy.computeAndStoreChecksum();
+            }
+        }
         delayedUpdateChecksum = false;
     }
 
+    /**
+     * Computes and stores the checksum of this entry, if its computation was deferred. Should be
+     * called when at least the update lock is held.
+     *
+     * @return {@code true} if the checksum was stale and is computed
+     */
+    public boolean computeDeferredChecksum() {
+        if (!checksumStrategy.checksumStale() || delayedUpdateChecksumInit())
+            return false;
+        checksumStrategy.computeAndStoreChecksum();
+        return true;
+    }
+
     @Override
     public void updateChecksum() {
         checkOnEachPublicOperation.checkOnEachPublicOperation();
@@ -25,6 +25,16 @@ public enum NoChecksumStrategy implements ChecksumStrategy {
         throw new UnsupportedOperationException("Checksum is not stored in this Chronicle Hash");
     }
 
+    @Override
+    public void markChecksumStale() {
+        throw new UnsupportedOperationException("Checksum is not stored in this Chronicle Hash");
+    }
+
+    @Override
+    public boolean checksumStale() {
+        return false;
+    }
+
     @Override
     public boolean innerCheckSum() {
         return true;
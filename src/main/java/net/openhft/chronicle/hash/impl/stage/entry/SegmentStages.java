@@ -119,8 +119,9 @@ public abstract class SegmentStages implements SegmentLock, LocksInterface {
     public abstract boolean segmentIndexInit();
 
     private void initSegmentHeader() {
+        hh.h().ensureSegmentRecovered(segmentIndex);
         segmentHeaderAddress = hh.h().segmentHeaderAddress(segmentIndex);
-        segmentHeader = BigSegmentHeader.INSTANCE;
+        segmentHeader = hh.h().segmentHeader;
     }
 
     public long tierEntries() {
@@ -172,6 +173,34 @@ public abstract class SegmentStages implements SegmentLock, LocksInterface {
         }
     }
 
+    /**
+     * @return the timestamp, not later than the timestamps of all deleted entries in the tier, or
+     * 0 if unknown. Meaningful only if {@link #tierDeleted()} is positive.
+     */
+    public long tierOldestDeletedTimestamp() {
+        return TierCountersArea.oldestDeletedTimestamp(tierCountersAreaAddr());
+    }
+
+    public void tierOldestDeletedTimestamp(long timestamp) {
+        TierCountersArea.oldestDeletedTimestamp(tierCountersAreaAddr(), timestamp);
+    }
+
+    /**
+     * Accounts a new deleted entry in the tier, with the given timestamp of the deletion.
+     */
+    public void incrementTierDeleted(long timestamp) {
+        long deleted = tierDeleted();
+        if (deleted == 0) {
+            tierOldestDeletedTimestamp(timestamp);
+        } else {
+            long oldest = tierOldestDeletedTimestamp();
+            // 0 means unknown, e. g. in stores, created by older versions of the library
+            if (oldest != 0 && timestamp < oldest)
+                tierOldestDeletedTimestamp(timestamp);
+        }
+        tierDeleted(deleted + 1);
+    }
+
     public long nextTierIndex() {
         if (tier == 0) {
             return segmentHeader.nextTierIndex(segmentHeaderAddress);
@@ -280,12 +309,15 @@ public abstract class SegmentStages implements SegmentLock, LocksInterface {
 
     @Stage("Locks")
     public void incrementUpdate() {
-        rootContextLockedOnThisSegment.changeAndGetTotalUpdateLockCount(1);
+        // Some writes, e. g. of delayed entry checksums, are done holding only the update lock
+        if (rootContextLockedOnThisSegment.changeAndGetTotalUpdateLockCount(1) == 1)
+            beforeSegmentWrite();
     }
 
     @Stage("Locks")
     public void incrementWrite() {
-        rootContextLockedOnThisSegment.changeAndGetTotalWriteLockCount(1);
+        if (rootContextLockedOnThisSegment.changeAndGetTotalWriteLockCount(1) == 1)
+            beforeSegmentWrite();
     }
 
     public abstract boolean locksInit();
@@ -386,6 +418,7 @@ public abstract class SegmentStages implements SegmentLock, LocksInterface {
                 return;
             case WRITE_LOCKED:
                 if (decrementWrite() == 0) {
+                    markSegmentDirty();
                     if (!updateZero()) {
                         segmentHeader.downgradeWriteToUpdateLock(segmentHeaderAddress);
                     } else {
@@ -462,10 +495,25 @@ public abstract class SegmentStages implements SegmentLock, LocksInterface {
                 segmentHeader.updateUnlock(segmentHeaderAddress);
                 return;
             case WRITE_LOCKED:
+                markSegmentDirty();
                 segmentHeader.writeUnlock(segmentHeaderAddress);
         }
     }
 
+    /**
+     * Should be called when the write lock of the segment is going to be released or downgraded.
+     */
+    public void markSegmentDirty() {
+        hh.h().markSegmentDirty(segmentIndex);
+    }
+
+    /**
+     * Should be called when the update or the write lock of the segment is just acquired.
+     */
+    public void beforeSegmentWrite() {
+        hh.h().beforeSegmentWrite(segmentIndex);
+    }
+
     @Stage("Locks")
     public void setLocalLockState(LocalLockState newState) {
         boolean isLocked = localLockState != UNLOCKED && localLockState != null;
@@ -601,7 +649,9 @@ public abstract class SegmentStages implements SegmentLock, LocksInterface {
         long nextTierIndex = nextTierIndex();
         if (nextTierIndex == 0) {
             log.LOG.debug("Allocate tier for segment # {}, tier {}", segmentIndex, tier + 1);
-            nextTierIndex = h.allocateTier();
+            nextTierIndex = h.takeReservedTier(segmentIndex);
+            if (nextTierIndex == 0)
+                nextTierIndex = h.allocateTier();
             nextTierIndex(nextTierIndex);
             long prevTierIndex = tierIndex;
 
@@ -611,6 +661,7 @@ public abstract class SegmentStages implements SegmentLock, LocksInterface {
             TierCountersArea.tier(tierCountersAreaAddr(), tier);
             nextTierIndex(0);
             prevTierIndex(prevTierIndex);
+            h.requestSegmentSkewCheck(segmentIndex);
         } else {
             initSegmentTier(tier + 1, nextTierIndex);
         }
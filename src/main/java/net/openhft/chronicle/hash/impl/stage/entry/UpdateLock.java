@@ -203,6 +203,7 @@ public class UpdateLock implements InterProcessLock {
             case WRITE_LOCKED:
                 entry.closeDelayedUpdateChecksum();
                 if (s.decrementWrite() == 0) {
+                    s.markSegmentDirty();
                     if (!s.updateZero()) {
                         s.segmentHeader.downgradeWriteToUpdateLock(s.segmentHeaderAddress);
                     } else {
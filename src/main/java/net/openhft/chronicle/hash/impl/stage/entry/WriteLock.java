@@ -283,8 +283,10 @@ public class WriteLock implements InterProcessLock {
                 return;
             case WRITE_LOCKED:
                 entry.closeDelayedUpdateChecksum();
-                if (s.decrementWrite() == 0)
+                if (s.decrementWrite() == 0) {
+                    s.markSegmentDirty();
                     s.segmentHeader.downgradeWriteToUpdateLock(s.segmentHeaderAddress);
+                }
                 s.incrementUpdate();
                 s.setLocalLockState(UPDATE_LOCKED);
         }
@@ -105,6 +105,7 @@ public abstract class HashSegmentIteration<K, E extends HashEntry<K>>
     public <T> boolean forEachTierEntryWhile(
             Predicate<? super T> predicate,
             int currentTier, long currentTierBaseAddr, long tierIndex) {
+        hookBeforeTierIteration();
         long leftEntries = tierEntriesForIteration();
         boolean interrupted = false;
         long startPos = 0L;
@@ -171,12 +172,23 @@ public abstract class HashSegmentIteration<K, E extends HashEntry<K>>
                     "but according to tier counters there should be " + leftEntries +
                     " more entries. Size diverged?");
         }
+        if (!interrupted)
+            hookAfterTierIteration();
         return interrupted;
     }
 
+    public void hookBeforeTierIteration() {
+    }
+
     public void hookAfterEachIteration() {
     }
 
+    /**
+     * Called after all entries of the tier are tested, if the iteration is not interrupted
+     */
+    public void hookAfterTierIteration() {
+    }
+
     @Override
     public void forEachSegmentEntry(Consumer<? super E> action) {
         forEachSegmentEntryWhile(e -> {
@@ -43,10 +43,13 @@ public class IterationKeyHashCode implements KeyHashCode {
     void initKeyHash() {
         long addr = s.tierBaseAddr + e.keyOffset;
         long len = e.keySize;
-        if (len == 4 && hh.h().keyDataAccess instanceof IntegerDataAccess) {
+        LongHashFunction keyHashFunction = hh.h().keyHashFunction;
+        // Should be consistent with IntegerDataAccess.hash()
+        if (len == 4 && hh.h().keyDataAccess instanceof IntegerDataAccess &&
+                keyHashFunction == LongHashFunction.xx_r39()) {
             keyHash = WrongXxHash.hashInt(OS.memory().readInt(addr));
         } else {
-            keyHash = LongHashFunction.xx_r39().hashMemory(addr, len);
+            keyHash = keyHashFunction.hashMemory(addr, len);
         }
     }
 
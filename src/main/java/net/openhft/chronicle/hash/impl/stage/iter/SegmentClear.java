@@ -0,0 +1,59 @@
+/*
+ *      Copyright (C) 2012, 2016  higherfrequencytrading.com
+ *      Copyright (C) 2016 Roman Leventov
+ *
+ *      This program is free software: you can redistribute it and/or modify
+ *      it under the terms of the GNU Lesser General Public License as published by
+ *      the Free Software Foundation, either version 3 of the License.
+ *
+ *      This program is distributed in the hope that it will be useful,
+ *      but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *      MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *      GNU Lesser General Public License for more details.
+ *
+ *      You should have received a copy of the GNU Lesser General Public License
+ *      along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.openhft.chronicle.hash.impl.stage.iter;
+
+import net.openhft.chronicle.hash.impl.VanillaChronicleHash;
+import net.openhft.chronicle.hash.impl.VanillaChronicleHashHolder;
+import net.openhft.chronicle.hash.impl.stage.entry.SegmentStages;
+import net.openhft.chronicle.map.impl.IterationContext;
+import net.openhft.sg.StageRef;
+import net.openhft.sg.Staged;
+
+import static net.openhft.chronicle.algo.bytes.Access.nativeAccess;
+
+@Staged
+public abstract class SegmentClear implements IterationContext {
+
+    @StageRef
+    VanillaChronicleHashHolder<?> hh;
+    @StageRef
+    SegmentStages s;
+
+    @Override
+    public void clearSegment() {
+        s.innerWriteLock.lock();
+        try {
+            VanillaChronicleHash<?, ?, ?, ?> h = hh.h();
+            s.goToFirstTier();
+            long firstExtraTierIndex = s.nextTierIndex();
+            if (firstExtraTierIndex != 0) {
+                s.nextTierIndex(0);
+                h.freeTierChain(firstExtraTierIndex);
+            }
+            // Entry space is left dirty, like in newly allocated tiers
+            nativeAccess().zeroOut(null, s.tierBaseAddr, h.tierHashLookupOuterSize);
+            s.freeList.clearAll();
+            s.tierEntries(0);
+            s.tierDeleted(0);
+            s.lowestPossiblyFreeChunk(0);
+            s.incrementModCount();
+        } finally {
+            s.innerWriteLock.unlock();
+        }
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ *      Copyright (C) 2012, 2016  higherfrequencytrading.com
+ *      Copyright (C) 2016 Roman Leventov
+ *
+ *      This program is free software: you can redistribute it and/or modify
+ *      it under the terms of the GNU Lesser General Public License as published by
+ *      the Free Software Foundation, either version 3 of the License.
+ *
+ *      This program is distributed in the hope that it will be useful,
+ *      but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *      MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *      GNU Lesser General Public License for more details.
+ *
+ *      You should have received a copy of the GNU Lesser General Public License
+ *      along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.openhft.chronicle.hash.impl.stage.iter;
+
+import net.openhft.chronicle.algo.bitset.ReusableBitSet;
+import net.openhft.chronicle.hash.impl.VanillaChronicleHash;
+import net.openhft.chronicle.hash.impl.VanillaChronicleHashHolder;
+import net.openhft.chronicle.hash.impl.stage.entry.SegmentStages;
+import net.openhft.chronicle.map.impl.IterationContext;
+import net.openhft.sg.StageRef;
+import net.openhft.sg.Staged;
+
+import static net.openhft.chronicle.algo.bitset.BitSetFrame.NOT_FOUND;
+
+@Staged
+public abstract class SegmentMemoryRelease implements IterationContext {
+
+    @StageRef
+    VanillaChronicleHashHolder<?> hh;
+    @StageRef
+    SegmentStages s;
+
+    @Override
+    public long releaseFreeSegmentMemory() {
+        // update lock excludes allocations in the segment, entries in free chunks are not
+        // accessed by readers
+        s.innerUpdateLock.lock();
+        try {
+            long released = 0;
+            s.goToFirstTier();
+            while (true) {
+                released += releaseFreeTierChunks();
+                if (!s.hasNextTier())
+                    return released;
+                s.nextTier();
+            }
+        } finally {
+            s.innerReadLock.unlock();
+        }
+    }
+
+    private long releaseFreeTierChunks() {
+        VanillaChronicleHash<?, ?, ?, ?> h = hh.h();
+        ReusableBitSet freeList = s.freeList;
+        long entrySpaceOffset = s.entrySpaceOffset;
+        long chunks = h.actualChunksPerSegmentTier;
+        long released = 0;
+        long from = freeList.nextClearBit(0);
+        while (from != NOT_FOUND && from < chunks) {
+            long to = freeList.nextSetBit(from);
+            if (to == NOT_FOUND || to > chunks)
+                to = chunks;
+            released += h.releaseTierMemory(s.tierIndex,
+                    entrySpaceOffset + from * h.chunkSize, entrySpaceOffset + to * h.chunkSize);
+            if (to == chunks)
+                break;
+            from = freeList.nextClearBit(to);
+        }
+        return released;
+    }
+}
@@ -47,19 +47,62 @@ public abstract class SegmentsRecovery implements IterationContext {
             ChronicleHashCorruptionImpl corruption) {
         VanillaChronicleHash<?, ?, ?, ?> h = hh.h();
         for (int segmentIndex = 0; segmentIndex < h.actualSegments; segmentIndex++) {
-            s.initSegmentIndex(segmentIndex);
-            resetSegmentLock(corruptionListener, corruption);
-            zeroOutFirstSegmentTierCountersArea(corruptionListener, corruption);
-            tierRecovery.recoverTier(segmentIndex, corruptionListener, corruption);
+            recoverSegment(segmentIndex, corruptionListener, corruption);
         }
+        recoverExtraTiers(corruptionListener, corruption);
+        for (int segmentIndex = 0; segmentIndex < h.actualSegments; segmentIndex++) {
+            removeDuplicatesInSegment(segmentIndex, corruptionListener, corruption);
+        }
+    }
+
+    @Override
+    public void recoverSegment(
+            int segmentIndex, ChronicleHashCorruption.Listener corruptionListener,
+            ChronicleHashCorruptionImpl corruption) {
+        recoverSegmentHeader(segmentIndex, corruptionListener, corruption);
+        tierRecovery.recoverTier(segmentIndex, corruptionListener, corruption);
+    }
+
+    @Override
+    public void recoverSegmentHeader(
+            int segmentIndex, ChronicleHashCorruption.Listener corruptionListener,
+            ChronicleHashCorruptionImpl corruption) {
+        s.initSegmentIndex(segmentIndex);
+        resetSegmentLock(corruptionListener, corruption);
+        resetReservedTier();
+        zeroOutFirstSegmentTierCountersArea(corruptionListener, corruption);
+    }
+
+    @Override
+    public void recoverSegmentOnFirstAccess(
+            int segmentIndex, ChronicleHashCorruption.Listener corruptionListener,
+            ChronicleHashCorruptionImpl corruption) {
+        s.initSegmentIndex(segmentIndex);
+        // The lock is released when this context is closed
+        s.innerWriteLock.lock();
+        tierRecovery.recoverTier(segmentIndex, corruptionListener, corruption);
+        removeDuplicatesInTiers(corruptionListener, corruption);
+    }
 
+    @Override
+    public void recoverExtraTiers(
+            ChronicleHashCorruption.Listener corruptionListener,
+            ChronicleHashCorruptionImpl corruption) {
+        VanillaChronicleHash<?, ?, ?, ?> h = hh.h();
         VanillaGlobalMutableState globalMutableState = h.globalMutableState();
         long storedExtraTiersInUse = globalMutableState.getExtraTiersInUse();
         long allocatedExtraTiers = globalMutableState.getAllocatedExtraTierBulks() * h.tiersInBulk;
         long expectedExtraTiersInUse =
                 Math.max(0, Math.min(storedExtraTiersInUse, allocatedExtraTiers));
+        if (storedExtraTiersInUse != expectedExtraTiersInUse) {
+            report(corruptionListener, corruption, -1, () ->
+                    format("number of extra tiers in use in global mutable state: {} is out of " +
+                            "bounds, allocated tiers: {}", storedExtraTiersInUse, allocatedExtraTiers)
+            );
+        }
         long actualExtraTiersInUse = 0;
-        long firstFreeExtraTierIndex = -1;
+        long firstFreeTierIndex = 0;
+        long lastFreeTierIndex = 0;
         for (long extraTierIndex = 0; extraTierIndex < expectedExtraTiersInUse; extraTierIndex++) {
             long tierIndex = h.extraTierIndexToTierIndex(extraTierIndex);
             // `tier` is unused in recoverTier(), 0 should be a safe value
@@ -85,67 +128,86 @@ public abstract class SegmentsRecovery implements IterationContext {
 
                 TierCountersArea.prevTierIndex(tierCountersAreaAddr, s.tierIndex);
                 TierCountersArea.tier(tierCountersAreaAddr, s.tier + 1);
-                actualExtraTiersInUse = extraTierIndex + 1;
+                actualExtraTiersInUse++;
             } else {
-                firstFreeExtraTierIndex = extraTierIndex;
-                break;
+                // Empty tier: either emptied by removals, or reserved for some segment, but not
+                // chained yet. Not necessarily the tail of the allocated tiers, so link it into
+                // the free list individually.
+                h.linkAndZeroOutFreeTiers(tierIndex, tierIndex);
+                if (lastFreeTierIndex == 0) {
+                    firstFreeTierIndex = tierIndex;
+                } else {
+                    linkFreeTier(h, lastFreeTierIndex, tierIndex);
+                }
+                lastFreeTierIndex = tierIndex;
             }
         }
+        // The stored number is greater than the actual if there are emptied or reserved tiers,
+        // it is not a corruption
+        globalMutableState.setExtraTiersInUse(actualExtraTiersInUse);
 
-        if (storedExtraTiersInUse != actualExtraTiersInUse) {
-            long finalActualExtraTiersInUse = actualExtraTiersInUse;
-            report(corruptionListener, corruption, -1, () ->
-                    format("wrong number of actual tiers in use in global mutable state, stored: {}, " +
-                            "should be: {}", storedExtraTiersInUse, finalActualExtraTiersInUse)
-            );
-            globalMutableState.setExtraTiersInUse(actualExtraTiersInUse);
-        }
-
-        long firstFreeTierIndex;
-        if (firstFreeExtraTierIndex == -1) {
-            if (allocatedExtraTiers > expectedExtraTiersInUse) {
-                firstFreeTierIndex = h.extraTierIndexToTierIndex(expectedExtraTiersInUse);
+        if (allocatedExtraTiers > expectedExtraTiersInUse) {
+            long firstNeverUsedTierIndex = h.extraTierIndexToTierIndex(expectedExtraTiersInUse);
+            long lastTierIndex = h.extraTierIndexToTierIndex(allocatedExtraTiers - 1);
+            h.linkAndZeroOutFreeTiers(firstNeverUsedTierIndex, lastTierIndex);
+            if (lastFreeTierIndex == 0) {
+                firstFreeTierIndex = firstNeverUsedTierIndex;
             } else {
-                firstFreeTierIndex = 0;
+                linkFreeTier(h, lastFreeTierIndex, firstNeverUsedTierIndex);
             }
-        } else {
-            firstFreeTierIndex = h.extraTierIndexToTierIndex(firstFreeExtraTierIndex);
-        }
-        if (firstFreeTierIndex > 0) {
-            long lastTierIndex = h.extraTierIndexToTierIndex(allocatedExtraTiers - 1);
-            h.linkAndZeroOutFreeTiers(firstFreeTierIndex, lastTierIndex);
         }
         long storedFirstFreeTierIndex = globalMutableState.getFirstFreeTierIndex();
         if (storedFirstFreeTierIndex != firstFreeTierIndex) {
-            report(corruptionListener, corruption, -1, () ->
-                    format("wrong first free tier index in global mutable state, stored: {}, " +
-                            "should be: {}", storedFirstFreeTierIndex, firstFreeTierIndex)
-            );
+            if (actualExtraTiersInUse == expectedExtraTiersInUse) {
+                // no empty tiers are returned to the free list, so the stored value should
+                // be the same
+                long finalFirstFreeTierIndex = firstFreeTierIndex;
+                report(corruptionListener, corruption, -1, () ->
+                        format("wrong first free tier index in global mutable state, stored: {}, " +
+                                "should be: {}", storedFirstFreeTierIndex, finalFirstFreeTierIndex)
+                );
+            }
             globalMutableState.setFirstFreeTierIndex(firstFreeTierIndex);
         }
+    }
 
-        removeDuplicatesInSegments(corruptionListener, corruption);
+    @Override
+    public void removeDuplicatesInSegment(
+            int segmentIndex, ChronicleHashCorruption.Listener corruptionListener,
+            ChronicleHashCorruptionImpl corruption) {
+        s.initSegmentIndex(segmentIndex);
+        removeDuplicatesInTiers(corruptionListener, corruption);
     }
 
-    private void removeDuplicatesInSegments(
+    private void removeDuplicatesInTiers(
             ChronicleHashCorruption.Listener corruptionListener,
             ChronicleHashCorruptionImpl corruption) {
-        VanillaChronicleHash<?, ?, ?, ?> h = hh.h();
-        for (int segmentIndex = 0; segmentIndex < h.actualSegments; segmentIndex++) {
-            s.initSegmentIndex(segmentIndex);
-            s.initSegmentTier();
-            s.goToLastTier();
-            while (true) {
-                tierRecovery.removeDuplicatesInSegment(corruptionListener, corruption);
-                if (s.tier > 0) {
-                    s.prevTier();
-                } else {
-                    break;
-                }
+        s.initSegmentTier();
+        s.goToLastTier();
+        while (true) {
+            tierRecovery.removeDuplicatesInSegment(corruptionListener, corruption);
+            if (s.tier > 0) {
+                s.prevTier();
+            } else {
+                break;
             }
         }
     }
 
+    private static void linkFreeTier(
+            VanillaChronicleHash<?, ?, ?, ?> h, long freeTierIndex, long nextFreeTierIndex) {
+        long tierCountersAreaAddr = h.tierIndexToBaseAddr(freeTierIndex) + h.tierHashLookupOuterSize;
+        TierCountersArea.nextTierIndex(tierCountersAreaAddr, nextFreeTierIndex);
+    }
+
+    /**
+     * All tiers, reserved for segments, are returned to the free list during recovery, because
+     * they are empty.
+     */
+    private void resetReservedTier() {
+        s.segmentHeader.reservedTierIndex(s.segmentHeaderAddress, 0);
+    }
+
     private void resetSegmentLock(
             ChronicleHashCorruption.Listener corruptionListener,
             ChronicleHashCorruptionImpl corruption) {
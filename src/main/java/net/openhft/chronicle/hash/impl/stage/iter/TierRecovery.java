@@ -320,6 +320,11 @@ public class TierRecovery {
             return -1;
         }
 
+        if (e.checksumStrategy.checksumStale()) {
+            // The checksum was deferred and not computed before the crash, so the entry couldn't
+            // be verified. Keep the entry, that is likely intact, and compute its checksum now
+            e.checksumStrategy.computeAndStoreChecksum();
+        }
         int storedChecksum = e.checksumStrategy.storedChecksum();
         int checksumFromEntry = e.checksumStrategy.computeChecksum();
         if (storedChecksum != checksumFromEntry) {
@@ -20,25 +20,47 @@ package net.openhft.chronicle.hash.impl.util;
 import net.openhft.chronicle.core.Jvm;
 
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
 import java.util.concurrent.ConcurrentHashMap;
 
 public final class CanonicalRandomAccessFiles {
 
+    /**
+     * The byte of the file, a shared lock on which is held by each process, which has the file
+     * acquired. It's far beyond any data of the file, so file locks, guarding the file creation,
+     * should not cover this byte.
+     */
+    public static final long PROCESS_LOCK_POSITION = Long.MAX_VALUE - 1;
+
     private static final ConcurrentHashMap<File, RafReference> canonicalRafs =
             new ConcurrentHashMap<>();
 
     private CanonicalRandomAccessFiles() {
     }
 
-    public static RandomAccessFile acquire(File file) throws FileNotFoundException {
+    public static RandomAccessFile acquire(File file) throws IOException {
         return canonicalRafs.compute(file, (f, ref) -> {
             if (ref == null) {
                 try {
-                    return new RafReference(new RandomAccessFile(f, "rw"));
-                } catch (FileNotFoundException e) {
+                    RandomAccessFile raf = new RandomAccessFile(f, "rw");
+                    try {
+                        // Waits, if another process holds the lock exclusively, see
+                        // lockExclusively()
+                        FileLock processLock =
+                                raf.getChannel().lock(PROCESS_LOCK_POSITION, 1, true);
+                        return new RafReference(raf, processLock);
+                    } catch (Throwable t) {
+                        try {
+                            raf.close();
+                        } catch (Throwable e) {
+                            t.addSuppressed(e);
+                        }
+                        throw t;
+                    }
+                } catch (IOException e) {
                     throw Jvm.rethrow(e);
                 }
             } else {
@@ -48,10 +70,60 @@ public final class CanonicalRandomAccessFiles {
         }).raf;
     }
 
+    /**
+     * Replaces the shared lock of this process on the acquired file with the exclusive lock, to
+     * ensure that no other process has the file acquired, until {@link #unlockExclusively(File)}
+     * is called. Other processes, going to acquire the file meanwhile, wait.
+     *
+     * @throws IllegalStateException if the file is acquired by another process, or more than once
+     * by this process, or the exclusive lock is already held by this process
+     */
+    public static void lockExclusively(File file) throws IOException {
+        changeProcessLock(file, false);
+    }
+
+    public static void unlockExclusively(File file) throws IOException {
+        changeProcessLock(file, true);
+    }
+
+    private static void changeProcessLock(File file, boolean shared) throws IOException {
+        canonicalRafs.compute(file, (f, ref) -> {
+            if (ref == null)
+                throw new IllegalStateException("file " + f + " is not acquired");
+            if (ref.processLock.isShared() == shared) {
+                throw new IllegalStateException("file " + f + " is already locked " +
+                        (shared ? "shared" : "exclusively") + " by this process");
+            }
+            if (!shared && ref.refCount > 1) {
+                throw new IllegalStateException("file " + f + " is acquired " + ref.refCount +
+                        " times in this process");
+            }
+            try {
+                FileChannel channel = ref.raf.getChannel();
+                ref.processLock.release();
+                if (!shared) {
+                    FileLock exclusiveLock = channel.tryLock(PROCESS_LOCK_POSITION, 1, false);
+                    if (exclusiveLock == null) {
+                        ref.processLock = channel.lock(PROCESS_LOCK_POSITION, 1, true);
+                        throw new IllegalStateException(
+                                "file " + f + " is accessed by another process");
+                    }
+                    ref.processLock = exclusiveLock;
+                } else {
+                    ref.processLock = channel.lock(PROCESS_LOCK_POSITION, 1, true);
+                }
+                return ref;
+            } catch (IOException e) {
+                throw Jvm.rethrow(e);
+            }
+        });
+    }
+
     public static void release(File file) throws IOException {
         canonicalRafs.computeIfPresent(file, (f, ref) -> {
             if (--ref.refCount == 0) {
                 try {
+                    // Closing of the file releases the process lock
                     ref.raf.close();
                 } catch (IOException e) {
                     throw Jvm.rethrow(e);
@@ -65,10 +137,12 @@ public final class CanonicalRandomAccessFiles {
 
     private static class RafReference {
         RandomAccessFile raf;
+        FileLock processLock;
         int refCount;
 
-        RafReference(RandomAccessFile raf) {
+        RafReference(RandomAccessFile raf, FileLock processLock) {
             this.raf = raf;
+            this.processLock = processLock;
             refCount = 1;
         }
     }
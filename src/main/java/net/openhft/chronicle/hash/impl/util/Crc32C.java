@@ -0,0 +1,176 @@
+/*
+ *      Copyright (C) 2012, 2016  higherfrequencytrading.com
+ *      Copyright (C) 2016 Roman Leventov
+ *
+ *      This program is free software: you can redistribute it and/or modify
+ *      it under the terms of the GNU Lesser General Public License as published by
+ *      the Free Software Foundation, either version 3 of the License.
+ *
+ *      This program is distributed in the hope that it will be useful,
+ *      but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *      MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *      GNU Lesser General Public License for more details.
+ *
+ *      You should have received a copy of the GNU Lesser General Public License
+ *      along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.openhft.chronicle.hash.impl.util;
+
+import net.openhft.chronicle.core.OS;
+import sun.misc.Unsafe;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.zip.Checksum;
+
+/**
+ * CRC-32C (Castagnoli) of off-heap memory. Since Java 9 delegates to {@code
+ * java.util.zip.CRC32C}, which is intrinsified using the CRC32 instructions of SSE 4.2 on x86
+ * and of ARMv8. On Java 8 falls back to a table-driven implementation, which is several times
+ * slower than xxHash. Both implementations compute the same values, so that checksums written
+ * by one Java version could be verified by another.
+ */
+public final class Crc32C {
+
+    private static final int POLYNOMIAL = 0x82F63B78;
+    private static final int[] TABLE = new int[8 * 256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            int crc = i;
+            for (int bit = 0; bit < 8; bit++) {
+                crc = (crc >>> 1) ^ ((crc & 1) * POLYNOMIAL);
+            }
+            TABLE[i] = crc;
+        }
+        for (int i = 0; i < 256; i++) {
+            for (int t = 1; t < 8; t++) {
+                int prev = TABLE[(t - 1) * 256 + i];
+                TABLE[t * 256 + i] = (prev >>> 8) ^ TABLE[prev & 0xFF];
+            }
+        }
+    }
+
+    /**
+     * {@code Checksum.update(ByteBuffer)}, added in Java 9, {@code null} on Java 8
+     */
+    private static final MethodHandle UPDATE_BUFFER;
+    private static final Class<?> CRC32C_CLASS;
+    private static final Unsafe UNSAFE;
+    private static final long BUFFER_ADDRESS_OFFSET;
+    private static final long BUFFER_CAPACITY_OFFSET;
+
+    static {
+        MethodHandle updateBuffer = null;
+        Class<?> crc32cClass = null;
+        Unsafe unsafe = null;
+        long addressOffset = 0;
+        long capacityOffset = 0;
+        try {
+            crc32cClass = Class.forName("java.util.zip.CRC32C");
+            updateBuffer = MethodHandles.publicLookup().findVirtual(Checksum.class, "update",
+                    MethodType.methodType(void.class, ByteBuffer.class));
+            Field theUnsafe = Unsafe.class.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            unsafe = (Unsafe) theUnsafe.get(null);
+            addressOffset = unsafe.objectFieldOffset(Buffer.class.getDeclaredField("address"));
+            capacityOffset = unsafe.objectFieldOffset(Buffer.class.getDeclaredField("capacity"));
+        } catch (Exception | LinkageError e) {
+            // Java 8, or the internals of direct buffers are changed, use the fallback
+            updateBuffer = null;
+        }
+        UPDATE_BUFFER = updateBuffer;
+        CRC32C_CLASS = crc32cClass;
+        UNSAFE = unsafe;
+        BUFFER_ADDRESS_OFFSET = addressOffset;
+        BUFFER_CAPACITY_OFFSET = capacityOffset;
+    }
+
+    /**
+     * The JDK's CRC32C accepts only {@code ByteBuffer}s, a direct buffer per thread is pointed
+     * to the checksummed memory, rather than allocated on each call.
+     */
+    private static final ThreadLocal<Crc32C> INSTANCE =
+            ThreadLocal.withInitial(() -> UPDATE_BUFFER != null ? new Crc32C() : null);
+
+    private final Checksum checksum;
+    private final ByteBuffer buffer;
+
+    private Crc32C() {
+        try {
+            checksum = (Checksum) CRC32C_CLASS.newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new AssertionError(e);
+        }
+        buffer = ByteBuffer.allocateDirect(0);
+    }
+
+    /**
+     * @return true if CRC-32C is computed by the JDK, that uses the CRC32 instructions of the
+     * CPU, where available
+     */
+    public static boolean isIntrinsic() {
+        return UPDATE_BUFFER != null;
+    }
+
+    /**
+     * @return CRC-32C of {@code length} bytes starting from {@code address}, in the lower 32 bits
+     */
+    public static long hashMemory(long address, long length) {
+        Crc32C instance = INSTANCE.get();
+        return instance != null ? instance.jdkHashMemory(address, length) :
+                tableHashMemory(address, length);
+    }
+
+    private long jdkHashMemory(long address, long length) {
+        checksum.reset();
+        ByteBuffer buffer = this.buffer;
+        try {
+            while (length > 0) {
+                int chunk = (int) Math.min(length, 1 << 30);
+                UNSAFE.putLong(buffer, BUFFER_ADDRESS_OFFSET, address);
+                UNSAFE.putInt(buffer, BUFFER_CAPACITY_OFFSET, chunk);
+                ((Buffer) buffer).clear();
+                UPDATE_BUFFER.invokeExact(checksum, buffer);
+                address += chunk;
+                length -= chunk;
+            }
+        } catch (Throwable t) {
+            throw Throwables.propagate(t);
+        } finally {
+            // Don't leave the buffer pointing to memory, which might be unmapped later
+            UNSAFE.putInt(buffer, BUFFER_CAPACITY_OFFSET, 0);
+            ((Buffer) buffer).clear();
+        }
+        return checksum.getValue();
+    }
+
+    static long tableHashMemory(long address, long length) {
+        int crc = ~0;
+        long i = 0;
+        if (ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN) {
+            for (; i <= length - 8; i += 8) {
+                long v = OS.memory().readLong(address + i);
+                int lo = crc ^ (int) v;
+                int hi = (int) (v >>> 32);
+                crc = TABLE[7 * 256 + (lo & 0xFF)] ^
+                        TABLE[6 * 256 + ((lo >>> 8) & 0xFF)] ^
+                        TABLE[5 * 256 + ((lo >>> 16) & 0xFF)] ^
+                        TABLE[4 * 256 + (lo >>> 24)] ^
+                        TABLE[3 * 256 + (hi & 0xFF)] ^
+                        TABLE[2 * 256 + ((hi >>> 8) & 0xFF)] ^
+                        TABLE[256 + ((hi >>> 16) & 0xFF)] ^
+                        TABLE[hi >>> 24];
+            }
+        }
+        for (; i < length; i++) {
+            crc = (crc >>> 8) ^ TABLE[(crc ^ OS.memory().readByte(address + i)) & 0xFF];
+        }
+        return (~crc) & 0xFFFFFFFFL;
+    }
+}
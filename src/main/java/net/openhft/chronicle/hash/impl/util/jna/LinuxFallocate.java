@@ -0,0 +1,91 @@
+/*
+ *      Copyright (C) 2012, 2016  higherfrequencytrading.com
+ *      Copyright (C) 2016 Roman Leventov
+ *
+ *      This program is free software: you can redistribute it and/or modify
+ *      it under the terms of the GNU Lesser General Public License as published by
+ *      the Free Software Foundation, either version 3 of the License.
+ *
+ *      This program is distributed in the hope that it will be useful,
+ *      but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *      MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *      GNU Lesser General Public License for more details.
+ *
+ *      You should have received a copy of the GNU Lesser General Public License
+ *      along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.openhft.chronicle.hash.impl.util.jna;
+
+import com.sun.jna.*;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Linux-specific {@code fallocate()} and {@code posix_fallocate()}, operating on a raw file
+ * descriptor opened via {@link #openFile(File)}, because there is no portable way to extract it
+ * from a {@code RandomAccessFile}.
+ */
+public final class LinuxFallocate {
+
+    private static final int O_RDWR = 2;
+    private static final int FALLOC_FL_KEEP_SIZE = 1;
+    private static final int FALLOC_FL_PUNCH_HOLE = 2;
+    private static final int ENOSPC = 28;
+
+    static {
+        NativeLibrary clib = NativeLibrary.getInstance(Platform.C_LIBRARY_NAME);
+        Native.register(LinuxFallocate.class, clib);
+    }
+
+    private LinuxFallocate() {
+    }
+
+    public static int openFile(File file) throws IOException {
+        int fd = open(file.getAbsolutePath(), O_RDWR);
+        if (fd == -1)
+            throw new IOException("open failed: error code " + Native.getLastError());
+        return fd;
+    }
+
+    public static void closeFile(int fd) throws IOException {
+        if (close(fd) == -1)
+            throw new IOException("close failed: error code " + Native.getLastError());
+    }
+
+    /**
+     * Deallocates the given range of the file, subsequent reads from this range return zeros.
+     * The file size is not changed.
+     */
+    public static void punchHole(int fd, long offset, long length) throws IOException {
+        if (fallocate(fd, FALLOC_FL_PUNCH_HOLE | FALLOC_FL_KEEP_SIZE, offset, length) == -1)
+            throw new IOException("fallocate failed: error code " + Native.getLastError());
+    }
+
+    /**
+     * Ensures that disk space is allocated for the given range of the file, growing the file, if
+     * needed.
+     *
+     * @throws IOException if there is not enough space on the device, or the allocation failed
+     *                     for other reasons
+     */
+    public static void preallocate(int fd, long offset, long length) throws IOException {
+        // posix_fallocate() doesn't set errno, returns the error number instead
+        int errorCode = posix_fallocate(fd, offset, length);
+        if (errorCode == ENOSPC) {
+            throw new IOException("posix_fallocate failed: no space left on device to " +
+                    "allocate " + length + " bytes");
+        } else if (errorCode != 0) {
+            throw new IOException("posix_fallocate failed: error code " + errorCode);
+        }
+    }
+
+    private static native int open(String path, int flags);
+
+    private static native int close(int fd);
+
+    private static native int fallocate(int fd, int mode, long offset, long length);
+
+    private static native int posix_fallocate(int fd, long offset, long length);
+}
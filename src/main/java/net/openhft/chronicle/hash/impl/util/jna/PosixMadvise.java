@@ -0,0 +1,46 @@
+/*
+ *      Copyright (C) 2012, 2016  higherfrequencytrading.com
+ *      Copyright (C) 2016 Roman Leventov
+ *
+ *      This program is free software: you can redistribute it and/or modify
+ *      it under the terms of the GNU Lesser General Public License as published by
+ *      the Free Software Foundation, either version 3 of the License.
+ *
+ *      This program is distributed in the hope that it will be useful,
+ *      but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *      MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *      GNU Lesser General Public License for more details.
+ *
+ *      You should have received a copy of the GNU Lesser General Public License
+ *      along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.openhft.chronicle.hash.impl.util.jna;
+
+import com.sun.jna.*;
+import net.openhft.chronicle.hash.impl.util.jna.PosixMsync.size_t;
+
+import java.io.IOException;
+
+public final class PosixMadvise {
+
+    public static final int MADV_RANDOM = 1;
+    public static final int MADV_WILLNEED = 3;
+    public static final int MADV_DONTNEED = 4;
+    public static final int MADV_HUGEPAGE = 14;
+
+    static {
+        NativeLibrary clib = NativeLibrary.getInstance(Platform.C_LIBRARY_NAME);
+        Native.register(PosixMadvise.class, clib);
+    }
+
+    private PosixMadvise() {
+    }
+
+    public static void madvise(long addr, long length, int advice) throws IOException {
+        if (madvise(new Pointer(addr), new size_t(length), advice) == -1)
+            throw new IOException("madvise failed: error code " + Native.getLastError());
+    }
+
+    private static native int madvise(Pointer addr, size_t length, int advice);
+}
@@ -0,0 +1,47 @@
+/*
+ *      Copyright (C) 2012, 2016  higherfrequencytrading.com
+ *      Copyright (C) 2016 Roman Leventov
+ *
+ *      This program is free software: you can redistribute it and/or modify
+ *      it under the terms of the GNU Lesser General Public License as published by
+ *      the Free Software Foundation, either version 3 of the License.
+ *
+ *      This program is distributed in the hope that it will be useful,
+ *      but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *      MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *      GNU Lesser General Public License for more details.
+ *
+ *      You should have received a copy of the GNU Lesser General Public License
+ *      along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.openhft.chronicle.hash.impl.util.jna;
+
+import com.sun.jna.*;
+import net.openhft.chronicle.hash.impl.util.jna.PosixMsync.size_t;
+
+import java.io.IOException;
+
+public final class PosixMincore {
+
+    static {
+        NativeLibrary clib = NativeLibrary.getInstance(Platform.C_LIBRARY_NAME);
+        Native.register(PosixMincore.class, clib);
+    }
+
+    private PosixMincore() {
+    }
+
+    /**
+     * Fills {@code vec} with the residency of the pages of the given range, the least
+     * significant bit of each byte is set, if the page is resident in memory.
+     *
+     * @param addr the address of the range, should be a multiple of page size
+     */
+    public static void mincore(long addr, long length, byte[] vec) throws IOException {
+        if (mincore(new Pointer(addr), new size_t(length), vec) == -1)
+            throw new IOException("mincore failed: error code " + Native.getLastError());
+    }
+
+    private static native int mincore(Pointer addr, size_t length, byte[] vec);
+}
@@ -0,0 +1,45 @@
+/*
+ *      Copyright (C) 2012, 2016  higherfrequencytrading.com
+ *      Copyright (C) 2016 Roman Leventov
+ *
+ *      This program is free software: you can redistribute it and/or modify
+ *      it under the terms of the GNU Lesser General Public License as published by
+ *      the Free Software Foundation, either version 3 of the License.
+ *
+ *      This program is distributed in the hope that it will be useful,
+ *      but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *      MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *      GNU Lesser General Public License for more details.
+ *
+ *      You should have received a copy of the GNU Lesser General Public License
+ *      along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.openhft.chronicle.hash.impl.util.jna;
+
+import com.sun.jna.*;
+import net.openhft.chronicle.hash.impl.util.jna.PosixMsync.size_t;
+
+import java.io.IOException;
+
+public final class PosixMlock {
+
+    static {
+        NativeLibrary clib = NativeLibrary.getInstance(Platform.C_LIBRARY_NAME);
+        Native.register(PosixMlock.class, clib);
+    }
+
+    private PosixMlock() {
+    }
+
+    /**
+     * Locks the pages, containing the given range, in memory. Fails, if the lock would exceed
+     * {@code RLIMIT_MEMLOCK} of the process.
+     */
+    public static void mlock(long addr, long length) throws IOException {
+        if (mlock(new Pointer(addr), new size_t(length)) == -1)
+            throw new IOException("mlock failed: error code " + Native.getLastError());
+    }
+
+    private static native int mlock(Pointer addr, size_t length);
+}
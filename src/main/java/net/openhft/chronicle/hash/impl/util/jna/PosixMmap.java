@@ -0,0 +1,81 @@
+/*
+ *      Copyright (C) 2012, 2016  higherfrequencytrading.com
+ *      Copyright (C) 2016 Roman Leventov
+ *
+ *      This program is free software: you can redistribute it and/or modify
+ *      it under the terms of the GNU Lesser General Public License as published by
+ *      the Free Software Foundation, either version 3 of the License.
+ *
+ *      This program is distributed in the hope that it will be useful,
+ *      but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *      MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *      GNU Lesser General Public License for more details.
+ *
+ *      You should have received a copy of the GNU Lesser General Public License
+ *      along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.openhft.chronicle.hash.impl.util.jna;
+
+import com.sun.jna.*;
+import net.openhft.chronicle.hash.impl.util.jna.PosixMsync.size_t;
+
+import java.io.IOException;
+
+public final class PosixMmap {
+
+    private static final int PROT_READ = 1;
+    private static final int PROT_WRITE = 2;
+    private static final int MAP_PRIVATE = 0x02;
+    private static final int MAP_ANONYMOUS = 0x20;
+    private static final int MAP_HUGETLB = 0x40000;
+    private static final long MAP_FAILED = -1L;
+
+    static {
+        NativeLibrary clib = NativeLibrary.getInstance(Platform.C_LIBRARY_NAME);
+        Native.register(PosixMmap.class, clib);
+    }
+
+    private PosixMmap() {
+    }
+
+    /**
+     * Maps anonymous private memory of the given size, starting from an address, which is
+     * a multiple of the given alignment. If {@code hugeTlb} is {@code true}, the memory is
+     * backed by pages from the huge page pool of the OS, that is aligned by the kernel.
+     * Otherwise, an extra {@code alignment} bytes are mapped, and the unaligned head and tail
+     * are unmapped.
+     *
+     * @return the address of the mapping, should be released with {@code munmap()}
+     */
+    public static long mmapAnonymous(long length, long alignment, boolean hugeTlb)
+            throws IOException {
+        if (hugeTlb)
+            return mmap(length, MAP_PRIVATE | MAP_ANONYMOUS | MAP_HUGETLB);
+        long address = mmap(length + alignment, MAP_PRIVATE | MAP_ANONYMOUS);
+        long alignedAddress = (address + alignment - 1) & ~(alignment - 1);
+        if (alignedAddress > address)
+            munmap(address, alignedAddress - address);
+        long tail = address + length + alignment - (alignedAddress + length);
+        if (tail > 0)
+            munmap(alignedAddress + length, tail);
+        return alignedAddress;
+    }
+
+    private static long mmap(long length, int flags) throws IOException {
+        Pointer pointer = mmap(null, new size_t(length), PROT_READ | PROT_WRITE, flags, -1, 0L);
+        long address = Pointer.nativeValue(pointer);
+        if (address == MAP_FAILED)
+            throw new IOException("mmap failed: error code " + Native.getLastError());
+        return address;
+    }
+
+    private static void munmap(long addr, long length) throws IOException {
+        if (munmap(new Pointer(addr), new size_t(length)) == -1)
+            throw new IOException("munmap failed: error code " + Native.getLastError());
+    }
+
+    private static native Pointer mmap(
+            Pointer addr, size_t length, int prot, int flags, int fd, long offset);
+
+    private static native int munmap(Pointer addr, size_t length);
+}
@@ -61,6 +61,10 @@ interface AbstractChronicleMap<K, V> extends ChronicleMap<K, V> {
 
     @Override
     default void putAll(File fromFile) throws IOException {
+        if (MapDump.isDump(fromFile)) {
+            importFrom(fromFile, Runtime.getRuntime().availableProcessors());
+            return;
+        }
         synchronized (this) {
             JsonSerializer.putAll(fromFile, this, emptyList());
         }
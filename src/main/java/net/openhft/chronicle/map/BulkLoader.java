@@ -0,0 +1,222 @@
+/*
+ *      Copyright (C) 2012, 2016  higherfrequencytrading.com
+ *      Copyright (C) 2016 Roman Leventov
+ *
+ *      This program is free software: you can redistribute it and/or modify
+ *      it under the terms of the GNU Lesser General Public License as published by
+ *      the Free Software Foundation, either version 3 of the License.
+ *
+ *      This program is distributed in the hope that it will be useful,
+ *      but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *      MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *      GNU Lesser General Public License for more details.
+ *
+ *      You should have received a copy of the GNU Lesser General Public License
+ *      along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.openhft.chronicle.map;
+
+import net.openhft.chronicle.core.Jvm;
+import net.openhft.chronicle.hash.Data;
+import net.openhft.chronicle.hash.serialization.DataAccess;
+import net.openhft.chronicle.map.impl.IterationContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import static net.openhft.chronicle.hash.impl.util.Objects.requireNonNull;
+
+/**
+ * Fills a newly created {@link VanillaChronicleMap} with the given entries in parallel. The
+ * calling thread partitions the entries by segment into batches. Each segment is owned by one
+ * of the workers, which inserts a batch holding the write lock of the segment, acquired once per
+ * batch: the insertions open contexts nested in the context, holding the lock, so they don't
+ * touch the lock word in shared memory. Workers never contend on segments, and the entries are
+ * inserted through the regular insertion path, so the resulting store is the same as if it was
+ * filled via {@code put()}.
+ *
+ * @see ChronicleMapBuilder#bulkLoadPersistedTo(java.io.File, Iterable, int)
+ */
+final class BulkLoader<K, V> {
+
+    private static final int BATCH_SIZE = 1024;
+    private static final int QUEUED_BATCHES_PER_WORKER = 16;
+    private static final Batch POISON = new Batch(-1);
+
+    private static final class Batch {
+        final int segmentIndex;
+        final List<Object> keys = new ArrayList<>(BATCH_SIZE);
+        final List<Object> values = new ArrayList<>(BATCH_SIZE);
+
+        Batch(int segmentIndex) {
+            this.segmentIndex = segmentIndex;
+        }
+    }
+
+    private final VanillaChronicleMap<K, V, ?> map;
+    private final int workers;
+    private final List<BlockingQueue<Batch>> queues;
+    private volatile Throwable failure;
+
+    BulkLoader(VanillaChronicleMap<K, V, ?> map, int parallelism) {
+        this.map = map;
+        this.workers = Math.min(parallelism, map.segments());
+        queues = new ArrayList<>(workers);
+        for (int i = 0; i < workers; i++) {
+            queues.add(new ArrayBlockingQueue<>(QUEUED_BATCHES_PER_WORKER));
+        }
+    }
+
+    /**
+     * @return the number of loaded entries
+     */
+    long load(Iterable<? extends Map.Entry<K, V>> entries) {
+        if (workers == 1) {
+            // no point to hand batches over to a single worker
+            return partition(entries, this::insert);
+        }
+        ForkJoinPool pool = new ForkJoinPool(workers);
+        try {
+            List<ForkJoinTask<?>> tasks = new ArrayList<>(workers);
+            for (BlockingQueue<Batch> queue : queues) {
+                tasks.add(pool.submit(() -> work(queue)));
+            }
+            long loaded = 0;
+            Throwable thrown = null;
+            try {
+                loaded = partition(entries, this::submit);
+            } catch (Throwable t) {
+                thrown = t;
+            } finally {
+                for (BlockingQueue<Batch> queue : queues) {
+                    try {
+                        queue.put(POISON);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        thrown = returnOrSuppress(thrown, e);
+                    }
+                }
+            }
+            for (ForkJoinTask<?> task : tasks) {
+                try {
+                    task.join();
+                } catch (Throwable t) {
+                    thrown = returnOrSuppress(thrown, t);
+                }
+            }
+            if (failure != null && failure != thrown)
+                thrown = returnOrSuppress(thrown, failure);
+            if (thrown != null)
+                throw Jvm.rethrow(thrown);
+            return loaded;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static Throwable returnOrSuppress(Throwable thrown, Throwable t) {
+        if (thrown == null)
+            return t;
+        thrown.addSuppressed(t);
+        return thrown;
+    }
+
+    private interface BatchConsumer {
+        void accept(Batch batch) throws InterruptedException;
+    }
+
+    private long partition(Iterable<? extends Map.Entry<K, V>> entries,
+                           BatchConsumer batchConsumer) {
+        DataAccess<K> keyDataAccess = map.keyDataAccess.copy();
+        Batch[] pending = new Batch[map.segments()];
+        long loaded = 0;
+        try {
+            for (Map.Entry<K, V> entry : entries) {
+                K key = requireNonNull(entry.getKey());
+                V value = requireNonNull(entry.getValue());
+                map.checkKey(key);
+                int segmentIndex;
+                try {
+                    Data<K> keyData = keyDataAccess.getData(key);
+                    segmentIndex = map.hashSplitting.segmentIndex(
+                            keyData.hash(map.keyHashFunction));
+                } finally {
+                    keyDataAccess.uninit();
+                }
+                Batch batch = pending[segmentIndex];
+                if (batch == null)
+                    pending[segmentIndex] = batch = new Batch(segmentIndex);
+                batch.keys.add(key);
+                batch.values.add(value);
+                loaded++;
+                if (batch.keys.size() == BATCH_SIZE) {
+                    pending[segmentIndex] = null;
+                    batchConsumer.accept(batch);
+                }
+            }
+            for (Batch batch : pending) {
+                if (batch != null)
+                    batchConsumer.accept(batch);
+            }
+            return loaded;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(map.toIdentityString() + ": bulk load interrupted", e);
+        }
+    }
+
+    private void submit(Batch batch) throws InterruptedException {
+        Throwable failure = this.failure;
+        if (failure != null)
+            throw Jvm.rethrow(failure);
+        queues.get(batch.segmentIndex % workers).put(batch);
+    }
+
+    private void work(BlockingQueue<Batch> queue) {
+        try {
+            Batch batch;
+            while ((batch = queue.take()) != POISON) {
+                // after a failure, keep draining the queue, so that the partitioning thread
+                // isn't blocked on it
+                if (failure == null) {
+                    try {
+                        insert(batch);
+                    } catch (Throwable t) {
+                        failure = t;
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failure = e;
+        }
+    }
+
+    private void insert(Batch batch) {
+        try (IterationContext<K, V, ?> c = map.iterationContext()) {
+            c.initSegmentIndex(batch.segmentIndex);
+            c.writeLock().lock();
+            for (int i = 0; i < batch.keys.size(); i++) {
+                //noinspection unchecked
+                K key = (K) batch.keys.get(i);
+                //noinspection unchecked
+                V value = (V) batch.values.get(i);
+                try (ExternalMapQueryContext<K, V, ?> q = map.queryContext(key)) {
+                    q.updateLock().lock();
+                    MapEntry<K, V> entry = q.entry();
+                    Data<V> valueData = q.wrapValueAsData(value);
+                    if (entry != null) {
+                        q.replaceValue(entry, valueData);
+                    } else {
+                        q.insert(q.absentEntry(), valueData);
+                    }
+                }
+            }
+        }
+    }
+}
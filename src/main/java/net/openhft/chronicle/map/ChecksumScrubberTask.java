@@ -0,0 +1,205 @@
+/*
+ *      Copyright (C) 2012, 2016  higherfrequencytrading.com
+ *      Copyright (C) 2016 Roman Leventov
+ *
+ *      This program is free software: you can redistribute it and/or modify
+ *      it under the terms of the GNU Lesser General Public License as published by
+ *      the Free Software Foundation, either version 3 of the License.
+ *
+ *      This program is distributed in the hope that it will be useful,
+ *      but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *      MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *      GNU Lesser General Public License for more details.
+ *
+ *      You should have received a copy of the GNU Lesser General Public License
+ *      along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.openhft.chronicle.map;
+
+import net.openhft.chronicle.hash.ChecksumEntry;
+import net.openhft.chronicle.hash.ChronicleHashClosedException;
+import net.openhft.chronicle.hash.ChronicleHashCorruption;
+import net.openhft.chronicle.hash.Data;
+import net.openhft.chronicle.hash.impl.MaintenanceTask;
+import net.openhft.chronicle.map.impl.IterationContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.TimeUnit;
+
+import static net.openhft.chronicle.map.ChronicleHashCorruptionImpl.format;
+import static net.openhft.chronicle.map.ChronicleHashCorruptionImpl.report;
+
+/**
+ * Walks the segments of the map one by one, verifies the checksums of all entries and reports
+ * entries with mismatching checksums to the corruption listener. The number of verified bytes per
+ * second is limited, passes over the whole map start not more often than with the given period.
+ *
+ * @see ChronicleMapBuilder#scrubChecksumsInBackground(long, long, TimeUnit,
+ * ChronicleHashCorruption.Listener)
+ */
+final class ChecksumScrubberTask extends MaintenanceTask {
+    private static final Logger LOG = LoggerFactory.getLogger(ChecksumScrubberTask.class);
+
+    private static final long SLICE_MILLIS = 10;
+    /**
+     * Scrubbing is throttled by the configured rate already, the cpu share only bounds it, if the
+     * rate is set too high for the hardware
+     */
+    private static final double CPU_SHARE = 0.25;
+
+    /**
+     * Weak reference for the same reason as in {@link OldDeletedEntriesCleanupTask}: not to
+     * leak the map, if the user forgets to close() it.
+     */
+    private final WeakReference<VanillaChronicleMap<?, ?, ?>> mapRef;
+    private final int segments;
+    private final long bytesPerSecond;
+    private final long passPeriodNanos;
+    private final ChronicleHashCorruption.Listener corruptionListener;
+    private final ChronicleHashCorruptionImpl corruption = new ChronicleHashCorruptionImpl();
+
+    // State of the current pass, carried between the runs of this task
+    private int nextSegmentIndex;
+    private long passStart;
+    private long passBytes;
+
+    // Statistics, written only by the runs of this task
+    private volatile int segmentsScrubbedInPass;
+    private volatile long completedPasses;
+    private volatile long lastPassNanos;
+    private volatile long scrubbedBytes;
+    private volatile long scrubNanos;
+
+    /**
+     * Accumulated in the lambda passed to forEachSegmentEntry() during the scrub of a segment
+     */
+    private long segmentBytes;
+
+    ChecksumScrubberTask(
+            VanillaChronicleMap<?, ?, ?> map, long bytesPerSecond, long passPeriod,
+            TimeUnit unit, ChronicleHashCorruption.Listener corruptionListener) {
+        super("Checksum scrubbing of " + map.toIdentityString(), Priority.LOW,
+                SLICE_MILLIS, TimeUnit.MILLISECONDS, CPU_SHARE);
+        this.mapRef = new WeakReference<>(map);
+        segments = map.actualSegments;
+        this.bytesPerSecond = bytesPerSecond;
+        passPeriodNanos = unit.toNanos(passPeriod);
+        this.corruptionListener = corruptionListener;
+    }
+
+    /**
+     * @return the fraction of segments, scrubbed during the current pass
+     */
+    double progress() {
+        return segmentsScrubbedInPass / (double) segments;
+    }
+
+    long completedPasses() {
+        return completedPasses;
+    }
+
+    long lastPassNanos() {
+        return lastPassNanos;
+    }
+
+    /**
+     * @return the number of verified bytes per second, not accounting the time when this task
+     * is idle because of the rate limit
+     */
+    double throughput() {
+        long scrubNanos = this.scrubNanos;
+        return scrubNanos > 0 ? scrubbedBytes * 1e9 / scrubNanos : 0.0;
+    }
+
+    @Override
+    protected long run(long sliceNanos) {
+        long sliceEnd = System.nanoTime() + sliceNanos;
+        if (nextSegmentIndex == 0) {
+            passStart = System.nanoTime();
+            passBytes = 0;
+            segmentsScrubbedInPass = 0;
+        }
+        while (true) {
+            long bytes = scrubSegment(nextSegmentIndex);
+            if (bytes < 0 || isClosed())
+                return -1;
+            passBytes += bytes;
+            segmentsScrubbedInPass = ++nextSegmentIndex;
+            long now = System.nanoTime();
+            if (nextSegmentIndex == segments) {
+                completePass(now);
+                nextSegmentIndex = 0;
+                return Math.max(0, passStart + passPeriodNanos - now);
+            }
+            // Spread the verified bytes evenly over time, rather than verify segments in
+            // bursts with the full speed, not to stall the I/O of the map users
+            long rateDelay = passStart + (long) (passBytes * 1e9 / bytesPerSecond) - now;
+            if (rateDelay > 0 || now - sliceEnd >= 0)
+                return Math.max(0, rateDelay);
+        }
+    }
+
+    private void completePass(long now) {
+        long passNanos = now - passStart;
+        lastPassNanos = passNanos;
+        completedPasses++;
+        VanillaChronicleMap<?, ?, ?> map = mapRef.get();
+        if (map != null) {
+            LOG.debug("Scrubbed checksums of {}: {} bytes in {} ms, pass {}",
+                    map.toIdentityString(), passBytes,
+                    TimeUnit.NANOSECONDS.toMillis(passNanos), completedPasses);
+        }
+    }
+
+    /**
+     * @return the number of verified bytes, or -1 if the map is already collected or closed and
+     * this task should be stopped
+     */
+    private long scrubSegment(int segmentIndex) {
+        VanillaChronicleMap<?, ?, ?> map = mapRef.get();
+        if (map == null || !map.isOpen())
+            return -1;
+        long startTime = System.nanoTime();
+        segmentBytes = 0;
+        try (IterationContext<?, ?, ?> c = map.iterationContext()) {
+            c.initSegmentIndex(segmentIndex);
+            // checkSum() requires at least the update lock: checksums of updated entries are
+            // written only when the update lock is released, verification under the read lock
+            // could see an entry with not yet updated checksum
+            c.updateLock().lock();
+            c.forEachSegmentEntry(e -> {
+                Data<?> key = e.key();
+                long keySize = key.size();
+                long valueSize = e.value().size();
+                if (!((ChecksumEntry) e).checkSum()) {
+                    // The key is not deserialized: the entry is corrupted, deserialization could
+                    // fail and abandon scrubbing of the rest of the segment
+                    long keyOffset = key.offset();
+                    try {
+                        report(corruptionListener, corruption, segmentIndex, () ->
+                                format("Checksum mismatch of the entry with key at offset {}, " +
+                                                "key size {}, value size {} in segment {}",
+                                        keyOffset, keySize, valueSize, segmentIndex));
+                    } catch (RuntimeException ex) {
+                        // Failure of the user's listener shouldn't stop scrubbing of other
+                        // entries
+                        LOG.error("Error while reporting a corrupted entry in segment " +
+                                segmentIndex + " of " + map.toIdentityString(), ex);
+                    }
+                }
+                segmentBytes += keySize + valueSize;
+            });
+        } catch (ChronicleHashClosedException e) {
+            return -1;
+        } catch (RuntimeException e) {
+            // Unexpected failure in a segment shouldn't stop scrubbing of other segments
+            LOG.error("Error while scrubbing checksums of segment " + segmentIndex + " of " +
+                    map.toIdentityString(), e);
+        }
+        scrubNanos += System.nanoTime() - startTime;
+        scrubbedBytes += segmentBytes;
+        return segmentBytes;
+    }
+}
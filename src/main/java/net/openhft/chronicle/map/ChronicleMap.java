@@ -192,7 +192,8 @@ public interface ChronicleMap<K, V> extends ConcurrentMap<K, V>,
 
     /**
      * Imports all the entries from a {@link File}, the {@code fromFile} must be created
-     * using or the same format as {@link ChronicleMap#get(Object)}, this method behaves
+     * using or the same format as {@link ChronicleMap#get(Object)}, or {@linkplain
+     * #exportTo(File, int) exported} in the binary format, this method behaves
      * similar to {@link Map#put(Object, Object)} where existing
      * entries are overwritten. A write lock is only held while each individual entry is inserted
      * into the map, not over all the entries in the {@link File}
@@ -204,6 +205,64 @@ public interface ChronicleMap<K, V> extends ConcurrentMap<K, V>,
      */
     void putAll(File fromFile) throws IOException;
 
+    /**
+     * Writes a consistent point-in-time copy of this persisted {@code ChronicleMap} to the given
+     * file, without blocking writers for the whole time of the copy. Each segment is copied
+     * holding it's update lock (readers are not blocked), or, if a writer in the current process
+     * is going to modify a segment, not copied yet, the writer copies the segment first. The
+     * resulting file could be opened via {@link ChronicleMapBuilder#createPersistedTo(File)}.
+     * <p>
+     * <p>Modifications by other processes could not be copied-on-write, so the store of this map
+     * shouldn't be accessed by other processes, or other {@code ChronicleMap} instances in the
+     * current process, during the snapshot. This is checked when the snapshot starts; processes,
+     * going to open the store while the snapshot is in progress, wait until it is finished.
+     * <p>
+     * <p>The copy is <a href="https://github.com/OpenHFT/Chronicle-Map#recovery">recovered</a>
+     * after it is written. If corruptions of segments are found, that means the copy is torn, or
+     * this map is corrupted itself, the copy is deleted and {@code IOException} is thrown.
+     *
+     * @param toFile the file to write the snapshot to, shouldn't exist
+     * @throws IOException                   if the file already exists, or an I/O error occurs,
+     *                                       or corruptions are found in the copy
+     * @throws IllegalStateException         if the store of this map is accessed by other
+     *                                       processes or {@code ChronicleMap} instances, or
+     *                                       this map is opened read-only
+     * @throws UnsupportedOperationException if this map is not persisted
+     */
+    void snapshotTo(File toFile) throws IOException;
+
+    /**
+     * Exports all entries of this map to the given file in a binary format, which could be
+     * imported by {@link #importFrom(File, int)}, or {@link #putAll(File)}, into another map with
+     * the same key and value classes and serializers. Serialized forms of keys and values are
+     * copied as they are, without deserialization, in parallel by the given number of threads, so
+     * this method is much faster than {@link #getAll(File)}. Each segment is exported holding
+     * it's update lock, i. e. segments are consistent individually, but the export is not a
+     * point-in-time image of the whole map.
+     *
+     * @param toFile      the file to export the entries to, shouldn't exist
+     * @param parallelism the number of threads, exporting segments
+     * @throws IOException if the file already exists, or an I/O error occurs
+     * @throws IllegalArgumentException if parallelism is not positive
+     * @see #importFrom(File, int)
+     */
+    void exportTo(File toFile, int parallelism) throws IOException;
+
+    /**
+     * Puts all entries from the file, written by {@link #exportTo(File, int)}, into this map, in
+     * parallel by the given number of threads. Existing entries with the same keys are
+     * overwritten. The serialized forms of keys and values are inserted as they are, without
+     * deserialization. A lock is held only while each individual entry is inserted.
+     *
+     * @param fromFile    the file, written by {@link #exportTo(File, int)}
+     * @param parallelism the number of threads, importing the entries
+     * @throws IOException if the file is not a complete export, or an I/O error occurs
+     * @throws IllegalStateException if the file holds the entries of other key or value classes
+     * @throws IllegalArgumentException if parallelism is not positive
+     * @see #exportTo(File, int)
+     */
+    void importFrom(File fromFile, int parallelism) throws IOException;
+
     /**
      * @return the class of {@code <V>}
      */
@@ -24,9 +24,13 @@ import net.openhft.chronicle.bytes.Bytes;
 import net.openhft.chronicle.bytes.BytesMarshallable;
 import net.openhft.chronicle.core.Jvm;
 import net.openhft.chronicle.core.OS;
+import net.openhft.chronicle.hash.ChecksumAlgorithm;
+import net.openhft.chronicle.hash.ChecksumEntry;
 import net.openhft.chronicle.hash.ChronicleHashBuilder;
 import net.openhft.chronicle.hash.ChronicleHashCorruption;
 import net.openhft.chronicle.hash.ChronicleHashRecoveryFailedException;
+import net.openhft.chronicle.hash.HugePages;
+import net.openhft.chronicle.hash.SegmentLock;
 import net.openhft.chronicle.hash.impl.*;
 import net.openhft.chronicle.hash.impl.stage.entry.ChecksumStrategy;
 import net.openhft.chronicle.hash.impl.util.CanonicalRandomAccessFiles;
@@ -41,6 +45,7 @@ import net.openhft.chronicle.values.Values;
 import net.openhft.chronicle.wire.TextWire;
 import net.openhft.chronicle.wire.Wire;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -49,11 +54,14 @@ import java.lang.reflect.InvocationTargetException;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileLock;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.function.DoubleConsumer;
 
 import static java.lang.Double.isNaN;
 import static java.lang.Math.round;
@@ -122,7 +130,28 @@ import static net.openhft.chronicle.map.VanillaChronicleMap.alignAddr;
  * <li>{@link #entryOperations(MapEntryOperations)}</li>
  * <li>{@link #mapMethods(MapMethods)}</li>
  * <li>{@link #defaultValueProvider(DefaultValueProvider)}</li>
+ * <li>{@link #releaseFreeMemoryPeriodically(long, TimeUnit)}</li>
+ * <li>{@link #tierReserves(boolean)}</li>
+ * <li>{@link #reserveAddressSpace(boolean)}</li>
+ * <li>{@link #preallocateFile(int)}</li>
+ * <li>{@link #syncDirtySegmentsPeriodically(long, TimeUnit, long)}</li>
+ * <li>{@link #writeAheadJournal(long, TimeUnit)}</li>
+ * <li>{@link #recoveryParallelism(int)}</li>
+ * <li>{@link #recoverSegmentsLazily(boolean)}</li>
+ * <li>{@link #hugePages(HugePages)}</li>
+ * <li>{@link #preTouch(int, boolean, DoubleConsumer)}</li>
+ * <li>{@link #hotPagesTrace(long, TimeUnit)}</li>
+ * <li>{@link #lockHashLookups(boolean)}</li>
+ * <li>{@link #randomEntrySpaceAccess(boolean)}</li>
+ * <li>{@link #scrubChecksumsInBackground(long, long, TimeUnit, ChronicleHashCorruption.Listener)}
+ * </li>
  * </ul>
+ * <p>
+ * <p>Periodic background maintenance of the maps: cleanup of old deleted entries, release of free
+ * memory, sync of dirty segments, computation of deferred checksums and checksum scrubbing, runs
+ * on the {@linkplain MaintenanceScheduler#shared() maintenance threads}, shared by all maps in the
+ * JVM, rather than on dedicated threads of each map. The number of these threads is configured
+ * with {@code net.openhft.chronicle.map.maintenanceThreads} system property.
  *
  * @param <K> key type of the maps, produced by this builder
  * @param <V> value type of the maps, produced by this builder
@@ -137,7 +166,7 @@ public final class ChronicleMapBuilder<K, V> implements
     private static final int NO_ALIGNMENT = 1;
 
     /**
-     * If want to increase this number, note {@link OldDeletedEntriesCleanupThread} uses array
+     * If want to increase this number, note {@link OldDeletedEntriesCleanupTask} uses array
      * to store all segment indexes -- so it could be current JVM max array size,
      * not Integer.MAX_VALUE (which is an obvious limitation, as many APIs and internals use int
      * type for representing segment index).
@@ -174,6 +203,67 @@ public final class ChronicleMapBuilder<K, V> implements
     long cleanupTimeout = 1;
     TimeUnit cleanupTimeoutUnit = TimeUnit.MINUTES;
     boolean cleanupRemovedEntries = true;
+    /**
+     * 0 means free memory is not released in background
+     */
+    long freeMemoryReleasePeriod = 0;
+    TimeUnit freeMemoryReleasePeriodUnit = TimeUnit.SECONDS;
+    boolean tierReserves = false;
+    boolean reserveAddressSpace = false;
+    /**
+     * -1 means the persistence file is not preallocated
+     */
+    int preallocatedTierBulks = -1;
+    /**
+     * 0 means dirty segments are not tracked and synced in background
+     */
+    long dirtySegmentsSyncPeriod = 0;
+    TimeUnit dirtySegmentsSyncPeriodUnit = TimeUnit.SECONDS;
+    long dirtySegmentsSyncThreshold = Long.MAX_VALUE;
+    /**
+     * 0 means mutations are not journaled
+     */
+    long journalCheckpointPeriod = 0;
+    TimeUnit journalCheckpointPeriodUnit = TimeUnit.SECONDS;
+    int recoveryParallelism = 1;
+    boolean recoverSegmentsLazily = false;
+    HugePages hugePages = HugePages.NONE;
+    /**
+     * 0 means the memory of the map is not touched before the map is returned
+     */
+    int preTouchParallelism = 0;
+    boolean preTouchExtraTiers = false;
+    DoubleConsumer preTouchProgressListener = null;
+    /**
+     * 0 means hot pages are not recorded and prefetched
+     */
+    long hotPagesSamplingPeriod = 0;
+    TimeUnit hotPagesSamplingPeriodUnit = TimeUnit.SECONDS;
+    boolean lockHashLookups = false;
+    boolean randomEntrySpaceAccess = false;
+    /**
+     * 0 means checksums are not scrubbed in background
+     */
+    long checksumScrubBytesPerSecond = 0;
+    long checksumScrubPassPeriod = 0;
+    TimeUnit checksumScrubPassPeriodUnit = TimeUnit.SECONDS;
+    ChronicleHashCorruption.Listener checksumScrubCorruptionListener = null;
+    /**
+     * 0 means checksums of the created maps are computed on each update. Existing maps with
+     * deferred checksums, opened without this configuration, compute them with the default period
+     */
+    long deferredChecksumsPeriod = 0;
+    TimeUnit deferredChecksumsPeriodUnit = TimeUnit.SECONDS;
+    boolean seededKeyHashing = false;
+    /**
+     * Set only in the builder clone, used in {@link #openReadOnly(File)}
+     */
+    boolean readOnly = false;
+    /**
+     * Set only in the builder clone, used in {@link #bulkLoadPersistedTo(File, Iterable, int)}
+     */
+    Iterable<? extends Map.Entry<K, V>> bulkLoadEntries = null;
+    int bulkLoadParallelism = 0;
     //////////////////////////////
     // Configuration fields
     DefaultValueProvider<K, V> defaultValueProvider = DefaultSpi.defaultValueProvider();
@@ -205,6 +295,7 @@ public final class ChronicleMapBuilder<K, V> implements
     private double nonTieredSegmentsPercentile = 0.99999;
     private boolean aligned64BitMemoryOperationsAtomic = OS.is64Bit();
     private ChecksumEntries checksumEntries = ChecksumEntries.IF_PERSISTED;
+    private ChecksumAlgorithm checksumAlgorithm = ChecksumAlgorithm.XXHASH;
     private boolean putReturnsNull = false;
     private boolean removeReturnsNull = false;
     private boolean replicated;
@@ -253,7 +344,9 @@ public final class ChronicleMapBuilder<K, V> implements
             File file, FileChannel fileChannel, FileIOAction fileIOAction) throws IOException {
         fileLockingControl.compute(file, (k, v) -> {
             try {
-                try (FileLock ignored = fileChannel.lock()) {
+                // Doesn't cover the byte, locked by all processes, having the file acquired
+                try (FileLock ignored = fileChannel.lock(
+                        0, CanonicalRandomAccessFiles.PROCESS_LOCK_POSITION, false)) {
                     fileIOAction.fileIOAction();
                 }
                 return null;
@@ -1350,6 +1443,495 @@ public final class ChronicleMapBuilder<K, V> implements
         return this;
     }
 
+    /**
+     * Configures the maps created by this {@code ChronicleMapBuilder} to {@linkplain
+     * ChronicleMap#releaseFreeMemory() release free memory} back to the OS in background, with
+     * the given period. This is useful for maps, the number of entries in which varies a lot
+     * over time, to keep the resident memory (or the disk space) proportional to the current
+     * number of entries rather than the peak one.
+     * <p>
+     * <p>This is a <a href="#jvm-configurations">JVM-level configuration</a>.
+     * <p>
+     * <p>By default, free memory is not released in background.
+     *
+     * @param period the period between releases, should be at least 1 millisecond
+     * @param unit   the time unit of the period
+     * @return this builder back
+     * @see ChronicleMap#releaseFreeMemory()
+     */
+    public ChronicleMapBuilder<K, V> releaseFreeMemoryPeriodically(long period, TimeUnit unit) {
+        if (unit.toMillis(period) < 1) {
+            throw new IllegalArgumentException("period should be >= 1 millisecond, " +
+                    period + " " + unit + " is given");
+        }
+        freeMemoryReleasePeriod = period;
+        freeMemoryReleasePeriodUnit = unit;
+        return this;
+    }
+
+    /**
+     * Configures if the maps created by this {@code ChronicleMapBuilder} should keep a reserved
+     * free extra tier for each segment, that has already chained an extra tier. Reserves are
+     * refilled by a background thread. Chaining a tier from the reserve doesn't take the lock,
+     * global for the whole Chronicle Map store (and shared by all processes accessing it), and
+     * doesn't map new extra tier bulks, that makes bursts of insertions into many overflowing
+     * segments more scalable.
+     * <p>
+     * <p>Reserved tiers are counted as used for {@link #maxBloatFactor(double)} purposes, but when
+     * the maximum is reached, a segment, which needs a new tier, takes the reserve of another
+     * segment, so a map doesn't fit fewer entries with tier reserves, than without them. Reserved
+     * tiers are returned to the free tier list when the Chronicle Map store is recovered.
+     * <p>
+     * <p>This is a <a href="#jvm-configurations">JVM-level configuration</a>. Reserved tiers are
+     * taken by all {@code ChronicleMap} instances, accessing the same store, regardless of this
+     * configuration.
+     * <p>
+     * <p>By default, tier reserves are not kept.
+     *
+     * @param tierReserves if tier reserves should be kept
+     * @return this builder back
+     */
+    public ChronicleMapBuilder<K, V> tierReserves(boolean tierReserves) {
+        this.tierReserves = tierReserves;
+        return this;
+    }
+
+    /**
+     * Configures if the persisted maps created by this {@code ChronicleMapBuilder} should reserve
+     * virtual address space for the maximum possible size of the Chronicle Map store (see {@link
+     * #maxBloatFactor(double)}) in a single memory mapping, when the map is created or opened.
+     * Extra tier bulks, allocated when the map grows, are then accessed through this mapping,
+     * only the file is grown, no new mappings are created. This also makes resolving addresses
+     * of extra tiers pure arithmetic, rather than a lookup of the mapping, containing the tier.
+     * <p>
+     * <p>{@link ChronicleMap#offHeapMemoryUsed()} of such maps accounts the whole reserved address
+     * space. This configuration has no effect for in-memory maps, and on Windows, where a file
+     * cannot be mapped beyond it's end.
+     * <p>
+     * <p>This is a <a href="#jvm-configurations">JVM-level configuration</a>.
+     * <p>
+     * <p>By default, address space is not reserved, each extra tier bulk is mapped separately.
+     *
+     * @param reserveAddressSpace if address space should be reserved for the maximum data store
+     *                            size
+     * @return this builder back
+     */
+    public ChronicleMapBuilder<K, V> reserveAddressSpace(boolean reserveAddressSpace) {
+        this.reserveAddressSpace = reserveAddressSpace;
+        return this;
+    }
+
+    /**
+     * Configures the persisted maps created by this {@code ChronicleMapBuilder} to allocate disk
+     * space for their persistence files upfront, using {@code posix_fallocate()}: for the main
+     * segments area and the given number of extra tier bulks when the map is created or opened,
+     * and for each subsequently allocated tier bulk before it is mapped.
+     * <p>
+     * <p>Without preallocation, the persistence file is sparse, disk blocks are allocated when
+     * pages of the mapping are first written. If the disk is full at that moment, the JVM is
+     * crashed by {@code SIGBUS}. With preallocation, lack of disk space is reported by an {@code
+     * IOException} from {@link #createPersistedTo(File)}, or an exception with {@code
+     * IOException} cause from the map operation, that has triggered allocation of a tier bulk.
+     * Preallocated files are also less fragmented on disk.
+     * <p>
+     * <p>Preallocation is supported only on Linux, this configuration has no effect on other
+     * systems, and for in-memory maps. Note that {@link ChronicleMap#releaseFreeMemory()} makes
+     * the file sparse again in the released areas.
+     * <p>
+     * <p>This is a <a href="#jvm-configurations">JVM-level configuration</a>.
+     * <p>
+     * <p>By default, the persistence file is not preallocated.
+     *
+     * @param extraTierBulks the number of extra tier bulks to preallocate in addition to the
+     *                       main segments area, when the map is created or opened
+     * @return this builder back
+     * @throws IllegalArgumentException if {@code extraTierBulks} is negative
+     */
+    public ChronicleMapBuilder<K, V> preallocateFile(int extraTierBulks) {
+        if (extraTierBulks < 0) {
+            throw new IllegalArgumentException(
+                    "Number of extra tier bulks to preallocate should be non-negative, " +
+                            extraTierBulks + " given");
+        }
+        this.preallocatedTierBulks = extraTierBulks;
+        return this;
+    }
+
+    /**
+     * Configures the persisted maps created by this {@code ChronicleMapBuilder} to track segments,
+     * modified in the current process, and to sync only those segments to disk in background,
+     * with the given period, or earlier, if the size of the modified segments exceeds the
+     * given threshold. Unlike syncing the whole mapped file, the cost of such a sync is
+     * proportional to the amount of changes, rather than to the size of the map, that makes
+     * frequent durability checkpoints of large maps practical.
+     * <p>
+     * <p>The size of a modified segment is estimated as the size of its first tier, a segment
+     * with chained extra tiers is synced along with all of them. Changes made by other processes,
+     * accessing the same Chronicle Map store, are synced by those processes.
+     * <p>
+     * <p>This configuration has no effect for in-memory maps.
+     * <p>
+     * <p>This is a <a href="#jvm-configurations">JVM-level configuration</a>.
+     * <p>
+     * <p>By default, modified segments are not tracked, persisted data is written back to disk
+     * when the OS decides to.
+     *
+     * @param period              the maximum period between syncs, should be at least 1
+     *                            millisecond
+     * @param unit                the time unit of the period
+     * @param dirtyBytesThreshold the size of modified segments, which triggers a sync before the
+     *                            period ends, {@code Long.MAX_VALUE} to sync only periodically
+     * @return this builder back
+     * @throws IllegalArgumentException if the period is less than 1 millisecond, or the threshold
+     *                                  is not positive
+     */
+    public ChronicleMapBuilder<K, V> syncDirtySegmentsPeriodically(
+            long period, TimeUnit unit, long dirtyBytesThreshold) {
+        if (unit.toMillis(period) < 1) {
+            throw new IllegalArgumentException("period should be >= 1 millisecond, " +
+                    period + " " + unit + " is given");
+        }
+        if (dirtyBytesThreshold <= 0) {
+            throw new IllegalArgumentException("dirty bytes threshold should be positive, " +
+                    dirtyBytesThreshold + " is given");
+        }
+        dirtySegmentsSyncPeriod = period;
+        dirtySegmentsSyncPeriodUnit = unit;
+        dirtySegmentsSyncThreshold = dirtyBytesThreshold;
+        return this;
+    }
+
+    /**
+     * Configures the persisted maps created by this {@code ChronicleMapBuilder} to append all
+     * mutations (insertions, value replacements and removals) to a write-ahead journal, stored
+     * in the file next to the map file with {@code .journal} suffix, and to sync the journal to
+     * disk before the mutation is applied. With the given period, the map memory is synced to
+     * disk and the applied records are discarded from the journal, so that its size is bounded by
+     * the mutations, made during a period. During {@link #recoverPersistedTo(File, boolean)},
+     * mutations from the journal are replayed after the segments are recovered, so that no
+     * mutation, completed before a power loss or an OS crash, is lost.
+     * <p>
+     * <p>Syncs of the journal are batched across concurrently mutating threads (group commit).
+     * Note that the segment lock is held while the mutation waits for the sync. Mutations of
+     * replicated maps, received from remote nodes, are not journaled.
+     * <p>
+     * <p>All processes, accessing the same persisted Chronicle Map store, should configure the
+     * journal, otherwise mutations by the processes without journal are lost on a crash, or
+     * overwritten by older journaled mutations during recovery. This configuration has no effect
+     * for in-memory maps.
+     * <p>
+     * <p>This is a <a href="#jvm-configurations">JVM-level configuration</a>.
+     * <p>
+     * <p>By default, mutations are not journaled.
+     *
+     * @param checkpointPeriod the period between syncs of the map and truncations of the journal,
+     *                         should be at least 1 millisecond
+     * @param unit             the time unit of the period
+     * @return this builder back
+     */
+    public ChronicleMapBuilder<K, V> writeAheadJournal(long checkpointPeriod, TimeUnit unit) {
+        if (unit.toMillis(checkpointPeriod) < 1) {
+            throw new IllegalArgumentException("checkpoint period should be >= 1 millisecond, " +
+                    checkpointPeriod + " " + unit + " is given");
+        }
+        journalCheckpointPeriod = checkpointPeriod;
+        journalCheckpointPeriodUnit = unit;
+        return this;
+    }
+
+    /**
+     * Configures the number of threads, recovering the segments of the Chronicle Map store in
+     * {@link #recoverPersistedTo(File, boolean)} and {@link #createOrRecoverPersistedTo(File)}
+     * methods. Segments are independent, so scanning the hash lookups and the entries of the first
+     * tiers of the segments, and removing duplicate keys from the segments, is done by a
+     * fork-join pool with the given parallelism. Extra tiers are still recovered sequentially:
+     * scanning them, chaining them to the segments and recovering the global mutable state is
+     * always done in a single thread, so the result of the recovery doesn't depend on the
+     * parallelism. Maps, which have many extra tiers (e. g. because the configured number of
+     * {@link #entries(long) entries} is exceeded a lot), benefit less from this configuration.
+     * <p>
+     * <p>{@link ChronicleHashCorruption.Listener} is called from the recovering threads, but
+     * never concurrently.
+     * <p>
+     * <p>This is a <a href="#jvm-configurations">JVM-level configuration</a>.
+     * <p>
+     * <p>By default, segments are recovered in a single thread.
+     *
+     * @param parallelism the number of threads to recover the segments, 1 to recover them in the
+     *                    calling thread
+     * @return this builder back
+     * @throws IllegalArgumentException if {@code parallelism} is not positive
+     */
+    public ChronicleMapBuilder<K, V> recoveryParallelism(int parallelism) {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("recovery parallelism should be positive, " +
+                    parallelism + " is given");
+        }
+        recoveryParallelism = parallelism;
+        return this;
+    }
+
+    /**
+     * Configures if {@link #recoverPersistedTo(File, boolean)} and {@link
+     * #createOrRecoverPersistedTo(File)} methods should return the map, as soon as the global
+     * structures of the Chronicle Map store (the extra tiers and the global mutable state) are
+     * recovered, leaving the recovery of the segments' hash lookups and entries until the first
+     * access to each segment. The segment is recovered under its write lock by the thread which
+     * accesses it first, or by a background sweeper thread, which recovers all segments one by
+     * one. This makes the time of recovery of a large map after an unclean shutdown proportional
+     * to the number of extra tiers, rather than to the size of the map. The progress is reported
+     * by {@link ChronicleMap#recoveryProgress()}.
+     * <p>
+     * <p>{@link ChronicleHashCorruption.Listener} could be called from any thread, accessing the
+     * map, after the map is returned from the builder, but never concurrently. The store is
+     * marked ready to be opened by other processes without recovery only when all segments are
+     * recovered, if the map is closed before that, the store should be recovered again.
+     * The {@link #recoveryParallelism(int)} configuration has no effect, if segments are
+     * recovered lazily.
+     * <p>
+     * <p>This is a <a href="#jvm-configurations">JVM-level configuration</a>.
+     * <p>
+     * <p>By default, all segments are recovered before the map is returned.
+     *
+     * @param recoverSegmentsLazily if segments should be recovered on the first access
+     * @return this builder back
+     */
+    public ChronicleMapBuilder<K, V> recoverSegmentsLazily(boolean recoverSegmentsLazily) {
+        this.recoverSegmentsLazily = recoverSegmentsLazily;
+        return this;
+    }
+
+    /**
+     * Configures the kind of huge pages, backing the memory of the maps, created by this {@code
+     * ChronicleMapBuilder}. Random lookups in a large map touch a new page almost every time, with
+     * pages of the default size (4 KB) that means a TLB miss on almost each lookup, with 2 MB huge
+     * pages TLB covers 512 times more memory.
+     * <p>
+     * <p>The memory of in-memory maps is mapped anonymously with 2 MB alignment, rather than
+     * allocated with {@code malloc()}. With {@link HugePages#HUGETLB}, allocation of the map
+     * or of an extra tier bulk fails, if the huge page pool of the OS is exhausted, and {@link
+     * ChronicleMap#releaseFreeMemory()} does nothing. For persisted maps, only transparent huge
+     * pages are supported, {@link HugePages#HUGETLB} is treated as {@link
+     * HugePages#TRANSPARENT}: the mapped file is advised with {@code madvise(MADV_HUGEPAGE)}, that
+     * is effective if the file is on tmpfs, e. g. in {@code /dev/shm}, and transparent huge pages
+     * are enabled for shared memory. Persistence files on hugetlbfs are not supported, because
+     * hugetlbfs doesn't support {@code write()}, used to write the map header.
+     * <p>
+     * <p>Extra tier bulks of maps, created with huge pages, are at least 2 MB in size, so that
+     * each of them is backed by whole huge pages, this is stored in the persisted map and holds
+     * when the map is opened with another configuration. Huge pages are supported only on Linux,
+     * on other systems this configuration has no effect.
+     * <p>
+     * <p>This is a <a href="#jvm-configurations">JVM-level configuration</a>, except the size of
+     * extra tier bulks.
+     * <p>
+     * <p>By default, huge pages are not used, {@link HugePages#NONE}.
+     *
+     * @param hugePages the kind of huge pages to back the memory of the maps
+     * @return this builder back
+     */
+    public ChronicleMapBuilder<K, V> hugePages(@NotNull HugePages hugePages) {
+        this.hugePages = Objects.requireNonNull(hugePages);
+        return this;
+    }
+
+    /**
+     * Configures the maps, created or opened by this {@code ChronicleMapBuilder}, to fault in all
+     * their memory, before they are returned from the builder, in the given number of threads.
+     * Same as {@code preTouch(parallelism, false, null)}.
+     *
+     * @param parallelism the number of threads to touch the memory of the maps
+     * @return this builder back
+     * @throws IllegalArgumentException if {@code parallelism} is not positive
+     * @see #preTouch(int, boolean, DoubleConsumer)
+     */
+    public ChronicleMapBuilder<K, V> preTouch(int parallelism) {
+        return preTouch(parallelism, false, null);
+    }
+
+    /**
+     * Configures the maps, created or opened by this {@code ChronicleMapBuilder}, to fault in the
+     * segment headers, the first tiers of all segments and, if {@code extraTiers} is {@code true},
+     * the allocated extra tier bulks, before they are returned from the builder, see {@link
+     * ChronicleMap#warmUp(int, boolean, DoubleConsumer)}. Otherwise, each page of the map is
+     * faulted in on the first access to it, that causes latency spikes of up to a few
+     * milliseconds long after the map is created, or after the persisted map is opened, if the
+     * file is not in the page cache. The progress listener allows to report the progress of
+     * the warm up, or to gate the readiness of the service on it, if the map is created
+     * in a separate thread.
+     * <p>
+     * <p>This is a <a href="#jvm-configurations">JVM-level configuration</a>.
+     * <p>
+     * <p>By default, memory of the maps is not touched before the maps are returned.
+     *
+     * @param parallelism      the number of threads to touch the memory of the maps, 1 to touch
+     *                         it in the thread, which creates or opens the map
+     * @param extraTiers       if the allocated extra tier bulks should be touched, in addition to
+     *                         the segments
+     * @param progressListener called with the fraction of memory, touched so far, {@code null} if
+     *                         the progress is not reported
+     * @return this builder back
+     * @throws IllegalArgumentException if {@code parallelism} is not positive
+     */
+    public ChronicleMapBuilder<K, V> preTouch(
+            int parallelism, boolean extraTiers, @Nullable DoubleConsumer progressListener) {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("pre-touch parallelism should be positive, " +
+                    parallelism + " is given");
+        }
+        preTouchParallelism = parallelism;
+        preTouchExtraTiers = extraTiers;
+        preTouchProgressListener = progressListener;
+        return this;
+    }
+
+    /**
+     * Configures the persisted maps, created or opened by this {@code ChronicleMapBuilder}, to
+     * record their hot pages periodically, and to prefetch them when the map is opened again, e.
+     * g. after restart of the process. The hot pages are sampled as the pages of the persistence
+     * file, resident in memory ({@code mincore()}), that is the working set of the map, if the
+     * map doesn't fit the memory. They are stored in a compressed bitmap in the sidecar file
+     * next to the persistence file, with {@code .hotpages} suffix, which is replaced atomically
+     * on each sample.
+     * <p>
+     * <p>When an existing persistence file is opened, the pages, recorded in the sidecar file,
+     * are advised to be read ahead with {@code madvise(MADV_WILLNEED)}, and the map is returned
+     * from the builder after all of them are resident, so that the working set is in memory
+     * before the traffic arrives, while the rest of the file is faulted in on demand. This is
+     * done before the {@linkplain #preTouch(int, boolean, DoubleConsumer) pre-touch} of the whole
+     * map, if both are configured.
+     * <p>
+     * <p>Currently this is supported only on Linux, on other platforms and for in-memory maps this
+     * configuration has no effect.
+     * <p>
+     * <p>This is a <a href="#jvm-configurations">JVM-level configuration</a>.
+     * <p>
+     * <p>By default, hot pages are not recorded.
+     *
+     * @param samplingPeriod the period between samples of the hot pages, should be at least 1
+     *                       second, sampling a large map takes a while
+     * @param unit           the time unit of the period
+     * @return this builder back
+     */
+    public ChronicleMapBuilder<K, V> hotPagesTrace(long samplingPeriod, TimeUnit unit) {
+        if (unit.toSeconds(samplingPeriod) < 1) {
+            throw new IllegalArgumentException("hot pages sampling period should be >= 1 " +
+                    "second, " + samplingPeriod + " " + unit + " is given");
+        }
+        hotPagesSamplingPeriod = samplingPeriod;
+        hotPagesSamplingPeriodUnit = unit;
+        return this;
+    }
+
+    /**
+     * Configures if the segment headers, and the hash lookups and the counters areas of all
+     * segment tiers of the maps, created or opened by this {@code ChronicleMapBuilder}, should be
+     * locked in memory with {@code mlock()}. Under memory pressure, the OS evicts pages of the
+     * hash lookups as readily as pages with cold entries, while a page fault on the hash lookup
+     * stalls every query to the segment, holding the segment lock. With this configuration, only
+     * the entries could be paged out. Tiers of the extra tier bulks are locked, when the bulks
+     * are allocated or mapped.
+     * <p>
+     * <p>The total size of the locked memory is limited by {@code RLIMIT_MEMLOCK} of the process
+     * ({@code ulimit -l}), regions which fail to be locked remain pageable, the first failure is
+     * logged as a warning. The locked size and the number of failures are reported by {@code
+     * lockedMemory()} and {@code memoryLockFailures()} methods of the map implementation.
+     * Locking is not supported on Windows, there this configuration has no effect.
+     * <p>
+     * <p>This is a <a href="#jvm-configurations">JVM-level configuration</a>.
+     * <p>
+     * <p>By default, hash lookups are not locked in memory.
+     *
+     * @param lockHashLookups if hash lookups should be locked in memory
+     * @return this builder back
+     * @see #randomEntrySpaceAccess(boolean)
+     */
+    public ChronicleMapBuilder<K, V> lockHashLookups(boolean lockHashLookups) {
+        this.lockHashLookups = lockHashLookups;
+        return this;
+    }
+
+    /**
+     * Configures if the entry spaces of all segment tiers of the maps, created or opened by this
+     * {@code ChronicleMapBuilder}, should be advised with {@code madvise(MADV_RANDOM)}, so that
+     * a page fault on an entry doesn't read ahead neighbouring pages, which are unlikely to be
+     * needed, and doesn't evict useful pages from the page cache. Only pages, lying entirely
+     * within the entry spaces, are advised. Currently this is supported only on Linux, on other
+     * platforms this configuration has no effect.
+     * <p>
+     * <p>This is a <a href="#jvm-configurations">JVM-level configuration</a>.
+     * <p>
+     * <p>By default, the OS read ahead policy is not changed.
+     *
+     * @param randomEntrySpaceAccess if the entry spaces should be advised with {@code
+     *                               MADV_RANDOM}
+     * @return this builder back
+     * @see #lockHashLookups(boolean)
+     */
+    public ChronicleMapBuilder<K, V> randomEntrySpaceAccess(boolean randomEntrySpaceAccess) {
+        this.randomEntrySpaceAccess = randomEntrySpaceAccess;
+        return this;
+    }
+
+    /**
+     * Configures the maps created or opened by this {@code ChronicleMapBuilder} to verify the
+     * {@linkplain ChecksumEntry#checkSum() checksums} of all entries in background, and to
+     * report entries with mismatching checksums to the given listener. Unlike the verification
+     * during {@linkplain #recoverPersistedTo(File, boolean, ChronicleHashCorruption.Listener)
+     * recovery}, this detects silent corruption of the persisted data (e. g. by the storage) while
+     * the map is in use. Corrupted entries are only reported, not removed.
+     * <p>
+     * <p>The scrubber walks the segments one by one, each segment is {@linkplain
+     * SegmentLock#updateLock() update-locked} while its entries are verified, that blocks
+     * concurrent modifications, but not reads of the segment. The number of verified bytes of
+     * entries per second is limited by {@code bytesPerSecond}, so that the scrubbing fits the I/O
+     * budget of the storage. A new pass over the whole map starts when the previous pass is
+     * completed, but not earlier than {@code passPeriod} after the start of the previous pass.
+     * The progress and the throughput of the scrubbing are reported by {@link
+     * VanillaChronicleMap#checksumScrubProgress()}, {@link
+     * VanillaChronicleMap#checksumScrubPasses()}, {@link
+     * VanillaChronicleMap#lastChecksumScrubPassNanos()} and {@link
+     * VanillaChronicleMap#checksumScrubThroughput()}.
+     * <p>
+     * <p>This configuration has no effect, if {@linkplain #checksumEntries(boolean) checksums are
+     * not stored} in the map, or the map is opened {@linkplain #openReadOnly(File) read-only}.
+     * The listener is called from a {@linkplain MaintenanceScheduler maintenance thread}, while
+     * the segment of the corrupted entry is locked, it shouldn't block for long, not to delay
+     * the maintenance of other maps.
+     * <p>
+     * <p>This is a <a href="#jvm-configurations">JVM-level configuration</a>.
+     * <p>
+     * <p>By default, checksums are verified only on demand and during recovery.
+     *
+     * @param bytesPerSecond     the maximum number of entry bytes verified per second, {@code
+     *                           Long.MAX_VALUE} not to limit the rate
+     * @param passPeriod         the minimum period between starts of passes over the whole map,
+     *                           should be at least 1 millisecond
+     * @param unit               the time unit of the pass period
+     * @param corruptionListener the listener to report entries with mismatching checksums to
+     * @return this builder back
+     * @throws IllegalArgumentException if {@code bytesPerSecond} is not positive, or the pass
+     *                                  period is less than 1 millisecond
+     */
+    public ChronicleMapBuilder<K, V> scrubChecksumsInBackground(
+            long bytesPerSecond, long passPeriod, TimeUnit unit,
+            @NotNull ChronicleHashCorruption.Listener corruptionListener) {
+        if (bytesPerSecond <= 0) {
+            throw new IllegalArgumentException("bytes per second should be positive, " +
+                    bytesPerSecond + " is given");
+        }
+        if (unit.toMillis(passPeriod) < 1) {
+            throw new IllegalArgumentException("pass period should be >= 1 millisecond, " +
+                    passPeriod + " " + unit + " is given");
+        }
+        Objects.requireNonNull(corruptionListener);
+        checksumScrubBytesPerSecond = bytesPerSecond;
+        checksumScrubPassPeriod = passPeriod;
+        checksumScrubPassPeriodUnit = unit;
+        checksumScrubCorruptionListener = corruptionListener;
+        return this;
+    }
+
     @Override
     public ChronicleMapBuilder<K, V> keyReaderAndDataAccess(
             SizedReader<K> keyReader, @NotNull DataAccess<K> keyDataAccess) {
@@ -1405,6 +1987,97 @@ public final class ChronicleMapBuilder<K, V> implements
         return this;
     }
 
+    /**
+     * Configures the algorithm, used to compute entry checksums of the maps, created by this
+     * {@code ChronicleMapBuilder}, if {@linkplain #checksumEntries(boolean) checksums are stored}.
+     * The checksum is computed and stored on each entry update, inside the segment lock, so for
+     * maps with large values, updated frequently, the choice of the algorithm is visible in the
+     * update latency. {@link ChecksumAlgorithm#CRC32C} is faster than {@link
+     * ChecksumAlgorithm#XXHASH} for values of a few kilobytes and larger on Java 9+ and a CPU
+     * with CRC32 instructions, run {@code ChecksumAlgorithmsMain} from the test sources to
+     * compare the algorithms on the target platform.
+     * <p>
+     * <p>The algorithm is stored in the header of the persisted Chronicle Map, this configuration
+     * is ignored when an existing persisted map is opened.
+     * <p>
+     * <p>By default, {@link ChecksumAlgorithm#XXHASH} is used.
+     *
+     * @param checksumAlgorithm the algorithm to compute entry checksums with
+     * @return this builder back
+     * @see ChecksumEntry
+     */
+    public ChronicleMapBuilder<K, V> checksumAlgorithm(
+            @NotNull ChecksumAlgorithm checksumAlgorithm) {
+        this.checksumAlgorithm = Objects.requireNonNull(checksumAlgorithm);
+        return this;
+    }
+
+    /**
+     * Configures the maps, created by this {@code ChronicleMapBuilder} with {@linkplain
+     * #checksumEntries(boolean) entry checksums}, to defer the computation of checksums of updated
+     * entries. An update only marks the stored checksum of the entry as stale, the checksums are
+     * computed in background with the given period, and before {@linkplain
+     * VanillaChronicleHash#msync() msync} and {@linkplain ChronicleMap#close() close} of the map.
+     * This shortens the time the segment lock is held on updates of large values, at the cost of
+     * a window, in which the updated entries are not protected by checksums: {@link
+     * ChecksumEntry#checkSum()} returns {@code true} for entries with stale checksums, and {@link
+     * #recoverPersistedTo(File, boolean, ChronicleHashCorruption.Listener) recovery} keeps such
+     * entries without verification and computes their checksums.
+     * <p>
+     * <p>Whether checksums are deferred is stored in the header of the persisted Chronicle Map,
+     * and applies to all processes, accessing it. Each process computes the checksums deferred
+     * by itself. The period is a <a href="#jvm-configurations">JVM-level configuration</a>,
+     * existing maps with deferred checksums are opened with the period of 1 second, if it is
+     * not configured.
+     * <p>
+     * <p>By default, checksums are computed on each update, before the segment lock is released.
+     *
+     * @param period the period between computations of deferred checksums, should be at least
+     *               1 millisecond
+     * @param unit   the time unit of the period
+     * @return this builder back
+     * @throws IllegalArgumentException if the period is less than 1 millisecond
+     */
+    public ChronicleMapBuilder<K, V> deferChecksums(long period, TimeUnit unit) {
+        if (unit.toMillis(period) < 1) {
+            throw new IllegalArgumentException("period should be >= 1 millisecond, " +
+                    period + " " + unit + " is given");
+        }
+        deferredChecksumsPeriod = period;
+        deferredChecksumsPeriodUnit = unit;
+        return this;
+    }
+
+    /**
+     * Configures whether the maps, created by this {@code ChronicleMapBuilder}, should hash keys
+     * with a random seed. Keys are distributed between segments and hash lookup slots by their
+     * hash codes, if the hash function is known, it is possible to craft many keys, which fall
+     * into the same segment, and degrade queries to the segment to linear scans of the chained
+     * tiers. A map, which keys come from an untrusted source, should be created with seeded
+     * key hashing, then colliding keys couldn't be precomputed.
+     * <p>
+     * <p>The seed is generated with {@link java.security.SecureRandom} when the map is created,
+     * and stored in the header of the persisted Chronicle Map, so all processes, accessing it,
+     * hash keys with the same seed. This configuration is ignored when an existing map is
+     * opened. Regardless of this configuration, when a segment with suspiciously many entries
+     * chains a new tier, a warning is logged in background, see {@link
+     * VanillaChronicleHash#skewedSegments()}.
+     * <p>
+     * <p>By default, keys are hashed without a seed, that is compatible with the older versions of
+     * the Chronicle Map library.
+     *
+     * @param seededKeyHashing if keys of the created maps should be hashed with a random seed
+     * @return this builder back
+     */
+    public ChronicleMapBuilder<K, V> seededKeyHashing(boolean seededKeyHashing) {
+        this.seededKeyHashing = seededKeyHashing;
+        return this;
+    }
+
+    long minTierBulkSize() {
+        return hugePages != HugePages.NONE ? VanillaChronicleHash.HUGE_PAGE_SIZE : OS.pageSize();
+    }
+
     boolean checksumEntries() {
         switch (checksumEntries) {
             case NO:
@@ -1422,6 +2095,10 @@ public final class ChronicleMapBuilder<K, V> implements
         return aligned64BitMemoryOperationsAtomic;
     }
 
+    ChecksumAlgorithm checksumAlgorithm() {
+        return checksumAlgorithm;
+    }
+
     /**
      * Configures the {@code DataAccess} and {@code SizedReader} used to serialize and deserialize
      * values to and from off-heap memory in maps, created by this builder.
@@ -1587,6 +2264,159 @@ public final class ChronicleMapBuilder<K, V> implements
                 corruptionListener);
     }
 
+    /**
+     * Opens the Chronicle Map store, persisted to the given file, for reading only. The file is
+     * opened read-only and mapped with {@code PROT_READ}, so the process doesn't need the write
+     * permission for it. The self-bootstrapping header of the file is validated the same way as
+     * in {@link #createPersistedTo(File)}, and the configurations of the persisted map override
+     * the configurations of this builder, except <a href="#jvm-configurations">JVM-level
+     * configurations</a>.
+     * <p>
+     * <p>This method is intended for stores, which are built once and then never modified in
+     * place, e. g. reference data, rebuilt offline and replaced atomically. Reads from the
+     * returned map don't acquire segment locks, so many reading processes don't contend on the
+     * lock words, and a crashed reader couldn't leave a segment locked. It is not safe to read
+     * the store this way while it is modified by another process. All modification operations
+     * with the returned map throw {@link UnsupportedOperationException}, and the configured
+     * background maintenance, which modifies the store, (free memory release, tier reserves,
+     * journaling, sync of dirty segments, hot pages recording) is not started.
+     * <p>
+     * <p>Opening replicated maps read-only is not supported.
+     *
+     * @param file the file with existing Chronicle Map store
+     * @return a read-only view of the Chronicle Map store
+     * @throws FileNotFoundException if the file doesn't exist
+     * @throws IOException if the file is not a valid Chronicle Map store, or if any IO error
+     *                     occurs on opening or mapping the file
+     */
+    public ChronicleMap<K, V> openReadOnly(File file) throws IOException {
+        ChronicleMapBuilder<K, V> builder = clone();
+        builder.readOnly = true;
+        return builder.openReadOnlyWithFile(file);
+    }
+
+    private ChronicleMap<K, V> openReadOnlyWithFile(File file) throws IOException {
+        replicated = false;
+        persisted = true;
+        file = file.getCanonicalFile();
+        if (!file.exists())
+            throw new FileNotFoundException("file " + file + " should exist to be opened");
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        ChronicleHashResources resources = new PersistedChronicleHashResources(file, raf);
+        try {
+            VanillaChronicleMap<K, V, ?> map =
+                    openWithExistingFile(file, raf, resources, false, false, null);
+            prepareMapPublication(map);
+            return map;
+        } catch (Throwable throwable) {
+            try {
+                try {
+                    resources.setChronicleHashIdentityString(
+                            "ChronicleHash{name=" + name + ", file=" + file + ", read-only}");
+                } catch (Throwable t) {
+                    throwable.addSuppressed(t);
+                } finally {
+                    resources.releaseManually();
+                }
+            } catch (Throwable t) {
+                throwable.addSuppressed(t);
+            }
+            throw Throwables.propagateNotWrapping(throwable, IOException.class);
+        }
+    }
+
+    /**
+     * Creates a new Chronicle Map store, persisted to the given file, and fills it with the given
+     * entries in parallel, before the map is returned. The entries are partitioned by segment,
+     * each of {@code parallelism} worker threads fills it's own subset of segments, taking the
+     * lock of a segment once per batch of entries, rather than for each entry, and workers never
+     * contend on segments. The loaded entries are made durable with a single {@code msync} of the
+     * whole store at the end. The resulting store is the same as if the entries were inserted via
+     * {@link ChronicleMap#put(Object, Object)}, so it could be opened and modified as any other
+     * persisted Chronicle Map. If the entries contain duplicate keys, the last value is kept.
+     * <p>
+     * <p>The map should be configured for the number of loaded entries, see {@link
+     * #entries(long)}. The configured background maintenance, e. g. {@linkplain
+     * #writeAheadJournal(long, TimeUnit) journaling}, is started after the entries are loaded,
+     * i. e. the loaded entries are not journaled.
+     * <p>
+     * <p>The store is marked ready only after the entries are loaded and synced, so other
+     * processes, opening the file meanwhile, wait for that. If the load fails, the file is deleted.
+     *
+     * @param file        the file to create the store in, shouldn't exist or should be empty
+     * @param entries     the entries to load, iterated once, in the calling thread
+     * @param parallelism the number of threads, inserting the entries
+     * @return a new Chronicle Map, filled with the given entries
+     * @throws java.nio.file.FileAlreadyExistsException if the file is not empty
+     * @throws IllegalArgumentException if parallelism is not positive
+     * @throws IOException if any IO error occurs on creating or syncing the store
+     */
+    public ChronicleMap<K, V> bulkLoadPersistedTo(
+            File file, Iterable<? extends Map.Entry<K, V>> entries, int parallelism)
+            throws IOException {
+        if (parallelism <= 0)
+            throw new IllegalArgumentException("bulk load parallelism should be positive");
+        Objects.requireNonNull(entries);
+        ChronicleMapBuilder<K, V> builder = clone();
+        builder.bulkLoadEntries = entries;
+        builder.bulkLoadParallelism = parallelism;
+        return builder.createWithFile(file, false, false, null);
+    }
+
+    /**
+     * Writes the given entries to the given file as an immutable Chronicle Map store, and opens
+     * it, as if by {@link #openImmutable(File)}. The store is densely packed: entries are laid
+     * out back to back, without segments, locks and free space, and an entry is found via minimal
+     * perfect hash function over the keys, which addresses the slot of the entry directly,
+     * without probing. This is suitable for reference data, built once (e. g. offline) and then
+     * only read, or replaced as a whole.
+     * <p>
+     * <p>Only the key and value serializers of this builder are used, other configurations,
+     * including {@link #entries(long)} and average sizes, are ignored. {@code entries} are
+     * iterated twice, and must return the same entries in the same order both times. The file is
+     * written under a temporary name and then renamed, so it never appears partially written.
+     * <p>
+     * <p>All modification operations with the returned map throw {@link
+     * UnsupportedOperationException}, contexts ({@link ChronicleMap#queryContext(Object)}, {@link
+     * ChronicleMap#segmentContext(int)}, {@link
+     * ChronicleMap#forEachEntry(java.util.function.Consumer)}) are not supported as well.
+     *
+     * @param file    the file to write the store to, shouldn't exist
+     * @param entries the entries of the map, keys must be distinct
+     * @return the immutable Chronicle Map, mapped to the written file
+     * @throws java.nio.file.FileAlreadyExistsException if the file already exists
+     * @throws IllegalArgumentException if the entries contain duplicate keys
+     * @throws IOException if any IO error occurs on writing or mapping the file
+     * @see #openImmutable(File)
+     */
+    public ChronicleMap<K, V> createImmutablePersistedTo(
+            File file, Iterable<? extends Map.Entry<K, V>> entries) throws IOException {
+        ChronicleMapBuilder<K, V> builder = clone();
+        file = file.getCanonicalFile();
+        ImmutableChronicleMap.write(file, entries, builder.keyBuilder, builder.valueBuilder);
+        return new ImmutableChronicleMap<>(file, builder.name, builder.keyBuilder,
+                builder.valueBuilder);
+    }
+
+    /**
+     * Opens the immutable Chronicle Map store, written by {@link
+     * #createImmutablePersistedTo(File, Iterable)}, mapping the file read-only. This builder
+     * should be configured with the same key and value classes and serializers, as the builder,
+     * which wrote the store.
+     *
+     * @param file the file with immutable Chronicle Map store
+     * @return the immutable Chronicle Map, mapped to the given file
+     * @throws FileNotFoundException if the file doesn't exist
+     * @throws IOException if the file is not a valid immutable Chronicle Map store, or if any IO
+     *                     error occurs on mapping the file
+     * @throws IllegalStateException if the store holds entries of other key or value classes
+     */
+    public ChronicleMap<K, V> openImmutable(File file) throws IOException {
+        ChronicleMapBuilder<K, V> builder = clone();
+        return new ImmutableChronicleMap<>(file.getCanonicalFile(), builder.name,
+                builder.keyBuilder, builder.valueBuilder);
+    }
+
     @Override
     public ChronicleMap<K, V> create() {
         // clone() to make this builder instance thread-safe, because createWithoutFile() method
@@ -1614,9 +2444,13 @@ public final class ChronicleMapBuilder<K, V> implements
         }
         RandomAccessFile raf = CanonicalRandomAccessFiles.acquire(file);
         ChronicleHashResources resources = new PersistedChronicleHashResources(file);
+        // Single-element array allows to modify the variable within lambda
+        boolean[] newFile = new boolean[1];
         try {
             VanillaChronicleMap<K, V, ?> result;
             if (raf.length() > 0) {
+                if (bulkLoadEntries != null)
+                    throw new FileAlreadyExistsException(file.toString());
                 result = openWithExistingFile(file, raf, resources, recover, overrideBuilderConfig,
                         corruptionListener);
             } else {
@@ -1625,7 +2459,6 @@ public final class ChronicleMapBuilder<K, V> implements
                 @SuppressWarnings("unchecked")
                 VanillaChronicleMap<K, V, ?>[] map = new VanillaChronicleMap[1];
                 ByteBuffer[] headerBuffer = new ByteBuffer[1];
-                boolean[] newFile = new boolean[1];
                 FileChannel fileChannel = raf.getChannel();
 
                 fileLockedIO(file, fileChannel, () -> {
@@ -1643,6 +2476,9 @@ public final class ChronicleMapBuilder<K, V> implements
                     result = createWithNewFile(map[0], file, raf, resources, headerBuffer[0],
                             headerSize);
                 } else {
+                    // Created by another process concurrently
+                    if (bulkLoadEntries != null)
+                        throw new FileAlreadyExistsException(file.toString());
                     result = openWithExistingFile(file, raf, resources, recover,
                             overrideBuilderConfig, corruptionListener);
                 }
@@ -1659,6 +2495,9 @@ public final class ChronicleMapBuilder<K, V> implements
                 } finally {
                     resources.releaseManually();
                 }
+                // The store is not marked ready, delete it, so that the bulk load could be retried
+                if (bulkLoadEntries != null && newFile[0])
+                    Files.deleteIfExists(file.toPath());
             } catch (Throwable t) {
                 throwable.addSuppressed(t);
             }
@@ -1667,7 +2506,11 @@ public final class ChronicleMapBuilder<K, V> implements
     }
 
     private void prepareMapPublication(VanillaChronicleMap map) throws IOException {
-        establishReplication(map);
+        map.establishResidencyControls();
+        if (!readOnly)
+            establishMaintenance(map);
+        if (preTouchParallelism > 0)
+            map.warmUp(preTouchParallelism, preTouchExtraTiers, preTouchProgressListener);
         map.setResourcesName();
         map.registerCleaner();
         // Ensure safe publication of the ChronicleMap
@@ -1675,6 +2518,39 @@ public final class ChronicleMapBuilder<K, V> implements
         map.addToOnExitHook();
     }
 
+    /**
+     * Establishes the configured background activities, which modify the map, or the
+     * persistence file.
+     */
+    private void establishMaintenance(VanillaChronicleMap map) throws IOException {
+        // Prefetches hot pages before the pre-touch of the whole map
+        if (hotPagesSamplingPeriod > 0 && persisted)
+            map.establishHotPagesTrace(hotPagesSamplingPeriod, hotPagesSamplingPeriodUnit);
+        establishReplication(map);
+        if (freeMemoryReleasePeriod > 0)
+            establishFreeMemoryRelease(map);
+        if (tierReserves)
+            map.establishTierReservesRefill();
+        if (journalCheckpointPeriod > 0 && persisted)
+            map.establishJournal(journalCheckpointPeriod, journalCheckpointPeriodUnit);
+        if (dirtySegmentsSyncPeriod > 0) {
+            map.establishDirtySegmentsSync(dirtySegmentsSyncPeriod, dirtySegmentsSyncPeriodUnit,
+                    dirtySegmentsSyncThreshold);
+        }
+        if (map.deferredChecksums) {
+            if (deferredChecksumsPeriod > 0) {
+                map.establishDeferredChecksums(
+                        deferredChecksumsPeriod, deferredChecksumsPeriodUnit);
+            } else {
+                map.establishDeferredChecksums(1, TimeUnit.SECONDS);
+            }
+        }
+        if (checksumScrubBytesPerSecond > 0 && map.checksumEntries) {
+            map.establishChecksumScrubbing(checksumScrubBytesPerSecond, checksumScrubPassPeriod,
+                    checksumScrubPassPeriodUnit, checksumScrubCorruptionListener);
+        }
+    }
+
     /**
      * @return size of the self bootstrapping header
      */
@@ -1737,6 +2613,12 @@ public final class ChronicleMapBuilder<K, V> implements
             throws IOException {
         map.initBeforeMapping(file, raf, headerBuffer.limit(), false);
         map.createMappedStoreAndSegments(resources);
+        if (bulkLoadEntries != null) {
+            // The store is marked ready only when loaded, other processes wait until that
+            new BulkLoader<>(map, bulkLoadParallelism).load(bulkLoadEntries);
+            // the map isn't published yet, a single msync makes all loaded entries durable
+            map.msync();
+        }
         commitChronicleMapReady(map, raf, headerBuffer, headerSize);
         return map;
     }
@@ -1773,6 +2655,10 @@ public final class ChronicleMapBuilder<K, V> implements
             headerBytes.readLimit(headerBuffer.limit());
             Wire wire = new TextWire(headerBytes);
             VanillaChronicleMap<K, V, ?> map = wire.getValueIn().typedMarshallable();
+            if (readOnly && map instanceof ReplicatedChronicleMap) {
+                throw new IOException("Replicated map, persisted to " + file +
+                        ", couldn't be opened read-only");
+            }
             map.initBeforeMapping(file, raf, headerBuffer.limit(), recover);
             long dataStoreSize = map.globalMutableState().getDataStoreSize();
             if (!recover && dataStoreSize > file.length()) {
@@ -1787,7 +2673,12 @@ public final class ChronicleMapBuilder<K, V> implements
                 if (!headerWritten)
                     writeNotComplete(fileChannel, headerBuffer, headerSize);
                 map.recover(resources, corruptionListener, corruption);
-                commitChronicleMapReady(map, raf, headerBuffer, headerSize);
+                // If segments are recovered lazily, the store is marked ready only when all of
+                // them are recovered, so that it couldn't be opened without recovery meanwhile
+                ByteBuffer readyHeaderBuffer = headerBuffer;
+                int readyHeaderSize = headerSize;
+                map.whenSegmentsRecovered(() ->
+                        commitChronicleMapReady(map, raf, readyHeaderBuffer, readyHeaderSize));
             }
             return map;
         } catch (Throwable t) {
@@ -1885,14 +2776,19 @@ public final class ChronicleMapBuilder<K, V> implements
         if (map instanceof ReplicatedChronicleMap) {
             ReplicatedChronicleMap result = (ReplicatedChronicleMap) map;
             if (cleanupRemovedEntries)
-                establishCleanupThread(result);
+                establishCleanup(result);
         }
     }
 
-    private void establishCleanupThread(ReplicatedChronicleMap map) {
-        OldDeletedEntriesCleanupThread cleanupThread = new OldDeletedEntriesCleanupThread(map);
-        map.addCloseable(cleanupThread);
-        cleanupThread.start();
+    private void establishCleanup(ReplicatedChronicleMap map) {
+        map.scheduleMaintenance(new OldDeletedEntriesCleanupTask(map), 0, TimeUnit.SECONDS);
+    }
+
+    private void establishFreeMemoryRelease(VanillaChronicleMap map) {
+        FreeMemoryReleaseTask releaseTask = new FreeMemoryReleaseTask(
+                map, freeMemoryReleasePeriod, freeMemoryReleasePeriodUnit);
+        map.scheduleMaintenance(
+                releaseTask, freeMemoryReleasePeriod, freeMemoryReleasePeriodUnit);
     }
 
     /**
@@ -17,6 +17,7 @@
 
 package net.openhft.chronicle.map;
 
+import net.openhft.chronicle.hash.ChecksumAlgorithm;
 import net.openhft.chronicle.hash.ChronicleHashBuilderPrivateAPI;
 import net.openhft.chronicle.hash.serialization.impl.SerializationBuilder;
 import net.openhft.chronicle.map.replication.MapRemoteOperations;
@@ -97,6 +98,26 @@ class ChronicleMapBuilderPrivateAPI<K, V>
         return b.checksumEntries();
     }
 
+    @Override
+    public ChecksumAlgorithm checksumAlgorithm() {
+        return b.checksumAlgorithm();
+    }
+
+    @Override
+    public boolean deferredChecksums() {
+        return b.deferredChecksumsPeriod > 0;
+    }
+
+    @Override
+    public boolean seededKeyHashing() {
+        return b.seededKeyHashing;
+    }
+
+    @Override
+    public long minTierBulkSize() {
+        return b.minTierBulkSize();
+    }
+
     @Override
     public void replication(byte identifier) {
         b.replication(identifier);
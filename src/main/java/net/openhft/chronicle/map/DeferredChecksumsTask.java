@@ -0,0 +1,82 @@
+/*
+ *      Copyright (C) 2012, 2016  higherfrequencytrading.com
+ *      Copyright (C) 2016 Roman Leventov
+ *
+ *      This program is free software: you can redistribute it and/or modify
+ *      it under the terms of the GNU Lesser General Public License as published by
+ *      the Free Software Foundation, either version 3 of the License.
+ *
+ *      This program is distributed in the hope that it will be useful,
+ *      but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *      MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *      GNU Lesser General Public License for more details.
+ *
+ *      You should have received a copy of the GNU Lesser General Public License
+ *      along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.openhft.chronicle.map;
+
+import net.openhft.chronicle.hash.ChronicleHashClosedException;
+import net.openhft.chronicle.hash.impl.MaintenanceTask;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically calls {@link VanillaChronicleMap#computeDeferredChecksums()}.
+ *
+ * @see ChronicleMapBuilder#deferChecksums(long, TimeUnit)
+ */
+final class DeferredChecksumsTask extends MaintenanceTask {
+    private static final Logger LOG = LoggerFactory.getLogger(DeferredChecksumsTask.class);
+
+    /**
+     * Weak reference for the same reason as in {@link OldDeletedEntriesCleanupTask}: not to
+     * leak the map, if the user forgets to close() it.
+     */
+    private final WeakReference<VanillaChronicleMap<?, ?, ?>> mapRef;
+    private final long periodNanos;
+
+    /**
+     * Entries with deferred checksums are not protected, the task has high priority. All deferred
+     * checksums are computed in one run, not to leave any entries unprotected until the next.
+     */
+    DeferredChecksumsTask(VanillaChronicleMap<?, ?, ?> map, long period, TimeUnit unit) {
+        super("Deferred checksums of " + map.toIdentityString(), Priority.HIGH, 0.5);
+        this.mapRef = new WeakReference<>(map);
+        periodNanos = unit.toNanos(period);
+    }
+
+    @Override
+    protected long run(long sliceNanos) {
+        return computeDeferredChecksums() ? periodNanos : -1;
+    }
+
+    /**
+     * @return {@code false} if the map is already collected or closed and this task should be
+     * stopped
+     */
+    private boolean computeDeferredChecksums() {
+        VanillaChronicleMap<?, ?, ?> map = mapRef.get();
+        if (map == null || !map.isOpen())
+            return false;
+        long startTime = System.nanoTime();
+        long computed;
+        try {
+            computed = map.computeDeferredChecksums();
+        } catch (ChronicleHashClosedException e) {
+            return false;
+        } catch (RuntimeException e) {
+            LOG.error("Failed to compute deferred checksums of " + map.toIdentityString(), e);
+            return true;
+        }
+        if (computed > 0) {
+            LOG.debug("Computed {} deferred checksums of {} in {} us", computed,
+                    map.toIdentityString(),
+                    TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startTime));
+        }
+        return true;
+    }
+}
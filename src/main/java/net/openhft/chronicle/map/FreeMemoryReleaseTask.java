@@ -0,0 +1,81 @@
+/*
+ *      Copyright (C) 2012, 2016  higherfrequencytrading.com
+ *      Copyright (C) 2016 Roman Leventov
+ *
+ *      This program is free software: you can redistribute it and/or modify
+ *      it under the terms of the GNU Lesser General Public License as published by
+ *      the Free Software Foundation, either version 3 of the License.
+ *
+ *      This program is distributed in the hope that it will be useful,
+ *      but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *      MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *      GNU Lesser General Public License for more details.
+ *
+ *      You should have received a copy of the GNU Lesser General Public License
+ *      along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.openhft.chronicle.map;
+
+import net.openhft.chronicle.hash.ChronicleHashClosedException;
+import net.openhft.chronicle.hash.impl.MaintenanceTask;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically calls {@link ChronicleMap#releaseFreeMemory()}.
+ *
+ * @see ChronicleMapBuilder#releaseFreeMemoryPeriodically(long, TimeUnit)
+ */
+class FreeMemoryReleaseTask extends MaintenanceTask {
+    private static final Logger LOG = LoggerFactory.getLogger(FreeMemoryReleaseTask.class);
+
+    /**
+     * Weak reference for the same reason as in {@link OldDeletedEntriesCleanupTask}: not to
+     * leak the map, if the user forgets to close() it.
+     */
+    private final WeakReference<VanillaChronicleMap<?, ?, ?>> mapRef;
+    private final long periodNanos;
+
+    private long totalReleased;
+
+    /**
+     * Releasing memory only saves resources, the task has low priority. It is not split in
+     * slices, releaseFreeMemory() holds each segment lock only for a short time.
+     */
+    FreeMemoryReleaseTask(VanillaChronicleMap<?, ?, ?> map, long period, TimeUnit unit) {
+        super("Free memory release of " + map.toIdentityString(), Priority.LOW, 0.1);
+        this.mapRef = new WeakReference<>(map);
+        periodNanos = unit.toNanos(period);
+    }
+
+    @Override
+    protected long run(long sliceNanos) {
+        return releaseFreeMemory() ? periodNanos : -1;
+    }
+
+    /**
+     * @return {@code false} if the map is already collected or closed and this task should be
+     * stopped
+     */
+    private boolean releaseFreeMemory() {
+        VanillaChronicleMap<?, ?, ?> map = mapRef.get();
+        if (map == null || !map.isOpen())
+            return false;
+        long startTime = System.nanoTime();
+        long released;
+        try {
+            released = map.releaseFreeMemory();
+        } catch (ChronicleHashClosedException e) {
+            return false;
+        }
+        totalReleased += released;
+        LOG.debug("Released {} bytes of free memory of {} in {} us, {} bytes in total",
+                released, map.toIdentityString(),
+                TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startTime), totalReleased);
+        return true;
+    }
+}
@@ -0,0 +1,963 @@
+/*
+ *      Copyright (C) 2012, 2016  higherfrequencytrading.com
+ *      Copyright (C) 2016 Roman Leventov
+ *
+ *      This program is free software: you can redistribute it and/or modify
+ *      it under the terms of the GNU Lesser General Public License as published by
+ *      the Free Software Foundation, either version 3 of the License.
+ *
+ *      This program is distributed in the hope that it will be useful,
+ *      but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *      MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *      GNU Lesser General Public License for more details.
+ *
+ *      You should have received a copy of the GNU Lesser General Public License
+ *      along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.openhft.chronicle.map;
+
+import net.openhft.chronicle.algo.hashing.LongHashFunction;
+import net.openhft.chronicle.bytes.Bytes;
+import net.openhft.chronicle.bytes.BytesStore;
+import net.openhft.chronicle.bytes.PointerBytesStore;
+import net.openhft.chronicle.bytes.RandomDataInput;
+import net.openhft.chronicle.bytes.VanillaBytes;
+import net.openhft.chronicle.core.Memory;
+import net.openhft.chronicle.core.OS;
+import net.openhft.chronicle.core.util.SerializableFunction;
+import net.openhft.chronicle.hash.AbstractData;
+import net.openhft.chronicle.hash.ChronicleHashClosedException;
+import net.openhft.chronicle.hash.Data;
+import net.openhft.chronicle.hash.impl.MinimalPerfectHash;
+import net.openhft.chronicle.hash.impl.PreTouch;
+import net.openhft.chronicle.hash.impl.util.Cleaner;
+import net.openhft.chronicle.hash.impl.util.CleanerUtils;
+import net.openhft.chronicle.hash.serialization.DataAccess;
+import net.openhft.chronicle.hash.serialization.SizedReader;
+import net.openhft.chronicle.hash.serialization.impl.SerializationBuilder;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.DoubleConsumer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Predicate;
+
+import static java.nio.channels.FileChannel.MapMode.READ_ONLY;
+import static java.nio.file.StandardOpenOption.*;
+import static java.util.Collections.emptyList;
+import static net.openhft.chronicle.core.OS.pageAlign;
+import static net.openhft.chronicle.hash.impl.util.Objects.requireNonNull;
+
+/**
+ * Read-only Chronicle Map, built once from a static set of entries and stored in a densely packed
+ * file: there are no segments, locks, hash lookups with free slots and free lists, the entries
+ * are laid out back to back. An entry is found via {@link MinimalPerfectHash} over the key
+ * hashes, which maps a key to the slot of the entry directly, without probing, then the key bytes
+ * in the entry are compared with the queried key to reject absent keys.
+ * <p>
+ * <p>File layout: the {@value #HEADER_SIZE}-byte header, the names of the key and value classes,
+ * the entries: the key size (int), the key bytes, the value size (int) and the value bytes, then
+ * the serialized minimal perfect hash function, then the offsets of the entries in the slots
+ * order, 4-byte if the entries take less than 4 GB, 8-byte otherwise.
+ * <p>
+ * <p>Contexts, which are used to access entries of mutable Chronicle Maps in place, are not
+ * supported.
+ *
+ * @see ChronicleMapBuilder#createImmutablePersistedTo(File, Iterable)
+ * @see ChronicleMapBuilder#openImmutable(File)
+ */
+final class ImmutableChronicleMap<K, V> extends AbstractMap<K, V> implements ChronicleMap<K, V> {
+
+    private static final long MAGIC = 0x50414d494d43L; // "CMIMAP"
+    private static final int VERSION = 1;
+    private static final int MAGIC_OFFSET = 0;
+    private static final int VERSION_OFFSET = 8;
+    private static final int SLOT_WIDTH_OFFSET = 12;
+    private static final int ENTRIES_OFFSET = 16;
+    private static final int DATA_START_OFFSET = 24;
+    private static final int DATA_END_OFFSET = 32;
+    private static final int HASH_FUNCTION_OFFSET_OFFSET = 40;
+    private static final int SLOTS_OFFSET_OFFSET = 48;
+    private static final int FILE_SIZE_OFFSET = 56;
+    static final int HEADER_SIZE = 64;
+
+    private static final int WRITE_BUFFER_SIZE = 1 << 20;
+    private static final int MAX_ENTRIES = Integer.MAX_VALUE - 8;
+    private static final long WARM_UP_CHUNK = 64L << 20;
+
+    /**
+     * Writes the given entries to the given file in the format of {@code ImmutableChronicleMap}.
+     * The entries are iterated twice: to compute the minimal perfect hash function over the key
+     * hashes, and then to write the entries. The file is written under a temporary name and then
+     * atomically renamed, so it never appears partially written.
+     */
+    static <K, V> void write(File file, Iterable<? extends Map.Entry<K, V>> entries,
+                             SerializationBuilder<K> keyBuilder,
+                             SerializationBuilder<V> valueBuilder) throws IOException {
+        if (file.exists())
+            throw new FileAlreadyExistsException(file.toString());
+        DataAccess<K> keyDataAccess = keyBuilder.dataAccess();
+        DataAccess<V> valueDataAccess = valueBuilder.dataAccess();
+
+        long[] keyHashes = new long[1024];
+        int count = 0;
+        long dataSize = 0;
+        for (Map.Entry<K, V> entry : entries) {
+            if (count == keyHashes.length) {
+                if (count == MAX_ENTRIES)
+                    throw new IllegalArgumentException("More than " + MAX_ENTRIES + " entries");
+                keyHashes = Arrays.copyOf(keyHashes, (int) Math.min(2L * count, MAX_ENTRIES));
+            }
+            try {
+                Data<K> keyData = keyDataAccess.getData(requireNonNull(entry.getKey()));
+                Data<V> valueData = valueDataAccess.getData(requireNonNull(entry.getValue()));
+                keyHashes[count++] = keyData.hash(LongHashFunction.xx_r39());
+                dataSize += 4 + Math.toIntExact(keyData.size()) +
+                        4 + Math.toIntExact(valueData.size());
+            } finally {
+                keyDataAccess.uninit();
+                valueDataAccess.uninit();
+            }
+        }
+        checkDistinct(keyHashes, count);
+        long[] hashFunction = MinimalPerfectHash.build(keyHashes, count);
+        //noinspection UnusedAssignment: allow GC of the hashes while the entries are written
+        keyHashes = null;
+
+        Memory memory = OS.memory();
+        long hashFunctionSize = 8L * hashFunction.length;
+        long hashFunctionAddr = memory.allocate(hashFunctionSize);
+        File tmp = new File(file.getPath() + ".tmp");
+        try {
+            for (int i = 0; i < hashFunction.length; i++) {
+                memory.writeLong(hashFunctionAddr + 8L * i, hashFunction[i]);
+            }
+            MinimalPerfectHash slots = new MinimalPerfectHash(hashFunctionAddr);
+            try (FileChannel channel = FileChannel.open(tmp.toPath(),
+                    CREATE, TRUNCATE_EXISTING, WRITE)) {
+                ByteBuffer buffer =
+                        ByteBuffer.allocate(WRITE_BUFFER_SIZE).order(ByteOrder.nativeOrder());
+                byte[] keyClassName = keyBuilder.tClass.getName().getBytes(StandardCharsets.UTF_8);
+                byte[] valueClassName =
+                        valueBuilder.tClass.getName().getBytes(StandardCharsets.UTF_8);
+                buffer.putInt(keyClassName.length).put(keyClassName);
+                buffer.putInt(valueClassName.length).put(valueClassName);
+                long dataStart = align8(HEADER_SIZE + buffer.position());
+                writeFully(channel, buffer, HEADER_SIZE);
+
+                long[] slotOffsets = new long[count];
+                Arrays.fill(slotOffsets, -1L);
+                long position = dataStart;
+                long dataOffset = 0;
+                int written = 0;
+                BytesStore<?, ByteBuffer> bufferStore = BytesStore.wrap(buffer);
+                for (Map.Entry<K, V> entry : entries) {
+                    try {
+                        Data<K> keyData = keyDataAccess.getData(requireNonNull(entry.getKey()));
+                        Data<V> valueData =
+                                valueDataAccess.getData(requireNonNull(entry.getValue()));
+                        long slot = slots.index(keyData.hash(LongHashFunction.xx_r39()));
+                        if (written == count || slot < 0 || slotOffsets[(int) slot] >= 0)
+                            throw entriesChanged();
+                        int keySize = Math.toIntExact(keyData.size());
+                        int valueSize = Math.toIntExact(valueData.size());
+                        int recordSize = 4 + keySize + 4 + valueSize;
+                        if (buffer.remaining() < recordSize) {
+                            position = writeFully(channel, buffer, position);
+                            if (buffer.capacity() < recordSize) {
+                                buffer = ByteBuffer.allocate(recordSize)
+                                        .order(ByteOrder.nativeOrder());
+                                bufferStore = BytesStore.wrap(buffer);
+                            }
+                        }
+                        buffer.putInt(keySize);
+                        keyData.writeTo(bufferStore, buffer.position());
+                        buffer.position(buffer.position() + keySize);
+                        buffer.putInt(valueSize);
+                        valueData.writeTo(bufferStore, buffer.position());
+                        buffer.position(buffer.position() + valueSize);
+                        slotOffsets[(int) slot] = dataOffset;
+                        dataOffset += recordSize;
+                        written++;
+                    } finally {
+                        keyDataAccess.uninit();
+                        valueDataAccess.uninit();
+                    }
+                }
+                if (written != count || dataOffset != dataSize)
+                    throw entriesChanged();
+                position = writeFully(channel, buffer, position);
+
+                long hashFunctionOffset = align8(position);
+                position = hashFunctionOffset;
+                for (long word : hashFunction) {
+                    if (buffer.remaining() < 8)
+                        position = writeFully(channel, buffer, position);
+                    buffer.putLong(word);
+                }
+                position = writeFully(channel, buffer, position);
+
+                long slotsOffset = position;
+                int slotWidth = dataSize <= 0xFFFFFFFFL ? 4 : 8;
+                for (long slotOffset : slotOffsets) {
+                    if (buffer.remaining() < 8)
+                        position = writeFully(channel, buffer, position);
+                    if (slotWidth == 4) {
+                        buffer.putInt((int) slotOffset);
+                    } else {
+                        buffer.putLong(slotOffset);
+                    }
+                }
+                position = writeFully(channel, buffer, position);
+
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.nativeOrder());
+                header.putLong(MAGIC_OFFSET, MAGIC);
+                header.putInt(VERSION_OFFSET, VERSION);
+                header.putInt(SLOT_WIDTH_OFFSET, slotWidth);
+                header.putLong(ENTRIES_OFFSET, count);
+                header.putLong(DATA_START_OFFSET, dataStart);
+                header.putLong(DATA_END_OFFSET, dataStart + dataSize);
+                header.putLong(HASH_FUNCTION_OFFSET_OFFSET, hashFunctionOffset);
+                header.putLong(SLOTS_OFFSET_OFFSET, slotsOffset);
+                header.putLong(FILE_SIZE_OFFSET, position);
+                header.position(HEADER_SIZE);
+                writeFully(channel, header, 0);
+                channel.force(true);
+            }
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (Throwable t) {
+            try {
+                Files.deleteIfExists(tmp.toPath());
+            } catch (Throwable t2) {
+                t.addSuppressed(t2);
+            }
+            throw t;
+        } finally {
+            memory.freeMemory(hashFunctionAddr, hashFunctionSize);
+        }
+    }
+
+    private static void checkDistinct(long[] keyHashes, int count) {
+        long[] sorted = Arrays.copyOf(keyHashes, count);
+        Arrays.sort(sorted);
+        for (int i = 1; i < count; i++) {
+            if (sorted[i] == sorted[i - 1]) {
+                throw new IllegalArgumentException("The entries contain duplicate keys, " +
+                        "or distinct keys with the same 64-bit hash");
+            }
+        }
+    }
+
+    private static ConcurrentModificationException entriesChanged() {
+        return new ConcurrentModificationException(
+                "The entries changed between the two iterations over them");
+    }
+
+    private static long align8(long offset) {
+        return (offset + 7) & ~7L;
+    }
+
+    /**
+     * Writes the buffer contents at the given position in the file, and clears the buffer.
+     *
+     * @return the position in the file after the written bytes
+     */
+    private static long writeFully(FileChannel channel, ByteBuffer buffer, long position)
+            throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+        buffer.clear();
+        return position;
+    }
+
+    private final File file;
+    private final String name;
+    private final SerializationBuilder<K> keyBuilder;
+    private final SerializationBuilder<V> valueBuilder;
+    private final Memory memory = OS.memory();
+    private final long address;
+    private final long mapSize;
+    private final Unmapper unmapper;
+    private final Cleaner cleaner;
+    private long entries;
+    private long dataStart;
+    private long dataEnd;
+    private MinimalPerfectHash slots;
+    private int slotWidth;
+    private long slotsAddr;
+    private final ThreadLocal<Accessors<K, V>> accessors;
+    private Set<Entry<K, V>> entrySet;
+
+    ImmutableChronicleMap(File file, String name, SerializationBuilder<K> keyBuilder,
+                          SerializationBuilder<V> valueBuilder) throws IOException {
+        this.file = file;
+        this.name = name;
+        this.keyBuilder = keyBuilder;
+        this.valueBuilder = valueBuilder;
+        long fileSize;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            fileSize = raf.length();
+            if (fileSize < HEADER_SIZE)
+                throw new IOException(file + " is not an immutable Chronicle Map store");
+            mapSize = pageAlign(fileSize);
+            address = OS.map(raf.getChannel(), READ_ONLY, 0, mapSize);
+        }
+        long storeAddress = address;
+        long storeSize = mapSize;
+        Unmapper unmapper = new Unmapper(address, mapSize);
+        this.unmapper = unmapper;
+        accessors = ThreadLocal.withInitial(() -> new Accessors<>(
+                keyBuilder, valueBuilder, storeAddress, storeSize, unmapper.newActivity()));
+        cleaner = CleanerUtils.createCleaner(this, unmapper);
+        try {
+            readHeader(fileSize);
+        } catch (Throwable t) {
+            cleaner.clean();
+            throw t;
+        }
+    }
+
+    private void readHeader(long fileSize) throws IOException {
+        if (memory.readLong(address + MAGIC_OFFSET) != MAGIC)
+            throw new IOException(file + " is not an immutable Chronicle Map store");
+        int version = memory.readInt(address + VERSION_OFFSET);
+        if (version != VERSION) {
+            throw new IOException(file + " has unsupported immutable Chronicle Map format " +
+                    "version " + version + ", expected " + VERSION);
+        }
+        if (memory.readLong(address + FILE_SIZE_OFFSET) != fileSize)
+            throw new IOException(file + " is truncated or incompletely written");
+        long classNameOffset = HEADER_SIZE;
+        String keyClassName = readClassName(classNameOffset);
+        classNameOffset += 4 + memory.readInt(address + classNameOffset);
+        String valueClassName = readClassName(classNameOffset);
+        if (!keyClassName.equals(keyClass().getName()) ||
+                !valueClassName.equals(valueClass().getName())) {
+            throw new IllegalStateException(file + " stores " + keyClassName + " -> " +
+                    valueClassName + " entries, but " + keyClass().getName() + " -> " +
+                    valueClass().getName() + " are configured");
+        }
+        slotWidth = memory.readInt(address + SLOT_WIDTH_OFFSET);
+        entries = memory.readLong(address + ENTRIES_OFFSET);
+        dataStart = memory.readLong(address + DATA_START_OFFSET);
+        dataEnd = memory.readLong(address + DATA_END_OFFSET);
+        slots = new MinimalPerfectHash(
+                address + memory.readLong(address + HASH_FUNCTION_OFFSET_OFFSET));
+        slotsAddr = address + memory.readLong(address + SLOTS_OFFSET_OFFSET);
+    }
+
+    private String readClassName(long offset) {
+        byte[] name = new byte[memory.readInt(address + offset)];
+        for (int i = 0; i < name.length; i++) {
+            name[i] = memory.readByte(address + offset + 4 + i);
+        }
+        return new String(name, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Serializers are stateful, so each thread reads with it's own copies. Doesn't reference the
+     * map, otherwise the thread-local values would keep the map reachable, and the cleaner would
+     * never unmap the store.
+     */
+    private static final class Accessors<K, V> {
+        final Memory memory = OS.memory();
+        final long address;
+        final DataAccess<K> keyDataAccess;
+        final SizedReader<K> keyReader;
+        final SizedReader<V> valueReader;
+        final PointerBytesStore store = new PointerBytesStore();
+        final Bytes bytes;
+        final Activity activity;
+
+        Accessors(SerializationBuilder<K> keyBuilder, SerializationBuilder<V> valueBuilder,
+                  long address, long mapSize, Activity activity) {
+            this.address = address;
+            this.activity = activity;
+            keyDataAccess = keyBuilder.dataAccess();
+            keyReader = keyBuilder.reader();
+            valueReader = valueBuilder.reader();
+            store.set(address, mapSize);
+            bytes = new VanillaBytes(store);
+        }
+
+        K readKey(long entryOffset, K using) {
+            bytes.readLimit(bytes.capacity());
+            bytes.readPosition(entryOffset + 4);
+            return keyReader.read(bytes, memory.readInt(address + entryOffset), using);
+        }
+
+        V readValue(long entryOffset, V using) {
+            long valueSizeOffset = entryOffset + 4 + memory.readInt(address + entryOffset);
+            bytes.readLimit(bytes.capacity());
+            bytes.readPosition(valueSizeOffset + 4);
+            return valueReader.read(bytes, memory.readInt(address + valueSizeOffset), using);
+        }
+    }
+
+    /**
+     * The number of accesses to the store in progress in a thread. Written only by the owning
+     * thread, so accesses don't contend on shared memory.
+     */
+    private static final class Activity {
+        volatile int depth;
+    }
+
+    /**
+     * Unmaps the store on {@link #close()}, or when the map becomes unreachable. The store is
+     * unmapped only when accesses, started before the map is closed, are finished in all threads:
+     * an access increments the depth of the activity of it's thread, then checks the closed flag,
+     * so either the access sees the flag, or the unmapper sees the access.
+     */
+    private static final class Unmapper implements Runnable {
+        private final long address;
+        private final long size;
+        /**
+         * Activities of all threads, which have accessed the store
+         */
+        private final Queue<Activity> activities = new ConcurrentLinkedQueue<>();
+        private volatile boolean closed;
+        /**
+         * Guarded by this
+         */
+        private boolean unmapped;
+
+        Unmapper(long address, long size) {
+            this.address = address;
+            this.size = size;
+        }
+
+        Activity newActivity() {
+            Activity activity = new Activity();
+            activities.add(activity);
+            return activity;
+        }
+
+        @Override
+        public synchronized void run() {
+            closed = true;
+            if (unmapped)
+                return;
+            for (Activity activity : activities) {
+                while (activity.depth != 0) {
+                    Thread.yield();
+                }
+            }
+            unmapped = true;
+            try {
+                OS.unmap(address, size);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    /**
+     * Should be followed by {@link #release(Accessors)} in a finally block.
+     *
+     * @return the accessors of the current thread
+     * @throws ChronicleHashClosedException if this map is closed
+     */
+    private Accessors<K, V> acquire() {
+        Accessors<K, V> a = accessors.get();
+        Activity activity = a.activity;
+        activity.depth++;
+        if (unmapper.closed) {
+            activity.depth--;
+            throw new ChronicleHashClosedException(this);
+        }
+        return a;
+    }
+
+    private static void release(Accessors<?, ?> a) {
+        a.activity.depth--;
+    }
+
+    private void checkKey(Object key) {
+        if (!keyClass().isInstance(key)) {
+            // key.getClass will cause NPE exactly as needed
+            throw new ClassCastException(toIdentityString() + ": Key must be a " +
+                    keyClass().getName() + " but was a " + key.getClass());
+        }
+    }
+
+    /**
+     * Returns the offset of the entry with the given key in the file, or -1 if the key is absent.
+     */
+    private long findEntry(Accessors<K, V> a, K key) {
+        Data<K> keyData = a.keyDataAccess.getData(key);
+        try {
+            long slot = slots.index(keyData.hash(LongHashFunction.xx_r39()));
+            if (slot < 0)
+                return -1;
+            long entryOffset = dataStart + (slotWidth == 4 ?
+                    (memory.readInt(slotsAddr + 4 * slot) & 0xFFFFFFFFL) :
+                    memory.readLong(slotsAddr + 8 * slot));
+            if (memory.readInt(address + entryOffset) != keyData.size() ||
+                    !keyData.equivalent(a.store, entryOffset + 4)) {
+                return -1;
+            }
+            return entryOffset;
+        } finally {
+            a.keyDataAccess.uninit();
+        }
+    }
+
+    @Override
+    public V get(Object key) {
+        //noinspection unchecked
+        return getUsing((K) key, null);
+    }
+
+    @Override
+    public V getUsing(K key, V usingValue) {
+        checkKey(key);
+        Accessors<K, V> a = acquire();
+        try {
+            long entryOffset = findEntry(a, key);
+            return entryOffset >= 0 ? a.readValue(entryOffset, usingValue) : null;
+        } finally {
+            release(a);
+        }
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        checkKey(key);
+        Accessors<K, V> a = acquire();
+        try {
+            //noinspection unchecked
+            return findEntry(a, (K) key) >= 0;
+        } finally {
+            release(a);
+        }
+    }
+
+    @Override
+    public <R> R getMapped(K key, @NotNull SerializableFunction<? super V, R> function) {
+        requireNonNull(function);
+        V value = get(key);
+        return value != null ? function.apply(value) : null;
+    }
+
+    @Override
+    public int size() {
+        return (int) Math.min(longSize(), Integer.MAX_VALUE);
+    }
+
+    @Override
+    public long longSize() {
+        if (!isOpen())
+            throw new ChronicleHashClosedException(this);
+        return entries;
+    }
+
+    @NotNull
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        return (entrySet != null) ? entrySet : (entrySet = new AbstractSet<Entry<K, V>>() {
+            @NotNull
+            @Override
+            public Iterator<Entry<K, V>> iterator() {
+                return new EntryIterator();
+            }
+
+            @Override
+            public int size() {
+                return ImmutableChronicleMap.this.size();
+            }
+        });
+    }
+
+    private final class EntryIterator implements Iterator<Entry<K, V>> {
+        private long entryOffset = dataStart;
+
+        @Override
+        public boolean hasNext() {
+            return entryOffset < dataEnd;
+        }
+
+        @Override
+        public Entry<K, V> next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            Accessors<K, V> a = acquire();
+            try {
+                K key = a.readKey(entryOffset, null);
+                V value = a.readValue(entryOffset, null);
+                entryOffset = nextEntryOffset(entryOffset);
+                return new SimpleImmutableEntry<>(key, value);
+            } finally {
+                release(a);
+            }
+        }
+    }
+
+    private long nextEntryOffset(long entryOffset) {
+        long valueSizeOffset = entryOffset + 4 + memory.readInt(address + entryOffset);
+        return valueSizeOffset + 4 + memory.readInt(address + valueSizeOffset);
+    }
+
+    @Override
+    public void getAll(File toFile) throws IOException {
+        synchronized (this) {
+            JsonSerializer.getAll(toFile, this, emptyList());
+        }
+    }
+
+    /**
+     * The store is never modified, so the snapshot is a plain copy of the file.
+     */
+    @Override
+    public void snapshotTo(File toFile) throws IOException {
+        if (!isOpen())
+            throw new ChronicleHashClosedException(this);
+        Files.copy(file.toPath(), toFile.toPath());
+    }
+
+    /**
+     * The entries are stored in the layout of the records of the export, so their bytes are
+     * copied as they are, by a single thread. Only the sizes are rewritten, the store has them in
+     * the native byte order, while the export is little-endian.
+     */
+    @Override
+    public void exportTo(File toFile, int parallelism) throws IOException {
+        if (parallelism <= 0)
+            throw new IllegalArgumentException("parallelism should be positive");
+        Accessors<K, V> a = acquire();
+        try {
+            MapDump.writeDump(this, toFile, export -> {
+                MapDump.ChunkWriter writer = export.newWriter();
+                for (long entryOffset = dataStart; entryOffset < dataEnd; ) {
+                    int keySize = memory.readInt(address + entryOffset);
+                    long valueSizeOffset = entryOffset + 4 + keySize;
+                    int valueSize = memory.readInt(address + valueSizeOffset);
+                    writer.append(address + entryOffset + 4, keySize,
+                            address + valueSizeOffset + 4, valueSize);
+                    entryOffset = valueSizeOffset + 4 + valueSize;
+                }
+            });
+        } finally {
+            release(a);
+        }
+    }
+
+    @Override
+    public Class<K> keyClass() {
+        return keyBuilder.tClass;
+    }
+
+    @Override
+    public Class<V> valueClass() {
+        return valueBuilder.tClass;
+    }
+
+    @Override
+    public File file() {
+        return file;
+    }
+
+    @Override
+    public String name() {
+        return name;
+    }
+
+    @Override
+    public String toIdentityString() {
+        return "ImmutableChronicleMap{name=" + name + ", file=" + file + ", identityHashCode=" +
+                System.identityHashCode(this) + "}";
+    }
+
+    @Override
+    public long offHeapMemoryUsed() {
+        return mapSize;
+    }
+
+    @Override
+    public long releaseFreeMemory() {
+        return 0;
+    }
+
+    @Override
+    public double recoveryProgress() {
+        return 1.0;
+    }
+
+    @Override
+    public void warmUp() {
+        warmUp(Runtime.getRuntime().availableProcessors(), true, null);
+    }
+
+    /**
+     * The store has no extra tiers, {@code extraTiers} is ignored.
+     */
+    @Override
+    public void warmUp(int parallelism, boolean extraTiers,
+                       @Nullable DoubleConsumer progressListener) {
+        if (parallelism <= 0)
+            throw new IllegalArgumentException("warm up parallelism should be positive");
+        Accessors<K, V> a = acquire();
+        try {
+            PreTouch preTouch = new PreTouch(true, progressListener);
+            for (long offset = 0; offset < mapSize; offset += WARM_UP_CHUNK) {
+                preTouch.addRange(address + offset, Math.min(WARM_UP_CHUNK, mapSize - offset));
+            }
+            preTouch.run(parallelism);
+        } finally {
+            release(a);
+        }
+    }
+
+    /**
+     * Returns 1, the store is not segmented.
+     */
+    @Override
+    public int segments() {
+        return 1;
+    }
+
+    /**
+     * Waits until accesses to the store in other threads are finished, then unmaps it.
+     *
+     * @throws IllegalStateException if called in the course of iteration in the current thread
+     */
+    @Override
+    public void close() {
+        if (accessors.get().activity.depth > 0) {
+            throw new IllegalStateException(toIdentityString() +
+                    ": Attempt to close an immutable Chronicle Map in the course of iteration");
+        }
+        cleaner.clean();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return !unmapper.closed;
+    }
+
+    private UnsupportedOperationException immutable() {
+        return new UnsupportedOperationException(toIdentityString() + " is immutable");
+    }
+
+    private UnsupportedOperationException noContexts() {
+        return new UnsupportedOperationException(toIdentityString() +
+                ": contexts are not supported by immutable Chronicle Maps");
+    }
+
+    @Override
+    public V put(K key, V value) {
+        throw immutable();
+    }
+
+    @Override
+    public V remove(Object key) {
+        throw immutable();
+    }
+
+    @Override
+    public void putAll(@NotNull Map<? extends K, ? extends V> m) {
+        throw immutable();
+    }
+
+    @Override
+    public void clear() {
+        throw immutable();
+    }
+
+    @Override
+    public V putIfAbsent(@NotNull K key, V value) {
+        throw immutable();
+    }
+
+    @Override
+    public boolean remove(@NotNull Object key, Object value) {
+        throw immutable();
+    }
+
+    @Override
+    public boolean replace(@NotNull K key, @NotNull V oldValue, @NotNull V newValue) {
+        throw immutable();
+    }
+
+    @Override
+    public V replace(@NotNull K key, @NotNull V value) {
+        throw immutable();
+    }
+
+    @Override
+    public V acquireUsing(@NotNull K key, V usingValue) {
+        throw immutable();
+    }
+
+    @NotNull
+    @Override
+    public net.openhft.chronicle.core.io.Closeable acquireContext(
+            @NotNull K key, @NotNull V usingValue) {
+        throw immutable();
+    }
+
+    @Override
+    public void putAll(File fromFile) {
+        throw immutable();
+    }
+
+    @Override
+    public void importFrom(File fromFile, int parallelism) {
+        throw immutable();
+    }
+
+    @Override
+    public ExternalMapQueryContext<K, V, ?> queryContext(K key) {
+        throw noContexts();
+    }
+
+    @Override
+    public ExternalMapQueryContext<K, V, ?> queryContext(Data<K> key) {
+        throw noContexts();
+    }
+
+    @Override
+    public ExternalMapQueryContext<K, V, ?> queryContext(
+            BytesStore keyBytes, long offset, long size) {
+        throw noContexts();
+    }
+
+    @Override
+    public MapSegmentContext<K, V, ?> segmentContext(int segmentIndex) {
+        throw noContexts();
+    }
+
+    /**
+     * Passes the entries in the order of the file, like {@link #entrySet()}. The entries and their
+     * key and value data are reused between the calls of the predicate. {@link MapEntry#context()}
+     * is not supported, the entries could be neither replaced nor removed.
+     */
+    @Override
+    public boolean forEachEntryWhile(Predicate<? super MapEntry<K, V>> predicate) {
+        requireNonNull(predicate);
+        Accessors<K, V> a = acquire();
+        try {
+            StoredEntry entry = new StoredEntry(a);
+            for (long entryOffset = dataStart; entryOffset < dataEnd; ) {
+                int keySize = memory.readInt(address + entryOffset);
+                entry.key.set(entryOffset + 4, keySize);
+                long valueSizeOffset = entryOffset + 4 + keySize;
+                int valueSize = memory.readInt(address + valueSizeOffset);
+                entry.value.set(valueSizeOffset + 4, valueSize);
+                if (!predicate.test(entry))
+                    return false;
+                entryOffset = valueSizeOffset + 4 + valueSize;
+            }
+            return true;
+        } finally {
+            release(a);
+        }
+    }
+
+    @Override
+    public void forEachEntry(Consumer<? super MapEntry<K, V>> action) {
+        requireNonNull(action);
+        forEachEntryWhile(entry -> {
+            action.accept(entry);
+            return true;
+        });
+    }
+
+    private final class StoredEntry implements MapEntry<K, V> {
+        final StoredData<K> key;
+        final StoredData<V> value;
+
+        StoredEntry(Accessors<K, V> a) {
+            key = new StoredData<>(a, a.keyReader);
+            value = new StoredData<>(a, a.valueReader);
+        }
+
+        @NotNull
+        @Override
+        public MapContext<K, V, ?> context() {
+            throw noContexts();
+        }
+
+        @NotNull
+        @Override
+        public Data<K> key() {
+            return key;
+        }
+
+        @NotNull
+        @Override
+        public Data<V> value() {
+            return value;
+        }
+
+        @Override
+        public void doReplaceValue(Data<V> newValue) {
+            throw immutable();
+        }
+
+        @Override
+        public void doRemove() {
+            throw immutable();
+        }
+    }
+
+    /**
+     * Key or value bytes of an entry in the store, deserialized on demand.
+     */
+    private static final class StoredData<T> extends AbstractData<T> {
+        private final Accessors<?, ?> a;
+        private final SizedReader<T> reader;
+        private long offset;
+        private long size;
+
+        StoredData(Accessors<?, ?> a, SizedReader<T> reader) {
+            this.a = a;
+            this.reader = reader;
+        }
+
+        void set(long offset, long size) {
+            this.offset = offset;
+            this.size = size;
+        }
+
+        @Override
+        public RandomDataInput bytes() {
+            return a.store;
+        }
+
+        @Override
+        public long offset() {
+            return offset;
+        }
+
+        @Override
+        public long size() {
+            return size;
+        }
+
+        @Override
+        public T get() {
+            return getUsing(null);
+        }
+
+        @Override
+        public T getUsing(@Nullable T using) {
+            a.bytes.readLimit(a.bytes.capacity());
+            a.bytes.readPosition(offset);
+            return reader.read(a.bytes, size, using);
+        }
+    }
+}
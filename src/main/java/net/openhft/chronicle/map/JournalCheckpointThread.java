@@ -0,0 +1,108 @@
+/*
+ *      Copyright (C) 2012, 2016  higherfrequencytrading.com
+ *      Copyright (C) 2016 Roman Leventov
+ *
+ *      This program is free software: you can redistribute it and/or modify
+ *      it under the terms of the GNU Lesser General Public License as published by
+ *      the Free Software Foundation, either version 3 of the License.
+ *
+ *      This program is distributed in the hope that it will be useful,
+ *      but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *      MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *      GNU Lesser General Public License for more details.
+ *
+ *      You should have received a copy of the GNU Lesser General Public License
+ *      along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.openhft.chronicle.map;
+
+import net.openhft.chronicle.core.io.Closeable;
+import net.openhft.chronicle.hash.ChronicleHashClosedException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Periodically syncs the map to disk and truncates the {@link MapJournal}.
+ *
+ * @see ChronicleMapBuilder#writeAheadJournal(long, TimeUnit)
+ */
+class JournalCheckpointThread extends Thread implements Closeable {
+    private static final Logger LOG = LoggerFactory.getLogger(JournalCheckpointThread.class);
+
+    /**
+     * Weak reference for the same reason as in {@link OldDeletedEntriesCleanupTask}: not to
+     * leak the map, if the user forgets to close() it.
+     */
+    private final WeakReference<VanillaChronicleMap<?, ?, ?>> mapRef;
+    private final MapJournal journal;
+    private final long periodMillis;
+
+    /**
+     * Used to determine that this thread is parked in {@link #sleep()}, to interrupt()
+     * selectively in {@link #close()}.
+     */
+    private final Object sleepingHandle = new Object();
+
+    private volatile boolean shutdown;
+
+    JournalCheckpointThread(
+            VanillaChronicleMap<?, ?, ?> map, MapJournal journal, long period, TimeUnit unit) {
+        super("Journal Checkpoint Thread for " + map.toIdentityString());
+        setDaemon(true);
+        this.mapRef = new WeakReference<>(map);
+        this.journal = journal;
+        periodMillis = unit.toMillis(period);
+    }
+
+    @Override
+    public void run() {
+        while (!shutdown) {
+            sleep();
+            if (shutdown || !checkpoint())
+                return;
+        }
+    }
+
+    /**
+     * @return {@code false} if the map is already collected or closed and this thread should be
+     * shut down
+     */
+    private boolean checkpoint() {
+        VanillaChronicleMap<?, ?, ?> map = mapRef.get();
+        if (map == null || !map.isOpen())
+            return false;
+        long startTime = System.nanoTime();
+        try {
+            journal.checkpoint(map);
+        } catch (ChronicleHashClosedException e) {
+            return false;
+        } catch (IOException | RuntimeException e) {
+            // the journal is truncated on the next successful checkpoint
+            LOG.error(map.toIdentityString() + ": journal checkpoint failed", e);
+            return true;
+        }
+        LOG.debug("Journal checkpoint of {} in {} us", map.toIdentityString(),
+                TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startTime));
+        return true;
+    }
+
+    private void sleep() {
+        long deadline = System.currentTimeMillis() + periodMillis;
+        while (System.currentTimeMillis() < deadline && !shutdown)
+            LockSupport.parkUntil(sleepingHandle, deadline);
+    }
+
+    @Override
+    public void close() {
+        shutdown = true;
+        // this means blocked in sleep()
+        if (LockSupport.getBlocker(this) == sleepingHandle)
+            this.interrupt(); // unblock
+    }
+}
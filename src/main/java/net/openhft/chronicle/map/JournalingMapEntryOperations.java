@@ -0,0 +1,68 @@
+/*
+ *      Copyright (C) 2012, 2016  higherfrequencytrading.com
+ *      Copyright (C) 2016 Roman Leventov
+ *
+ *      This program is free software: you can redistribute it and/or modify
+ *      it under the terms of the GNU Lesser General Public License as published by
+ *      the Free Software Foundation, either version 3 of the License.
+ *
+ *      This program is distributed in the hope that it will be useful,
+ *      but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *      MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *      GNU Lesser General Public License for more details.
+ *
+ *      You should have received a copy of the GNU Lesser General Public License
+ *      along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.openhft.chronicle.map;
+
+import net.openhft.chronicle.hash.Data;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+
+/**
+ * Appends each mutation to the {@link MapJournal} before delegating it to the configured
+ * {@link MapEntryOperations}.
+ */
+final class JournalingMapEntryOperations<K, V, R> implements MapEntryOperations<K, V, R> {
+
+    private final MapEntryOperations<K, V, R> delegate;
+    private final MapJournal journal;
+
+    JournalingMapEntryOperations(MapEntryOperations<K, V, R> delegate, MapJournal journal) {
+        this.delegate = delegate;
+        this.journal = journal;
+    }
+
+    @Override
+    public R remove(@NotNull MapEntry<K, V> entry) {
+        try {
+            journal.appendRemove(entry.key());
+        } catch (IOException e) {
+            throw new RuntimeException(entry.context().hash().toIdentityString(), e);
+        }
+        return delegate.remove(entry);
+    }
+
+    @Override
+    public R replaceValue(@NotNull MapEntry<K, V> entry, Data<V> newValue) {
+        try {
+            journal.appendPut(entry.key(), newValue);
+        } catch (IOException e) {
+            throw new RuntimeException(entry.context().hash().toIdentityString(), e);
+        }
+        return delegate.replaceValue(entry, newValue);
+    }
+
+    @Override
+    public R insert(@NotNull MapAbsentEntry<K, V> absentEntry, Data<V> value) {
+        try {
+            journal.appendPut(absentEntry.absentKey(), value);
+        } catch (IOException e) {
+            throw new RuntimeException(absentEntry.context().hash().toIdentityString(), e);
+        }
+        return delegate.insert(absentEntry, value);
+    }
+}
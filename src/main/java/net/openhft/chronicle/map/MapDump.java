@@ -0,0 +1,428 @@
+/*
+ *      Copyright (C) 2012, 2016  higherfrequencytrading.com
+ *      Copyright (C) 2016 Roman Leventov
+ *
+ *      This program is free software: you can redistribute it and/or modify
+ *      it under the terms of the GNU Lesser General Public License as published by
+ *      the Free Software Foundation, either version 3 of the License.
+ *
+ *      This program is distributed in the hope that it will be useful,
+ *      but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *      MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *      GNU Lesser General Public License for more details.
+ *
+ *      You should have received a copy of the GNU Lesser General Public License
+ *      along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.openhft.chronicle.map;
+
+import net.openhft.chronicle.bytes.BytesStore;
+import net.openhft.chronicle.core.Jvm;
+import net.openhft.chronicle.core.OS;
+import net.openhft.chronicle.core.io.IORuntimeException;
+import net.openhft.chronicle.hash.Data;
+import sun.nio.ch.DirectBuffer;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * Binary dump of the entries of a Chronicle Map, used to move the entries between maps (e. g.
+ * between hosts) at disk speed: the serialized forms of keys and values are copied as they are,
+ * without deserialization, and chunks of the dump are written and read by several threads in
+ * parallel, through off-heap buffers.
+ * <p>
+ * <p>File layout: the header: the magic number (long), the format version (int), padding (int),
+ * the number of entries (long), the names of the key and the value classes (each is the length
+ * (int) and UTF-8 bytes), then chunks: the payload size (int), the number of records (int), and
+ * records: the key size (int), the key bytes, the value size (int) and the value bytes. Chunks
+ * are written concurrently in arbitrary order, each is at most {@value #CHUNK_SIZE} bytes,
+ * unless it consists of a single larger record. All numbers are little-endian. The magic number
+ * is written the last, so an incomplete dump is not recognized.
+ *
+ * @see ChronicleMap#exportTo(File, int)
+ * @see ChronicleMap#importFrom(File, int)
+ */
+final class MapDump {
+
+    private static final long MAGIC = 0x504d55444d43L; // "CMDUMP"
+    private static final int VERSION = 1;
+    private static final int MAGIC_OFFSET = 0;
+    private static final int VERSION_OFFSET = 8;
+    private static final int ENTRIES_OFFSET = 16;
+    private static final int HEADER_SIZE = 24;
+    private static final int CHUNK_HEADER_SIZE = 8;
+    static final int CHUNK_SIZE = 1 << 20;
+
+    private MapDump() {
+    }
+
+    static boolean isDump(File file) throws IOException {
+        if (file.length() < HEADER_SIZE)
+            return false;
+        try (FileChannel in = FileChannel.open(file.toPath(), READ)) {
+            ByteBuffer magic = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(in, magic, MAGIC_OFFSET, file);
+            return magic.getLong(0) == MAGIC;
+        }
+    }
+
+    static <K, V> void export(VanillaChronicleMap<K, V, ?> map, File toFile, int parallelism)
+            throws IOException {
+        checkParallelism(parallelism);
+        writeDump(map, toFile, export -> {
+            ForkJoinPool pool = new ForkJoinPool(Math.min(parallelism, map.segments()));
+            ThreadLocal<ChunkWriter> writers = ThreadLocal.withInitial(export::newWriter);
+            try {
+                map.forEachSegmentInParallel(pool, (c, segmentIndex) -> {
+                    c.initSegmentIndex(segmentIndex);
+                    // Segments are exported consistently, but not blocking readers
+                    c.updateLock().lock();
+                    ChunkWriter writer = writers.get();
+                    c.forEachSegmentEntry(e -> {
+                        try {
+                            writer.append(e.key(), e.value());
+                        } catch (IOException ex) {
+                            throw new IORuntimeException(ex);
+                        }
+                    });
+                });
+            } catch (IORuntimeException e) {
+                // ForkJoinTask.join() might wrap the exception once more
+                for (Throwable cause = e.getCause(); cause != null; cause = cause.getCause()) {
+                    if (cause instanceof IOException)
+                        throw (IOException) cause;
+                }
+                throw e;
+            } finally {
+                pool.shutdown();
+            }
+        });
+    }
+
+    interface DumpAction {
+        void writeEntries(Export export) throws IOException;
+    }
+
+    /**
+     * Creates the dump file, which shouldn't exist, lets the action write entries through the
+     * writers of the given {@link Export}, then completes the dump. If anything fails, the
+     * incomplete dump file is deleted.
+     */
+    static void writeDump(ChronicleMap<?, ?> map, File toFile, DumpAction action)
+            throws IOException {
+        try (FileChannel out = FileChannel.open(toFile.toPath(), WRITE, CREATE_NEW)) {
+            try {
+                Export export = new Export(out, map.keyClass(), map.valueClass());
+                action.writeEntries(export);
+                export.finish();
+            } catch (Throwable t) {
+                try {
+                    Files.deleteIfExists(toFile.toPath());
+                } catch (Throwable t2) {
+                    t.addSuppressed(t2);
+                }
+                throw t;
+            }
+        }
+    }
+
+    static final class Export {
+        private final FileChannel out;
+        private final AtomicLong end;
+        private final Queue<ChunkWriter> writers = new ConcurrentLinkedQueue<>();
+
+        private Export(FileChannel out, Class<?> keyClass, Class<?> valueClass)
+                throws IOException {
+            this.out = out;
+            byte[] keyClassName = keyClass.getName().getBytes(StandardCharsets.UTF_8);
+            byte[] valueClassName = valueClass.getName().getBytes(StandardCharsets.UTF_8);
+            ByteBuffer classNames = ByteBuffer.allocate(8 + keyClassName.length +
+                    valueClassName.length).order(ByteOrder.LITTLE_ENDIAN);
+            classNames.putInt(keyClassName.length).put(keyClassName);
+            classNames.putInt(valueClassName.length).put(valueClassName);
+            classNames.flip();
+            long position = HEADER_SIZE;
+            while (classNames.hasRemaining())
+                position += out.write(classNames, position);
+            end = new AtomicLong(position);
+        }
+
+        ChunkWriter newWriter() {
+            ChunkWriter writer = new ChunkWriter(this);
+            writers.add(writer);
+            return writer;
+        }
+
+        /**
+         * Should be called after all writers are done
+         */
+        private void finish() throws IOException {
+            long entries = 0;
+            for (ChunkWriter writer : writers) {
+                writer.flush();
+                entries += writer.totalRecords;
+            }
+            out.force(true);
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.putLong(MAGIC_OFFSET, MAGIC);
+            header.putInt(VERSION_OFFSET, VERSION);
+            header.putLong(ENTRIES_OFFSET, entries);
+            while (header.hasRemaining())
+                out.write(header, header.position());
+            out.force(true);
+        }
+    }
+
+    /**
+     * Accumulates records in an off-heap buffer and writes them as chunks at the end of the
+     * dump. Not thread-safe, each thread writes with it's own writer.
+     */
+    static final class ChunkWriter {
+        private final Export export;
+        private ByteBuffer buffer;
+        private BytesStore<?, ByteBuffer> store;
+        private int records;
+        private long totalRecords;
+
+        private ChunkWriter(Export export) {
+            this.export = export;
+            allocate(CHUNK_SIZE);
+        }
+
+        private void allocate(int capacity) {
+            buffer = ByteBuffer.allocateDirect(capacity).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.position(CHUNK_HEADER_SIZE);
+            store = BytesStore.wrap(buffer);
+        }
+
+        void append(Data<?> key, Data<?> value) throws IOException {
+            int keySize = Math.toIntExact(key.size());
+            int valueSize = Math.toIntExact(value.size());
+            ensureCapacity(4 + keySize + 4 + valueSize);
+            buffer.putInt(keySize);
+            key.writeTo(store, buffer.position());
+            buffer.position(buffer.position() + keySize);
+            buffer.putInt(valueSize);
+            value.writeTo(store, buffer.position());
+            buffer.position(buffer.position() + valueSize);
+            records++;
+        }
+
+        /**
+         * Appends a record with the key and the value bytes at the given addresses. The sizes are
+         * written in the little-endian order of the dump, regardless of the order, in which they
+         * are stored along with the bytes.
+         */
+        void append(long keyAddress, int keySize, long valueAddress, int valueSize)
+                throws IOException {
+            ensureCapacity(4 + keySize + 4 + valueSize);
+            buffer.putInt(keySize);
+            copyToBuffer(keyAddress, keySize);
+            buffer.putInt(valueSize);
+            copyToBuffer(valueAddress, valueSize);
+            records++;
+        }
+
+        private void copyToBuffer(long address, int size) {
+            OS.memory().copyMemory(
+                    address, ((DirectBuffer) buffer).address() + buffer.position(), size);
+            buffer.position(buffer.position() + size);
+        }
+
+        private void ensureCapacity(int recordSize) throws IOException {
+            if (buffer.remaining() < recordSize) {
+                flush();
+                if (buffer.remaining() < recordSize)
+                    allocate(CHUNK_HEADER_SIZE + recordSize);
+            }
+        }
+
+        private void flush() throws IOException {
+            if (records == 0)
+                return;
+            buffer.putInt(0, buffer.position() - CHUNK_HEADER_SIZE);
+            buffer.putInt(4, records);
+            buffer.flip();
+            long position = export.end.getAndAdd(buffer.remaining());
+            while (buffer.hasRemaining())
+                position += export.out.write(buffer, position);
+            if (buffer.capacity() > CHUNK_SIZE) {
+                // don't keep the buffer, allocated for a single large record
+                allocate(CHUNK_SIZE);
+            } else {
+                buffer.clear().position(CHUNK_HEADER_SIZE);
+            }
+            totalRecords += records;
+            records = 0;
+        }
+    }
+
+    static <K, V> void importTo(VanillaChronicleMap<K, V, ?> map, File fromFile, int parallelism)
+            throws IOException {
+        checkParallelism(parallelism);
+        try (FileChannel in = FileChannel.open(fromFile.toPath(), READ)) {
+            long size = in.size();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            if (size < HEADER_SIZE)
+                throw new IOException(fromFile + " is not a Chronicle Map dump");
+            readFully(in, header, 0, fromFile);
+            if (header.getLong(MAGIC_OFFSET) != MAGIC)
+                throw new IOException(fromFile + " is not a Chronicle Map dump");
+            int version = header.getInt(VERSION_OFFSET);
+            if (version != VERSION) {
+                throw new IOException(fromFile + " has unsupported dump format version " +
+                        version + ", expected " + VERSION);
+            }
+            long entries = header.getLong(ENTRIES_OFFSET);
+            long position = HEADER_SIZE;
+            String keyClassName = readClassName(in, position, fromFile);
+            position += 4 + keyClassName.getBytes(StandardCharsets.UTF_8).length;
+            String valueClassName = readClassName(in, position, fromFile);
+            position += 4 + valueClassName.getBytes(StandardCharsets.UTF_8).length;
+            if (!keyClassName.equals(map.keyClass().getName()) ||
+                    !valueClassName.equals(map.valueClass().getName())) {
+                throw new IllegalStateException(fromFile + " holds " + keyClassName + " -> " +
+                        valueClassName + " entries, " + map.toIdentityString() + " holds " +
+                        map.keyClass().getName() + " -> " + map.valueClass().getName());
+            }
+
+            long[] chunks = new long[16];
+            int chunkCount = 0;
+            long records = 0;
+            ByteBuffer chunkHeader =
+                    ByteBuffer.allocate(CHUNK_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            while (position < size) {
+                readFully(in, chunkHeader, position, fromFile);
+                long chunkEnd = position + CHUNK_HEADER_SIZE + chunkHeader.getInt(0);
+                if (chunkEnd > size)
+                    throw new IOException(fromFile + " is truncated");
+                records += chunkHeader.getInt(4);
+                if (chunkCount == chunks.length)
+                    chunks = Arrays.copyOf(chunks, chunkCount * 2);
+                chunks[chunkCount++] = position;
+                position = chunkEnd;
+            }
+            if (records != entries) {
+                throw new IOException(fromFile + " has " + records + " records in chunks, " +
+                        entries + " expected");
+            }
+
+            int workers = Math.max(1, Math.min(parallelism, chunkCount));
+            ForkJoinPool pool = new ForkJoinPool(workers);
+            try {
+                List<ForkJoinTask<?>> tasks = new ArrayList<>(workers);
+                long[] chunkPositions = chunks;
+                int chunksToImport = chunkCount;
+                for (int i = 0; i < workers; i++) {
+                    int worker = i;
+                    tasks.add(pool.submit(() -> {
+                        ByteBuffer buffer = ByteBuffer.allocateDirect(CHUNK_SIZE)
+                                .order(ByteOrder.LITTLE_ENDIAN);
+                        for (int c = worker; c < chunksToImport; c += workers) {
+                            buffer = importChunk(map, in, chunkPositions[c], buffer, fromFile);
+                        }
+                        return null;
+                    }));
+                }
+                Throwable failure = null;
+                for (ForkJoinTask<?> task : tasks) {
+                    try {
+                        task.join();
+                    } catch (Throwable t) {
+                        if (failure == null) {
+                            failure = t;
+                        } else {
+                            failure.addSuppressed(t);
+                        }
+                    }
+                }
+                if (failure != null)
+                    throw Jvm.rethrow(failure);
+            } finally {
+                pool.shutdown();
+            }
+        }
+    }
+
+    /**
+     * Puts the records of the chunk at the given position to the map, reading the chunk to the
+     * given buffer, or a bigger one, if the chunk doesn't fit the given buffer.
+     *
+     * @return the buffer, which could be reused for the next chunks
+     */
+    private static <K, V> ByteBuffer importChunk(
+            VanillaChronicleMap<K, V, ?> map, FileChannel in, long position, ByteBuffer buffer,
+            File fromFile) throws IOException {
+        buffer.clear().limit(CHUNK_HEADER_SIZE);
+        readFully(in, buffer, position, fromFile);
+        int payloadSize = buffer.getInt(0);
+        int records = buffer.getInt(4);
+        if (buffer.capacity() < payloadSize)
+            buffer = ByteBuffer.allocateDirect(payloadSize).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.clear().limit(payloadSize);
+        readFully(in, buffer, position + CHUNK_HEADER_SIZE, fromFile);
+        BytesStore<?, ByteBuffer> store = BytesStore.wrap(buffer);
+        int offset = 0;
+        for (int i = 0; i < records; i++) {
+            int keySize = buffer.getInt(offset);
+            int valueOffset = offset + 4 + keySize;
+            int valueSize = buffer.getInt(valueOffset);
+            try (ExternalMapQueryContext<K, V, ?> q = map.queryContext(store, offset + 4, keySize)) {
+                q.updateLock().lock();
+                MapEntry<K, V> entry = q.entry();
+                Data<V> value = q.wrapValueBytesAsData(store, valueOffset + 4, valueSize);
+                if (entry != null) {
+                    q.replaceValue(entry, value);
+                } else {
+                    q.insert(q.absentEntry(), value);
+                }
+            }
+            offset = valueOffset + 4 + valueSize;
+        }
+        return buffer;
+    }
+
+    private static String readClassName(FileChannel in, long position, File file)
+            throws IOException {
+        ByteBuffer length = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(in, length, position, file);
+        ByteBuffer name = ByteBuffer.allocate(length.getInt(0));
+        readFully(in, name, position + 4, file);
+        return new String(name.array(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads from the given position in the file until the buffer's limit, then resets the buffer
+     * position to 0.
+     */
+    private static void readFully(FileChannel in, ByteBuffer buffer, long position, File file)
+            throws IOException {
+        buffer.position(0);
+        while (buffer.hasRemaining()) {
+            if (in.read(buffer, position + buffer.position()) < 0)
+                throw new IOException("Unexpected end of " + file);
+        }
+        buffer.position(0);
+    }
+
+    private static void checkParallelism(int parallelism) {
+        if (parallelism <= 0)
+            throw new IllegalArgumentException("parallelism should be positive");
+    }
+}
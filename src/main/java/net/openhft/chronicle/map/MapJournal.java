@@ -0,0 +1,402 @@
+/*
+ *      Copyright (C) 2012, 2016  higherfrequencytrading.com
+ *      Copyright (C) 2016 Roman Leventov
+ *
+ *      This program is free software: you can redistribute it and/or modify
+ *      it under the terms of the GNU Lesser General Public License as published by
+ *      the Free Software Foundation, either version 3 of the License.
+ *
+ *      This program is distributed in the hope that it will be useful,
+ *      but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *      MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *      GNU Lesser General Public License for more details.
+ *
+ *      You should have received a copy of the GNU Lesser General Public License
+ *      along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.openhft.chronicle.map;
+
+import net.openhft.chronicle.bytes.BytesStore;
+import net.openhft.chronicle.core.Jvm;
+import net.openhft.chronicle.hash.Data;
+import net.openhft.chronicle.map.impl.IterationContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * Append-only write-ahead journal of mutations of a persisted Chronicle Map, stored in the file
+ * next to the map file, with {@code .journal} suffix.
+ * <p>
+ * <p>A mutation is appended to the journal and made durable with {@code fsync} before it is
+ * applied to the map, while the segment lock is held. Concurrent appends are batched: the first
+ * thread, which needs durability, writes and syncs the records of all waiting threads at once
+ * (group commit). Processes, accessing the same map, append to the same journal under the
+ * file lock.
+ * <p>
+ * <p>File layout: the header, consisting of the magic number and the offset of the first record
+ * after the latest {@linkplain #checkpoint checkpoint}, then records: the payload length (int),
+ * the payload: the mutation type (byte), the key size (int), the value size (int), the key bytes
+ * and the value bytes, then the CRC32 checksum of the payload (int).
+ *
+ * @see ChronicleMapBuilder#writeAheadJournal(long, java.util.concurrent.TimeUnit)
+ */
+final class MapJournal {
+    private static final Logger LOG = LoggerFactory.getLogger(MapJournal.class);
+
+    private static final long MAGIC = 0x4c4e524a4d43L; // "CMJRNL"
+    private static final int MAGIC_OFFSET = 0;
+    private static final int CHECKPOINT_OFFSET_OFFSET = 8;
+    static final int HEADER_SIZE = 16;
+
+    static final byte PUT = 1;
+    static final byte REMOVE = 2;
+    private static final int PAYLOAD_HEADER_SIZE = 1 + 4 + 4;
+
+    /**
+     * Journals are shared by all maps in the JVM, accessing the same file, because file locks
+     * are held on behalf of the whole JVM.
+     */
+    private static final ConcurrentHashMap<File, MapJournal> journals = new ConcurrentHashMap<>();
+
+    private final File file;
+    private final FileChannel channel;
+    private int refCount = 1;
+
+    private final Object appendLock = new Object();
+    /**
+     * Records, appended since the batch currently being written, guarded by {@link #appendLock}
+     */
+    private ByteBuffer pending = ByteBuffer.allocate(4096);
+    private ByteBuffer spare = ByteBuffer.allocate(4096);
+    private long appendedRecords;
+    private long durableRecords;
+    private boolean flushing;
+    private IOException failure;
+
+    /**
+     * Serializes file-locked IO of this journal within the JVM
+     */
+    private final Object ioLock = new Object();
+
+    private MapJournal(File file) throws IOException {
+        this.file = file;
+        channel = FileChannel.open(file.toPath(), READ, WRITE, CREATE);
+        synchronized (ioLock) {
+            try (FileLock ignored = channel.lock()) {
+                if (channel.size() < HEADER_SIZE) {
+                    writeHeader(HEADER_SIZE);
+                } else {
+                    ByteBuffer magic = ByteBuffer.allocate(8);
+                    readFully(magic, MAGIC_OFFSET);
+                    if (magic.getLong(0) != MAGIC)
+                        throw new IOException(file + " is not a Chronicle Map journal");
+                }
+            }
+        }
+    }
+
+    static File journalFile(File mapFile) {
+        return new File(mapFile.getPath() + ".journal");
+    }
+
+    static MapJournal acquire(File mapFile) throws IOException {
+        return journals.compute(journalFile(mapFile), (f, journal) -> {
+            if (journal == null) {
+                try {
+                    return new MapJournal(f);
+                } catch (IOException e) {
+                    throw Jvm.rethrow(e);
+                }
+            } else {
+                journal.refCount++;
+                return journal;
+            }
+        });
+    }
+
+    void release() {
+        journals.computeIfPresent(file, (f, journal) -> {
+            if (--journal.refCount == 0) {
+                try {
+                    journal.channel.close();
+                } catch (IOException e) {
+                    LOG.error("Failed to close " + file, e);
+                }
+                return null;
+            } else {
+                return journal;
+            }
+        });
+    }
+
+    void appendPut(Data<?> key, Data<?> value) throws IOException {
+        append(PUT, key, value);
+    }
+
+    void appendRemove(Data<?> key) throws IOException {
+        append(REMOVE, key, null);
+    }
+
+    private void append(byte type, Data<?> key, Data<?> value) throws IOException {
+        int keySize = Math.toIntExact(key.size());
+        int valueSize = value != null ? Math.toIntExact(value.size()) : 0;
+        int payloadSize = PAYLOAD_HEADER_SIZE + keySize + valueSize;
+        long record;
+        synchronized (appendLock) {
+            if (failure != null)
+                throw new IOException("Journal " + file + " failed earlier", failure);
+            ByteBuffer buffer = ensureCapacity(4 + payloadSize + 4);
+            buffer.putInt(payloadSize);
+            int payloadStart = buffer.position();
+            buffer.put(type).putInt(keySize).putInt(valueSize);
+            BytesStore<?, ByteBuffer> bufferStore = BytesStore.wrap(buffer);
+            key.writeTo(bufferStore, buffer.position());
+            buffer.position(buffer.position() + keySize);
+            if (value != null) {
+                value.writeTo(bufferStore, buffer.position());
+                buffer.position(buffer.position() + valueSize);
+            }
+            CRC32 crc = new CRC32();
+            crc.update(buffer.array(), payloadStart, payloadSize);
+            buffer.putInt((int) crc.getValue());
+            record = ++appendedRecords;
+        }
+        awaitDurable(record);
+    }
+
+    /**
+     * Should be called under the {@link #appendLock}
+     */
+    private ByteBuffer ensureCapacity(int recordSize) {
+        if (pending.remaining() < recordSize) {
+            ByteBuffer grown = ByteBuffer.allocate(
+                    Math.max(pending.capacity() * 2, pending.position() + recordSize));
+            pending.flip();
+            grown.put(pending);
+            pending = grown;
+        }
+        return pending;
+    }
+
+    private void awaitDurable(long record) throws IOException {
+        while (true) {
+            ByteBuffer batch;
+            long batchRecords;
+            synchronized (appendLock) {
+                while (flushing && durableRecords < record && failure == null) {
+                    try {
+                        appendLock.wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IOException("Interrupted while waiting for journal sync", e);
+                    }
+                }
+                if (durableRecords >= record)
+                    return;
+                if (failure != null)
+                    throw new IOException("Journal " + file + " failed", failure);
+                // become the leader of the group commit
+                flushing = true;
+                batch = pending;
+                pending = spare;
+                batchRecords = appendedRecords;
+            }
+            IOException batchFailure = null;
+            try {
+                batch.flip();
+                writeAndSync(batch);
+            } catch (IOException e) {
+                batchFailure = e;
+            }
+            synchronized (appendLock) {
+                flushing = false;
+                batch.clear();
+                spare = batch;
+                if (batchFailure == null) {
+                    durableRecords = batchRecords;
+                } else {
+                    // records of the failed batch are lost, not applied to the map, and
+                    // subsequent records could not be replayed in order, so fail-stop
+                    failure = batchFailure;
+                }
+                appendLock.notifyAll();
+            }
+        }
+    }
+
+    private void writeAndSync(ByteBuffer batch) throws IOException {
+        synchronized (ioLock) {
+            try (FileLock ignored = channel.lock()) {
+                long position = channel.size();
+                while (batch.hasRemaining())
+                    position += channel.write(batch, position);
+                channel.force(false);
+            }
+        }
+    }
+
+    /**
+     * Discards the records, appended to the journal so far (possibly by other processes), after
+     * the mutations are applied to the map and the map memory is synced to disk. Records,
+     * appended during the checkpoint, are moved to the beginning of the journal, see {@link
+     * #compact}.
+     */
+    void checkpoint(VanillaChronicleMap<?, ?, ?> map) throws IOException {
+        long checkpointEnd;
+        synchronized (ioLock) {
+            try (FileLock ignored = channel.lock()) {
+                checkpointEnd = channel.size();
+            }
+        }
+        // Records are appended while the segment lock is held, until the mutation is applied.
+        // Taking and releasing the lock of each segment in turn is a barrier: once it is passed,
+        // all records before checkpointEnd are applied. Segments are not locked all at once.
+        for (int segmentIndex = 0; segmentIndex < map.segments(); segmentIndex++) {
+            try (IterationContext<?, ?, ?> c = map.iterationContext()) {
+                c.initSegmentIndex(segmentIndex);
+                c.updateLock().lock();
+            }
+        }
+        map.msync();
+        synchronized (ioLock) {
+            try (FileLock ignored = channel.lock()) {
+                long tailSize = channel.size() - checkpointEnd;
+                if (tailSize == 0) {
+                    channel.truncate(HEADER_SIZE);
+                    writeHeader(HEADER_SIZE);
+                } else if (HEADER_SIZE + tailSize + 4 <= checkpointEnd) {
+                    compact(checkpointEnd, tailSize);
+                } else {
+                    // the tail is moved on one of the next checkpoints, when it's relatively
+                    // shorter than the applied part of the journal
+                    writeHeader(checkpointEnd);
+                }
+                channel.force(false);
+            }
+        }
+    }
+
+    /**
+     * Moves the records, appended after the checkpoint, to the beginning of the journal, so that
+     * the journal doesn't grow without bound under steady mutations. The header is pointed to
+     * {@code checkpointEnd} and synced first, because the previous checkpoint could be at the
+     * beginning of the journal, where the tail is copied to. The tail should fit before {@code
+     * checkpointEnd} with a 4-byte terminator, so that the records, which the header points to,
+     * are not overwritten until the header is pointed to the moved records. The terminator (zero
+     * length) stops replay after the moved records, if the process crashes before the journal is
+     * truncated. Should be called under the file lock.
+     */
+    private void compact(long checkpointEnd, long tailSize) throws IOException {
+        writeHeader(checkpointEnd);
+        channel.force(false);
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(tailSize, 1 << 16));
+        for (long copied = 0; copied < tailSize; copied += buffer.limit()) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), tailSize - copied));
+            readFully(buffer, checkpointEnd + copied);
+            buffer.flip();
+            writeFully(buffer, HEADER_SIZE + copied);
+        }
+        writeFully(ByteBuffer.allocate(4), HEADER_SIZE + tailSize);
+        channel.force(false);
+        writeHeader(HEADER_SIZE);
+        channel.force(false);
+        channel.truncate(HEADER_SIZE + tailSize);
+    }
+
+    /**
+     * Applies the mutations, appended after the latest checkpoint, to the map, then makes a
+     * checkpoint. Should be called when the map is accessed exclusively, i. e. during recovery.
+     *
+     * @return the number of replayed mutations
+     */
+    <K, V> long replay(VanillaChronicleMap<K, V, ?> map) throws IOException {
+        ByteBuffer checkpointOffset = ByteBuffer.allocate(8);
+        readFully(checkpointOffset, CHECKPOINT_OFFSET_OFFSET);
+        long position = checkpointOffset.getLong(0);
+        long size = channel.size();
+        long replayed = 0;
+        ByteBuffer lengthBuffer = ByteBuffer.allocate(4);
+        while (position + 4 <= size) {
+            lengthBuffer.clear();
+            readFully(lengthBuffer, position);
+            int payloadSize = lengthBuffer.getInt(0);
+            if (payloadSize < PAYLOAD_HEADER_SIZE || position + 4 + payloadSize + 4 > size)
+                break; // torn tail
+            ByteBuffer record = ByteBuffer.allocate(payloadSize + 4);
+            readFully(record, position + 4);
+            CRC32 crc = new CRC32();
+            crc.update(record.array(), 0, payloadSize);
+            if (record.getInt(payloadSize) != (int) crc.getValue())
+                break; // torn tail
+            replayRecord(map, record);
+            replayed++;
+            position += 4 + payloadSize + 4;
+        }
+        if (position < size) {
+            LOG.warn("{}: discarded {} bytes of incomplete records at the end of the journal",
+                    map.toIdentityString(), size - position);
+        }
+        checkpoint(map);
+        return replayed;
+    }
+
+    private static <K, V> void replayRecord(VanillaChronicleMap<K, V, ?> map, ByteBuffer record) {
+        byte type = record.get(0);
+        int keySize = record.getInt(1);
+        int valueSize = record.getInt(5);
+        BytesStore<?, ByteBuffer> recordStore = BytesStore.wrap(record);
+        try (ExternalMapQueryContext<K, V, ?> c =
+                     map.queryContext(recordStore, PAYLOAD_HEADER_SIZE, keySize)) {
+            c.updateLock().lock();
+            MapEntry<K, V> entry = c.entry();
+            if (type == PUT) {
+                Data<V> value = c.wrapValueBytesAsData(
+                        recordStore, PAYLOAD_HEADER_SIZE + keySize, valueSize);
+                if (entry != null) {
+                    c.replaceValue(entry, value);
+                } else {
+                    c.insert(c.absentEntry(), value);
+                }
+            } else if (type == REMOVE) {
+                if (entry != null)
+                    c.remove(entry);
+            } else {
+                throw new IllegalStateException("Unknown journal record type: " + type);
+            }
+        }
+    }
+
+    /**
+     * Should be called under the file lock
+     */
+    private void writeHeader(long checkpointOffset) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putLong(MAGIC_OFFSET, MAGIC);
+        header.putLong(CHECKPOINT_OFFSET_OFFSET, checkpointOffset);
+        writeFully(header, 0);
+    }
+
+    private void writeFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining())
+            channel.write(buffer, position + buffer.position());
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0)
+                throw new IOException("Unexpected end of " + file);
+        }
+    }
+}
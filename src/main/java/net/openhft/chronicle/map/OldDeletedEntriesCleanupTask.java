@@ -0,0 +1,194 @@
+/*
+ *      Copyright (C) 2012, 2016  higherfrequencytrading.com
+ *      Copyright (C) 2016 Roman Leventov
+ *
+ *      This program is free software: you can redistribute it and/or modify
+ *      it under the terms of the GNU Lesser General Public License as published by
+ *      the Free Software Foundation, either version 3 of the License.
+ *
+ *      This program is distributed in the hope that it will be useful,
+ *      but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *      MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *      GNU Lesser General Public License for more details.
+ *
+ *      You should have received a copy of the GNU Lesser General Public License
+ *      along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.openhft.chronicle.map;
+
+import net.openhft.chronicle.hash.ChronicleHashBuilderPrivateAPI;
+import net.openhft.chronicle.hash.ChronicleHashClosedException;
+import net.openhft.chronicle.hash.ReplicatedHashSegmentContext;
+import net.openhft.chronicle.hash.impl.MaintenanceTask;
+import net.openhft.chronicle.hash.replication.ReplicableEntry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
+
+import static net.openhft.chronicle.hash.replication.TimeProvider.currentTime;
+import static net.openhft.chronicle.hash.replication.TimeProvider.systemTimeIntervalBetween;
+
+/**
+ * Removes the deleted entries, older than {@code cleanupTimeout}, completely. Plans rounds of
+ * cleanup by the deleted entry counters and the oldest deleted entry timestamps, stored in the
+ * segment tiers, without locking the segments: visits only segments with expired deleted entries,
+ * the segments with more deleted entries first, and sleeps until the oldest deleted entry in the
+ * map expires, if there is nothing to clean up.
+ */
+class OldDeletedEntriesCleanupTask extends MaintenanceTask
+        implements Predicate<ReplicableEntry> {
+    private static final Logger LOG = LoggerFactory.getLogger(OldDeletedEntriesCleanupTask.class);
+
+    private static final long SLICE_MILLIS = 10;
+    /**
+     * Segments are cleaned up under the update lock, which blocks the map writers, leave the
+     * segments alone at least half of the time
+     */
+    private static final double CPU_SHARE = 0.5;
+    /**
+     * Expired deleted entries, which are not yet replicated, are not removed, the segments with
+     * such entries remain the candidates for cleanup. Start rounds not more often than this
+     * fraction of {@code cleanupTimeout}, not to scan such segments over and over again.
+     */
+    private static final int MIN_ROUND_INTERVALS_PER_TIMEOUT = 8;
+
+    /**
+     * Don't store a strong ref to a map in order to avoid it's leaking, if the user forgets to
+     * close() map, from where this task is closed explicitly. Dereference map within a single
+     * method, {@link #run(long)}. The map has a chance to be collected by GC between the runs of
+     * this task.
+     */
+    private final WeakReference<ReplicatedChronicleMap<?, ?, ?>> mapRef;
+    /**
+     * {@code cleanupTimeout}, {@link #cleanupTimeoutUnit} and {@link #segments} are parts of the
+     * cleaned Map's state, extracted in order to minimize accesses to the map.
+     *
+     * @see ChronicleHashBuilderPrivateAPI#removedEntryCleanupTimeout(long, TimeUnit)
+     */
+    private final long cleanupTimeout;
+    private final TimeUnit cleanupTimeoutUnit;
+    private final int segments;
+    private final long minRoundIntervalNanos;
+
+    /**
+     * Segments to clean up in the current round, {@code roundSegments[roundPos]} is the next.
+     */
+    private int[] roundSegments = new int[0];
+    private int roundPos = 0;
+    private long roundStartNanos;
+    private long removedCompletely;
+
+    OldDeletedEntriesCleanupTask(ReplicatedChronicleMap<?, ?, ?> map) {
+        super("Cleanup of " + map.toIdentityString(), Priority.NORMAL,
+                SLICE_MILLIS, TimeUnit.MILLISECONDS, CPU_SHARE);
+        this.mapRef = new WeakReference<>(map);
+        cleanupTimeout = map.cleanupTimeout;
+        cleanupTimeoutUnit = map.cleanupTimeoutUnit;
+        segments = map.segments();
+        minRoundIntervalNanos =
+                cleanupTimeoutUnit.toNanos(cleanupTimeout) / MIN_ROUND_INTERVALS_PER_TIMEOUT;
+        roundStartNanos = System.nanoTime() - minRoundIntervalNanos;
+    }
+
+    @Override
+    protected long run(long sliceNanos) {
+        ReplicatedChronicleMap<?, ?, ?> map = mapRef.get();
+        if (map == null || !map.isOpen())
+            return -1;
+        long sliceEnd = System.nanoTime() + sliceNanos;
+        if (roundPos == roundSegments.length) {
+            long sinceRoundStart = System.nanoTime() - roundStartNanos;
+            if (sinceRoundStart < minRoundIntervalNanos)
+                return minRoundIntervalNanos - sinceRoundStart;
+            long delay = planRound(map);
+            if (roundSegments.length == 0)
+                return delay;
+            roundStartNanos = System.nanoTime();
+        }
+        do {
+            if (!cleanupSegment(map, roundSegments[roundPos]))
+                return -1;
+            roundPos++;
+        } while (roundPos < roundSegments.length && System.nanoTime() - sliceEnd < 0);
+        return 0;
+    }
+
+    /**
+     * Fills {@link #roundSegments} with the segments, which have expired deleted entries, or
+     * deleted entries of unknown age, ordered by the number of deleted entries, descending.
+     *
+     * @return the delay in nanoseconds until the oldest of the deleted entries, which are not yet
+     * expired, expires
+     */
+    private long planRound(ReplicatedChronicleMap<?, ?, ?> map) {
+        long currentTime = currentTime();
+        long delayNanos = cleanupTimeoutUnit.toNanos(cleanupTimeout);
+        long[] segmentDeleted = new long[segments];
+        for (int segmentIndex = 0; segmentIndex < segments; segmentIndex++) {
+            long deleted = map.approximateSegmentDeleted(segmentIndex);
+            if (deleted <= 0)
+                continue;
+            long oldest = map.approximateSegmentOldestDeletedTimestamp(segmentIndex);
+            if (oldest == Long.MAX_VALUE)
+                continue;
+            long age = oldest != 0 ?
+                    systemTimeIntervalBetween(oldest, currentTime, cleanupTimeoutUnit) : 0;
+            if (oldest == 0 || age > cleanupTimeout) {
+                segmentDeleted[segmentIndex] = deleted;
+            } else {
+                long untilExpiry = cleanupTimeoutUnit.toNanos(cleanupTimeout - age + 1);
+                delayNanos = Math.min(delayNanos, untilExpiry);
+            }
+        }
+        roundSegments = IntStream.range(0, segments)
+                .filter(segmentIndex -> segmentDeleted[segmentIndex] > 0)
+                .boxed()
+                .sorted((s1, s2) -> Long.compare(segmentDeleted[s2], segmentDeleted[s1]))
+                .mapToInt(Integer::intValue)
+                .toArray();
+        roundPos = 0;
+        LOG.debug("Planned old deleted entries cleanup of {} segments", roundSegments.length);
+        return delayNanos;
+    }
+
+    /**
+     * @return {@code false} if this task should be stopped
+     */
+    private boolean cleanupSegment(ReplicatedChronicleMap<?, ?, ?> map, int segmentIndex) {
+        try (MapSegmentContext<?, ?, ?> context = map.segmentContext(segmentIndex)) {
+            removedCompletely = 0;
+            if (((ReplicatedHashSegmentContext<?, ?>) context)
+                    .forEachSegmentReplicableEntryWhile(this)) {
+                LOG.debug("Removed {} old deleted entries in the segment {}",
+                        removedCompletely, segmentIndex);
+                return true;
+            } else {
+                // forEachWhile returned false => interrupted => the task is closed
+                assert isClosed();
+                return false;
+            }
+        } catch (ChronicleHashClosedException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public boolean test(ReplicableEntry e) {
+        if (isClosed())
+            return false;
+        if (e instanceof MapAbsentEntry) {
+            long deleteTimeout = systemTimeIntervalBetween(
+                    e.originTimestamp(), currentTime(), cleanupTimeoutUnit);
+            if (deleteTimeout > cleanupTimeout && !e.isChanged()) {
+                e.doRemoveCompletely();
+                removedCompletely++;
+            }
+        }
+        return true;
+    }
+}
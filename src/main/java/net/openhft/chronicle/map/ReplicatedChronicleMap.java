@@ -588,6 +588,15 @@ public class ReplicatedChronicleMap<K, V, R> extends VanillaChronicleMap<K, V, R
         return defaultGetUsing(key, usingValue);
     }
 
+    /**
+     * Removes entries one by one, rather than resetting segments at once, because each removal
+     * should leave a timestamped tombstone and raise a change for replication to remote nodes.
+     */
+    @Override
+    public void clear() {
+        forEachEntry(c -> c.context().remove(c));
+    }
+
     /**
      * <p>Once a change occurs to a map, map replication requires that these changes are picked up
      * by another thread, this class provides an iterator like interface to poll for such changes.
@@ -666,7 +675,7 @@ public class ReplicatedChronicleMap<K, V, R> extends VanillaChronicleMap<K, V, R
         }
 
         void raiseChangeInTierBulk(int bulkIndex, long offsetToTierBitSet, long pos) {
-            TierBulkData tierBulkData = tierBulkOffsets.get(bulkIndex);
+            TierBulkData tierBulkData = extraTierBulkData(bulkIndex);
             long bitSetAddr = bitSetsAddr(tierBulkData) + offsetToTierBitSet;
             tierModIterFrame.set(nativeAccess(), null, bitSetAddr, pos);
             if (modificationNotifier != null)
@@ -679,7 +688,7 @@ public class ReplicatedChronicleMap<K, V, R> extends VanillaChronicleMap<K, V, R
         }
 
         boolean dropChangeInTierBulk(int bulkIndex, long offsetToTierBitSet, long pos) {
-            TierBulkData tierBulkData = tierBulkOffsets.get(bulkIndex);
+            TierBulkData tierBulkData = extraTierBulkData(bulkIndex);
             long bitSetAddr = bitSetsAddr(tierBulkData) + offsetToTierBitSet;
             return tierModIterFrame.clearIfSet(nativeAccess(), null, bitSetAddr, pos);
         }
@@ -690,7 +699,7 @@ public class ReplicatedChronicleMap<K, V, R> extends VanillaChronicleMap<K, V, R
         }
 
         boolean isChangedTierBulk(int bulkIndex, long offsetToTierBitSet, long pos) {
-            TierBulkData tierBulkData = tierBulkOffsets.get(bulkIndex);
+            TierBulkData tierBulkData = extraTierBulkData(bulkIndex);
             long bitSetAddr = bitSetsAddr(tierBulkData) + offsetToTierBitSet;
             return tierModIterFrame.isSet(nativeAccess(), null, bitSetAddr, pos);
         }
@@ -753,7 +762,7 @@ public class ReplicatedChronicleMap<K, V, R> extends VanillaChronicleMap<K, V, R
                     bulkIndex = 0;
                     tierIndexOffsetWithinBulk = 0;
                     if (bulkIndex < globalMutableState().getAllocatedExtraTierBulks())
-                        tierBitSetAddr = bitSetsAddr(tierBulkOffsets.get(bulkIndex));
+                        tierBitSetAddr = bitSetsAddr(extraTierBulkData(bulkIndex));
                 }
                 // for each allocated tier bulk
                 while (bulkIndex < globalMutableState().getAllocatedExtraTierBulks()) {
@@ -771,7 +780,7 @@ public class ReplicatedChronicleMap<K, V, R> extends VanillaChronicleMap<K, V, R
                     bulkIndex++;
                     tierIndexOffsetWithinBulk = 0;
                     if (bulkIndex < globalMutableState().getAllocatedExtraTierBulks())
-                        tierBitSetAddr = bitSetsAddr(tierBulkOffsets.get(bulkIndex));
+                        tierBitSetAddr = bitSetsAddr(extraTierBulkData(bulkIndex));
                 }
 
                 resetCursor();
@@ -809,7 +818,7 @@ public class ReplicatedChronicleMap<K, V, R> extends VanillaChronicleMap<K, V, R
                         context.initSegmentIndex(segmentIndex);
                     } else {
                         // we are in extra tiers
-                        TierBulkData tierBulkData = tierBulkOffsets.get(bulkIndex);
+                        TierBulkData tierBulkData = extraTierBulkData(bulkIndex);
                         long tierBaseAddr = tierAddr(tierBulkData, tierIndexOffsetWithinBulk);
                         long tierCountersAreaAddr = tierBaseAddr + tierHashLookupOuterSize;
                         context.initSegmentIndex(
@@ -918,7 +927,7 @@ public class ReplicatedChronicleMap<K, V, R> extends VanillaChronicleMap<K, V, R
                 int bulkIndex = (int) (extraTierIndex >> log2TiersInBulk);
                 long offsetToTierBitSet =
                         (extraTierIndex & (tiersInBulk - 1)) * tierModIterBitSetOuterSize;
-                TierBulkData tierBulkData = tierBulkOffsets.get(bulkIndex);
+                TierBulkData tierBulkData = extraTierBulkData(bulkIndex);
                 long bitSetAddr = bitSetsAddr(tierBulkData) + offsetToTierBitSet;
                 tierModIterFrame.clearRange(nativeAccess(), null, bitSetAddr, pos, endPosExclusive);
             }
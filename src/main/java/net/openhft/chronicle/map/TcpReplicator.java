@@ -0,0 +1,742 @@
+/*
+ *      Copyright (C) 2012, 2016  higherfrequencytrading.com
+ *      Copyright (C) 2016 Roman Leventov
+ *
+ *      This program is free software: you can redistribute it and/or modify
+ *      it under the terms of the GNU Lesser General Public License as published by
+ *      the Free Software Foundation, either version 3 of the License.
+ *
+ *      This program is distributed in the hope that it will be useful,
+ *      but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *      MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *      GNU Lesser General Public License for more details.
+ *
+ *      You should have received a copy of the GNU Lesser General Public License
+ *      along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.openhft.chronicle.map;
+
+import net.openhft.chronicle.bytes.Bytes;
+import net.openhft.chronicle.core.io.Closeable;
+import net.openhft.chronicle.hash.ChronicleHashClosedException;
+import net.openhft.chronicle.hash.replication.ReplicableEntry;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.lang.reflect.Field;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.nio.channels.SelectionKey.*;
+
+/**
+ * Replicates a replicated Chronicle Map with remote nodes over TCP. All connections of the
+ * replicator are served by a single thread with non-blocking NIO.
+ *
+ * <p>The replicator accepts connections on the bind address, if it is given, and connects to the
+ * given endpoints, reconnecting if a connection is lost. After the nodes exchange their
+ * identifiers, each node requests the changes from the remote node, starting from {@link
+ * Replica#remoteNodeCouldBootstrapFrom(byte)}, and the remote node {@linkplain
+ * Replica.ModificationIterator#dirtyEntries(long) dirties} the entries, changed since that time.
+ * The changed entries are then pulled from the {@link Replica.ModificationIterator} of the remote
+ * node, as many as fit the output buffer, and sent with a single socket write. If the socket
+ * doesn't accept the buffer, no more entries are pulled, until the buffer is sent. Repeated updates
+ * of the entry are not queued, only the latest state of the entry is sent, so a slow remote node
+ * doesn't make the replicator consume more memory.
+ *
+ * <p>Each pair of nodes should be connected once, i. e. only one of the nodes should have the
+ * other in the endpoints, the second connection between the same nodes is refused. Nodes send
+ * heartbeats over idle connections, a connection, which receives nothing for {@value
+ * #IDLE_TIMEOUT_HEARTBEATS} heartbeat intervals, is closed, so that a half-open connection, e. g.
+ * after a crash of the remote host, doesn't block the reconnection of the remote node.
+ *
+ * <p>Each message on the wire is prefixed by 4-byte length and 1-byte message type. Entries are
+ * written and read by {@link Replica.EntryExternalizable}. A message, longer than the largest
+ * entry of the local map, is treated as corrupted, and the connection is closed. A failure of a
+ * connection closes only this connection, the replicator continues to serve the others.
+ */
+public final class TcpReplicator implements Closeable {
+    private static final Logger LOG = LoggerFactory.getLogger(TcpReplicator.class);
+
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+    private static final long SELECT_TIMEOUT_MILLIS = 100;
+    private static final long RECONNECT_DELAY_MILLIS = 500;
+    /**
+     * The delay, after which accepting connections is resumed, if accept() failed, e. g. because
+     * there are too many open files
+     */
+    private static final long ACCEPT_PAUSE_MILLIS = 500;
+    static final long DEFAULT_HEARTBEAT_INTERVAL_MILLIS = 1000;
+    /**
+     * A connection, which receives nothing for this number of heartbeat intervals, is closed
+     */
+    static final int IDLE_TIMEOUT_HEARTBEATS = 10;
+    /**
+     * Space for the header and the replication metadata of an entry, in addition to the size of
+     * the largest entry of the map, in the maximum message length
+     */
+    private static final int MAX_MESSAGE_OVERHEAD = 64;
+    /**
+     * The number of batches, sent to a connection in a row, to not starve other connections
+     */
+    private static final int MAX_BATCHES_PER_ROUND = 16;
+
+    private static final byte IDENTIFIER_MESSAGE = 1;
+    private static final byte BOOTSTRAP_FROM_MESSAGE = 2;
+    private static final byte ENTRY_MESSAGE = 3;
+    private static final byte HEARTBEAT_MESSAGE = 4;
+    private static final int LENGTH_SIZE = 4;
+
+    private static final Replica.ModificationNotifier NO_NOTIFIER = () -> {
+    };
+
+    private final ReplicatedChronicleMap<?, ?, ?> map;
+    private final byte localIdentifier;
+    private final int bufferSize;
+    private final int maxMessageLength;
+    private final long heartbeatIntervalMillis;
+    private final long idleTimeoutMillis;
+    private final Selector selector;
+    private final SelectedSelectionKeySet selectedKeys;
+    @Nullable
+    private final ServerSocketChannel serverChannel;
+    @Nullable
+    private final SelectionKey serverKey;
+    /**
+     * The time to resume accepting connections at, 0 if accepting is not paused
+     */
+    private long acceptResumeMillis = 0;
+    private long nextIdleCheckMillis = 0;
+    private final List<Endpoint> endpoints = new ArrayList<>();
+    private final List<Connection> connections = new ArrayList<>();
+    private final Connection[] connectionsByRemoteIdentifier = new Connection[128];
+    private final AtomicBoolean wakeUpPending = new AtomicBoolean();
+    private final AtomicInteger establishedConnections = new AtomicInteger();
+    private final Thread thread;
+    private volatile boolean closed;
+
+    /**
+     * Creates a replicator with buffers of {@link #DEFAULT_BUFFER_SIZE}.
+     *
+     * @see #TcpReplicator(ChronicleMap, InetSocketAddress, Collection, int)
+     */
+    public TcpReplicator(ChronicleMap<?, ?> map, @Nullable InetSocketAddress bindAddress,
+                         Collection<InetSocketAddress> endpoints) throws IOException {
+        this(map, bindAddress, endpoints, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Creates a replicator and starts its thread.
+     *
+     * @param map         the replicated map, i. e. created with {@link
+     *                    ChronicleMapBuilder#replication(byte)} configured
+     * @param bindAddress the address to accept connections from remote nodes on, or {@code null},
+     *                    if the replicator should only connect to the {@code endpoints}
+     * @param endpoints   the addresses of the remote nodes to connect to
+     * @param bufferSize  the initial size of input and output buffers of each connection, the
+     *                    buffers grow, if an entry doesn't fit them
+     * @throws IllegalArgumentException if the map is not replicated
+     * @throws IOException              if failed to bind the address
+     */
+    public TcpReplicator(ChronicleMap<?, ?> map, @Nullable InetSocketAddress bindAddress,
+                         Collection<InetSocketAddress> endpoints, int bufferSize)
+            throws IOException {
+        this(map, bindAddress, endpoints, bufferSize, DEFAULT_HEARTBEAT_INTERVAL_MILLIS);
+    }
+
+    TcpReplicator(ChronicleMap<?, ?> map, @Nullable InetSocketAddress bindAddress,
+                  Collection<InetSocketAddress> endpoints, int bufferSize,
+                  long heartbeatIntervalMillis) throws IOException {
+        if (!(map instanceof ReplicatedChronicleMap)) {
+            throw new IllegalArgumentException(map.toIdentityString() + " is not replicated");
+        }
+        if (bufferSize <= LENGTH_SIZE + 1)
+            throw new IllegalArgumentException("bufferSize is too small: " + bufferSize);
+        this.map = (ReplicatedChronicleMap<?, ?, ?>) map;
+        localIdentifier = this.map.identifier();
+        this.bufferSize = bufferSize;
+        long maxEntrySize = this.map.maxChunksPerEntry * this.map.chunkSize;
+        maxMessageLength = (int) Math.min(Integer.MAX_VALUE - LENGTH_SIZE,
+                Math.max(bufferSize, maxEntrySize + MAX_MESSAGE_OVERHEAD));
+        this.heartbeatIntervalMillis = heartbeatIntervalMillis;
+        idleTimeoutMillis = heartbeatIntervalMillis * IDLE_TIMEOUT_HEARTBEATS;
+        for (InetSocketAddress address : endpoints) {
+            this.endpoints.add(new Endpoint(address));
+        }
+        selectedKeys = new SelectedSelectionKeySet();
+        selector = Selector.open();
+        ServerSocketChannel serverChannel = null;
+        SelectionKey serverKey = null;
+        try {
+            if (bindAddress != null) {
+                serverChannel = ServerSocketChannel.open();
+                serverChannel.socket().setReuseAddress(true);
+                serverChannel.bind(bindAddress);
+                serverChannel.configureBlocking(false);
+                serverKey = serverChannel.register(selector, OP_ACCEPT);
+            }
+        } catch (IOException | RuntimeException e) {
+            closeQuietly(serverChannel);
+            closeQuietly(selector);
+            throw e;
+        }
+        this.serverChannel = serverChannel;
+        this.serverKey = serverKey;
+        thread = new Thread(this::run, "Replicator for " + map.toIdentityString());
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Replaces the selected keys set of the selector with {@link SelectedSelectionKeySet}, that
+     * doesn't produce garbage and iterates faster, if the NIO implementation allows.
+     */
+    private static boolean replaceSelectedKeys(Selector selector, SelectedSelectionKeySet keys) {
+        try {
+            Class<?> selectorImplClass = Class.forName(
+                    "sun.nio.ch.SelectorImpl", false, ClassLoader.getSystemClassLoader());
+            if (!selectorImplClass.isAssignableFrom(selector.getClass()))
+                return false;
+            Field selectedKeysField = selectorImplClass.getDeclaredField("selectedKeys");
+            Field publicSelectedKeysField =
+                    selectorImplClass.getDeclaredField("publicSelectedKeys");
+            selectedKeysField.setAccessible(true);
+            publicSelectedKeysField.setAccessible(true);
+            selectedKeysField.set(selector, keys);
+            publicSelectedKeysField.set(selector, keys);
+            return true;
+        } catch (Exception e) {
+            LOG.debug("Failed to replace the selected keys set of {}", selector, e);
+            return false;
+        }
+    }
+
+    /**
+     * @return the address, the replicator accepts connections on, or {@code null} if it doesn't
+     */
+    @Nullable
+    public InetSocketAddress localAddress() {
+        return serverChannel != null ?
+                (InetSocketAddress) serverChannel.socket().getLocalSocketAddress() : null;
+    }
+
+    /**
+     * @return the number of connections with remote nodes, over which the changes are replicated
+     */
+    public int connections() {
+        return establishedConnections.get();
+    }
+
+    @Override
+    public void close() {
+        if (closed)
+            return;
+        closed = true;
+        selector.wakeup();
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    private void run() {
+        boolean selectedKeysReplaced = replaceSelectedKeys(selector, selectedKeys);
+        try {
+            while (!closed) {
+                wakeUpPending.set(false);
+                long now = System.currentTimeMillis();
+                resumeAccepting(now);
+                checkIdleConnections(now);
+                connectEndpoints();
+                boolean moreToSend = replicate();
+                if (moreToSend) {
+                    selector.selectNow();
+                } else {
+                    selector.select(SELECT_TIMEOUT_MILLIS);
+                }
+                if (selectedKeysReplaced) {
+                    SelectionKey[] keys = selectedKeys.flip();
+                    for (int i = 0; keys[i] != null; i++) {
+                        SelectionKey key = keys[i];
+                        // null out to allow GC of the closed connections
+                        keys[i] = null;
+                        processKey(key);
+                    }
+                } else {
+                    for (SelectionKey key : selector.selectedKeys()) {
+                        processKey(key);
+                    }
+                    selector.selectedKeys().clear();
+                }
+            }
+        } catch (ChronicleHashClosedException e) {
+            LOG.debug("{} is closed, stopping replication", map.toIdentityString());
+        } catch (Throwable t) {
+            LOG.error("Replication of " + map.toIdentityString() + " is stopped", t);
+        } finally {
+            closed = true;
+            for (Connection connection : new ArrayList<>(connections)) {
+                connection.close(null);
+            }
+            closeQuietly(serverChannel);
+            closeQuietly(selector);
+        }
+    }
+
+    private void resumeAccepting(long now) {
+        if (acceptResumeMillis != 0 && now >= acceptResumeMillis) {
+            acceptResumeMillis = 0;
+            serverKey.interestOps(OP_ACCEPT);
+        }
+    }
+
+    /**
+     * Closes connections, which received nothing for the idle timeout, and sends heartbeats over
+     * the connections, which sent nothing for the heartbeat interval. Checked once in the select
+     * timeout, not to iterate the connections on each round of replication.
+     */
+    private void checkIdleConnections(long now) {
+        if (now < nextIdleCheckMillis)
+            return;
+        nextIdleCheckMillis = now + SELECT_TIMEOUT_MILLIS;
+        // iterate by index, because connections could be closed on the way
+        for (int i = connections.size() - 1; i >= 0; i--) {
+            Connection connection = connections.get(i);
+            try {
+                if (now - connection.lastReadMillis >= idleTimeoutMillis) {
+                    throw new SocketTimeoutException("Nothing received from " +
+                            connection.describeRemote() + " for " + idleTimeoutMillis + " ms");
+                }
+                if (now - connection.lastWriteMillis >= heartbeatIntervalMillis)
+                    connection.sendHeartbeat();
+            } catch (IOException e) {
+                connection.close(e);
+            }
+        }
+    }
+
+    private void connectEndpoints() {
+        long now = System.currentTimeMillis();
+        for (Endpoint endpoint : endpoints) {
+            if (endpoint.connection == null && now >= endpoint.nextConnectAttemptMillis) {
+                SocketChannel channel = null;
+                try {
+                    channel = SocketChannel.open();
+                    channel.configureBlocking(false);
+                    Connection connection = new Connection(channel, endpoint);
+                    endpoint.connection = connection;
+                    if (channel.connect(endpoint.address)) {
+                        connection.onConnected();
+                    } else {
+                        connection.key.interestOps(OP_CONNECT);
+                    }
+                } catch (IOException e) {
+                    if (endpoint.connection != null) {
+                        endpoint.connection.close(e);
+                    } else {
+                        LOG.debug("Failed to connect to {}", endpoint.address, e);
+                        closeQuietly(channel);
+                        endpoint.scheduleReconnect();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return {@code true} if some connections have more entries to send, and the sockets accept
+     * more data
+     */
+    private boolean replicate() {
+        boolean moreToSend = false;
+        // iterate by index, because connections could be closed on the way
+        for (int i = connections.size() - 1; i >= 0; i--) {
+            Connection connection = connections.get(i);
+            try {
+                moreToSend |= connection.replicate();
+            } catch (ChronicleHashClosedException e) {
+                throw e;
+            } catch (IOException | RuntimeException e) {
+                connection.close(e);
+            }
+        }
+        return moreToSend;
+    }
+
+    private void processKey(SelectionKey key) {
+        if (!key.isValid())
+            return;
+        if (key.channel() == serverChannel) {
+            accept();
+            return;
+        }
+        Connection connection = (Connection) key.attachment();
+        try {
+            if (key.isConnectable() && connection.channel.finishConnect())
+                connection.onConnected();
+            if (key.isValid() && key.isReadable())
+                connection.read();
+            if (key.isValid() && key.isWritable())
+                connection.flush();
+        } catch (ChronicleHashClosedException e) {
+            throw e;
+        } catch (IOException | RuntimeException e) {
+            connection.close(e);
+        }
+    }
+
+    private void accept() {
+        while (true) {
+            SocketChannel channel;
+            try {
+                channel = serverChannel.accept();
+            } catch (IOException e) {
+                // e. g. too many open files, the failure likely repeats, pause accepting not to
+                // spin on the selector
+                LOG.warn("Failed to accept a connection, pausing accepting for {} ms",
+                        ACCEPT_PAUSE_MILLIS, e);
+                serverKey.interestOps(0);
+                acceptResumeMillis = System.currentTimeMillis() + ACCEPT_PAUSE_MILLIS;
+                return;
+            }
+            if (channel == null)
+                return;
+            Connection connection = null;
+            try {
+                channel.configureBlocking(false);
+                connection = new Connection(channel, null);
+                connection.onConnected();
+            } catch (IOException | RuntimeException e) {
+                if (connection != null) {
+                    connection.close(e);
+                } else {
+                    LOG.debug("Failed to accept a connection", e);
+                    closeQuietly(channel);
+                }
+            }
+        }
+    }
+
+    private void onChange(Connection connection) {
+        connection.changesPending = true;
+        if (wakeUpPending.compareAndSet(false, true))
+            selector.wakeup();
+    }
+
+    private static ByteBuffer grow(ByteBuffer buffer, int minCapacity) {
+        int capacity = Math.max(buffer.capacity() * 2, minCapacity);
+        ByteBuffer grown = ByteBuffer.allocateDirect(capacity);
+        buffer.flip();
+        grown.put(buffer);
+        return grown;
+    }
+
+    private static void closeQuietly(@Nullable java.io.Closeable closeable) {
+        if (closeable == null)
+            return;
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            LOG.debug("Failed to close {}", closeable, e);
+        }
+    }
+
+    private static final class Endpoint {
+        final InetSocketAddress address;
+        Connection connection;
+        long nextConnectAttemptMillis = 0;
+
+        Endpoint(InetSocketAddress address) {
+            this.address = address;
+        }
+
+        void scheduleReconnect() {
+            connection = null;
+            nextConnectAttemptMillis = System.currentTimeMillis() + RECONNECT_DELAY_MILLIS;
+        }
+    }
+
+    private final class Connection implements Replica.ModificationIterator.Callback {
+        final SocketChannel channel;
+        @Nullable
+        final Endpoint endpoint;
+        final SelectionKey key;
+
+        /**
+         * Received bytes, the first byte of the buffer is always the start of a message
+         */
+        ByteBuffer in;
+        Bytes<ByteBuffer> inBytes;
+        /**
+         * Bytes to send, in the "write" mode of the buffer
+         */
+        ByteBuffer out;
+        /**
+         * Messages, written by the modification iterator callback, which are not yet copied to
+         * the {@link #out} buffer, because they don't fit it
+         */
+        final Bytes<ByteBuffer> messages = Bytes.elasticByteBuffer(256);
+        final Bytes<ByteBuffer> bootstrapTime = Bytes.elasticByteBuffer(8);
+        long messageStart;
+
+        byte remoteIdentifier = 0;
+        /**
+         * {@link System#currentTimeMillis()} when bytes were received or sent the last time,
+         * the connection and the remote node are considered alive since then
+         */
+        long lastReadMillis;
+        long lastWriteMillis;
+        Replica.ModificationIterator modificationIterator;
+        volatile boolean changesPending;
+        boolean writeBlocked;
+
+        Connection(SocketChannel channel, @Nullable Endpoint endpoint) throws IOException {
+            this.channel = channel;
+            this.endpoint = endpoint;
+            channel.socket().setTcpNoDelay(true);
+            key = channel.register(selector, 0, this);
+            connections.add(this);
+            in = ByteBuffer.allocateDirect(bufferSize);
+            inBytes = Bytes.wrapForRead(in);
+            out = ByteBuffer.allocateDirect(bufferSize);
+            lastReadMillis = lastWriteMillis = System.currentTimeMillis();
+        }
+
+        void onConnected() throws IOException {
+            key.interestOps(OP_READ);
+            startMessage(IDENTIFIER_MESSAGE);
+            messages.writeByte(localIdentifier);
+            endMessage();
+            moveMessagesToOut();
+            flush();
+        }
+
+        void startMessage(byte messageType) {
+            messageStart = messages.writePosition();
+            messages.writeInt(0);
+            messages.writeByte(messageType);
+        }
+
+        void endMessage() {
+            long length = messages.writePosition() - messageStart - LENGTH_SIZE;
+            messages.writeInt(messageStart, (int) length);
+        }
+
+        @Override
+        public void onEntry(ReplicableEntry entry, int chronicleId) {
+            startMessage(ENTRY_MESSAGE);
+            map.writeExternalEntry(entry, null, messages, chronicleId);
+            endMessage();
+        }
+
+        @Override
+        public void onBootstrapTime(long bootstrapTime, int chronicleId) {
+            this.bootstrapTime.clear();
+            this.bootstrapTime.writeLong(bootstrapTime);
+            startMessage(ENTRY_MESSAGE);
+            map.writeExternalEntry(null, this.bootstrapTime, messages, chronicleId);
+            endMessage();
+        }
+
+        /**
+         * @return {@code false} if the messages don't fit the output buffer
+         */
+        boolean moveMessagesToOut() {
+            long size = messages.readRemaining();
+            if (size == 0)
+                return true;
+            if (size > out.remaining()) {
+                if (out.position() > 0)
+                    return false;
+                out = grow(out, (int) size);
+            }
+            messages.read(out);
+            messages.clear();
+            return true;
+        }
+
+        /**
+         * Fills the output buffer with the changed entries and sends it.
+         *
+         * @return {@code true} if there are more entries to send, and the socket accepts more data
+         */
+        boolean replicate() throws IOException {
+            if (modificationIterator == null)
+                return false;
+            for (int batch = 0; batch < MAX_BATCHES_PER_ROUND; batch++) {
+                if (writeBlocked || (!changesPending && messages.readRemaining() == 0))
+                    return false;
+                // reset before pulling the entries, not to miss changes, notified concurrently
+                changesPending = false;
+                boolean drained = false;
+                while (moveMessagesToOut()) {
+                    if (!modificationIterator.nextEntry(this, localIdentifier)) {
+                        // the bootstrap time could be written on the last nextEntry() call
+                        drained = moveMessagesToOut();
+                        break;
+                    }
+                }
+                if (!drained)
+                    changesPending = true;
+                flush();
+            }
+            return changesPending && !writeBlocked;
+        }
+
+        /**
+         * Sends a heartbeat, if the connection is established and there is nothing else to
+         * send. If the output is blocked, the remote node is expected to send heartbeats.
+         */
+        void sendHeartbeat() throws IOException {
+            if (remoteIdentifier == 0 || out.position() > 0 || messages.readRemaining() > 0)
+                return;
+            startMessage(HEARTBEAT_MESSAGE);
+            endMessage();
+            moveMessagesToOut();
+            flush();
+        }
+
+        void flush() throws IOException {
+            if (out.position() > 0) {
+                out.flip();
+                if (channel.write(out) > 0)
+                    lastWriteMillis = System.currentTimeMillis();
+                out.compact();
+            }
+            boolean blocked = out.position() > 0;
+            if (blocked != writeBlocked) {
+                writeBlocked = blocked;
+                key.interestOps(blocked ? (OP_READ | OP_WRITE) : OP_READ);
+            }
+        }
+
+        void read() throws IOException {
+            int read = channel.read(in);
+            if (read < 0)
+                throw new EOFException("Connection closed by " + describeRemote());
+            if (read > 0)
+                lastReadMillis = System.currentTimeMillis();
+            long limit = in.position();
+            long position = 0;
+            while (limit - position >= LENGTH_SIZE) {
+                inBytes.readPosition(0);
+                inBytes.readLimit(limit);
+                int length = inBytes.readInt(position);
+                if (length <= 0 || length > maxMessageLength) {
+                    throw new StreamCorruptedException("Message length: " + length +
+                            ", the maximum: " + maxMessageLength);
+                }
+                long messageEnd = position + LENGTH_SIZE + length;
+                if (messageEnd > limit)
+                    break;
+                // limit the message, not to let a corrupted entry read the next messages
+                inBytes.readLimit(messageEnd);
+                inBytes.readPosition(position + LENGTH_SIZE);
+                onMessage();
+                position = messageEnd;
+            }
+            in.limit((int) limit);
+            in.position((int) position);
+            in.compact();
+            if (!in.hasRemaining()) {
+                // the message doesn't fit the buffer
+                in = grow(in, in.capacity() * 2);
+                inBytes = Bytes.wrapForRead(in);
+            }
+        }
+
+        void onMessage() throws IOException {
+            byte messageType = inBytes.readByte();
+            if (messageType == IDENTIFIER_MESSAGE) {
+                onRemoteIdentifier(inBytes.readByte());
+                return;
+            }
+            if (remoteIdentifier == 0)
+                throw new StreamCorruptedException("The remote identifier is not received");
+            if (messageType == BOOTSTRAP_FROM_MESSAGE) {
+                onBootstrapFrom(inBytes.readLong());
+            } else if (messageType == ENTRY_MESSAGE) {
+                map.readExternalEntry(inBytes, remoteIdentifier);
+            } else if (messageType != HEARTBEAT_MESSAGE) {
+                throw new StreamCorruptedException("Unknown message type: " + messageType);
+            }
+        }
+
+        void onRemoteIdentifier(byte identifier) throws IOException {
+            if (identifier <= 0 || identifier == localIdentifier)
+                throw new IOException("Wrong remote identifier: " + identifier);
+            if (connectionsByRemoteIdentifier[identifier] != null)
+                throw new IOException("Already connected to the node " + identifier);
+            remoteIdentifier = identifier;
+            connectionsByRemoteIdentifier[identifier] = this;
+            startMessage(BOOTSTRAP_FROM_MESSAGE);
+            messages.writeLong(map.remoteNodeCouldBootstrapFrom(identifier));
+            endMessage();
+            moveMessagesToOut();
+            flush();
+        }
+
+        void onBootstrapFrom(long bootstrapFrom) {
+            LOG.debug("Node {} bootstraps from node {} from {}", remoteIdentifier,
+                    localIdentifier, bootstrapFrom);
+            modificationIterator = map.acquireModificationIterator(remoteIdentifier);
+            modificationIterator.setModificationNotifier(() -> onChange(this));
+            modificationIterator.dirtyEntries(bootstrapFrom);
+            changesPending = true;
+            establishedConnections.incrementAndGet();
+        }
+
+        void close(@Nullable Exception cause) {
+            if (cause != null && !closed) {
+                if (cause instanceof RuntimeException) {
+                    LOG.warn("Failed to replicate with {}, closing the connection",
+                            describeRemote(), cause);
+                } else if (modificationIterator != null) {
+                    LOG.info("Connection with {} is lost: {}", describeRemote(), cause.toString());
+                } else {
+                    LOG.debug("Failed to connect with {}", describeRemote(), cause);
+                }
+            }
+            key.cancel();
+            closeQuietly(channel);
+            connections.remove(this);
+            if (remoteIdentifier != 0 && connectionsByRemoteIdentifier[remoteIdentifier] == this) {
+                connectionsByRemoteIdentifier[remoteIdentifier] = null;
+                if (modificationIterator != null) {
+                    modificationIterator.setModificationNotifier(NO_NOTIFIER);
+                    establishedConnections.decrementAndGet();
+                }
+            }
+            if (endpoint != null)
+                endpoint.scheduleReconnect();
+        }
+
+        @NotNull
+        String describeRemote() {
+            String node = remoteIdentifier != 0 ? "node " + remoteIdentifier : "unknown node";
+            return endpoint != null ? node + " at " + endpoint.address : node;
+        }
+    }
+}
@@ -17,7 +17,6 @@
 
 package net.openhft.chronicle.map;
 
-import net.openhft.chronicle.algo.hashing.LongHashFunction;
 import net.openhft.chronicle.bytes.Bytes;
 import net.openhft.chronicle.bytes.BytesStore;
 import net.openhft.chronicle.bytes.PointerBytesStore;
@@ -41,14 +40,28 @@ import net.openhft.chronicle.set.ChronicleSet;
 import net.openhft.chronicle.wire.WireIn;
 import net.openhft.chronicle.wire.WireOut;
 import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.io.File;
 import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
 import java.util.function.BiFunction;
 import java.util.function.Function;
+import java.util.function.ObjIntConsumer;
 
+import static java.nio.file.StandardOpenOption.CREATE_NEW;
+import static java.nio.file.StandardOpenOption.WRITE;
 import static net.openhft.chronicle.map.ChronicleMapBuilder.greatestCommonDivisor;
 
 public class VanillaChronicleMap<K, V, R>
@@ -56,6 +69,8 @@ public class VanillaChronicleMap<K, V, R>
         ExternalMapQueryContext<K, V, ?>>
         implements AbstractChronicleMap<K, V> {
 
+    private static final Logger LOG = LoggerFactory.getLogger(VanillaChronicleMap.class);
+
     public SizeMarshaller valueSizeMarshaller;
     public SizedReader<V> valueReader;
     public DataAccess<V> valueDataAccess;
@@ -90,6 +105,9 @@ public class VanillaChronicleMap<K, V, R>
      */
     private transient String identityString;
     private transient boolean defaultEntryOperationsAndMethods;
+    private transient int recoveryParallelism;
+    private transient boolean recoverSegmentsLazily;
+    private transient ChecksumScrubberTask checksumScrubber;
 
     public VanillaChronicleMap(ChronicleMapBuilder<K, V> builder) throws IOException {
         super(builder);
@@ -153,6 +171,15 @@ public class VanillaChronicleMap<K, V, R>
         defaultEntryOperationsAndMethods = entryOperations == DefaultSpi.mapEntryOperations() &&
                 methods == DefaultSpi.mapMethods();
         defaultValueProvider = builder.defaultValueProvider;
+        reserveAddressSpace = builder.reserveAddressSpace;
+        preallocatedTierBulks = builder.preallocatedTierBulks;
+        recoveryParallelism = builder.recoveryParallelism;
+        recoverSegmentsLazily = builder.recoverSegmentsLazily;
+        hugePages = builder.hugePages;
+        if (builder.readOnly)
+            setReadOnly();
+        lockHashLookups = builder.lockHashLookups;
+        randomEntrySpaceAccess = builder.randomEntrySpaceAccess;
     }
 
     @Override
@@ -165,11 +192,344 @@ public class VanillaChronicleMap<K, V, R>
             ChronicleHashResources resources, ChronicleHashCorruption.Listener corruptionListener,
             ChronicleHashCorruptionImpl corruption) throws IOException {
         basicRecover(resources, corruptionListener, corruption);
-        try (IterationContext<K, V, ?> iterationContext = iterationContext()) {
-            iterationContext.recoverSegments(corruptionListener, corruption);
+        if (recoverSegmentsLazily) {
+            recoverSegmentsLazily(corruptionListener, corruption);
+        } else if (recoveryParallelism > 1 && actualSegments > 1) {
+            recoverSegmentsInParallel(corruptionListener, corruption);
+        } else {
+            try (IterationContext<K, V, ?> iterationContext = iterationContext()) {
+                iterationContext.recoverSegments(corruptionListener, corruption);
+            }
+        }
+        replayJournal();
+    }
+
+    /**
+     * Recovers the first tiers of the segments and removes duplicates in the segments in
+     * parallel, while the extra tiers and the global mutable state are recovered in a single
+     * thread between these phases, so that the linking of the extra tiers and the free tier list
+     * don't depend on the order in which segments are processed.
+     */
+    private void recoverSegmentsInParallel(
+            ChronicleHashCorruption.Listener corruptionListener,
+            ChronicleHashCorruptionImpl corruption) {
+        ChronicleHashCorruption.Listener serializedListener = serialized(corruptionListener);
+        ForkJoinPool pool = new ForkJoinPool(Math.min(recoveryParallelism, actualSegments));
+        try {
+            forEachSegmentInParallel(pool, (c, segmentIndex) -> c.recoverSegment(
+                    segmentIndex, serializedListener, new ChronicleHashCorruptionImpl()));
+            try (IterationContext<K, V, ?> c = iterationContext()) {
+                c.recoverExtraTiers(serializedListener, corruption);
+            }
+            forEachSegmentInParallel(pool, (c, segmentIndex) -> c.removeDuplicatesInSegment(
+                    segmentIndex, serializedListener, new ChronicleHashCorruptionImpl()));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * The listener is provided by the user and is not required to be thread-safe
+     */
+    private static ChronicleHashCorruption.Listener serialized(
+            ChronicleHashCorruption.Listener corruptionListener) {
+        return c -> {
+            synchronized (corruptionListener) {
+                corruptionListener.onCorruption(c);
+            }
+        };
+    }
+
+    /**
+     * Recovers the segment headers, the extra tiers and the global mutable state, the rest of the
+     * recovery of each segment is deferred until the first access to the segment.
+     */
+    private void recoverSegmentsLazily(
+            ChronicleHashCorruption.Listener corruptionListener,
+            ChronicleHashCorruptionImpl corruption) {
+        try (IterationContext<K, V, ?> c = iterationContext()) {
+            for (int segmentIndex = 0; segmentIndex < actualSegments; segmentIndex++) {
+                c.recoverSegmentHeader(segmentIndex, corruptionListener, corruption);
+            }
+            c.recoverExtraTiers(corruptionListener, corruption);
+        }
+        ChronicleHashCorruption.Listener serializedListener = serialized(corruptionListener);
+        startLazySegmentsRecovery(segmentIndex ->
+                recoverSegmentOnFirstAccess(segmentIndex, serializedListener));
+    }
+
+    private void recoverSegmentOnFirstAccess(
+            int segmentIndex, ChronicleHashCorruption.Listener corruptionListener) {
+        try (IterationContext<K, V, ?> c = recoveryContext()) {
+            c.recoverSegmentOnFirstAccess(
+                    segmentIndex, corruptionListener, new ChronicleHashCorruptionImpl());
+        }
+    }
+
+    /**
+     * Returns a new iteration context, which is not chained with the contexts of the current
+     * thread. An outer iteration context of this thread might be locked on another segment, that
+     * forbids write locking in nested contexts, while the segment being recovered on the first
+     * access is not accessed by any other context of this thread yet.
+     */
+    private IterationContext<K, V, ?> recoveryContext() {
+        ChainingInterface recoveryContext = newIterationContext();
+        return (IterationContext<K, V, ?>) recoveryContext.getContext(
+                recoveryContext.getClass(), (root, map) -> recoveryContext, this);
+    }
+
+    /**
+     * Runs the given action immediately, or when all segments are recovered, if they are
+     * recovered lazily. In the latter case, a failure of the action is logged.
+     */
+    void whenSegmentsRecovered(ChronicleMapBuilder.FileIOAction action) throws IOException {
+        boolean deferred = runWhenSegmentsRecovered(() -> {
+            try {
+                action.fileIOAction();
+            } catch (IOException e) {
+                LOG.error(toIdentityString() + ": failed to complete recovery", e);
+            }
+        });
+        if (!deferred)
+            action.fileIOAction();
+    }
+
+    void forEachSegmentInParallel(
+            ForkJoinPool pool, ObjIntConsumer<IterationContext<K, V, ?>> action) {
+        List<ForkJoinTask<?>> tasks = new ArrayList<>(actualSegments);
+        for (int i = 0; i < actualSegments; i++) {
+            int segmentIndex = i;
+            tasks.add(pool.submit(() -> {
+                try (IterationContext<K, V, ?> c = iterationContext()) {
+                    action.accept(c, segmentIndex);
+                }
+            }));
+        }
+        // Wait for all tasks, even if some of them have failed, not to release the resources of
+        // the map while other tasks are still accessing its memory
+        Throwable failure = null;
+        for (ForkJoinTask<?> task : tasks) {
+            try {
+                task.join();
+            } catch (Throwable t) {
+                if (failure == null) {
+                    failure = t;
+                } else {
+                    failure.addSuppressed(t);
+                }
+            }
+        }
+        if (failure != null)
+            throw Jvm.rethrow(failure);
+    }
+
+    /**
+     * Replays the mutations from the write-ahead journal, if it exists, regardless if the
+     * journal is configured for the map being recovered.
+     */
+    private void replayJournal() throws IOException {
+        if (!MapJournal.journalFile(file()).exists())
+            return;
+        MapJournal journal = MapJournal.acquire(file());
+        try {
+            journal.replay(this);
+        } finally {
+            journal.release();
+        }
+    }
+
+    @Override
+    public void exportTo(File toFile, int parallelism) throws IOException {
+        MapDump.export(this, toFile, parallelism);
+    }
+
+    @Override
+    public void importFrom(File fromFile, int parallelism) throws IOException {
+        MapDump.importTo(this, fromFile, parallelism);
+    }
+
+    @Override
+    public void snapshotTo(File toFile) throws IOException {
+        long startTime = System.nanoTime();
+        SegmentsSnapshot snapshot;
+        try (FileChannel out = FileChannel.open(toFile.toPath(), WRITE, CREATE_NEW)) {
+            snapshot = startSnapshot(out);
+            try {
+                for (int segmentIndex = 0; segmentIndex < segments(); segmentIndex++) {
+                    try (IterationContext<K, V, ?> c = iterationContext()) {
+                        c.initSegmentIndex(segmentIndex);
+                        c.updateLock().lock();
+                        snapshot.copySegment(segmentIndex);
+                    }
+                }
+            } finally {
+                finishSnapshot();
+            }
+            snapshot.finish();
+        } catch (Throwable t) {
+            if (!(t instanceof FileAlreadyExistsException))
+                Files.deleteIfExists(toFile.toPath());
+            throw t;
+        }
+        // The global mutable state is copied at the end of the snapshot, so the free list and
+        // the counters of tiers account tiers, allocated by segments after they are copied, and
+        // empty in the copy. Recovery fixes them, these "corruptions" are expected. Corruptions
+        // of segments are not: they mean that the copy is torn, or the map itself is corrupted.
+        List<String> segmentCorruptions = new ArrayList<>();
+        ChronicleMapBuilder.of(keyClass(), valueClass())
+                .recoverPersistedTo(toFile, false, corruption -> {
+                    if (corruption.segmentIndex() >= 0) {
+                        synchronized (segmentCorruptions) {
+                            segmentCorruptions.add(corruption.message());
+                        }
+                    }
+                })
+                .close();
+        if (!segmentCorruptions.isEmpty()) {
+            Files.deleteIfExists(toFile.toPath());
+            throw new IOException("Snapshot of " + toIdentityString() + " to " + toFile +
+                    " is inconsistent, " + segmentCorruptions.size() + " corruptions of " +
+                    "segments found: " + segmentCorruptions);
+        }
+        long elapsedNanos = System.nanoTime() - startTime;
+        long copiedBytes = snapshot.copiedBytes();
+        LOG.info("Snapshot of {} to {}: {} bytes in {} ms, {} MB/s", toIdentityString(), toFile,
+                copiedBytes, TimeUnit.NANOSECONDS.toMillis(elapsedNanos),
+                copiedBytes * 1000 / Math.max(elapsedNanos, 1));
+    }
+
+    /**
+     * Starts journaling of mutations of this map, and the background thread, which periodically
+     * truncates the journal.
+     */
+    void establishJournal(long checkpointPeriod, TimeUnit unit) throws IOException {
+        MapJournal journal = MapJournal.acquire(file());
+        addCloseable(journal::release);
+        entryOperations = new JournalingMapEntryOperations<>(entryOperations, journal);
+        JournalCheckpointThread checkpointThread =
+                new JournalCheckpointThread(this, journal, checkpointPeriod, unit);
+        addCloseable(checkpointThread);
+        checkpointThread.start();
+    }
+
+    /**
+     * Starts the background task, which periodically computes the checksums of the entries,
+     * deferred by this process.
+     */
+    void establishDeferredChecksums(long period, TimeUnit unit) {
+        scheduleMaintenance(new DeferredChecksumsTask(this, period, unit), period, unit);
+    }
+
+    /**
+     * Computes the checksums of the entries, updated by this process, which computation is
+     * {@linkplain ChronicleMapBuilder#deferChecksums(long, TimeUnit) deferred}. Walks only the
+     * segments with such entries, each of them is update-locked for the time of the walk.
+     *
+     * @return the number of computed checksums
+     */
+    public final long computeDeferredChecksums() {
+        if (!deferredChecksums)
+            return 0;
+        long[] computed = {0};
+        for (int segmentIndex = 0; segmentIndex < actualSegments; segmentIndex++) {
+            if (!unmarkChecksumsDeferred(segmentIndex))
+                continue;
+            long computedBefore = computed[0];
+            try (IterationContext<K, V, ?> c = iterationContext()) {
+                c.initSegmentIndex(segmentIndex);
+                // Copies the segment into the snapshot in progress, if any, before checksums are
+                // written, see SegmentStages.incrementUpdate()
+                c.updateLock().lock();
+                c.forEachSegmentEntry(e -> {
+                    if (c.computeDeferredChecksum())
+                        computed[0]++;
+                });
+                // Checksums are written holding only the update lock, so the segment is not
+                // marked dirty on the write lock release
+                if (computed[0] != computedBefore)
+                    markSegmentDirty(segmentIndex);
+            } catch (RuntimeException | Error e) {
+                // the checksums of this segment are not computed, try again next time
+                markChecksumsDeferred(segmentIndex);
+                throw e;
+            }
+        }
+        return computed[0];
+    }
+
+    @Override
+    public void msync() throws IOException {
+        computeDeferredChecksums();
+        super.msync();
+    }
+
+    @Override
+    protected void beforeClose() {
+        try {
+            computeDeferredChecksums();
+        } catch (ChronicleHashClosedException e) {
+            // closed concurrently
+        } catch (RuntimeException e) {
+            LOG.error("Failed to compute deferred checksums of " + toIdentityString() +
+                    " on close", e);
         }
     }
 
+    /**
+     * Starts the background task, which verifies checksums of the entries of this map and
+     * reports mismatches to the given listener.
+     */
+    void establishChecksumScrubbing(
+            long bytesPerSecond, long passPeriod, TimeUnit unit,
+            ChronicleHashCorruption.Listener corruptionListener) {
+        ChecksumScrubberTask scrubber = new ChecksumScrubberTask(
+                this, bytesPerSecond, passPeriod, unit, corruptionListener);
+        checksumScrubber = scrubber;
+        scheduleMaintenance(scrubber, 0, unit);
+    }
+
+    /**
+     * @return the fraction of segments, which checksums are already verified during the current
+     * pass of the background checksum scrubbing, or 0 if checksums are not scrubbed
+     * @see ChronicleMapBuilder#scrubChecksumsInBackground
+     */
+    public final double checksumScrubProgress() {
+        ChecksumScrubberTask scrubber = checksumScrubber;
+        return scrubber != null ? scrubber.progress() : 0.0;
+    }
+
+    /**
+     * @return the number of completed passes of the background checksum scrubbing over the whole
+     * map, or 0 if checksums are not scrubbed
+     * @see ChronicleMapBuilder#scrubChecksumsInBackground
+     */
+    public final long checksumScrubPasses() {
+        ChecksumScrubberTask scrubber = checksumScrubber;
+        return scrubber != null ? scrubber.completedPasses() : 0;
+    }
+
+    /**
+     * @return the duration of the latest completed pass of the background checksum scrubbing,
+     * including the time the scrubbing was paused to comply with the rate limit, or 0 if no pass
+     * is completed yet
+     * @see ChronicleMapBuilder#scrubChecksumsInBackground
+     */
+    public final long lastChecksumScrubPassNanos() {
+        ChecksumScrubberTask scrubber = checksumScrubber;
+        return scrubber != null ? scrubber.lastPassNanos() : 0;
+    }
+
+    /**
+     * @return the average number of bytes per second verified by the background checksum
+     * scrubbing, excluding the time the scrubbing was paused to comply with the rate limit, or 0
+     * if checksums are not scrubbed
+     * @see ChronicleMapBuilder#scrubChecksumsInBackground
+     */
+    public final double checksumScrubThroughput() {
+        ChecksumScrubberTask scrubber = checksumScrubber;
+        return scrubber != null ? scrubber.throughput() : 0.0;
+    }
+
     private void initOwnTransients() {
         couldNotDetermineAlignmentBeforeAllocation =
                 greatestCommonDivisor((int) chunkSize, alignment) != alignment;
@@ -205,6 +565,20 @@ public class VanillaChronicleMap<K, V, R>
         return result;
     }
 
+    @Override
+    public long releaseFreeMemory() {
+        if (readOnly)
+            return 0L;
+        long released = 0L;
+        for (int segmentIndex = 0; segmentIndex < segments(); segmentIndex++) {
+            try (IterationContext<K, V, ?> c = iterationContext()) {
+                c.initSegmentIndex(segmentIndex);
+                released += c.releaseFreeSegmentMemory();
+            }
+        }
+        return released + releaseFreeTiersMemory();
+    }
+
     @Override
     public Class<K> keyClass() {
         return keyClass;
@@ -285,9 +659,24 @@ public class VanillaChronicleMap<K, V, R>
                 "}";
     }
 
+    /**
+     * Resets segments at once, if neither entry operations nor map methods are customized, and
+     * mutations are not journaled. Otherwise removes entries one by one, so that each removal goes
+     * through {@link #entryOperations}.
+     */
     @Override
     public void clear() {
-        forEachEntry(c -> c.context().remove(c));
+        if (!defaultEntryOperationsAndMethods ||
+                entryOperations != DefaultSpi.mapEntryOperations()) {
+            forEachEntry(c -> c.context().remove(c));
+            return;
+        }
+        for (int segmentIndex = 0; segmentIndex < segments(); segmentIndex++) {
+            try (IterationContext<K, V, ?> c = iterationContext()) {
+                c.initSegmentIndex(segmentIndex);
+                c.clearSegment();
+            }
+        }
     }
 
     public final long readValueSize(Bytes entry) {
@@ -480,14 +869,18 @@ public class VanillaChronicleMap<K, V, R>
             Data<K> inputKey = c.inputKeyDataAccess().getData((K) key);
             long inputKeySize = inputKey.size();
 
-            long keyHash = inputKey.hash(LongHashFunction.xx_r39());
+            long keyHash = inputKey.hash(keyHashFunction);
             HashSplitting hs = this.hashSplitting;
             int segmentIndex = hs.segmentIndex(keyHash);
+            // Bypasses the context stages, so should recover the segment like
+            // SegmentStages.initSegmentHeader(), if the map is recovered lazily
+            ensureSegmentRecovered(segmentIndex);
             segmentHeaderAddress = segmentHeaderAddress(segmentIndex);
             CompactOffHeapLinearHashTable hl = this.hashLookup;
             long searchKey = hl.maskUnsetKey(hs.segmentHash(keyHash));
             long searchStartPos = hl.hlPos(searchKey);
-            boolean needReadLock = true;
+            // Segments of a read-only map are never modified, reads don't need locking
+            boolean needReadLock = !readOnly;
             initLocks:
             {
                 int indexOfThisContext = c.indexInContextChain;
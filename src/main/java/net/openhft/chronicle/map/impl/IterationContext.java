@@ -18,16 +18,95 @@
 package net.openhft.chronicle.map.impl;
 
 import net.openhft.chronicle.hash.ChronicleHashCorruption;
+import net.openhft.chronicle.hash.SegmentLock;
 import net.openhft.chronicle.map.ChronicleHashCorruptionImpl;
 import net.openhft.chronicle.map.MapEntry;
 import net.openhft.chronicle.map.MapSegmentContext;
 
-public interface IterationContext<K, V, R> extends MapEntry<K, V>, MapSegmentContext<K, V, R> {
+public interface IterationContext<K, V, R>
+        extends MapEntry<K, V>, MapSegmentContext<K, V, R>, SegmentLock {
     long pos();
 
     void initSegmentIndex(int segmentIndex);
 
+    /**
+     * Computes and stores the checksum of the current entry, if its computation was deferred.
+     * The segment should be locked at least on the update level.
+     *
+     * @return {@code true} if the checksum was stale and is computed
+     */
+    boolean computeDeferredChecksum();
+
+    /**
+     * Recovers all segments and the global mutable state sequentially: equivalent to {@link
+     * #recoverSegment} for each segment, then {@link #recoverExtraTiers}, then {@link
+     * #removeDuplicatesInSegment} for each segment.
+     */
     void recoverSegments(
             ChronicleHashCorruption.Listener corruptionListener,
             ChronicleHashCorruptionImpl corruption);
+
+    /**
+     * Recovers the lock, the reserved tier and the first tier of the segment with the given
+     * index. Touches only the memory of that segment, so could be called concurrently for
+     * different segments from different threads.
+     */
+    void recoverSegment(
+            int segmentIndex, ChronicleHashCorruption.Listener corruptionListener,
+            ChronicleHashCorruptionImpl corruption);
+
+    /**
+     * Recovers the lock, the reserved tier and the counters area of the first tier of the segment
+     * with the given index, that is required before {@link #recoverExtraTiers}. The hash lookup
+     * and the entries of the first tier are left to {@link #recoverSegmentOnFirstAccess}.
+     */
+    void recoverSegmentHeader(
+            int segmentIndex, ChronicleHashCorruption.Listener corruptionListener,
+            ChronicleHashCorruptionImpl corruption);
+
+    /**
+     * Completes the recovery of the segment, started by {@link #recoverSegmentHeader}, after
+     * {@link #recoverExtraTiers} is done: recovers the first tier and removes entries with
+     * duplicate keys in different tiers. The segment is write-locked by this context until it is
+     * closed.
+     */
+    void recoverSegmentOnFirstAccess(
+            int segmentIndex, ChronicleHashCorruption.Listener corruptionListener,
+            ChronicleHashCorruptionImpl corruption);
+
+    /**
+     * Recovers the extra tiers, chains them to the segments and rebuilds the free tier list and
+     * the counters in the global mutable state. Should be called after {@link #recoverSegment}
+     * is completed for all segments, and not concurrently with any other recovery step.
+     */
+    void recoverExtraTiers(
+            ChronicleHashCorruption.Listener corruptionListener,
+            ChronicleHashCorruptionImpl corruption);
+
+    /**
+     * Removes entries with duplicate keys in different tiers of the segment with the given index,
+     * and recovers the counters of the tiers. Should be called after {@link #recoverExtraTiers},
+     * could be called concurrently for different segments from different threads.
+     */
+    void removeDuplicatesInSegment(
+            int segmentIndex, ChronicleHashCorruption.Listener corruptionListener,
+            ChronicleHashCorruptionImpl corruption);
+
+    /**
+     * Returns the memory of free chunks of all tiers of the segment, this context is initialized
+     * with, back to the OS.
+     *
+     * @return the number of bytes released
+     * @see net.openhft.chronicle.hash.impl.VanillaChronicleHash#releaseTierMemory
+     */
+    long releaseFreeSegmentMemory();
+
+    /**
+     * Removes all entries from the segment, this context is initialized with, at once: resets
+     * the hash lookup, the free list and the counters of the first tier of the segment, and
+     * returns the chained extra tiers to the global free list.
+     *
+     * @see net.openhft.chronicle.hash.impl.VanillaChronicleHash#freeTierChain
+     */
+    void clearSegment();
 }
@@ -63,6 +63,8 @@ import net.openhft.sg.Staged;
 
         TierRecovery.class,
         SegmentsRecovery.class,
+        SegmentMemoryRelease.class,
+        SegmentClear.class,
 }, nested = {
         ReadLock.class,
         UpdateLock.class,
@@ -25,6 +25,8 @@ import net.openhft.chronicle.hash.impl.stage.hash.OwnerThreadHolder;
 import net.openhft.chronicle.hash.impl.stage.iter.IterationAlloc;
 import net.openhft.chronicle.hash.impl.stage.iter.IterationKeyHashCode;
 import net.openhft.chronicle.hash.impl.stage.iter.IterationSegmentStages;
+import net.openhft.chronicle.hash.impl.stage.iter.SegmentClear;
+import net.openhft.chronicle.hash.impl.stage.iter.SegmentMemoryRelease;
 import net.openhft.chronicle.hash.impl.stage.iter.SegmentsRecovery;
 import net.openhft.chronicle.hash.impl.stage.query.KeySearch;
 import net.openhft.chronicle.map.impl.stage.data.DummyValueZeroData;
@@ -70,6 +72,8 @@ import net.openhft.sg.Staged;
 
         ReplicatedTierRecovery.class,
         SegmentsRecovery.class,
+        SegmentMemoryRelease.class,
+        SegmentClear.class,
 }, nested = {
         ReadLock.class,
         UpdateLock.class,
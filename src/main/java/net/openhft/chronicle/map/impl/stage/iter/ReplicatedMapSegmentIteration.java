@@ -54,11 +54,59 @@ public abstract class ReplicatedMapSegmentIteration<K, V, R> extends MapSegmentI
     @StageRef
     ReplicatedMapEntryDelegating<K, V> entryDelegating;
     EntriesToTest entriesToTest = null;
+    /**
+     * The oldest timestamp of the deleted entries, which remain in the tier, iterated over with
+     * {@link EntriesToTest#ALL}, to recompute {@code tierOldestDeletedTimestamp}
+     * after removals of old deleted entries
+     */
+    long oldestRemainingDeletedTimestamp = Long.MAX_VALUE;
 
     void initEntriesToTest(EntriesToTest entriesToTest) {
         this.entriesToTest = entriesToTest;
     }
 
+    void initOldestRemainingDeletedTimestamp(long oldestRemainingDeletedTimestamp) {
+        this.oldestRemainingDeletedTimestamp = oldestRemainingDeletedTimestamp;
+    }
+
+    void remainingDeletedEntry(long timestamp) {
+        if (timestamp < oldestRemainingDeletedTimestamp)
+            initOldestRemainingDeletedTimestamp(timestamp);
+    }
+
+    @Override
+    public void hookBeforeTierIteration() {
+        if (entriesToTest == ALL)
+            initOldestRemainingDeletedTimestamp(Long.MAX_VALUE);
+    }
+
+    @Override
+    public void hookAfterEachIteration() {
+        super.hookAfterEachIteration();
+        // Entries, deleted on this iteration, are accounted in doRemove(), entries, removed
+        // completely, don't remain
+        if (entriesToTest == ALL && !entryRemovedOnThisIteration && e.entryDeleted())
+            remainingDeletedEntry(e.timestamp());
+    }
+
+    @Override
+    public void hookAfterTierIteration() {
+        // Only the iteration over all entries visits all deleted entries of the tier
+        if (entriesToTest == ALL) {
+            long oldest = oldestRemainingDeletedTimestamp;
+            if (oldest == Long.MAX_VALUE)
+                oldest = 0;
+            if (s.tierOldestDeletedTimestamp() != oldest) {
+                s.innerWriteLock.lock();
+                try {
+                    s.tierOldestDeletedTimestamp(oldest);
+                } finally {
+                    s.innerWriteLock.unlock();
+                }
+            }
+        }
+    }
+
     @Override
     public boolean shouldTestEntry() {
         return entriesToTest == ALL || !e.entryDeleted();
@@ -120,7 +168,9 @@ public abstract class ReplicatedMapSegmentIteration<K, V, R> extends MapSegmentI
             e.updatedReplicationStateOnPresentEntry();
             e.writeEntryDeleted();
             ru.updateChange();
-            s.tierDeleted(s.tierDeleted() + 1);
+            s.incrementTierDeleted(e.timestamp());
+            if (entriesToTest == ALL)
+                remainingDeletedEntry(e.timestamp());
         } finally {
             s.innerWriteLock.unlock();
         }
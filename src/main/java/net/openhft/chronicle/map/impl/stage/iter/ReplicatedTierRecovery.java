@@ -60,6 +60,7 @@ public class ReplicatedTierRecovery extends TierRecovery {
         long hlAddr = s.tierBaseAddr;
 
         long deleted = 0;
+        long oldestDeletedTimestamp = Long.MAX_VALUE;
         long hlPos = 0;
         do {
             long hlEntry = hl.readEntry(hlAddr, hlPos);
@@ -67,6 +68,7 @@ public class ReplicatedTierRecovery extends TierRecovery {
                 e.readExistingEntry(hl.value(hlEntry));
                 if (e.entryDeleted()) {
                     deleted++;
+                    oldestDeletedTimestamp = Math.min(oldestDeletedTimestamp, e.timestamp());
                 }
             }
             hlPos = hl.step(hlPos);
@@ -79,6 +81,8 @@ public class ReplicatedTierRecovery extends TierRecovery {
             );
             s.tierDeleted(deleted);
         }
+        // not a corruption, the timestamp is only a hint for the old deleted entries cleanup
+        s.tierOldestDeletedTimestamp(deleted > 0 ? oldestDeletedTimestamp : 0);
     }
 
     private void cleanupModificationIterationBits() {
@@ -82,7 +82,7 @@ public abstract class ReplicatedMapQuery<K, V, R> extends MapQuery<K, V, R>
             e.updatedReplicationStateOnPresentEntry();
             e.writeEntryDeleted();
             ru.updateChange();
-            s.tierDeleted(s.tierDeleted() + 1);
+            s.incrementTierDeleted(e.timestamp());
         } else {
             throw new IllegalStateException(mh.h().toIdentityString() +
                     ": Entry is absent in the map when doRemove() is called");
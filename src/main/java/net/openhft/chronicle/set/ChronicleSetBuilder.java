@@ -17,10 +17,12 @@
 
 package net.openhft.chronicle.set;
 
+import net.openhft.chronicle.hash.ChecksumAlgorithm;
 import net.openhft.chronicle.hash.ChronicleHashBuilder;
 import net.openhft.chronicle.hash.ChronicleHashBuilderPrivateAPI;
 import net.openhft.chronicle.hash.ChronicleHashCorruption;
 import net.openhft.chronicle.hash.Data;
+import net.openhft.chronicle.hash.HugePages;
 import net.openhft.chronicle.hash.serialization.*;
 import net.openhft.chronicle.map.*;
 import net.openhft.chronicle.map.replication.MapRemoteOperations;
@@ -30,6 +32,8 @@ import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.DoubleConsumer;
 
 /**
  * {@code ChronicleSetBuilder} manages the whole set of {@link ChronicleSet} configurations, could
@@ -278,6 +282,200 @@ public final class ChronicleSetBuilder<K>
         return this;
     }
 
+    /**
+     * Configures the algorithm, used to compute entry checksums of the sets, created by this
+     * {@code ChronicleSetBuilder}.
+     *
+     * @see ChronicleMapBuilder#checksumAlgorithm(ChecksumAlgorithm)
+     */
+    public ChronicleSetBuilder<K> checksumAlgorithm(
+            @NotNull ChecksumAlgorithm checksumAlgorithm) {
+        chronicleMapBuilder.checksumAlgorithm(checksumAlgorithm);
+        return this;
+    }
+
+    /**
+     * Configures the sets, created by this {@code ChronicleSetBuilder}, to compute checksums of
+     * inserted entries in background, rather than on each insertion.
+     *
+     * @see ChronicleMapBuilder#deferChecksums(long, TimeUnit)
+     */
+    public ChronicleSetBuilder<K> deferChecksums(long period, TimeUnit unit) {
+        chronicleMapBuilder.deferChecksums(period, unit);
+        return this;
+    }
+
+    /**
+     * Configures whether the sets, created by this {@code ChronicleSetBuilder}, should hash keys
+     * with a random seed, generated on the set creation.
+     *
+     * @see ChronicleMapBuilder#seededKeyHashing(boolean)
+     */
+    public ChronicleSetBuilder<K> seededKeyHashing(boolean seededKeyHashing) {
+        chronicleMapBuilder.seededKeyHashing(seededKeyHashing);
+        return this;
+    }
+
+    /**
+     * Configures the sets created by this {@code ChronicleSetBuilder} to {@linkplain
+     * ChronicleSet#releaseFreeMemory() release free memory} back to the OS in background, with
+     * the given period.
+     *
+     * @see ChronicleMapBuilder#releaseFreeMemoryPeriodically(long, TimeUnit)
+     */
+    public ChronicleSetBuilder<K> releaseFreeMemoryPeriodically(long period, TimeUnit unit) {
+        chronicleMapBuilder.releaseFreeMemoryPeriodically(period, unit);
+        return this;
+    }
+
+    /**
+     * Configures if the sets created by this {@code ChronicleSetBuilder} should keep a reserved
+     * free extra tier for each segment, that has already chained an extra tier.
+     *
+     * @see ChronicleMapBuilder#tierReserves(boolean)
+     */
+    public ChronicleSetBuilder<K> tierReserves(boolean tierReserves) {
+        chronicleMapBuilder.tierReserves(tierReserves);
+        return this;
+    }
+
+    /**
+     * Configures if the persisted sets created by this {@code ChronicleSetBuilder} should reserve
+     * virtual address space for the maximum possible size of the store in a single memory mapping.
+     *
+     * @see ChronicleMapBuilder#reserveAddressSpace(boolean)
+     */
+    public ChronicleSetBuilder<K> reserveAddressSpace(boolean reserveAddressSpace) {
+        chronicleMapBuilder.reserveAddressSpace(reserveAddressSpace);
+        return this;
+    }
+
+    /**
+     * Configures the persisted sets created by this {@code ChronicleSetBuilder} to allocate disk
+     * space for their persistence files upfront.
+     *
+     * @see ChronicleMapBuilder#preallocateFile(int)
+     */
+    public ChronicleSetBuilder<K> preallocateFile(int extraTierBulks) {
+        chronicleMapBuilder.preallocateFile(extraTierBulks);
+        return this;
+    }
+
+    /**
+     * Configures the persisted sets created by this {@code ChronicleSetBuilder} to sync only the
+     * modified segments to disk in background.
+     *
+     * @see ChronicleMapBuilder#syncDirtySegmentsPeriodically(long, TimeUnit, long)
+     */
+    public ChronicleSetBuilder<K> syncDirtySegmentsPeriodically(
+            long period, TimeUnit unit, long dirtyBytesThreshold) {
+        chronicleMapBuilder.syncDirtySegmentsPeriodically(period, unit, dirtyBytesThreshold);
+        return this;
+    }
+
+    /**
+     * Configures the persisted sets created by this {@code ChronicleSetBuilder} to append all
+     * mutations to a write-ahead journal, replayed during recovery.
+     *
+     * @see ChronicleMapBuilder#writeAheadJournal(long, TimeUnit)
+     */
+    public ChronicleSetBuilder<K> writeAheadJournal(long checkpointPeriod, TimeUnit unit) {
+        chronicleMapBuilder.writeAheadJournal(checkpointPeriod, unit);
+        return this;
+    }
+
+    /**
+     * Configures the number of threads, recovering the segments of the Chronicle Set store.
+     *
+     * @see ChronicleMapBuilder#recoveryParallelism(int)
+     */
+    public ChronicleSetBuilder<K> recoveryParallelism(int parallelism) {
+        chronicleMapBuilder.recoveryParallelism(parallelism);
+        return this;
+    }
+
+    /**
+     * Configures if the segments of the Chronicle Set store should be recovered on the first
+     * access, rather than before the set is returned from the recovering method.
+     *
+     * @see ChronicleMapBuilder#recoverSegmentsLazily(boolean)
+     */
+    public ChronicleSetBuilder<K> recoverSegmentsLazily(boolean recoverSegmentsLazily) {
+        chronicleMapBuilder.recoverSegmentsLazily(recoverSegmentsLazily);
+        return this;
+    }
+
+    /**
+     * Configures the kind of huge pages, backing the memory of the sets, created by this {@code
+     * ChronicleSetBuilder}.
+     *
+     * @see ChronicleMapBuilder#hugePages(HugePages)
+     */
+    public ChronicleSetBuilder<K> hugePages(HugePages hugePages) {
+        chronicleMapBuilder.hugePages(hugePages);
+        return this;
+    }
+
+    /**
+     * Configures the sets, created or opened by this {@code ChronicleSetBuilder}, to fault in
+     * their memory before they are returned.
+     *
+     * @see ChronicleMapBuilder#preTouch(int, boolean, DoubleConsumer)
+     */
+    public ChronicleSetBuilder<K> preTouch(
+            int parallelism, boolean extraTiers, DoubleConsumer progressListener) {
+        chronicleMapBuilder.preTouch(parallelism, extraTiers, progressListener);
+        return this;
+    }
+
+    /**
+     * Configures the persisted sets, created or opened by this {@code ChronicleSetBuilder}, to
+     * record their hot pages periodically and to prefetch them when opened again.
+     *
+     * @see ChronicleMapBuilder#hotPagesTrace(long, TimeUnit)
+     */
+    public ChronicleSetBuilder<K> hotPagesTrace(long samplingPeriod, TimeUnit unit) {
+        chronicleMapBuilder.hotPagesTrace(samplingPeriod, unit);
+        return this;
+    }
+
+    /**
+     * Configures if the hash lookups of the sets, created or opened by this {@code
+     * ChronicleSetBuilder}, should be locked in memory.
+     *
+     * @see ChronicleMapBuilder#lockHashLookups(boolean)
+     */
+    public ChronicleSetBuilder<K> lockHashLookups(boolean lockHashLookups) {
+        chronicleMapBuilder.lockHashLookups(lockHashLookups);
+        return this;
+    }
+
+    /**
+     * Configures if the entry spaces of the sets, created or opened by this {@code
+     * ChronicleSetBuilder}, should be advised for random access.
+     *
+     * @see ChronicleMapBuilder#randomEntrySpaceAccess(boolean)
+     */
+    public ChronicleSetBuilder<K> randomEntrySpaceAccess(boolean randomEntrySpaceAccess) {
+        chronicleMapBuilder.randomEntrySpaceAccess(randomEntrySpaceAccess);
+        return this;
+    }
+
+    /**
+     * Configures the sets created or opened by this {@code ChronicleSetBuilder} to verify the
+     * checksums of all entries in background, at a limited rate.
+     *
+     * @see ChronicleMapBuilder#scrubChecksumsInBackground(long, long, TimeUnit,
+     * ChronicleHashCorruption.Listener)
+     */
+    public ChronicleSetBuilder<K> scrubChecksumsInBackground(
+            long bytesPerSecond, long passPeriod, TimeUnit unit,
+            @NotNull ChronicleHashCorruption.Listener corruptionListener) {
+        chronicleMapBuilder.scrubChecksumsInBackground(
+                bytesPerSecond, passPeriod, unit, corruptionListener);
+        return this;
+    }
+
     /**
      * Inject your SPI code around basic {@code ChronicleSet}'s operations with entries:
      * removing entries and inserting new entries.
@@ -321,6 +519,16 @@ public final class ChronicleSetBuilder<K>
         return createOrRecoverPersistedTo(file, true);
     }
 
+    /**
+     * Opens the Chronicle Set store, persisted to the given file, for reading only.
+     *
+     * @see ChronicleMapBuilder#openReadOnly(File)
+     */
+    public ChronicleSet<K> openReadOnly(File file) throws IOException {
+        ChronicleMap<K, DummyValue> map = chronicleMapBuilder.openReadOnly(file);
+        return new SetFromMap<>((VanillaChronicleMap<K, DummyValue, ?>) map);
+    }
+
     @Override
     public ChronicleSet<K> createOrRecoverPersistedTo(File file, boolean sameLibraryVersion)
             throws IOException {
@@ -17,6 +17,7 @@
 
 package net.openhft.chronicle.set;
 
+import net.openhft.chronicle.hash.ChecksumAlgorithm;
 import net.openhft.chronicle.hash.ChronicleHashBuilderPrivateAPI;
 import net.openhft.chronicle.hash.Data;
 import net.openhft.chronicle.hash.serialization.impl.SerializationBuilder;
@@ -102,6 +103,26 @@ class ChronicleSetBuilderPrivateAPI<K>
         return mapB.checksumEntries();
     }
 
+    @Override
+    public ChecksumAlgorithm checksumAlgorithm() {
+        return mapB.checksumAlgorithm();
+    }
+
+    @Override
+    public boolean deferredChecksums() {
+        return mapB.deferredChecksums();
+    }
+
+    @Override
+    public boolean seededKeyHashing() {
+        return mapB.seededKeyHashing();
+    }
+
+    @Override
+    public long minTierBulkSize() {
+        return mapB.minTierBulkSize();
+    }
+
     @Override
     public void replication(byte identifier) {
         mapB.replication(identifier);
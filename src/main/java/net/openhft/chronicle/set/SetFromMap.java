@@ -23,6 +23,7 @@ import net.openhft.chronicle.hash.impl.util.Objects;
 import net.openhft.chronicle.map.ChronicleMap;
 import net.openhft.chronicle.map.VanillaChronicleMap;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
 import java.util.AbstractSet;
@@ -30,6 +31,7 @@ import java.util.Collection;
 import java.util.Iterator;
 import java.util.Set;
 import java.util.function.Consumer;
+import java.util.function.DoubleConsumer;
 import java.util.function.Predicate;
 
 import static net.openhft.chronicle.set.DummyValue.DUMMY_VALUE;
@@ -130,6 +132,27 @@ class SetFromMap<E> extends AbstractSet<E> implements ChronicleSet<E> {
         return m.offHeapMemoryUsed();
     }
 
+    @Override
+    public long releaseFreeMemory() {
+        return m.releaseFreeMemory();
+    }
+
+    @Override
+    public double recoveryProgress() {
+        return m.recoveryProgress();
+    }
+
+    @Override
+    public void warmUp() {
+        m.warmUp();
+    }
+
+    @Override
+    public void warmUp(
+            int parallelism, boolean extraTiers, @Nullable DoubleConsumer progressListener) {
+        m.warmUp(parallelism, extraTiers, progressListener);
+    }
+
     @Override
     public Class<E> keyClass() {
         return m.keyClass();
@@ -0,0 +1,189 @@
+/*
+ *      Copyright (C) 2012, 2016  higherfrequencytrading.com
+ *      Copyright (C) 2016 Roman Leventov
+ *
+ *      This program is free software: you can redistribute it and/or modify
+ *      it under the terms of the GNU Lesser General Public License as published by
+ *      the Free Software Foundation, either version 3 of the License.
+ *
+ *      This program is distributed in the hope that it will be useful,
+ *      but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *      MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *      GNU Lesser General Public License for more details.
+ *
+ *      You should have received a copy of the GNU Lesser General Public License
+ *      along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.openhft.chronicle.hash.impl;
+
+import net.openhft.chronicle.hash.impl.MaintenanceTask.Priority;
+import net.openhft.chronicle.map.ChronicleMap;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class MaintenanceSchedulerTest {
+
+    private final MaintenanceScheduler scheduler =
+            new MaintenanceScheduler("Test Maintenance Thread", 1);
+
+    @After
+    public void shutdown() {
+        scheduler.shutdown();
+    }
+
+    private static class RecordingTask extends MaintenanceTask {
+        final List<String> log;
+        final long spinNanos;
+        final long delayNanos;
+
+        RecordingTask(String name, Priority priority, double cpuShare, List<String> log,
+                      long spinNanos, long delayNanos) {
+            super(name, priority, 1, TimeUnit.MILLISECONDS, cpuShare);
+            this.log = log;
+            this.spinNanos = spinNanos;
+            this.delayNanos = delayNanos;
+        }
+
+        @Override
+        protected long run(long sliceNanos) {
+            log.add(name());
+            long end = System.nanoTime() + spinNanos;
+            while (System.nanoTime() - end < 0) {
+                // burn the cpu
+            }
+            return delayNanos;
+        }
+    }
+
+    @Test
+    public void testHigherPriorityTasksRunFirst() throws InterruptedException {
+        List<String> log = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch blocking = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        scheduler.schedule(new MaintenanceTask("blocker", Priority.NORMAL, 1.0) {
+            @Override
+            protected long run(long sliceNanos) {
+                blocking.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return -1;
+            }
+        }, 0, TimeUnit.SECONDS);
+        assertTrue(blocking.await(10, TimeUnit.SECONDS));
+        // Both are due, while the only thread is busy
+        scheduler.schedule(new RecordingTask("low", Priority.LOW, 1.0, log, 0, -1),
+                0, TimeUnit.SECONDS);
+        scheduler.schedule(new RecordingTask("high", Priority.HIGH, 1.0, log, 0, -1),
+                0, TimeUnit.SECONDS);
+        Thread.sleep(10);
+        release.countDown();
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (log.size() < 2 && System.currentTimeMillis() < deadline)
+            Thread.sleep(1);
+        assertEquals(2, log.size());
+        assertEquals("high", log.get(0));
+        assertEquals("low", log.get(1));
+    }
+
+    @Test
+    public void testTaskDoesNotExceedCpuShare() throws InterruptedException {
+        List<String> log = Collections.synchronizedList(new ArrayList<>());
+        RecordingTask task = new RecordingTask("greedy", Priority.NORMAL, 0.1, log,
+                TimeUnit.MILLISECONDS.toNanos(2), 0);
+        long start = System.nanoTime();
+        scheduler.schedule(task, 0, TimeUnit.SECONDS);
+        Thread.sleep(500);
+        task.close();
+        long elapsed = System.nanoTime() - start;
+        assertTrue(task.runs() > 1);
+        // some slack for the scheduling delays
+        assertTrue("cpu share " + task.runNanos() / (double) elapsed,
+                task.runNanos() < elapsed * 0.2);
+    }
+
+    @Test
+    public void testWakeUp() throws InterruptedException {
+        List<String> log = Collections.synchronizedList(new ArrayList<>());
+        RecordingTask task = new RecordingTask("sleepy", Priority.NORMAL, 1.0, log, 0,
+                TimeUnit.HOURS.toNanos(1));
+        scheduler.schedule(task, 1, TimeUnit.HOURS);
+        Thread.sleep(10);
+        assertEquals(0, task.runs());
+        task.wakeUp();
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (task.runs() < 1 && System.currentTimeMillis() < deadline)
+            Thread.sleep(1);
+        assertEquals(1, task.runs());
+        Thread.sleep(10);
+        assertEquals(1, task.runs());
+    }
+
+    @Test
+    public void testClosedTaskIsNotRun() throws InterruptedException {
+        List<String> log = Collections.synchronizedList(new ArrayList<>());
+        RecordingTask task = new RecordingTask("closed", Priority.NORMAL, 1.0, log, 0,
+                TimeUnit.MILLISECONDS.toNanos(1));
+        scheduler.schedule(task, 0, TimeUnit.SECONDS);
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (task.runs() < 1 && System.currentTimeMillis() < deadline)
+            Thread.sleep(1);
+        task.close();
+        long runs = task.runs();
+        Thread.sleep(50);
+        // at most the run, which was in progress during close()
+        assertTrue(task.runs() <= runs + 1);
+        assertEquals(0, scheduler.tasks());
+    }
+
+    @Test
+    public void testFailingTaskDoesNotStopOtherTasks() throws InterruptedException {
+        MaintenanceTask failing = new MaintenanceTask("failing", Priority.HIGH, 1.0) {
+            @Override
+            protected long run(long sliceNanos) {
+                throw new AssertionError("failing task");
+            }
+        };
+        scheduler.schedule(failing, 0, TimeUnit.SECONDS);
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (failing.runs() < 1 && System.currentTimeMillis() < deadline)
+            Thread.sleep(1);
+        assertEquals(1, failing.runs());
+        List<String> log = Collections.synchronizedList(new ArrayList<>());
+        RecordingTask task = new RecordingTask("next", Priority.NORMAL, 1.0, log, 0, -1);
+        scheduler.schedule(task, 0, TimeUnit.SECONDS);
+        while (task.runs() < 1 && System.currentTimeMillis() < deadline)
+            Thread.sleep(1);
+        assertEquals(Collections.singletonList("next"), log);
+        assertEquals(1, failing.runs());
+    }
+
+    @Test
+    public void testMapsShareMaintenanceThreads() {
+        MaintenanceScheduler shared = MaintenanceScheduler.shared();
+        int tasksBefore = shared.tasks();
+        List<ChronicleMap<Integer, Integer>> maps = new ArrayList<>();
+        try {
+            for (int i = 0; i < 100; i++) {
+                maps.add(ChronicleMap.of(Integer.class, Integer.class)
+                        .entries(100)
+                        .releaseFreeMemoryPeriodically(1, TimeUnit.HOURS)
+                        .create());
+            }
+            assertEquals(tasksBefore + 100, shared.tasks());
+        } finally {
+            maps.forEach(ChronicleMap::close);
+        }
+        assertEquals(tasksBefore, shared.tasks());
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ *      Copyright (C) 2012, 2016  higherfrequencytrading.com
+ *      Copyright (C) 2016 Roman Leventov
+ *
+ *      This program is free software: you can redistribute it and/or modify
+ *      it under the terms of the GNU Lesser General Public License as published by
+ *      the Free Software Foundation, either version 3 of the License.
+ *
+ *      This program is distributed in the hope that it will be useful,
+ *      but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *      MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *      GNU Lesser General Public License for more details.
+ *
+ *      You should have received a copy of the GNU Lesser General Public License
+ *      along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.openhft.chronicle.hash.impl.util;
+
+import net.openhft.chronicle.core.OS;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class Crc32CTest {
+
+    @Test
+    public void testCheckValue() {
+        byte[] bytes = "123456789".getBytes(StandardCharsets.US_ASCII);
+        long address = OS.memory().allocate(bytes.length);
+        try {
+            for (int i = 0; i < bytes.length; i++) {
+                OS.memory().writeByte(address + i, bytes[i]);
+            }
+            assertEquals(0xE3069283L, Crc32C.hashMemory(address, bytes.length));
+            assertEquals(0xE3069283L, Crc32C.tableHashMemory(address, bytes.length));
+        } finally {
+            OS.memory().freeMemory(address, bytes.length);
+        }
+    }
+
+    @Test
+    public void testJdkAndTableImplementationsAgree() {
+        int capacity = 20_000;
+        long address = OS.memory().allocate(capacity);
+        try {
+            Random random = new Random(0);
+            for (int i = 0; i < capacity; i++) {
+                OS.memory().writeByte(address + i, (byte) random.nextInt());
+            }
+            for (int i = 0; i < 1000; i++) {
+                int offset = random.nextInt(8);
+                int length = random.nextInt(i < 500 ? 64 : capacity - 8);
+                assertEquals(Crc32C.tableHashMemory(address + offset, length),
+                        Crc32C.hashMemory(address + offset, length));
+            }
+        } finally {
+            OS.memory().freeMemory(address, capacity);
+        }
+    }
+}
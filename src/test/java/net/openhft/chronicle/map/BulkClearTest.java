@@ -0,0 +1,96 @@
+/*
+ *      Copyright (C) 2012, 2016  higherfrequencytrading.com
+ *      Copyright (C) 2016 Roman Leventov
+ *
+ *      This program is free software: you can redistribute it and/or modify
+ *      it under the terms of the GNU Lesser General Public License as published by
+ *      the Free Software Foundation, either version 3 of the License.
+ *
+ *      This program is distributed in the hope that it will be useful,
+ *      but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *      MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *      GNU Lesser General Public License for more details.
+ *
+ *      You should have received a copy of the GNU Lesser General Public License
+ *      along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.openhft.chronicle.map;
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static net.openhft.chronicle.map.ChronicleMapTest.getPersistenceFile;
+import static net.openhft.chronicle.map.ExtraTierMaps.ENTRIES;
+import static net.openhft.chronicle.map.ExtraTierMaps.checkAll;
+import static net.openhft.chronicle.map.ExtraTierMaps.extraTierMapBuilder;
+import static net.openhft.chronicle.map.ExtraTierMaps.putAll;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class BulkClearTest {
+
+    private static ChronicleMapBuilder<Integer, Integer> builder() {
+        return extraTierMapBuilder(4);
+    }
+
+    private static void checkCleared(ChronicleMap<Integer, Integer> map) {
+        assertEquals(0, map.size());
+        for (int i = 0; i < ENTRIES; i++) {
+            assertNull(map.get(i));
+        }
+    }
+
+    @Test
+    public void clearReturnsExtraTiersToFreeList() {
+        try (ChronicleMap<Integer, Integer> map = builder().create()) {
+            // if extra tiers were not returned on clear(), maximum number of them would be
+            // reached after a few rounds
+            for (int round = 0; round < 50; round++) {
+                putAll(map);
+                checkAll(map);
+                map.clear();
+                checkCleared(map);
+            }
+        }
+    }
+
+    @Test
+    public void clearGoesThroughCustomEntryOperations() {
+        AtomicInteger removes = new AtomicInteger();
+        try (ChronicleMap<Integer, Integer> map = builder()
+                .entryOperations(new MapEntryOperations<Integer, Integer, Void>() {
+                    @Override
+                    public Void remove(@NotNull MapEntry<Integer, Integer> entry) {
+                        removes.incrementAndGet();
+                        entry.doRemove();
+                        return null;
+                    }
+                })
+                .create()) {
+            putAll(map);
+            map.clear();
+            checkCleared(map);
+            assertEquals(ENTRIES, removes.get());
+        }
+    }
+
+    @Test
+    public void clearPersisted() throws IOException {
+        File file = getPersistenceFile();
+        try (ChronicleMap<Integer, Integer> map = builder().createPersistedTo(file)) {
+            putAll(map);
+            map.clear();
+            checkCleared(map);
+        }
+        try (ChronicleMap<Integer, Integer> map = builder().recoverPersistedTo(file, true)) {
+            checkCleared(map);
+            putAll(map);
+            checkAll(map);
+        }
+    }
+}
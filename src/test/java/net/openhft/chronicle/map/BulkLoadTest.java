@@ -0,0 +1,113 @@
+/*
+ *      Copyright (C) 2012, 2016  higherfrequencytrading.com
+ *      Copyright (C) 2016 Roman Leventov
+ *
+ *      This program is free software: you can redistribute it and/or modify
+ *      it under the terms of the GNU Lesser General Public License as published by
+ *      the Free Software Foundation, either version 3 of the License.
+ *
+ *      This program is distributed in the hope that it will be useful,
+ *      but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *      MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *      GNU Lesser General Public License for more details.
+ *
+ *      You should have received a copy of the GNU Lesser General Public License
+ *      along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.openhft.chronicle.map;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.util.*;
+
+import static net.openhft.chronicle.map.ChronicleMapTest.getPersistenceFile;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+public class BulkLoadTest {
+
+    private static final int ENTRIES = 100_000;
+
+    private static ChronicleMapBuilder<Integer, Integer> builder() {
+        return ChronicleMap.of(Integer.class, Integer.class)
+                .entries(ENTRIES)
+                .actualSegments(16);
+    }
+
+    private static Map<Integer, Integer> entries() {
+        Map<Integer, Integer> entries = new LinkedHashMap<>();
+        for (int i = 0; i < ENTRIES; i++) {
+            entries.put(i, -i);
+        }
+        return entries;
+    }
+
+    @Test
+    public void bulkLoadedMapContainsAllEntries() throws IOException {
+        Map<Integer, Integer> entries = entries();
+        File file = getPersistenceFile();
+        try (ChronicleMap<Integer, Integer> map =
+                     builder().bulkLoadPersistedTo(file, entries.entrySet(), 4)) {
+            assertEquals(entries, map);
+            map.put(ENTRIES, 0);
+            assertEquals(ENTRIES + 1, map.size());
+        }
+        try (ChronicleMap<Integer, Integer> map = builder().createPersistedTo(file)) {
+            assertEquals(ENTRIES + 1, map.size());
+            assertEquals((Integer) (-42), map.get(42));
+        }
+    }
+
+    @Test
+    public void singleThreadedBulkLoad() throws IOException {
+        Map<Integer, Integer> entries = entries();
+        try (ChronicleMap<Integer, Integer> map =
+                     builder().bulkLoadPersistedTo(getPersistenceFile(), entries.entrySet(), 1)) {
+            assertEquals(entries, map);
+        }
+    }
+
+    @Test
+    public void lastValueOfDuplicateKeyWins() throws IOException {
+        List<Map.Entry<Integer, Integer>> entries = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            entries.add(new AbstractMap.SimpleEntry<>(1, i));
+        }
+        try (ChronicleMap<Integer, Integer> map =
+                     builder().bulkLoadPersistedTo(getPersistenceFile(), entries, 4)) {
+            assertEquals(1, map.size());
+            assertEquals((Integer) 9, map.get(1));
+        }
+    }
+
+    @Test
+    public void failedBulkLoadDeletesTheFile() throws IOException {
+        Map<Integer, Integer> entries = entries();
+        List<Map.Entry<Integer, Integer>> failingEntries = new ArrayList<>(entries.entrySet());
+        failingEntries.add(new AbstractMap.SimpleEntry<>(ENTRIES, null));
+        File file = getPersistenceFile();
+        try {
+            builder().bulkLoadPersistedTo(file, failingEntries, 4).close();
+            fail("null value should fail the bulk load");
+        } catch (NullPointerException expected) {
+            // expected
+        }
+        assertFalse(file.exists());
+        // the bulk load could be retried
+        try (ChronicleMap<Integer, Integer> map =
+                     builder().bulkLoadPersistedTo(file, entries.entrySet(), 4)) {
+            assertEquals(entries, map);
+        }
+    }
+
+    @Test(expected = FileAlreadyExistsException.class)
+    public void existingStoreIsNotBulkLoaded() throws IOException {
+        File file = getPersistenceFile();
+        builder().createPersistedTo(file).close();
+        builder().bulkLoadPersistedTo(file, entries().entrySet(), 4);
+    }
+}
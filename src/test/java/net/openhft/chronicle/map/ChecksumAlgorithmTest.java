@@ -0,0 +1,76 @@
+/*
+ *      Copyright (C) 2012, 2016  higherfrequencytrading.com
+ *      Copyright (C) 2016 Roman Leventov
+ *
+ *      This program is free software: you can redistribute it and/or modify
+ *      it under the terms of the GNU Lesser General Public License as published by
+ *      the Free Software Foundation, either version 3 of the License.
+ *
+ *      This program is distributed in the hope that it will be useful,
+ *      but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *      MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *      GNU Lesser General Public License for more details.
+ *
+ *      You should have received a copy of the GNU Lesser General Public License
+ *      along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.openhft.chronicle.map;
+
+import net.openhft.chronicle.core.values.LongValue;
+import net.openhft.chronicle.hash.ChecksumAlgorithm;
+import net.openhft.chronicle.hash.ChecksumEntry;
+import net.openhft.chronicle.values.Values;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+import static net.openhft.chronicle.set.Builder.getPersistenceFile;
+import static org.junit.Assert.*;
+
+public class ChecksumAlgorithmTest {
+
+    @Test
+    public void testCrc32CIsStoredInHeader() throws IOException {
+        File file = getPersistenceFile();
+        LongValue value = Values.newHeapInstance(LongValue.class);
+        value.setValue(42);
+        try (ChronicleMap<Integer, LongValue> map = ChronicleMap
+                .of(Integer.class, LongValue.class)
+                .entries(100)
+                .checksumAlgorithm(ChecksumAlgorithm.CRC32C)
+                .createPersistedTo(file)) {
+            map.put(1, value);
+            assertEquals(ChecksumAlgorithm.CRC32C,
+                    ((VanillaChronicleMap<?, ?, ?>) map).checksumAlgorithm);
+            assertChecksum(map, true);
+        }
+
+        // The builder's default algorithm is ignored, the one from the header is used
+        try (ChronicleMap<Integer, LongValue> map = ChronicleMap
+                .of(Integer.class, LongValue.class)
+                .entries(100)
+                .createPersistedTo(file)) {
+            assertEquals(ChecksumAlgorithm.CRC32C,
+                    ((VanillaChronicleMap<?, ?, ?>) map).checksumAlgorithm);
+            assertChecksum(map, true);
+
+            try (ExternalMapQueryContext<Integer, LongValue, ?> c = map.queryContext(1)) {
+                c.updateLock().lock();
+                MapEntry<Integer, LongValue> entry = c.entry();
+                assertNotNull(entry);
+                entry.value().getUsing(Values.newNativeReference(LongValue.class)).setValue(43);
+            }
+            assertChecksum(map, false);
+        }
+    }
+
+    private static void assertChecksum(ChronicleMap<Integer, LongValue> map, boolean valid) {
+        try (ExternalMapQueryContext<Integer, LongValue, ?> c = map.queryContext(1)) {
+            c.updateLock().lock();
+            MapEntry<Integer, LongValue> entry = c.entry();
+            assertNotNull(entry);
+            assertEquals(valid, ((ChecksumEntry) entry).checkSum());
+        }
+    }
+}
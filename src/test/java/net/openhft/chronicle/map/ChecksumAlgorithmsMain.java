@@ -0,0 +1,79 @@
+/*
+ *      Copyright (C) 2012, 2016  higherfrequencytrading.com
+ *      Copyright (C) 2016 Roman Leventov
+ *
+ *      This program is free software: you can redistribute it and/or modify
+ *      it under the terms of the GNU Lesser General Public License as published by
+ *      the Free Software Foundation, either version 3 of the License.
+ *
+ *      This program is distributed in the hope that it will be useful,
+ *      but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *      MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *      GNU Lesser General Public License for more details.
+ *
+ *      You should have received a copy of the GNU Lesser General Public License
+ *      along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.openhft.chronicle.map;
+
+import net.openhft.chronicle.algo.hashing.LongHashFunction;
+import net.openhft.chronicle.core.OS;
+import net.openhft.chronicle.hash.ChecksumAlgorithm;
+import net.openhft.chronicle.hash.impl.util.Crc32C;
+
+/**
+ * Compares the throughput of the payload checksum algorithms across value sizes, run on the
+ * target JVM and CPU before choosing {@link ChronicleMapBuilder#checksumAlgorithm}. Usage: {@code
+ * -Dsizes=16,64,256,1024,4096,16384}.
+ */
+public class ChecksumAlgorithmsMain {
+    static final String[] SIZES =
+            System.getProperty("sizes", "16,64,256,1024,4096,16384").split(",");
+    static final long BYTES_PER_RUN = 1L << 30;
+    static final int RUNS = 5;
+
+    public static volatile long sink;
+
+    public static void main(String... ignored) {
+        System.out.printf("Java %s, CRC32C intrinsic: %s%n",
+                System.getProperty("java.version"), Crc32C.isIntrinsic());
+        for (String s : SIZES) {
+            int size = Integer.parseInt(s.trim());
+            long address = OS.memory().allocate(size);
+            try {
+                for (int i = 0; i < size; i++) {
+                    OS.memory().writeByte(address + i, (byte) i);
+                }
+                for (ChecksumAlgorithm algorithm : ChecksumAlgorithm.values()) {
+                    double best = Double.MAX_VALUE;
+                    for (int run = 0; run < RUNS; run++) {
+                        best = Math.min(best, nanosPerHash(algorithm, address, size));
+                    }
+                    System.out.printf("%s, %d bytes: %.1f ns, %.2f GB/s%n",
+                            algorithm, size, best, size / best);
+                }
+            } finally {
+                OS.memory().freeMemory(address, size);
+            }
+        }
+    }
+
+    private static double nanosPerHash(ChecksumAlgorithm algorithm, long address, int size) {
+        long iterations = Math.max(BYTES_PER_RUN / size, 1);
+        long h = 0;
+        long start = System.nanoTime();
+        if (algorithm == ChecksumAlgorithm.CRC32C) {
+            for (long i = 0; i < iterations; i++) {
+                h += Crc32C.hashMemory(address, size);
+            }
+        } else {
+            LongHashFunction xx = LongHashFunction.xx_r39();
+            for (long i = 0; i < iterations; i++) {
+                h += xx.hashMemory(address, size);
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        sink = h;
+        return elapsed / (double) iterations;
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ *      Copyright (C) 2012, 2016  higherfrequencytrading.com
+ *      Copyright (C) 2016 Roman Leventov
+ *
+ *      This program is free software: you can redistribute it and/or modify
+ *      it under the terms of the GNU Lesser General Public License as published by
+ *      the Free Software Foundation, either version 3 of the License.
+ *
+ *      This program is distributed in the hope that it will be useful,
+ *      but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *      MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *      GNU Lesser General Public License for more details.
+ *
+ *      You should have received a copy of the GNU Lesser General Public License
+ *      along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.openhft.chronicle.map;
+
+import net.openhft.chronicle.core.values.LongValue;
+import net.openhft.chronicle.hash.ChronicleHashCorruption;
+import net.openhft.chronicle.values.Values;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static net.openhft.chronicle.set.Builder.getPersistenceFile;
+import static org.junit.Assert.*;
+
+public class ChecksumScrubberTest {
+
+    @Test
+    public void testCorruptedEntryIsReported() throws IOException, InterruptedException {
+        File file = getPersistenceFile();
+        BlockingQueue<String> corruptions = new LinkedBlockingQueue<>();
+        try (ChronicleMap<Integer, LongValue> map = ChronicleMap
+                .of(Integer.class, LongValue.class)
+                .entries(1000)
+                .actualSegments(4)
+                .scrubChecksumsInBackground(1_000_000, 10, TimeUnit.MILLISECONDS,
+                        c -> corruptions.add(c.message()))
+                .createPersistedTo(file)) {
+            LongValue value = Values.newHeapInstance(LongValue.class);
+            for (int i = 0; i < 100; i++) {
+                value.setValue(i);
+                map.put(i, value);
+            }
+
+            VanillaChronicleMap<?, ?, ?> vanillaMap = (VanillaChronicleMap<?, ?, ?>) map;
+            long deadline = System.currentTimeMillis() + 10_000;
+            while (vanillaMap.checksumScrubPasses() < 1 &&
+                    System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertTrue(vanillaMap.checksumScrubPasses() >= 1);
+            assertTrue(vanillaMap.lastChecksumScrubPassNanos() > 0);
+            assertTrue(vanillaMap.checksumScrubThroughput() > 0);
+            assertTrue(corruptions.isEmpty());
+
+            long keyOffset;
+            try (ExternalMapQueryContext<Integer, LongValue, ?> c = map.queryContext(42)) {
+                c.updateLock().lock();
+                MapEntry<Integer, LongValue> entry = c.entry();
+                assertNotNull(entry);
+                keyOffset = entry.key().offset();
+                // Bypasses Chronicle Map internals, so the checksum is not updated
+                entry.value().getUsing(Values.newNativeReference(LongValue.class)).setValue(43);
+            }
+
+            String corruption = corruptions.poll(10, TimeUnit.SECONDS);
+            assertNotNull(corruption);
+            // The corrupted entry is identified by the position, the key is not deserialized
+            assertTrue(corruption, corruption.contains("offset " + keyOffset + ","));
+        }
+    }
+
+    @Test
+    public void testNoScrubbingWithoutChecksums() throws IOException {
+        File file = getPersistenceFile();
+        ChronicleHashCorruption.Listener listener = c -> fail(c.message());
+        try (ChronicleMap<Integer, Integer> map = ChronicleMap
+                .of(Integer.class, Integer.class)
+                .entries(100)
+                .checksumEntries(false)
+                .scrubChecksumsInBackground(1_000_000, 1, TimeUnit.MILLISECONDS, listener)
+                .createPersistedTo(file)) {
+            map.put(1, 1);
+            assertEquals(0, ((VanillaChronicleMap<?, ?, ?>) map).checksumScrubPasses());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNonPositiveRateIsRejected() {
+        ChronicleMap.of(Integer.class, Integer.class)
+                .scrubChecksumsInBackground(0, 1, TimeUnit.SECONDS, c -> {});
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ *      Copyright (C) 2012, 2016  higherfrequencytrading.com
+ *      Copyright (C) 2016 Roman Leventov
+ *
+ *      This program is free software: you can redistribute it and/or modify
+ *      it under the terms of the GNU Lesser General Public License as published by
+ *      the Free Software Foundation, either version 3 of the License.
+ *
+ *      This program is distributed in the hope that it will be useful,
+ *      but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *      MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *      GNU Lesser General Public License for more details.
+ *
+ *      You should have received a copy of the GNU Lesser General Public License
+ *      along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.openhft.chronicle.map;
+
+import net.openhft.chronicle.core.values.LongValue;
+import net.openhft.chronicle.hash.ChecksumEntry;
+import net.openhft.chronicle.values.Values;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import static net.openhft.chronicle.set.Builder.getPersistenceFile;
+import static org.junit.Assert.*;
+
+public class DeferredChecksumsTest {
+
+    private static ChronicleMapBuilder<Integer, LongValue> builder() {
+        return ChronicleMap.of(Integer.class, LongValue.class)
+                .entries(1000)
+                .actualSegments(4);
+    }
+
+    private static void put(ChronicleMap<Integer, LongValue> map, int entries) {
+        LongValue value = Values.newHeapInstance(LongValue.class);
+        for (int i = 0; i < entries; i++) {
+            value.setValue(i);
+            map.put(i, value);
+        }
+    }
+
+    @Test
+    public void testChecksumsAreComputedLater() throws IOException {
+        File file = getPersistenceFile();
+        try (ChronicleMap<Integer, LongValue> map = builder()
+                .deferChecksums(1, TimeUnit.HOURS)
+                .createPersistedTo(file)) {
+            VanillaChronicleMap<?, ?, ?> vanillaMap = (VanillaChronicleMap<?, ?, ?>) map;
+            assertTrue(vanillaMap.deferredChecksums);
+            put(map, 100);
+
+            // Stale checksums couldn't be verified
+            corrupt(map, 42);
+            assertTrue(checkSum(map, 42));
+
+            assertEquals(100, vanillaMap.computeDeferredChecksums());
+            assertEquals(0, vanillaMap.computeDeferredChecksums());
+            assertTrue(checkSum(map, 42));
+            corrupt(map, 43);
+            assertFalse(checkSum(map, 43));
+
+            put(map, 10);
+            vanillaMap.msync();
+            assertEquals(0, vanillaMap.computeDeferredChecksums());
+        }
+    }
+
+    @Test
+    public void testChecksumsAreComputedOnClose() throws IOException {
+        File file = getPersistenceFile();
+        try (ChronicleMap<Integer, LongValue> map = builder()
+                .deferChecksums(1, TimeUnit.HOURS)
+                .createPersistedTo(file)) {
+            put(map, 100);
+        }
+        // Deferred checksums are stored in the header, the builder's configuration is ignored
+        try (ChronicleMap<Integer, LongValue> map = builder().createPersistedTo(file)) {
+            assertTrue(((VanillaChronicleMap<?, ?, ?>) map).deferredChecksums);
+            corrupt(map, 42);
+            assertFalse(checkSum(map, 42));
+        }
+    }
+
+    @Test
+    public void testStaleChecksumsAreComputedOnRecovery() throws IOException {
+        File file = getPersistenceFile();
+        try (ChronicleMap<Integer, LongValue> map = builder()
+                .deferChecksums(1, TimeUnit.HOURS)
+                .createPersistedTo(file)) {
+            put(map, 100);
+            // Recover the store with stale checksums, as if the process had crashed
+            try (ChronicleMap<Integer, LongValue> recovered = builder()
+                    .recoverPersistedTo(file, false, c -> fail(c.message()))) {
+                assertEquals(100, recovered.size());
+                assertEquals(0,
+                        ((VanillaChronicleMap<?, ?, ?>) recovered).computeDeferredChecksums());
+                corrupt(recovered, 42);
+                assertFalse(checkSum(recovered, 42));
+            }
+        }
+    }
+
+    private static void corrupt(ChronicleMap<Integer, LongValue> map, int key) {
+        try (ExternalMapQueryContext<Integer, LongValue, ?> c = map.queryContext(key)) {
+            c.updateLock().lock();
+            MapEntry<Integer, LongValue> entry = c.entry();
+            assertNotNull(entry);
+            // Bypasses Chronicle Map internals, so the checksum is not updated
+            LongValue nativeValue =
+                    entry.value().getUsing(Values.newNativeReference(LongValue.class));
+            nativeValue.setValue(nativeValue.getValue() + 1);
+        }
+    }
+
+    private static boolean checkSum(ChronicleMap<Integer, LongValue> map, int key) {
+        try (ExternalMapQueryContext<Integer, LongValue, ?> c = map.queryContext(key)) {
+            c.updateLock().lock();
+            MapEntry<Integer, LongValue> entry = c.entry();
+            assertNotNull(entry);
+            return ((ChecksumEntry) entry).checkSum();
+        }
+    }
+}
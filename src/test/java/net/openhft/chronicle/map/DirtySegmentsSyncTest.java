@@ -0,0 +1,93 @@
+/*
+ *      Copyright (C) 2012, 2016  higherfrequencytrading.com
+ *      Copyright (C) 2016 Roman Leventov
+ *
+ *      This program is free software: you can redistribute it and/or modify
+ *      it under the terms of the GNU Lesser General Public License as published by
+ *      the Free Software Foundation, either version 3 of the License.
+ *
+ *      This program is distributed in the hope that it will be useful,
+ *      but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *      MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *      GNU Lesser General Public License for more details.
+ *
+ *      You should have received a copy of the GNU Lesser General Public License
+ *      along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.openhft.chronicle.map;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import static net.openhft.chronicle.map.ChronicleMapTest.getPersistenceFile;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DirtySegmentsSyncTest {
+
+    private static ChronicleMapBuilder<Integer, Integer> builder() {
+        return ChronicleMap.of(Integer.class, Integer.class)
+                .entries(10_000)
+                .actualSegments(16)
+                .syncDirtySegmentsPeriodically(10, TimeUnit.MILLISECONDS, 64 << 10);
+    }
+
+    @Test
+    public void dirtySegmentsAreSyncedInBackground() throws IOException, InterruptedException {
+        File file = getPersistenceFile();
+        try (ChronicleMap<Integer, Integer> map = builder().createPersistedTo(file)) {
+            VanillaChronicleMap<Integer, Integer, ?> vanillaMap =
+                    (VanillaChronicleMap<Integer, Integer, ?>) map;
+            map.put(1, 1);
+            long deadline = System.currentTimeMillis() + 10_000;
+            while (vanillaMap.lastDirtySegmentsSyncLagNanos() == 0 &&
+                    System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertTrue(vanillaMap.lastDirtySegmentsSyncLagNanos() > 0);
+            assertTrue(vanillaMap.dirtySegmentsSyncThroughput() > 0);
+            for (int i = 0; i < 10_000; i++) {
+                map.put(i, i);
+            }
+        }
+        try (ChronicleMap<Integer, Integer> map = builder().createPersistedTo(file)) {
+            assertEquals(10_000, map.size());
+        }
+    }
+
+    @Test
+    public void syncOfManySegmentsIsCompleted() throws IOException, InterruptedException {
+        File file = getPersistenceFile();
+        // more segments, than synced in a single run of the sync task
+        ChronicleMapBuilder<Integer, Integer> builder = builder().actualSegments(256);
+        try (ChronicleMap<Integer, Integer> map = builder.createPersistedTo(file)) {
+            VanillaChronicleMap<Integer, Integer, ?> vanillaMap =
+                    (VanillaChronicleMap<Integer, Integer, ?>) map;
+            for (int i = 0; i < 10_000; i++) {
+                map.put(i, i);
+            }
+            long deadline = System.currentTimeMillis() + 10_000;
+            while (vanillaMap.lastDirtySegmentsSyncLagNanos() == 0 &&
+                    System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertTrue(vanillaMap.lastDirtySegmentsSyncLagNanos() > 0);
+        }
+        try (ChronicleMap<Integer, Integer> map = builder.createPersistedTo(file)) {
+            assertEquals(10_000, map.size());
+        }
+    }
+
+    @Test
+    public void inMemoryMapsDontTrackDirtySegments() {
+        try (ChronicleMap<Integer, Integer> map = builder().create()) {
+            map.put(1, 1);
+            assertEquals(0, ((VanillaChronicleMap<Integer, Integer, ?>) map)
+                    .lastDirtySegmentsSyncLagNanos());
+        }
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ *      Copyright (C) 2012, 2016  higherfrequencytrading.com
+ *      Copyright (C) 2016 Roman Leventov
+ *
+ *      This program is free software: you can redistribute it and/or modify
+ *      it under the terms of the GNU Lesser General Public License as published by
+ *      the Free Software Foundation, either version 3 of the License.
+ *
+ *      This program is distributed in the hope that it will be useful,
+ *      but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *      MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *      GNU Lesser General Public License for more details.
+ *
+ *      You should have received a copy of the GNU Lesser General Public License
+ *      along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.openhft.chronicle.map;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Maps, configured for much fewer entries than the tests insert, so that segments chain a lot of
+ * extra tiers and extra tier bulks are allocated.
+ */
+final class ExtraTierMaps {
+
+    static final int ENTRIES = 10_000;
+
+    private ExtraTierMaps() {
+    }
+
+    static ChronicleMapBuilder<Integer, Integer> extraTierMapBuilder(int segments) {
+        return ChronicleMap.of(Integer.class, Integer.class)
+                .entries(100)
+                .actualSegments(segments)
+                .maxBloatFactor(200);
+    }
+
+    static void putAll(ChronicleMap<Integer, Integer> map) {
+        for (int i = 0; i < ENTRIES; i++) {
+            map.put(i, i);
+        }
+    }
+
+    static void checkAll(ChronicleMap<Integer, Integer> map) {
+        assertEquals(ENTRIES, map.size());
+        for (int i = 0; i < ENTRIES; i++) {
+            assertEquals((Integer) i, map.get(i));
+        }
+    }
+}
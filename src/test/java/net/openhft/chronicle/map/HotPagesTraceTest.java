@@ -0,0 +1,114 @@
+/*
+ *      Copyright (C) 2012, 2016  higherfrequencytrading.com
+ *      Copyright (C) 2016 Roman Leventov
+ *
+ *      This program is free software: you can redistribute it and/or modify
+ *      it under the terms of the GNU Lesser General Public License as published by
+ *      the Free Software Foundation, either version 3 of the License.
+ *
+ *      This program is distributed in the hope that it will be useful,
+ *      but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *      MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *      GNU Lesser General Public License for more details.
+ *
+ *      You should have received a copy of the GNU Lesser General Public License
+ *      along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.openhft.chronicle.map;
+
+import net.openhft.chronicle.core.OS;
+import org.junit.Test;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+import static net.openhft.chronicle.map.ChronicleMapTest.getPersistenceFile;
+import static net.openhft.chronicle.map.ExtraTierMaps.checkAll;
+import static net.openhft.chronicle.map.ExtraTierMaps.extraTierMapBuilder;
+import static net.openhft.chronicle.map.ExtraTierMaps.putAll;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+public class HotPagesTraceTest {
+
+    private static ChronicleMapBuilder<Integer, Integer> builder() {
+        return extraTierMapBuilder(4).hotPagesTrace(1, TimeUnit.SECONDS);
+    }
+
+    private static File awaitTrace(File file) throws InterruptedException {
+        File traceFile = new File(file.getPath() + ".hotpages");
+        traceFile.deleteOnExit();
+        for (int i = 0; i < 100 && !traceFile.exists(); i++) {
+            Thread.sleep(100);
+        }
+        return traceFile;
+    }
+
+    @Test
+    public void hotPagesAreRecordedAndPrefetchedOnReopen()
+            throws IOException, InterruptedException {
+        assumeTrue(OS.isLinux());
+        File file = getPersistenceFile();
+        File traceFile;
+        try (ChronicleMap<Integer, Integer> map = builder().createPersistedTo(file)) {
+            putAll(map);
+            traceFile = awaitTrace(file);
+            assertTrue(traceFile.exists());
+        }
+        assertTrue(Files.size(traceFile.toPath()) > 0);
+        try (ChronicleMap<Integer, Integer> map = builder().createPersistedTo(file)) {
+            long prefetched = ((VanillaChronicleMap<?, ?, ?>) map).hotPagesPrefetched();
+            assertTrue(prefetched > 0);
+            assertTrue(prefetched <= file.length());
+            checkAll(map);
+        }
+    }
+
+    @Test
+    public void corruptedTraceIsIgnored() throws IOException {
+        assumeTrue(OS.isLinux());
+        File file = getPersistenceFile();
+        try (ChronicleMap<Integer, Integer> map = builder().createPersistedTo(file)) {
+            map.put(1, 1);
+        }
+        File traceFile = new File(file.getPath() + ".hotpages");
+        traceFile.deleteOnExit();
+        Files.write(traceFile.toPath(), new byte[] {1, 2, 3});
+        try (ChronicleMap<Integer, Integer> map = builder().createPersistedTo(file)) {
+            assertEquals((Integer) 1, map.get(1));
+            assertEquals(0, ((VanillaChronicleMap<?, ?, ?>) map).hotPagesPrefetched());
+        }
+    }
+
+    @Test
+    public void traceWithTooManyPagesIsIgnored() throws IOException {
+        assumeTrue(OS.isLinux());
+        File file = getPersistenceFile();
+        try (ChronicleMap<Integer, Integer> map = builder().createPersistedTo(file)) {
+            map.put(1, 1);
+        }
+        File traceFile = new File(file.getPath() + ".hotpages");
+        traceFile.deleteOnExit();
+        try (DataOutputStream out = new DataOutputStream(
+                new GZIPOutputStream(new FileOutputStream(traceFile)))) {
+            out.writeInt(0x484f5450);
+            out.writeLong(OS.pageSize());
+            out.writeInt(Integer.MAX_VALUE);
+        }
+        try (ChronicleMap<Integer, Integer> map = builder().createPersistedTo(file)) {
+            assertEquals((Integer) 1, map.get(1));
+            assertEquals(0, ((VanillaChronicleMap<?, ?, ?>) map).hotPagesPrefetched());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void tooShortSamplingPeriodIsRejected() {
+        ChronicleMap.of(Integer.class, Integer.class).hotPagesTrace(10, TimeUnit.MILLISECONDS);
+    }
+}
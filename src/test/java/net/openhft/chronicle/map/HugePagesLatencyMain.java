@@ -0,0 +1,73 @@
+/*
+ *      Copyright (C) 2012, 2016  higherfrequencytrading.com
+ *      Copyright (C) 2016 Roman Leventov
+ *
+ *      This program is free software: you can redistribute it and/or modify
+ *      it under the terms of the GNU Lesser General Public License as published by
+ *      the Free Software Foundation, either version 3 of the License.
+ *
+ *      This program is distributed in the hope that it will be useful,
+ *      but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *      MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *      GNU Lesser General Public License for more details.
+ *
+ *      You should have received a copy of the GNU Lesser General Public License
+ *      along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.openhft.chronicle.map;
+
+import net.openhft.chronicle.hash.HugePages;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Compares latencies of random lookups in a large in-memory map, backed by pages of the default
+ * size and by huge pages. Usage: {@code -Dentries=50000000 -DhugePages=NONE,TRANSPARENT,HUGETLB}.
+ * With {@code HUGETLB}, the huge page pool should be large enough to fit the map, see {@code
+ * /proc/sys/vm/nr_hugepages}.
+ */
+public class HugePagesLatencyMain {
+    static final long ENTRIES = Long.getLong("entries", 50_000_000L);
+    static final String[] HUGE_PAGES =
+            System.getProperty("hugePages", "NONE,TRANSPARENT").split(",");
+    static final int LOOKUPS = 10_000_000;
+    static final int RUNS = 3;
+
+    public static volatile long sink;
+
+    public static void main(String... ignored) {
+        for (String hugePages : HUGE_PAGES) {
+            try (ChronicleMap<Long, Long> map = ChronicleMap.of(Long.class, Long.class)
+                    .entries(ENTRIES)
+                    .hugePages(HugePages.valueOf(hugePages.trim()))
+                    .create()) {
+                for (long i = 0; i < ENTRIES; i++) {
+                    map.put(i, i);
+                }
+                for (int run = 0; run < RUNS; run++) {
+                    lookups(hugePages, map);
+                }
+            }
+        }
+    }
+
+    private static void lookups(String hugePages, ChronicleMap<Long, Long> map) {
+        long[] times = new long[LOOKUPS];
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Long using = 0L;
+        for (int i = 0; i < LOOKUPS; i++) {
+            Long key = random.nextLong(ENTRIES);
+            long start = System.nanoTime();
+            using = map.getUsing(key, using);
+            times[i] = System.nanoTime() - start;
+        }
+        sink = using;
+        Arrays.sort(times);
+        System.out.printf("%s, %,d entries: 50/90/99/99.9/99.99/worst: " +
+                        "%d / %d / %d / %d / %d / %d ns%n",
+                hugePages, ENTRIES, times[LOOKUPS / 2], times[LOOKUPS * 9 / 10],
+                times[LOOKUPS * 99 / 100], times[LOOKUPS * 999 / 1000],
+                times[LOOKUPS * 9999 / 10000], times[LOOKUPS - 1]);
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ *      Copyright (C) 2012, 2016  higherfrequencytrading.com
+ *      Copyright (C) 2016 Roman Leventov
+ *
+ *      This program is free software: you can redistribute it and/or modify
+ *      it under the terms of the GNU Lesser General Public License as published by
+ *      the Free Software Foundation, either version 3 of the License.
+ *
+ *      This program is distributed in the hope that it will be useful,
+ *      but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *      MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *      GNU Lesser General Public License for more details.
+ *
+ *      You should have received a copy of the GNU Lesser General Public License
+ *      along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.openhft.chronicle.map;
+
+import net.openhft.chronicle.core.OS;
+import net.openhft.chronicle.hash.HugePages;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import static net.openhft.chronicle.map.ChronicleMapTest.getPersistenceFile;
+import static net.openhft.chronicle.map.ExtraTierMaps.checkAll;
+import static net.openhft.chronicle.map.ExtraTierMaps.extraTierMapBuilder;
+import static net.openhft.chronicle.map.ExtraTierMaps.putAll;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+public class HugePagesTest {
+
+    private static ChronicleMapBuilder<Integer, Integer> builder(HugePages hugePages) {
+        return extraTierMapBuilder(4).hugePages(hugePages);
+    }
+
+    private static long freeHugeTlbPages() throws IOException {
+        for (String line : Files.readAllLines(Paths.get("/proc/meminfo"))) {
+            if (line.startsWith("HugePages_Free:"))
+                return Long.parseLong(line.substring("HugePages_Free:".length()).trim());
+        }
+        return 0;
+    }
+
+    @Test
+    public void inMemoryMapWithTransparentHugePages() {
+        try (ChronicleMap<Integer, Integer> map = builder(HugePages.TRANSPARENT).create()) {
+            putAll(map);
+            checkAll(map);
+            map.releaseFreeMemory();
+        }
+    }
+
+    @Test
+    public void inMemoryMapWithHugeTlbPages() throws IOException {
+        assumeTrue(OS.isLinux() && freeHugeTlbPages() >= 64);
+        try (ChronicleMap<Integer, Integer> map = builder(HugePages.HUGETLB).create()) {
+            putAll(map);
+            checkAll(map);
+            assertEquals(0, map.releaseFreeMemory());
+        }
+    }
+
+    @Test
+    public void persistedMapWithTransparentHugePages() throws IOException {
+        File file = getPersistenceFile();
+        try (ChronicleMap<Integer, Integer> map =
+                     builder(HugePages.TRANSPARENT).createPersistedTo(file)) {
+            putAll(map);
+            checkAll(map);
+        }
+        // tier bulks size, enlarged for huge pages, is stored in the file
+        try (ChronicleMap<Integer, Integer> map = builder(HugePages.NONE).createPersistedTo(file)) {
+            checkAll(map);
+            putAll(map);
+        }
+    }
+}
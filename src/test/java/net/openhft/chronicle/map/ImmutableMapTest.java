@@ -0,0 +1,211 @@
+/*
+ *      Copyright (C) 2012, 2016  higherfrequencytrading.com
+ *      Copyright (C) 2016 Roman Leventov
+ *
+ *      This program is free software: you can redistribute it and/or modify
+ *      it under the terms of the GNU Lesser General Public License as published by
+ *      the Free Software Foundation, either version 3 of the License.
+ *
+ *      This program is distributed in the hope that it will be useful,
+ *      but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *      MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *      GNU Lesser General Public License for more details.
+ *
+ *      You should have received a copy of the GNU Lesser General Public License
+ *      along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.openhft.chronicle.map;
+
+import net.openhft.chronicle.hash.ChronicleHashClosedException;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+
+import static net.openhft.chronicle.map.ChronicleMapTest.getPersistenceFile;
+import static org.junit.Assert.*;
+
+public class ImmutableMapTest {
+
+    private static final int ENTRIES = 100_000;
+
+    private static ChronicleMapBuilder<Integer, String> builder() {
+        return ChronicleMap.of(Integer.class, String.class);
+    }
+
+    private static Map<Integer, String> entries(int count) {
+        Map<Integer, String> entries = new LinkedHashMap<>();
+        for (int i = 0; i < count; i++) {
+            entries.put(i * 2, "value-" + i);
+        }
+        return entries;
+    }
+
+    @Test
+    public void allEntriesAreFoundAndAbsentKeysAreNot() throws IOException {
+        Map<Integer, String> entries = entries(ENTRIES);
+        File file = getPersistenceFile();
+        try (ChronicleMap<Integer, String> map =
+                     builder().createImmutablePersistedTo(file, entries.entrySet())) {
+            assertEquals(ENTRIES, map.size());
+            for (Map.Entry<Integer, String> e : entries.entrySet()) {
+                assertEquals(e.getValue(), map.get(e.getKey()));
+                assertTrue(map.containsKey(e.getKey()));
+            }
+            for (int i = 0; i < ENTRIES; i++) {
+                assertNull(map.get(i * 2 + 1));
+                assertFalse(map.containsKey(i * 2 + 1));
+            }
+            assertEquals(entries, new HashMap<>(map));
+        }
+    }
+
+    @Test
+    public void reopenedMapIsTheSame() throws IOException {
+        Map<Integer, String> entries = entries(1000);
+        File file = getPersistenceFile();
+        builder().createImmutablePersistedTo(file, entries.entrySet()).close();
+        try (ChronicleMap<Integer, String> map = builder().openImmutable(file)) {
+            assertEquals(entries, map);
+            map.warmUp(2, false, null);
+        }
+    }
+
+    @Test
+    public void emptyMap() throws IOException {
+        File file = getPersistenceFile();
+        try (ChronicleMap<Integer, String> map = builder()
+                .createImmutablePersistedTo(file, Collections.emptyList())) {
+            assertEquals(0, map.size());
+            assertNull(map.get(1));
+            assertFalse(map.entrySet().iterator().hasNext());
+        }
+    }
+
+    @Test
+    public void modificationsAndContextsAreRejected() throws IOException {
+        File file = getPersistenceFile();
+        try (ChronicleMap<Integer, String> map =
+                     builder().createImmutablePersistedTo(file, entries(10).entrySet())) {
+            try {
+                map.put(1, "one");
+                fail("put into immutable map should fail");
+            } catch (UnsupportedOperationException expected) {
+                // expected
+            }
+            try {
+                map.remove(0);
+                fail("remove from immutable map should fail");
+            } catch (UnsupportedOperationException expected) {
+                // expected
+            }
+            try {
+                map.queryContext(0);
+                fail("contexts of immutable map should be unsupported");
+            } catch (UnsupportedOperationException expected) {
+                // expected
+            }
+            assertEquals("value-0", map.get(0));
+        }
+    }
+
+    @Test
+    public void forEachEntryPassesAllEntries() throws IOException {
+        Map<Integer, String> entries = entries(1000);
+        File file = getPersistenceFile();
+        try (ChronicleMap<Integer, String> map =
+                     builder().createImmutablePersistedTo(file, entries.entrySet())) {
+            Map<Integer, String> iterated = new HashMap<>();
+            map.forEachEntry(e -> iterated.put(e.key().get(), e.value().get()));
+            assertEquals(entries, iterated);
+
+            int[] visited = {0};
+            assertFalse(map.forEachEntryWhile(e -> ++visited[0] < 10));
+            assertEquals(10, visited[0]);
+            assertTrue(map.forEachEntryWhile(e -> true));
+        }
+    }
+
+    @Test
+    public void closeInTheCourseOfIterationIsRejected() throws IOException {
+        File file = getPersistenceFile();
+        try (ChronicleMap<Integer, String> map =
+                     builder().createImmutablePersistedTo(file, entries(10).entrySet())) {
+            try {
+                map.forEachEntry(e -> map.close());
+                fail("close() in the course of iteration should fail");
+            } catch (IllegalStateException expected) {
+                // expected
+            }
+            assertEquals("value-0", map.get(0));
+        }
+    }
+
+    @Test
+    public void closeWaitsForAccessesInOtherThreads() throws Exception {
+        File file = getPersistenceFile();
+        ChronicleMap<Integer, String> map =
+                builder().createImmutablePersistedTo(file, entries(10).entrySet());
+        CountDownLatch iterating = new CountDownLatch(1);
+        CountDownLatch finishIteration = new CountDownLatch(1);
+        Thread reader = new Thread(() -> map.forEachEntry(e -> {
+            iterating.countDown();
+            try {
+                finishIteration.await();
+            } catch (InterruptedException ex) {
+                throw new AssertionError(ex);
+            }
+            // the store is still mapped
+            assertEquals("value-" + e.key().get(), e.value().get());
+        }));
+        reader.start();
+        iterating.await();
+        Thread closer = new Thread(map::close);
+        closer.start();
+        closer.join(100);
+        assertTrue(closer.isAlive());
+        assertFalse(map.isOpen());
+        finishIteration.countDown();
+        closer.join();
+        reader.join();
+    }
+
+    @Test
+    public void closedMapIsNotAccessed() throws IOException {
+        File file = getPersistenceFile();
+        ChronicleMap<Integer, String> map =
+                builder().createImmutablePersistedTo(file, entries(10).entrySet());
+        map.close();
+        try {
+            map.get(0);
+            fail("get() from closed map should fail");
+        } catch (ChronicleHashClosedException expected) {
+            // expected
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void duplicateKeysAreRejected() throws IOException {
+        List<Map.Entry<Integer, String>> entries = new ArrayList<>();
+        entries.add(new AbstractMap.SimpleEntry<>(1, "a"));
+        entries.add(new AbstractMap.SimpleEntry<>(1, "b"));
+        builder().createImmutablePersistedTo(getPersistenceFile(), entries);
+    }
+
+    @Test(expected = FileAlreadyExistsException.class)
+    public void existingFileIsNotOverwritten() throws IOException {
+        File file = getPersistenceFile();
+        builder().createImmutablePersistedTo(file, entries(10).entrySet()).close();
+        builder().createImmutablePersistedTo(file, entries(10).entrySet());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void otherValueClassIsRejected() throws IOException {
+        File file = getPersistenceFile();
+        builder().createImmutablePersistedTo(file, entries(10).entrySet()).close();
+        ChronicleMap.of(Integer.class, Integer.class).openImmutable(file);
+    }
+}
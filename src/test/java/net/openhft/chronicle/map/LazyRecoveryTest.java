@@ -0,0 +1,147 @@
+/*
+ *      Copyright (C) 2012, 2016  higherfrequencytrading.com
+ *      Copyright (C) 2016 Roman Leventov
+ *
+ *      This program is free software: you can redistribute it and/or modify
+ *      it under the terms of the GNU Lesser General Public License as published by
+ *      the Free Software Foundation, either version 3 of the License.
+ *
+ *      This program is distributed in the hope that it will be useful,
+ *      but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *      MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *      GNU Lesser General Public License for more details.
+ *
+ *      You should have received a copy of the GNU Lesser General Public License
+ *      along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.openhft.chronicle.map;
+
+import net.openhft.chronicle.bytes.BytesStore;
+import net.openhft.chronicle.hash.Data;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static net.openhft.chronicle.map.ChronicleMapTest.getPersistenceFile;
+import static net.openhft.chronicle.map.ExtraTierMaps.ENTRIES;
+import static net.openhft.chronicle.map.ExtraTierMaps.extraTierMapBuilder;
+import static net.openhft.chronicle.map.ExtraTierMaps.putAll;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class LazyRecoveryTest {
+
+    private static ChronicleMapBuilder<Integer, Integer> builder() {
+        return extraTierMapBuilder(16);
+    }
+
+    private static File createMapFile() throws IOException {
+        File file = getPersistenceFile();
+        try (ChronicleMap<Integer, Integer> map = builder().createPersistedTo(file)) {
+            putAll(map);
+        }
+        return file;
+    }
+
+    /**
+     * Creates a store, left as if the process crashed while writing the values of the keys, that
+     * are multiples of {@code 10}: the values don't match the checksums of the entries
+     */
+    private static File createCorruptedMapFile() throws IOException {
+        File file = getPersistenceFile();
+        try (ChronicleMap<Integer, Integer> map = builder().createPersistedTo(file)) {
+            putAll(map);
+            for (int i = 0; i < ENTRIES; i += 10) {
+                try (ExternalMapQueryContext<Integer, Integer, ?> c = map.queryContext(i)) {
+                    c.updateLock().lock();
+                    MapEntry<Integer, Integer> entry = c.entry();
+                    assertNotNull(entry);
+                    // Bypasses Chronicle Map internals, so the checksum is not updated
+                    Data<Integer> value = entry.value();
+                    ((BytesStore) value.bytes()).writeInt(value.offset(), -i - 1);
+                }
+            }
+        }
+        return file;
+    }
+
+    private static void awaitRecovered(ChronicleMap<?, ?> map) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(30);
+        while (map.recoveryProgress() < 1.0) {
+            if (System.currentTimeMillis() > deadline)
+                throw new AssertionError("recovery progress: " + map.recoveryProgress());
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    public void lazilyRecoveredMapIsUsable() throws IOException, InterruptedException {
+        File file = createMapFile();
+        try (ChronicleMap<Integer, Integer> map = builder()
+                .recoverSegmentsLazily(true)
+                .recoverPersistedTo(file, true)) {
+            for (int i = 0; i < ENTRIES; i += 2) {
+                assertEquals((Integer) i, map.get(i));
+                map.remove(i);
+            }
+            awaitRecovered(map);
+            assertEquals(ENTRIES / 2, map.size());
+        }
+        // The store is marked ready, when all segments are recovered
+        try (ChronicleMap<Integer, Integer> map = builder().createPersistedTo(file)) {
+            assertEquals(ENTRIES / 2, map.size());
+        }
+    }
+
+    @Test
+    public void segmentIsRecoveredOnGet() throws IOException, InterruptedException {
+        File file = createCorruptedMapFile();
+        AtomicInteger corruptions = new AtomicInteger();
+        try (ChronicleMap<Integer, Integer> map = builder()
+                .recoverSegmentsLazily(true)
+                .recoverPersistedTo(file, true, c -> corruptions.incrementAndGet())) {
+            // Go from the end, the sweeper thread recovers the segments from the first one, so
+            // most of the gets likely access segments, which are not yet recovered
+            for (int i = ENTRIES - 1; i >= 0; i--) {
+                if (i % 10 == 0) {
+                    assertNull(map.get(i));
+                } else {
+                    assertEquals((Integer) i, map.get(i));
+                }
+            }
+            awaitRecovered(map);
+            // counters of the tiers with the corrupted entries are reported too
+            assertTrue(corruptions.get() >= ENTRIES / 10);
+            assertEquals(ENTRIES - ENTRIES / 10, map.size());
+        }
+    }
+
+    @Test
+    public void segmentIsRecoveredOnAccessWithinIteration()
+            throws IOException, InterruptedException {
+        File file = createMapFile();
+        try (ChronicleMap<Integer, Integer> map = builder()
+                .recoverSegmentsLazily(true)
+                .recoverPersistedTo(file, true)) {
+            // Segments of other keys are likely not recovered yet, when accessed from within
+            // a locked iteration context
+            map.forEach((k, v) -> assertEquals(
+                    (Integer) ((k + 1) % ENTRIES), map.get((k + 1) % ENTRIES)));
+            awaitRecovered(map);
+        }
+    }
+
+    @Test
+    public void notRecoveredLazilyByDefault() throws IOException {
+        File file = createMapFile();
+        try (ChronicleMap<Integer, Integer> map = builder().recoverPersistedTo(file, true)) {
+            assertEquals(1.0, map.recoveryProgress(), 0.0);
+            assertEquals(ENTRIES, map.size());
+        }
+    }
+}
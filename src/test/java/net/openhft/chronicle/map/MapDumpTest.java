@@ -0,0 +1,98 @@
+/*
+ *      Copyright (C) 2012, 2016  higherfrequencytrading.com
+ *      Copyright (C) 2016 Roman Leventov
+ *
+ *      This program is free software: you can redistribute it and/or modify
+ *      it under the terms of the GNU Lesser General Public License as published by
+ *      the Free Software Foundation, either version 3 of the License.
+ *
+ *      This program is distributed in the hope that it will be useful,
+ *      but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *      MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *      GNU Lesser General Public License for more details.
+ *
+ *      You should have received a copy of the GNU Lesser General Public License
+ *      along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.openhft.chronicle.map;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static net.openhft.chronicle.map.ChronicleMapTest.getPersistenceFile;
+import static org.junit.Assert.assertEquals;
+
+public class MapDumpTest {
+
+    private static final int ENTRIES = 100_000;
+
+    private static ChronicleMapBuilder<Integer, String> builder() {
+        return ChronicleMap.of(Integer.class, String.class)
+                .entries(ENTRIES)
+                .averageValue("value-100000")
+                .actualSegments(16);
+    }
+
+    private static ChronicleMap<Integer, String> filledMap() {
+        ChronicleMap<Integer, String> map = builder().create();
+        for (int i = 0; i < ENTRIES; i++) {
+            map.put(i, "value-" + i);
+        }
+        return map;
+    }
+
+    @Test
+    public void exportedEntriesAreImported() throws IOException {
+        File dump = getPersistenceFile();
+        try (ChronicleMap<Integer, String> source = filledMap();
+             ChronicleMap<Integer, String> target = builder().create()) {
+            source.exportTo(dump, 4);
+            target.put(0, "overwritten");
+            target.importFrom(dump, 4);
+            assertEquals(source, target);
+        }
+    }
+
+    @Test
+    public void putAllRecognizesExport() throws IOException {
+        File dump = getPersistenceFile();
+        try (ChronicleMap<Integer, String> source = filledMap();
+             ChronicleMap<Integer, String> target = builder().create()) {
+            source.exportTo(dump, 2);
+            target.putAll(dump);
+            assertEquals(ENTRIES, target.size());
+            assertEquals("value-42", target.get(42));
+        }
+    }
+
+    @Test
+    public void immutableMapExport() throws IOException {
+        Map<Integer, String> entries = new LinkedHashMap<>();
+        for (int i = 0; i < 1000; i++) {
+            entries.put(i, "value-" + i);
+        }
+        File dump = getPersistenceFile();
+        try (ChronicleMap<Integer, String> immutable = builder()
+                .createImmutablePersistedTo(getPersistenceFile(), entries.entrySet());
+             ChronicleMap<Integer, String> target = builder().create()) {
+            immutable.exportTo(dump, 1);
+            target.importFrom(dump, 3);
+            assertEquals(immutable, target);
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void otherValueClassIsRejected() throws IOException {
+        File dump = getPersistenceFile();
+        try (ChronicleMap<Integer, String> source = filledMap();
+             ChronicleMap<Integer, Integer> target =
+                     ChronicleMap.of(Integer.class, Integer.class).entries(10).create()) {
+            source.exportTo(dump, 4);
+            target.importFrom(dump, 4);
+        }
+    }
+}
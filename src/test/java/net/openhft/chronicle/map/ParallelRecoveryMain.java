@@ -0,0 +1,58 @@
+/*
+ *      Copyright (C) 2012, 2016  higherfrequencytrading.com
+ *      Copyright (C) 2016 Roman Leventov
+ *
+ *      This program is free software: you can redistribute it and/or modify
+ *      it under the terms of the GNU Lesser General Public License as published by
+ *      the Free Software Foundation, either version 3 of the License.
+ *
+ *      This program is distributed in the hope that it will be useful,
+ *      but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *      MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *      GNU Lesser General Public License for more details.
+ *
+ *      You should have received a copy of the GNU Lesser General Public License
+ *      along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.openhft.chronicle.map;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Measures the time of recovery of a large persisted map with different {@link
+ * ChronicleMapBuilder#recoveryParallelism(int) recovery parallelism}, from 1 up to the number of
+ * available processors. Usage: {@code -Dentries=10000000}. The map is configured for the given
+ * number of entries, so it has few extra tiers, which are recovered sequentially regardless of
+ * the parallelism.
+ */
+public class ParallelRecoveryMain {
+    static final long ENTRIES = Long.getLong("entries", 10_000_000L);
+    static final int RUNS = 3;
+
+    public static void main(String... ignored) throws IOException {
+        File file = ChronicleMapTest.getPersistenceFile();
+        try (ChronicleMap<Long, Long> map = builder().createPersistedTo(file)) {
+            for (long i = 0; i < ENTRIES; i++) {
+                map.put(i, i);
+            }
+        }
+        int processors = Runtime.getRuntime().availableProcessors();
+        for (int parallelism = 1; parallelism <= processors; parallelism *= 2) {
+            for (int run = 0; run < RUNS; run++) {
+                long start = System.nanoTime();
+                try (ChronicleMap<Long, Long> map = builder()
+                        .recoveryParallelism(parallelism)
+                        .recoverPersistedTo(file, true)) {
+                    long time = System.nanoTime() - start;
+                    System.out.printf("Recovery of %,d entries with parallelism %d took " +
+                            "%.3f seconds%n", map.size(), parallelism, time / 1e9);
+                }
+            }
+        }
+    }
+
+    private static ChronicleMapBuilder<Long, Long> builder() {
+        return ChronicleMap.of(Long.class, Long.class).entries(ENTRIES);
+    }
+}
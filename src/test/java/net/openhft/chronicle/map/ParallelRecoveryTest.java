@@ -0,0 +1,86 @@
+/*
+ *      Copyright (C) 2012, 2016  higherfrequencytrading.com
+ *      Copyright (C) 2016 Roman Leventov
+ *
+ *      This program is free software: you can redistribute it and/or modify
+ *      it under the terms of the GNU Lesser General Public License as published by
+ *      the Free Software Foundation, either version 3 of the License.
+ *
+ *      This program is distributed in the hope that it will be useful,
+ *      but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *      MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *      GNU Lesser General Public License for more details.
+ *
+ *      You should have received a copy of the GNU Lesser General Public License
+ *      along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.openhft.chronicle.map;
+
+import net.openhft.chronicle.hash.VanillaGlobalMutableState;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import static net.openhft.chronicle.map.ChronicleMapTest.getPersistenceFile;
+import static net.openhft.chronicle.map.ExtraTierMaps.ENTRIES;
+import static net.openhft.chronicle.map.ExtraTierMaps.extraTierMapBuilder;
+import static net.openhft.chronicle.map.ExtraTierMaps.putAll;
+import static org.junit.Assert.assertEquals;
+
+public class ParallelRecoveryTest {
+
+    private static ChronicleMapBuilder<Integer, Integer> builder(int recoveryParallelism) {
+        return extraTierMapBuilder(8).recoveryParallelism(recoveryParallelism);
+    }
+
+    private static File createMapFile() throws IOException {
+        File file = getPersistenceFile();
+        try (ChronicleMap<Integer, Integer> map = builder(1).createPersistedTo(file)) {
+            putAll(map);
+            for (int i = 0; i < ENTRIES; i += 2) {
+                map.remove(i);
+            }
+        }
+        return file;
+    }
+
+    @Test
+    public void parallelRecoveryGivesSameResultAsSequential() throws IOException {
+        File file = createMapFile();
+        File copy = getPersistenceFile();
+        Files.copy(file.toPath(), copy.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+        try (ChronicleMap<Integer, Integer> sequentiallyRecovered =
+                     builder(1).recoverPersistedTo(file, true);
+             ChronicleMap<Integer, Integer> parallelRecovered =
+                     builder(4).recoverPersistedTo(copy, true)) {
+            assertEquals(ENTRIES / 2, parallelRecovered.size());
+            for (int i = 0; i < ENTRIES; i++) {
+                assertEquals(sequentiallyRecovered.get(i), parallelRecovered.get(i));
+            }
+            VanillaGlobalMutableState sequentialState =
+                    ((VanillaChronicleMap) sequentiallyRecovered).globalMutableState();
+            VanillaGlobalMutableState parallelState =
+                    ((VanillaChronicleMap) parallelRecovered).globalMutableState();
+            assertEquals(sequentialState.getExtraTiersInUse(),
+                    parallelState.getExtraTiersInUse());
+            assertEquals(sequentialState.getFirstFreeTierIndex(),
+                    parallelState.getFirstFreeTierIndex());
+            assertEquals(sequentialState.getDataStoreSize(), parallelState.getDataStoreSize());
+
+            // the recovered map is usable
+            for (int i = 0; i < ENTRIES; i += 2) {
+                parallelRecovered.put(i, i);
+            }
+            assertEquals(ENTRIES, parallelRecovered.size());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void nonPositiveParallelismIsRejected() {
+        builder(0);
+    }
+}
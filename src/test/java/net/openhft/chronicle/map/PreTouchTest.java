@@ -0,0 +1,89 @@
+/*
+ *      Copyright (C) 2012, 2016  higherfrequencytrading.com
+ *      Copyright (C) 2016 Roman Leventov
+ *
+ *      This program is free software: you can redistribute it and/or modify
+ *      it under the terms of the GNU Lesser General Public License as published by
+ *      the Free Software Foundation, either version 3 of the License.
+ *
+ *      This program is distributed in the hope that it will be useful,
+ *      but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *      MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *      GNU Lesser General Public License for more details.
+ *
+ *      You should have received a copy of the GNU Lesser General Public License
+ *      along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.openhft.chronicle.map;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static net.openhft.chronicle.map.ChronicleMapTest.getPersistenceFile;
+import static net.openhft.chronicle.map.ExtraTierMaps.ENTRIES;
+import static net.openhft.chronicle.map.ExtraTierMaps.checkAll;
+import static net.openhft.chronicle.map.ExtraTierMaps.extraTierMapBuilder;
+import static net.openhft.chronicle.map.ExtraTierMaps.putAll;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PreTouchTest {
+
+    private static ChronicleMapBuilder<Integer, Integer> builder() {
+        return extraTierMapBuilder(8);
+    }
+
+    private static void checkProgress(List<Double> progress) {
+        assertTrue(progress.size() > 1);
+        for (int i = 1; i < progress.size(); i++) {
+            assertTrue(progress.get(i) >= progress.get(i - 1));
+        }
+        assertEquals(1.0, progress.get(progress.size() - 1), 1e-9);
+    }
+
+    @Test
+    public void inMemoryMapIsPreTouchedOnCreation() {
+        List<Double> progress = new ArrayList<>();
+        try (ChronicleMap<Integer, Integer> map =
+                     builder().preTouch(4, true, progress::add).create()) {
+            checkProgress(progress);
+            map.put(1, 1);
+            assertEquals((Integer) 1, map.get(1));
+        }
+    }
+
+    @Test
+    public void warmUpDoesNotChangeContents() {
+        try (ChronicleMap<Integer, Integer> map = builder().create()) {
+            putAll(map);
+            List<Double> progress = new ArrayList<>();
+            map.warmUp(4, true, progress::add);
+            checkProgress(progress);
+            map.warmUp();
+            checkAll(map);
+        }
+    }
+
+    @Test
+    public void persistedMapIsPreTouchedOnOpen() throws IOException {
+        File file = getPersistenceFile();
+        try (ChronicleMap<Integer, Integer> map = builder().createPersistedTo(file)) {
+            putAll(map);
+        }
+        List<Double> progress = new ArrayList<>();
+        try (ChronicleMap<Integer, Integer> map =
+                     builder().preTouch(2, true, progress::add).createPersistedTo(file)) {
+            checkProgress(progress);
+            assertEquals(ENTRIES, map.size());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void nonPositiveParallelismIsRejected() {
+        builder().preTouch(0);
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ *      Copyright (C) 2012, 2016  higherfrequencytrading.com
+ *      Copyright (C) 2016 Roman Leventov
+ *
+ *      This program is free software: you can redistribute it and/or modify
+ *      it under the terms of the GNU Lesser General Public License as published by
+ *      the Free Software Foundation, either version 3 of the License.
+ *
+ *      This program is distributed in the hope that it will be useful,
+ *      but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *      MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *      GNU Lesser General Public License for more details.
+ *
+ *      You should have received a copy of the GNU Lesser General Public License
+ *      along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.openhft.chronicle.map;
+
+import net.openhft.chronicle.core.OS;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+import static net.openhft.chronicle.map.ChronicleMapTest.getPersistenceFile;
+import static net.openhft.chronicle.map.ExtraTierMaps.checkAll;
+import static net.openhft.chronicle.map.ExtraTierMaps.extraTierMapBuilder;
+import static net.openhft.chronicle.map.ExtraTierMaps.putAll;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+public class PreallocateFileTest {
+
+    @Test
+    public void fileIsPreallocatedOnCreation() throws IOException {
+        assumeTrue(OS.isLinux());
+        File sparseFile = getPersistenceFile();
+        File preallocatedFile = getPersistenceFile();
+        try (ChronicleMap<Integer, Integer> sparse =
+                     extraTierMapBuilder(4).createPersistedTo(sparseFile);
+             ChronicleMap<Integer, Integer> preallocated =
+                     extraTierMapBuilder(4).preallocateFile(2).createPersistedTo(preallocatedFile)) {
+            assertTrue(preallocatedFile.length() > sparseFile.length());
+        }
+    }
+
+    @Test
+    public void fileIsPreallocatedOnRecovery() throws IOException {
+        assumeTrue(OS.isLinux());
+        File file = getPersistenceFile();
+        try (ChronicleMap<Integer, Integer> map = extraTierMapBuilder(4).createPersistedTo(file)) {
+            map.put(1, 1);
+        }
+        long sparseLength = file.length();
+        try (ChronicleMap<Integer, Integer> map =
+                     extraTierMapBuilder(4).preallocateFile(2).recoverPersistedTo(file, true)) {
+            assertTrue(file.length() > sparseLength);
+            assertEquals((Integer) 1, map.get(1));
+        }
+    }
+
+    @Test
+    public void growPreallocatedMap() throws IOException {
+        File file = getPersistenceFile();
+        try (ChronicleMap<Integer, Integer> map =
+                     extraTierMapBuilder(4).preallocateFile(0).createPersistedTo(file)) {
+            putAll(map);
+            checkAll(map);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeNumberOfTierBulksIsRejected() {
+        extraTierMapBuilder(4).preallocateFile(-1);
+    }
+}
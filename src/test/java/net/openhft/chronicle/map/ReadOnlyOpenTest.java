@@ -0,0 +1,103 @@
+/*
+ *      Copyright (C) 2012, 2016  higherfrequencytrading.com
+ *      Copyright (C) 2016 Roman Leventov
+ *
+ *      This program is free software: you can redistribute it and/or modify
+ *      it under the terms of the GNU Lesser General Public License as published by
+ *      the Free Software Foundation, either version 3 of the License.
+ *
+ *      This program is distributed in the hope that it will be useful,
+ *      but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *      MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *      GNU Lesser General Public License for more details.
+ *
+ *      You should have received a copy of the GNU Lesser General Public License
+ *      along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.openhft.chronicle.map;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.Map;
+
+import static net.openhft.chronicle.map.ChronicleMapTest.getPersistenceFile;
+import static net.openhft.chronicle.map.ExtraTierMaps.ENTRIES;
+import static net.openhft.chronicle.map.ExtraTierMaps.checkAll;
+import static net.openhft.chronicle.map.ExtraTierMaps.extraTierMapBuilder;
+import static net.openhft.chronicle.map.ExtraTierMaps.putAll;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ReadOnlyOpenTest {
+
+    private static File createStore() throws IOException {
+        File file = getPersistenceFile();
+        try (ChronicleMap<Integer, Integer> map = extraTierMapBuilder(4).createPersistedTo(file)) {
+            putAll(map);
+        }
+        return file;
+    }
+
+    @Test
+    public void readOnlyMapIsReadable() throws IOException {
+        File file = createStore();
+        try (ChronicleMap<Integer, Integer> map = extraTierMapBuilder(4).openReadOnly(file)) {
+            checkAll(map);
+            assertTrue(!map.containsKey(ENTRIES));
+            int iterated = 0;
+            for (Map.Entry<Integer, Integer> e : map.entrySet()) {
+                assertEquals(e.getKey(), e.getValue());
+                iterated++;
+            }
+            assertEquals(ENTRIES, iterated);
+        }
+    }
+
+    @Test
+    public void modificationsAreRejected() throws IOException {
+        File file = createStore();
+        try (ChronicleMap<Integer, Integer> map = extraTierMapBuilder(4).openReadOnly(file)) {
+            try {
+                map.put(ENTRIES, ENTRIES);
+                fail("put into read-only map should fail");
+            } catch (UnsupportedOperationException expected) {
+                // expected
+            }
+            try {
+                map.remove(1);
+                fail("remove from read-only map should fail");
+            } catch (UnsupportedOperationException expected) {
+                // expected
+            }
+            assertEquals(0, map.releaseFreeMemory());
+            // the map is intact and usable after rejected modifications
+            assertEquals(ENTRIES, map.size());
+            assertEquals((Integer) 1, map.get(1));
+        }
+    }
+
+    @Test
+    public void manyReadOnlyMapsShareTheFile() throws IOException {
+        File file = createStore();
+        try (ChronicleMap<Integer, Integer> map1 = extraTierMapBuilder(4).openReadOnly(file);
+             ChronicleMap<Integer, Integer> map2 = extraTierMapBuilder(4).openReadOnly(file)) {
+            for (int i = 0; i < ENTRIES; i++) {
+                assertEquals(map1.get(i), map2.get(i));
+            }
+        }
+        // read-only maps don't leave the store modified or locked
+        try (ChronicleMap<Integer, Integer> map = extraTierMapBuilder(4).createPersistedTo(file)) {
+            map.put(ENTRIES, ENTRIES);
+            assertEquals(ENTRIES + 1, map.size());
+        }
+    }
+
+    @Test(expected = FileNotFoundException.class)
+    public void absentFileIsNotCreated() throws IOException {
+        extraTierMapBuilder(4).openReadOnly(getPersistenceFile());
+    }
+}
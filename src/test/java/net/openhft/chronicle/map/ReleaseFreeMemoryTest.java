@@ -0,0 +1,100 @@
+/*
+ *      Copyright (C) 2012, 2016  higherfrequencytrading.com
+ *      Copyright (C) 2016 Roman Leventov
+ *
+ *      This program is free software: you can redistribute it and/or modify
+ *      it under the terms of the GNU Lesser General Public License as published by
+ *      the Free Software Foundation, either version 3 of the License.
+ *
+ *      This program is distributed in the hope that it will be useful,
+ *      but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *      MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *      GNU Lesser General Public License for more details.
+ *
+ *      You should have received a copy of the GNU Lesser General Public License
+ *      along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.openhft.chronicle.map;
+
+import net.openhft.chronicle.core.OS;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static net.openhft.chronicle.map.ChronicleMapTest.getPersistenceFile;
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+public class ReleaseFreeMemoryTest {
+
+    private static final int ENTRIES = 10_000;
+
+    private static ChronicleMapBuilder<Integer, byte[]> builder() {
+        return ChronicleMap.of(Integer.class, byte[].class)
+                .entries(ENTRIES)
+                .averageValueSize(1000)
+                .actualSegments(4);
+    }
+
+    private static byte[] value(int key) {
+        byte[] value = new byte[1000];
+        Arrays.fill(value, (byte) key);
+        return value;
+    }
+
+    private static void releaseAndCheck(ChronicleMap<Integer, byte[]> map) {
+        for (int i = 0; i < ENTRIES; i++) {
+            map.put(i, value(i));
+        }
+        // keep every 100th entry, the rest of the space should be released
+        for (int i = 0; i < ENTRIES; i++) {
+            if (i % 100 != 0)
+                map.remove(i);
+        }
+        long released = map.releaseFreeMemory();
+        assertTrue("released only " + released + " bytes", released > 0);
+        for (int i = 0; i < ENTRIES; i += 100) {
+            assertArrayEquals(value(i), map.get(i));
+        }
+        // released space is reusable
+        for (int i = 0; i < ENTRIES; i++) {
+            map.put(i, value(i));
+        }
+        assertEquals(ENTRIES, map.size());
+        for (int i = 0; i < ENTRIES; i++) {
+            assertArrayEquals(value(i), map.get(i));
+        }
+    }
+
+    @Test
+    public void releaseFreeMemoryInMemory() {
+        assumeTrue(OS.isLinux());
+        try (ChronicleMap<Integer, byte[]> map = builder().create()) {
+            releaseAndCheck(map);
+        }
+    }
+
+    @Test
+    public void releaseFreeMemoryPersisted() throws IOException {
+        assumeTrue(OS.isLinux());
+        File file = getPersistenceFile();
+        try (ChronicleMap<Integer, byte[]> map = builder().createPersistedTo(file)) {
+            releaseAndCheck(map);
+        }
+        try (ChronicleMap<Integer, byte[]> map = builder().recoverPersistedTo(file, true)) {
+            assertEquals(ENTRIES, map.size());
+        }
+    }
+
+    @Test
+    public void emptyMapReleaseIsSafe() {
+        try (ChronicleMap<Integer, byte[]> map = builder().create()) {
+            map.releaseFreeMemory();
+            map.put(1, value(1));
+            assertArrayEquals(value(1), map.get(1));
+        }
+    }
+}
@@ -30,6 +30,7 @@ import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentMap;
 import java.util.function.Consumer;
+import java.util.function.DoubleConsumer;
 import java.util.function.Predicate;
 
 /**
@@ -219,6 +220,28 @@ public class ReplicationCheckingMap<K, V> implements ChronicleMap<K, V> {
         return map1.offHeapMemoryUsed();
     }
 
+    @Override
+    public long releaseFreeMemory() {
+        return map1.releaseFreeMemory() + map2.releaseFreeMemory();
+    }
+
+    @Override
+    public double recoveryProgress() {
+        return Math.min(map1.recoveryProgress(), map2.recoveryProgress());
+    }
+
+    @Override
+    public void warmUp() {
+        map1.warmUp();
+        map2.warmUp();
+    }
+
+    @Override
+    public void warmUp(int parallelism, boolean extraTiers, DoubleConsumer progressListener) {
+        map1.warmUp(parallelism, extraTiers, progressListener);
+        map2.warmUp(parallelism, extraTiers, progressListener);
+    }
+
     @Override
     public V getUsing(K key, V usingValue) {
         return map1.getUsing(key, usingValue);
@@ -239,6 +262,21 @@ public class ReplicationCheckingMap<K, V> implements ChronicleMap<K, V> {
         throw new UnsupportedOperationException();
     }
 
+    @Override
+    public void snapshotTo(File toFile) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void exportTo(File toFile, int parallelism) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void importFrom(File fromFile, int parallelism) {
+        throw new UnsupportedOperationException();
+    }
+
     @Override
     public Class<K> keyClass() {
         return map1.keyClass();
@@ -0,0 +1,63 @@
+/*
+ *      Copyright (C) 2012, 2016  higherfrequencytrading.com
+ *      Copyright (C) 2016 Roman Leventov
+ *
+ *      This program is free software: you can redistribute it and/or modify
+ *      it under the terms of the GNU Lesser General Public License as published by
+ *      the Free Software Foundation, either version 3 of the License.
+ *
+ *      This program is distributed in the hope that it will be useful,
+ *      but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *      MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *      GNU Lesser General Public License for more details.
+ *
+ *      You should have received a copy of the GNU Lesser General Public License
+ *      along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.openhft.chronicle.map;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+import static net.openhft.chronicle.map.ChronicleMapTest.getPersistenceFile;
+import static net.openhft.chronicle.map.ExtraTierMaps.checkAll;
+import static net.openhft.chronicle.map.ExtraTierMaps.extraTierMapBuilder;
+import static net.openhft.chronicle.map.ExtraTierMaps.putAll;
+import static org.junit.Assert.assertEquals;
+
+public class ReserveAddressSpaceTest {
+
+    private static ChronicleMapBuilder<Integer, Integer> builder(boolean reserveAddressSpace) {
+        return extraTierMapBuilder(4).reserveAddressSpace(reserveAddressSpace);
+    }
+
+    @Test
+    public void growWithinReservedAddressSpace() throws IOException {
+        File file = getPersistenceFile();
+        try (ChronicleMap<Integer, Integer> map = builder(true).createPersistedTo(file)) {
+            putAll(map);
+            checkAll(map);
+        }
+        // the data store layout is the same, regardless of the mapping mode
+        try (ChronicleMap<Integer, Integer> map = builder(false).createPersistedTo(file)) {
+            checkAll(map);
+        }
+        try (ChronicleMap<Integer, Integer> map = builder(true).recoverPersistedTo(file, true)) {
+            checkAll(map);
+        }
+    }
+
+    @Test
+    public void concurrentViewsWithReservedAddressSpace() throws IOException {
+        File file = getPersistenceFile();
+        try (ChronicleMap<Integer, Integer> map1 = builder(true).createPersistedTo(file);
+             ChronicleMap<Integer, Integer> map2 = builder(true).createPersistedTo(file)) {
+            // tier bulks, allocated via one view, are accessed via the other one
+            putAll(map1);
+            checkAll(map2);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ *      Copyright (C) 2012, 2016  higherfrequencytrading.com
+ *      Copyright (C) 2016 Roman Leventov
+ *
+ *      This program is free software: you can redistribute it and/or modify
+ *      it under the terms of the GNU Lesser General Public License as published by
+ *      the Free Software Foundation, either version 3 of the License.
+ *
+ *      This program is distributed in the hope that it will be useful,
+ *      but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *      MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *      GNU Lesser General Public License for more details.
+ *
+ *      You should have received a copy of the GNU Lesser General Public License
+ *      along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.openhft.chronicle.map;
+
+import net.openhft.chronicle.core.OS;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+import static net.openhft.chronicle.map.ChronicleMapTest.getPersistenceFile;
+import static net.openhft.chronicle.map.ExtraTierMaps.ENTRIES;
+import static net.openhft.chronicle.map.ExtraTierMaps.checkAll;
+import static net.openhft.chronicle.map.ExtraTierMaps.extraTierMapBuilder;
+import static net.openhft.chronicle.map.ExtraTierMaps.putAll;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeFalse;
+
+public class ResidencyControlsTest {
+
+    private static ChronicleMapBuilder<Integer, Integer> builder() {
+        return extraTierMapBuilder(4)
+                .lockHashLookups(true)
+                .randomEntrySpaceAccess(true);
+    }
+
+    private static void putAndCheck(ChronicleMap<Integer, Integer> map) {
+        VanillaChronicleMap<Integer, Integer, ?> vanillaMap =
+                (VanillaChronicleMap<Integer, Integer, ?>) map;
+        long lockedOrFailedBeforeExtraTiers =
+                vanillaMap.lockedMemory() + vanillaMap.memoryLockFailures();
+        assertTrue(lockedOrFailedBeforeExtraTiers > 0);
+        putAll(map);
+        // tiers of the allocated extra tier bulks are locked as well
+        assertTrue(vanillaMap.lockedMemory() + vanillaMap.memoryLockFailures() >
+                lockedOrFailedBeforeExtraTiers);
+        checkAll(map);
+    }
+
+    @Test
+    public void inMemoryMapHashLookupsAreLocked() {
+        assumeFalse(OS.isWindows());
+        try (ChronicleMap<Integer, Integer> map = builder().create()) {
+            putAndCheck(map);
+        }
+    }
+
+    @Test
+    public void persistedMapHashLookupsAreLocked() throws IOException {
+        assumeFalse(OS.isWindows());
+        File file = getPersistenceFile();
+        try (ChronicleMap<Integer, Integer> map = builder().createPersistedTo(file)) {
+            putAndCheck(map);
+        }
+        try (ChronicleMap<Integer, Integer> map = builder().createPersistedTo(file)) {
+            assertEquals(ENTRIES, map.size());
+        }
+    }
+
+    @Test
+    public void freeMemoryOfLockedMapIsReleased() {
+        assumeFalse(OS.isWindows());
+        try (ChronicleMap<Integer, Integer> map = builder().create()) {
+            putAll(map);
+            map.clear();
+            // free extra tiers have locked hash lookups, their entry space is released
+            map.releaseFreeMemory();
+            putAll(map);
+            checkAll(map);
+        }
+    }
+
+    @Test
+    public void hashLookupsAreNotLockedByDefault() {
+        try (ChronicleMap<Integer, Integer> map =
+                     ChronicleMap.of(Integer.class, Integer.class).entries(100).create()) {
+            map.put(1, 1);
+            assertEquals(0, ((VanillaChronicleMap<Integer, Integer, ?>) map).lockedMemory());
+        }
+    }
+}
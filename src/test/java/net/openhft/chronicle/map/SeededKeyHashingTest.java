@@ -0,0 +1,155 @@
+/*
+ *      Copyright (C) 2012, 2016  higherfrequencytrading.com
+ *      Copyright (C) 2016 Roman Leventov
+ *
+ *      This program is free software: you can redistribute it and/or modify
+ *      it under the terms of the GNU Lesser General Public License as published by
+ *      the Free Software Foundation, either version 3 of the License.
+ *
+ *      This program is distributed in the hope that it will be useful,
+ *      but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *      MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *      GNU Lesser General Public License for more details.
+ *
+ *      You should have received a copy of the GNU Lesser General Public License
+ *      along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.openhft.chronicle.map;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static net.openhft.chronicle.set.Builder.getPersistenceFile;
+import static org.junit.Assert.*;
+
+public class SeededKeyHashingTest {
+
+    @Test
+    public void testKeysAreHashedWithoutSeedByDefault() {
+        try (ChronicleMap<Integer, Integer> map = ChronicleMap.of(Integer.class, Integer.class)
+                .entries(1000)
+                .create()) {
+            assertEquals(0, ((VanillaChronicleMap<?, ?, ?>) map).keyHashSeed);
+        }
+    }
+
+    @Test
+    public void testSeedIsPersisted() throws IOException {
+        File file = getPersistenceFile();
+        long seed;
+        try (ChronicleMap<Integer, Integer> map = ChronicleMap.of(Integer.class, Integer.class)
+                .entries(1000)
+                .actualSegments(4)
+                .seededKeyHashing(true)
+                .createPersistedTo(file)) {
+            seed = ((VanillaChronicleMap<?, ?, ?>) map).keyHashSeed;
+            assertNotEquals(0, seed);
+            for (int i = 0; i < 500; i++) {
+                map.put(i, i);
+            }
+        }
+        // Configuration is ignored when the existing map is opened
+        try (ChronicleMap<Integer, Integer> map = ChronicleMap.of(Integer.class, Integer.class)
+                .entries(1000)
+                .actualSegments(4)
+                .createPersistedTo(file)) {
+            assertEquals(seed, ((VanillaChronicleMap<?, ?, ?>) map).keyHashSeed);
+            for (int i = 0; i < 500; i++) {
+                assertEquals((Integer) i, map.get(i));
+            }
+            // Iteration hashes keys, stored in the map, should find them with the same seed
+            map.entrySet().removeIf(e -> e.getKey() % 2 == 0);
+            assertEquals(250, map.size());
+            assertNull(map.get(42));
+            assertEquals((Integer) 43, map.get(43));
+        }
+        try (ChronicleMap<Integer, Integer> map = ChronicleMap.of(Integer.class, Integer.class)
+                .entries(1000)
+                .actualSegments(4)
+                .recoverPersistedTo(file, true)) {
+            assertEquals(seed, ((VanillaChronicleMap<?, ?, ?>) map).keyHashSeed);
+            assertEquals(250, map.size());
+            assertEquals((Integer) 43, map.get(43));
+        }
+    }
+
+    @Test
+    public void testSeededStringKeys() {
+        try (ChronicleMap<String, String> map = ChronicleMap.of(String.class, String.class)
+                .entries(1000)
+                .averageKeySize(10)
+                .averageValueSize(10)
+                .seededKeyHashing(true)
+                .create()) {
+            for (int i = 0; i < 1000; i++) {
+                map.put("key" + i, "value" + i);
+            }
+            for (int i = 0; i < 1000; i++) {
+                assertEquals("value" + i, map.get("key" + i));
+            }
+            assertEquals(0, ((VanillaChronicleMap<?, ?, ?>) map).skewedSegments().length);
+        }
+    }
+
+    private static ChronicleMapBuilder<Long, Long> skewBuilder() {
+        return ChronicleMap.of(Long.class, Long.class)
+                .entries(10_000)
+                .actualSegments(16)
+                .maxBloatFactor(10);
+    }
+
+    /**
+     * Keys, which fall into the segment 0 of the maps without seeded key hashing
+     */
+    private static List<Long> collidingKeys(VanillaChronicleMap<?, ?, ?> map, int count) {
+        List<Long> keys = new ArrayList<>();
+        for (long key = 0; keys.size() < count; key++) {
+            if (map.hashSplitting.segmentIndex(map.keyHashFunction.hashLong(key)) == 0)
+                keys.add(key);
+        }
+        return keys;
+    }
+
+    @Test
+    public void testSegmentSkewIsDetected() throws InterruptedException {
+        try (ChronicleMap<Long, Long> map = skewBuilder().create()) {
+            VanillaChronicleMap<?, ?, ?> vanillaMap = (VanillaChronicleMap<?, ?, ?>) map;
+            for (long i = 0; i < 1000; i++) {
+                map.put(i, i);
+            }
+            assertEquals(0, vanillaMap.skewedSegments().length);
+            assertEquals(0, vanillaMap.segmentSkewDetections());
+
+            for (Long key : collidingKeys(vanillaMap, 5000)) {
+                map.put(key, key);
+            }
+            assertArrayEquals(new int[] {0}, vanillaMap.skewedSegments());
+            long deadline = System.currentTimeMillis() + 10_000;
+            while (vanillaMap.segmentSkewDetections() == 0) {
+                assertTrue("segment skew is not detected",
+                        System.currentTimeMillis() < deadline);
+                Thread.sleep(10);
+            }
+        }
+    }
+
+    @Test
+    public void testSeedDefeatsPrecomputedKeys() {
+        List<Long> keys;
+        try (ChronicleMap<Long, Long> map = skewBuilder().create()) {
+            keys = collidingKeys((VanillaChronicleMap<?, ?, ?>) map, 5000);
+        }
+        try (ChronicleMap<Long, Long> map = skewBuilder().seededKeyHashing(true).create()) {
+            VanillaChronicleMap<?, ?, ?> vanillaMap = (VanillaChronicleMap<?, ?, ?>) map;
+            for (Long key : keys) {
+                map.put(key, key);
+            }
+            assertEquals(0, vanillaMap.skewedSegments().length);
+            assertEquals(0, vanillaMap.segmentSkewDetections());
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ *      Copyright (C) 2012, 2016  higherfrequencytrading.com
+ *      Copyright (C) 2016 Roman Leventov
+ *
+ *      This program is free software: you can redistribute it and/or modify
+ *      it under the terms of the GNU Lesser General Public License as published by
+ *      the Free Software Foundation, either version 3 of the License.
+ *
+ *      This program is distributed in the hope that it will be useful,
+ *      but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *      MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *      GNU Lesser General Public License for more details.
+ *
+ *      You should have received a copy of the GNU Lesser General Public License
+ *      along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.openhft.chronicle.map;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static net.openhft.chronicle.map.ChronicleMapTest.getPersistenceFile;
+import static net.openhft.chronicle.map.ExtraTierMaps.ENTRIES;
+import static net.openhft.chronicle.map.ExtraTierMaps.extraTierMapBuilder;
+import static net.openhft.chronicle.map.ExtraTierMaps.putAll;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SnapshotTest {
+
+    private static ChronicleMapBuilder<Integer, Integer> builder() {
+        // the writer keeps inserting while the snapshot is taken
+        return extraTierMapBuilder(4).maxBloatFactor(1000);
+    }
+
+    @Test
+    public void snapshotWhileWriting() throws IOException, InterruptedException {
+        File file = getPersistenceFile();
+        File snapshotFile = getPersistenceFile();
+        try (ChronicleMap<Integer, Integer> map = builder().createPersistedTo(file)) {
+            putAll(map);
+            AtomicBoolean stop = new AtomicBoolean();
+            Thread writer = new Thread(() -> {
+                for (int i = ENTRIES; !stop.get() && i < 10 * ENTRIES; i++) {
+                    map.put(i, i);
+                    map.remove(i - ENTRIES);
+                    map.put(i - ENTRIES, i - ENTRIES);
+                }
+            });
+            writer.start();
+            try {
+                map.snapshotTo(snapshotFile);
+            } finally {
+                stop.set(true);
+                writer.join();
+            }
+        }
+        try (ChronicleMap<Integer, Integer> snapshot = builder().createPersistedTo(snapshotFile)) {
+            assertTrue(snapshot.size() >= ENTRIES - 1);
+            snapshot.forEach((k, v) -> assertEquals(k, v));
+            // the snapshot is a usable map
+            snapshot.put(-1, -1);
+            assertEquals((Integer) (-1), snapshot.get(-1));
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void snapshotToExistingFileFails() throws IOException {
+        File file = getPersistenceFile();
+        File existingFile = getPersistenceFile();
+        assertTrue(existingFile.createNewFile());
+        try (ChronicleMap<Integer, Integer> map = builder().createPersistedTo(file)) {
+            map.snapshotTo(existingFile);
+        } finally {
+            assertTrue(existingFile.exists());
+        }
+    }
+
+    @Test
+    public void snapshotFailsIfStoreIsAccessedByAnotherInstance() throws IOException {
+        File file = getPersistenceFile();
+        File snapshotFile = getPersistenceFile();
+        try (ChronicleMap<Integer, Integer> map = builder().createPersistedTo(file)) {
+            putAll(map);
+            try (ChronicleMap<Integer, Integer> other = builder().createPersistedTo(file)) {
+                map.snapshotTo(snapshotFile);
+                fail("the other instance doesn't copy-on-write");
+            } catch (IllegalStateException expected) {
+                // expected
+            }
+            assertFalse(snapshotFile.exists());
+            // the store could be accessed by other instances after the snapshot
+            map.snapshotTo(snapshotFile);
+            try (ChronicleMap<Integer, Integer> other = builder().createPersistedTo(file)) {
+                assertEquals(ENTRIES, other.size());
+            }
+        }
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void snapshotOfInMemoryMapIsNotSupported() throws IOException {
+        try (ChronicleMap<Integer, Integer> map = builder().create()) {
+            map.snapshotTo(getPersistenceFile());
+        }
+    }
+}
@@ -0,0 +1,249 @@
+/*
+ *      Copyright (C) 2012, 2016  higherfrequencytrading.com
+ *      Copyright (C) 2016 Roman Leventov
+ *
+ *      This program is free software: you can redistribute it and/or modify
+ *      it under the terms of the GNU Lesser General Public License as published by
+ *      the Free Software Foundation, either version 3 of the License.
+ *
+ *      This program is distributed in the hope that it will be useful,
+ *      but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *      MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *      GNU Lesser General Public License for more details.
+ *
+ *      You should have received a copy of the GNU Lesser General Public License
+ *      along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.openhft.chronicle.map;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.*;
+
+public class TcpReplicatorTest {
+
+    private static final InetSocketAddress LOOPBACK = new InetSocketAddress("127.0.0.1", 0);
+
+    private static ChronicleMap<Integer, String> replicatedMap(int identifier) {
+        return ChronicleMap.of(Integer.class, String.class)
+                .entries(10_000)
+                .averageValueSize(16)
+                .replication((byte) identifier)
+                .create();
+    }
+
+    private static TcpReplicator server(ChronicleMap<?, ?> map, int bufferSize)
+            throws IOException {
+        return new TcpReplicator(map, LOOPBACK, Collections.emptyList(), bufferSize);
+    }
+
+    private static TcpReplicator client(ChronicleMap<?, ?> map, TcpReplicator server,
+                                        int bufferSize) throws IOException {
+        return new TcpReplicator(map, null,
+                Collections.singletonList(server.localAddress()), bufferSize);
+    }
+
+    private static TcpReplicator serverWithHeartbeats(
+            ChronicleMap<?, ?> map, long heartbeatIntervalMillis) throws IOException {
+        return new TcpReplicator(map, LOOPBACK, Collections.emptyList(),
+                TcpReplicator.DEFAULT_BUFFER_SIZE, heartbeatIntervalMillis);
+    }
+
+    private static TcpReplicator clientWithHeartbeats(
+            ChronicleMap<?, ?> map, TcpReplicator server, long heartbeatIntervalMillis)
+            throws IOException {
+        return new TcpReplicator(map, null, Collections.singletonList(server.localAddress()),
+                TcpReplicator.DEFAULT_BUFFER_SIZE, heartbeatIntervalMillis);
+    }
+
+    /**
+     * Connects to the replicator as the node with the given identifier, the socket sends nothing
+     * after the identifier message, unless written explicitly
+     */
+    private static Socket rawConnection(TcpReplicator server, int identifier)
+            throws IOException {
+        Socket socket = new Socket();
+        socket.connect(server.localAddress());
+        ByteBuffer message = ByteBuffer.allocate(6).order(ByteOrder.nativeOrder());
+        message.putInt(2).put((byte) 1).put((byte) identifier);
+        socket.getOutputStream().write(message.array());
+        return socket;
+    }
+
+    private static void waitClosedByRemote(Socket socket) throws IOException {
+        socket.setSoTimeout(20_000);
+        InputStream in = socket.getInputStream();
+        byte[] buffer = new byte[1024];
+        while (in.read(buffer) >= 0) {
+            // skip the messages from the replicator
+        }
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 20_000;
+        while (!condition.getAsBoolean()) {
+            assertTrue("Timed out", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    private static void waitForSameContents(ChronicleMap<Integer, String> map1,
+                                            ChronicleMap<Integer, String> map2)
+            throws InterruptedException {
+        waitFor(() -> new HashMap<>(map1).equals(new HashMap<>(map2)));
+    }
+
+    @Test
+    public void testReplicationOverLoopback() throws Exception {
+        try (ChronicleMap<Integer, String> map1 = replicatedMap(1);
+             ChronicleMap<Integer, String> map2 = replicatedMap(2);
+             TcpReplicator replicator1 = server(map1, TcpReplicator.DEFAULT_BUFFER_SIZE);
+             TcpReplicator replicator2 =
+                     client(map2, replicator1, TcpReplicator.DEFAULT_BUFFER_SIZE)) {
+            waitFor(() -> replicator1.connections() == 1 && replicator2.connections() == 1);
+            for (int i = 0; i < 1000; i++) {
+                (i % 2 == 0 ? map1 : map2).put(i, "value" + i);
+            }
+            waitFor(() -> map1.size() == 1000 && map2.size() == 1000);
+            waitForSameContents(map1, map2);
+
+            for (int i = 0; i < 1000; i += 3) {
+                (i % 2 == 0 ? map2 : map1).remove(i);
+            }
+            map1.put(1, "updated");
+            waitFor(() -> "updated".equals(map2.get(1)));
+            waitForSameContents(map1, map2);
+            assertFalse(map2.containsKey(0));
+        }
+    }
+
+    @Test
+    public void testBootstrapAfterReconnect() throws Exception {
+        try (ChronicleMap<Integer, String> map1 = replicatedMap(1);
+             ChronicleMap<Integer, String> map2 = replicatedMap(2);
+             TcpReplicator replicator1 = server(map1, TcpReplicator.DEFAULT_BUFFER_SIZE)) {
+            // Entries, inserted before the nodes are connected, are bootstrapped
+            for (int i = 0; i < 100; i++) {
+                map1.put(i, "value" + i);
+            }
+            try (TcpReplicator replicator2 =
+                         client(map2, replicator1, TcpReplicator.DEFAULT_BUFFER_SIZE)) {
+                waitForSameContents(map1, map2);
+            }
+            waitFor(() -> replicator1.connections() == 0);
+
+            // Changes, made while the nodes are disconnected, are sent after reconnection
+            map1.put(100, "value100");
+            map1.remove(0);
+            map2.put(200, "value200");
+            try (TcpReplicator replicator2 =
+                         client(map2, replicator1, TcpReplicator.DEFAULT_BUFFER_SIZE)) {
+                waitForSameContents(map1, map2);
+                assertEquals("value100", map2.get(100));
+                assertFalse(map2.containsKey(0));
+                assertEquals("value200", map1.get(200));
+            }
+        }
+    }
+
+    @Test
+    public void testEntriesLargerThanBuffers() throws Exception {
+        // Buffers, much smaller than entries and the socket buffers, exercise growth of the
+        // buffers and partial writes
+        int bufferSize = 64;
+        char[] chars = new char[1000];
+        Arrays.fill(chars, 'x');
+        String largeValue = new String(chars);
+        try (ChronicleMap<Integer, String> map1 = ChronicleMap.of(Integer.class, String.class)
+                .entries(1000)
+                .averageValueSize(1000)
+                .replication((byte) 1)
+                .create();
+             ChronicleMap<Integer, String> map2 = ChronicleMap.of(Integer.class, String.class)
+                     .entries(1000)
+                     .averageValueSize(1000)
+                     .replication((byte) 2)
+                     .create();
+             TcpReplicator replicator1 = server(map1, bufferSize);
+             TcpReplicator replicator2 = client(map2, replicator1, bufferSize)) {
+            Map<Integer, String> expected = new HashMap<>();
+            for (int i = 0; i < 500; i++) {
+                String value = i + largeValue;
+                map1.put(i, value);
+                expected.put(i, value);
+            }
+            waitFor(() -> expected.equals(new HashMap<>(map2)));
+        }
+    }
+
+    @Test
+    public void testHalfOpenConnectionIsClosedOnIdleTimeout() throws Exception {
+        try (ChronicleMap<Integer, String> map1 = replicatedMap(1);
+             ChronicleMap<Integer, String> map2 = replicatedMap(2);
+             TcpReplicator replicator1 = serverWithHeartbeats(map1, 50);
+             // as if the node 2 crashed, leaving the connection half-open
+             Socket halfOpen = rawConnection(replicator1, 2);
+             // refused as already connected, until the half-open connection is closed
+             TcpReplicator replicator2 = clientWithHeartbeats(map2, replicator1, 50)) {
+            waitClosedByRemote(halfOpen);
+            map1.put(1, "value1");
+            waitFor(() -> "value1".equals(map2.get(1)));
+        }
+    }
+
+    @Test
+    public void testHeartbeatsKeepIdleConnectionsAlive() throws Exception {
+        try (ChronicleMap<Integer, String> map1 = replicatedMap(1);
+             ChronicleMap<Integer, String> map2 = replicatedMap(2);
+             TcpReplicator replicator1 = serverWithHeartbeats(map1, 50);
+             TcpReplicator replicator2 = clientWithHeartbeats(map2, replicator1, 50)) {
+            waitFor(() -> replicator1.connections() == 1 && replicator2.connections() == 1);
+            // several idle timeouts without changes
+            Thread.sleep(50 * TcpReplicator.IDLE_TIMEOUT_HEARTBEATS * 3);
+            assertEquals(1, replicator1.connections());
+            assertEquals(1, replicator2.connections());
+        }
+    }
+
+    @Test
+    public void testTooLongMessageClosesOnlyItsConnection() throws Exception {
+        try (ChronicleMap<Integer, String> map1 = replicatedMap(1);
+             ChronicleMap<Integer, String> map2 = replicatedMap(2);
+             TcpReplicator replicator1 = server(map1, TcpReplicator.DEFAULT_BUFFER_SIZE);
+             TcpReplicator replicator2 =
+                     client(map2, replicator1, TcpReplicator.DEFAULT_BUFFER_SIZE);
+             Socket corrupted = rawConnection(replicator1, 3)) {
+            waitFor(() -> replicator1.connections() == 1 && replicator2.connections() == 1);
+            ByteBuffer header = ByteBuffer.allocate(5).order(ByteOrder.nativeOrder());
+            header.putInt(Integer.MAX_VALUE).put((byte) 3);
+            corrupted.getOutputStream().write(header.array());
+            waitClosedByRemote(corrupted);
+            assertFalse(replicator1.isClosed());
+            map1.put(1, "value1");
+            waitFor(() -> "value1".equals(map2.get(1)));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNotReplicatedMapIsRejected() throws IOException {
+        try (ChronicleMap<Integer, String> map = ChronicleMap.of(Integer.class, String.class)
+                .entries(100)
+                .averageValueSize(16)
+                .create()) {
+            new TcpReplicator(map, LOOPBACK, Collections.emptyList());
+        }
+    }
+}
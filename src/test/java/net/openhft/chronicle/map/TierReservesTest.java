@@ -0,0 +1,118 @@
+/*
+ *      Copyright (C) 2012, 2016  higherfrequencytrading.com
+ *      Copyright (C) 2016 Roman Leventov
+ *
+ *      This program is free software: you can redistribute it and/or modify
+ *      it under the terms of the GNU Lesser General Public License as published by
+ *      the Free Software Foundation, either version 3 of the License.
+ *
+ *      This program is distributed in the hope that it will be useful,
+ *      but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *      MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *      GNU Lesser General Public License for more details.
+ *
+ *      You should have received a copy of the GNU Lesser General Public License
+ *      along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.openhft.chronicle.map;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+import static net.openhft.chronicle.map.ChronicleMapTest.getPersistenceFile;
+import static net.openhft.chronicle.map.ExtraTierMaps.ENTRIES;
+import static net.openhft.chronicle.map.ExtraTierMaps.checkAll;
+import static net.openhft.chronicle.map.ExtraTierMaps.extraTierMapBuilder;
+import static net.openhft.chronicle.map.ExtraTierMaps.putAll;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TierReservesTest {
+
+    private static ChronicleMapBuilder<Integer, Integer> builder() {
+        return extraTierMapBuilder(4).tierReserves(true);
+    }
+
+    @Test
+    public void tierReservesInMemory() throws InterruptedException {
+        try (ChronicleMap<Integer, Integer> map = builder().create()) {
+            VanillaChronicleMap<?, ?, ?> vanillaMap = (VanillaChronicleMap<?, ?, ?>) map;
+            for (int i = 0; i < ENTRIES / 2; i++) {
+                map.put(i, i);
+            }
+            long deadline = System.currentTimeMillis() + 10_000;
+            while (vanillaMap.reservedTiersRefilled() == 0) {
+                assertTrue("tier reserves are not refilled",
+                        System.currentTimeMillis() < deadline);
+                Thread.sleep(10);
+            }
+            for (int i = ENTRIES / 2; i < ENTRIES; i++) {
+                map.put(i, i);
+            }
+            assertTrue(vanillaMap.reservedTiersTaken() > 0);
+            checkAll(map);
+        }
+    }
+
+    @Test
+    public void noTierReservesByDefault() {
+        try (ChronicleMap<Integer, Integer> map = extraTierMapBuilder(4).create()) {
+            putAll(map);
+            VanillaChronicleMap<?, ?, ?> vanillaMap = (VanillaChronicleMap<?, ?, ?>) map;
+            assertEquals(0, vanillaMap.reservedTiersRefilled());
+            assertEquals(0, vanillaMap.reservedTiersTaken());
+        }
+    }
+
+    /**
+     * @return the number of entries, inserted before the map has run out of extra tiers
+     */
+    private static int putUntilFull(ChronicleMap<Integer, Integer> map) {
+        int entries = 0;
+        try {
+            while (true) {
+                map.put(entries, entries);
+                entries++;
+            }
+        } catch (IllegalStateException e) {
+            return entries;
+        }
+    }
+
+    @Test
+    public void tierReservesDontReduceCapacity() {
+        int entriesWithoutReserves;
+        try (ChronicleMap<Integer, Integer> map =
+                     extraTierMapBuilder(4).maxBloatFactor(10).create()) {
+            entriesWithoutReserves = putUntilFull(map);
+        }
+        try (ChronicleMap<Integer, Integer> map =
+                     builder().maxBloatFactor(10).create()) {
+            assertTrue(putUntilFull(map) >= entriesWithoutReserves);
+        }
+    }
+
+    @Test
+    public void reservedAndEmptiedTiersAreRecovered() throws IOException {
+        File file = getPersistenceFile();
+        try (ChronicleMap<Integer, Integer> map = builder().createPersistedTo(file)) {
+            putAll(map);
+            // empty some tiers in the middle of segment chains
+            for (int i = 0; i < ENTRIES / 2; i++) {
+                map.remove(i);
+            }
+        }
+        try (ChronicleMap<Integer, Integer> map = builder().recoverPersistedTo(file, true)) {
+            assertEquals(ENTRIES / 2, map.size());
+            for (int i = ENTRIES / 2; i < ENTRIES; i++) {
+                assertEquals((Integer) i, map.get(i));
+            }
+            // tiers, returned to the free list, are reused
+            putAll(map);
+            checkAll(map);
+        }
+    }
+}
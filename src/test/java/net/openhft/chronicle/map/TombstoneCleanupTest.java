@@ -0,0 +1,115 @@
+/*
+ *      Copyright (C) 2012, 2016  higherfrequencytrading.com
+ *      Copyright (C) 2016 Roman Leventov
+ *
+ *      This program is free software: you can redistribute it and/or modify
+ *      it under the terms of the GNU Lesser General Public License as published by
+ *      the Free Software Foundation, either version 3 of the License.
+ *
+ *      This program is distributed in the hope that it will be useful,
+ *      but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *      MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *      GNU Lesser General Public License for more details.
+ *
+ *      You should have received a copy of the GNU Lesser General Public License
+ *      along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.openhft.chronicle.map;
+
+import net.openhft.chronicle.hash.ChronicleHashBuilderPrivateAPI;
+import net.openhft.chronicle.hash.ReplicatedHashSegmentContext;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class TombstoneCleanupTest {
+
+    private static ChronicleMapBuilder<Integer, Integer> replicatedMapBuilder(
+            int segments, boolean cleanupRemovedEntries) {
+        ChronicleMapBuilder<Integer, Integer> builder =
+                ChronicleMap.of(Integer.class, Integer.class)
+                        .entries(1000)
+                        .actualSegments(segments);
+        ChronicleHashBuilderPrivateAPI<?, ?> privateAPI =
+                (ChronicleHashBuilderPrivateAPI<?, ?>) builder.privateAPI();
+        privateAPI.replication((byte) 1);
+        privateAPI.cleanupRemovedEntries(cleanupRemovedEntries);
+        privateAPI.removedEntryCleanupTimeout(100, TimeUnit.MILLISECONDS);
+        return builder;
+    }
+
+    private static long deleted(ReplicatedChronicleMap<?, ?, ?> map) {
+        long deleted = 0;
+        for (int i = 0; i < map.segments(); i++) {
+            deleted += map.approximateSegmentDeleted(i);
+        }
+        return deleted;
+    }
+
+    @Test
+    public void testOldestDeletedTimestampIsTracked() throws InterruptedException {
+        try (ChronicleMap<Integer, Integer> map = replicatedMapBuilder(1, false).create()) {
+            ReplicatedChronicleMap<?, ?, ?> m = (ReplicatedChronicleMap<?, ?, ?>) map;
+            for (int i = 0; i < 100; i++) {
+                map.put(i, i);
+            }
+            int segmentIndex = 0;
+            assertEquals(0, m.approximateSegmentDeleted(segmentIndex));
+            assertEquals(Long.MAX_VALUE, m.approximateSegmentOldestDeletedTimestamp(segmentIndex));
+            map.remove(0);
+            long firstRemoval = m.approximateSegmentOldestDeletedTimestamp(segmentIndex);
+            assertNotEquals(0, firstRemoval);
+            Thread.sleep(10);
+            for (int i = 1; i < 100; i++) {
+                map.remove(i);
+            }
+            assertEquals(100, deleted(m));
+            assertEquals(firstRemoval, m.approximateSegmentOldestDeletedTimestamp(segmentIndex));
+
+            // Removing the oldest deleted entry completely advances the oldest timestamp
+            try (MapSegmentContext<Integer, Integer, ?> c = map.segmentContext(segmentIndex)) {
+                ((ReplicatedHashSegmentContext<?, ?>) c).forEachSegmentReplicableEntry(e -> {
+                    if (((MapAbsentEntry<Integer, Integer>) e).absentKey().get() == 0)
+                        e.doRemoveCompletely();
+                });
+            }
+            assertEquals(99, deleted(m));
+            long oldest = m.approximateSegmentOldestDeletedTimestamp(segmentIndex);
+            assertTrue(oldest > firstRemoval);
+
+            // When the last deleted entry is reinserted, the next removal resets the timestamp
+            for (int i = 1; i < 100; i++) {
+                map.put(i, i);
+            }
+            assertEquals(0, deleted(m));
+            map.remove(1);
+            assertTrue(m.approximateSegmentOldestDeletedTimestamp(segmentIndex) > oldest);
+        }
+    }
+
+    @Test
+    public void testExpiredDeletedEntriesAreCleanedUp() throws InterruptedException {
+        try (ChronicleMap<Integer, Integer> map = replicatedMapBuilder(4, true).create()) {
+            ReplicatedChronicleMap<?, ?, ?> m = (ReplicatedChronicleMap<?, ?, ?>) map;
+            for (int i = 0; i < 500; i++) {
+                map.put(i, i);
+            }
+            for (int i = 0; i < 500; i += 2) {
+                map.remove(i);
+            }
+            assertEquals(250, deleted(m));
+            long deadline = System.currentTimeMillis() + 10_000;
+            while (deleted(m) > 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(0, deleted(m));
+            assertEquals(250, map.size());
+            for (int i = 0; i < m.segments(); i++) {
+                assertEquals(Long.MAX_VALUE, m.approximateSegmentOldestDeletedTimestamp(i));
+            }
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ *      Copyright (C) 2012, 2016  higherfrequencytrading.com
+ *      Copyright (C) 2016 Roman Leventov
+ *
+ *      This program is free software: you can redistribute it and/or modify
+ *      it under the terms of the GNU Lesser General Public License as published by
+ *      the Free Software Foundation, either version 3 of the License.
+ *
+ *      This program is distributed in the hope that it will be useful,
+ *      but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *      MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *      GNU Lesser General Public License for more details.
+ *
+ *      You should have received a copy of the GNU Lesser General Public License
+ *      along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.openhft.chronicle.map;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static net.openhft.chronicle.map.ChronicleMapTest.getPersistenceFile;
+import static org.junit.Assert.*;
+
+public class WriteAheadJournalTest {
+
+    private static final int ENTRIES = 1000;
+
+    private static ChronicleMapBuilder<Integer, Integer> builder() {
+        return ChronicleMap.of(Integer.class, Integer.class).entries(ENTRIES);
+    }
+
+    @Test
+    public void journalIsReplayedOnRecovery() throws IOException {
+        File file = getPersistenceFile();
+        // checkpoints don't happen during the test
+        try (ChronicleMap<Integer, Integer> map = builder()
+                .writeAheadJournal(1, TimeUnit.HOURS)
+                .createPersistedTo(file)) {
+            for (int i = 0; i < ENTRIES; i++) {
+                map.put(i, i);
+            }
+            for (int i = 0; i < ENTRIES; i += 2) {
+                map.remove(i);
+            }
+        }
+        // Emulate loss of the map data, which was not synced to disk: recover an empty map
+        // with the journal of the populated one
+        File emptyMapFile = getPersistenceFile();
+        builder().createPersistedTo(emptyMapFile).close();
+        Files.copy(MapJournal.journalFile(file).toPath(),
+                MapJournal.journalFile(emptyMapFile).toPath(), REPLACE_EXISTING);
+        try (ChronicleMap<Integer, Integer> map =
+                     builder().recoverPersistedTo(emptyMapFile, true)) {
+            assertEquals(ENTRIES / 2, map.size());
+            for (int i = 0; i < ENTRIES; i++) {
+                if (i % 2 == 0) {
+                    assertNull(map.get(i));
+                } else {
+                    assertEquals((Integer) i, map.get(i));
+                }
+            }
+        }
+        // the journal is truncated after replay
+        assertEquals(MapJournal.HEADER_SIZE, MapJournal.journalFile(emptyMapFile).length());
+    }
+
+    @Test
+    public void journalIsTruncatedOnCheckpoint() throws IOException, InterruptedException {
+        File file = getPersistenceFile();
+        File journalFile = MapJournal.journalFile(file);
+        try (ChronicleMap<Integer, Integer> map = builder()
+                .writeAheadJournal(10, TimeUnit.MILLISECONDS)
+                .createPersistedTo(file)) {
+            for (int i = 0; i < ENTRIES; i++) {
+                map.put(i, i);
+            }
+            long deadline = System.currentTimeMillis() + 10_000;
+            while (journalFile.length() > MapJournal.HEADER_SIZE &&
+                    System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(MapJournal.HEADER_SIZE, journalFile.length());
+            assertEquals(ENTRIES, map.size());
+        }
+    }
+
+    @Test
+    public void journalIsBoundedUnderSteadyMutations() throws IOException {
+        File file = getPersistenceFile();
+        File journalFile = MapJournal.journalFile(file);
+        long puts = 0;
+        try (ChronicleMap<Integer, Integer> map = builder()
+                .writeAheadJournal(10, TimeUnit.MILLISECONDS)
+                .createPersistedTo(file)) {
+            // mutations don't pause, the journal is never empty on checkpoints
+            for (long end = System.currentTimeMillis() + 2_000;
+                 System.currentTimeMillis() < end; puts++) {
+                map.put((int) (puts % ENTRIES), (int) puts);
+            }
+            // payload length, type, key size, value size, key, value and checksum
+            long recordSize = 4 + 1 + 4 + 4 + 4 + 4 + 4;
+            assertTrue(journalFile.length() < MapJournal.HEADER_SIZE + puts * recordSize / 2);
+        }
+        // the moved records are replayable
+        try (ChronicleMap<Integer, Integer> map = builder().recoverPersistedTo(file, true)) {
+            assertEquals(Math.min(puts, ENTRIES), map.size());
+        }
+    }
+}